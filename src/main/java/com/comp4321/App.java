@@ -1,17 +1,29 @@
 package com.comp4321;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.htmlparser.util.ParserException;
 
+import com.comp4321.indexers.CommitPolicy;
 import com.comp4321.indexers.Indexer;
+import com.comp4321.indexers.PageRank;
+import com.comp4321.indexers.ParallelScoring;
+import com.comp4321.indexers.ProximityBoost;
+import com.comp4321.indexers.ShardedIndexer;
+import com.comp4321.mapped.SnapshotIndex;
+import com.comp4321.mapped.SnapshotStore;
 import com.comp4321.server.JavalinServer;
 
 public class App {
+    private static final Path SNAPSHOTS = Path.of("indexes.snapshots");
+    private static final Duration SNAPSHOT_REFRESH_INTERVAL = Duration.ofSeconds(10);
+
     public static void main(String[] args) throws IOException {
 
         if (args.length == 0) {
@@ -23,34 +35,113 @@ public class App {
         final var maxPages = 300;
         final var maxSearchResults = 50;
 
-        try (final var indexer = new Indexer()) {
+        // The compiled snapshots are served without opening the JDBM indexes, so
+        // they can be served alongside a crawl and shared by several server
+        // processes. A snapshot published by a crawl is picked up while serving
+        if (args[0].equals("server") && Arrays.asList(args).contains("--compiled")) {
+            try (final var index = SnapshotIndex.open(new SnapshotStore(SNAPSHOTS), SNAPSHOT_REFRESH_INTERVAL)) {
+                index.setProximityBoost(parseProximityBoost(args));
+                index.setPageRankWeight(parsePageRankWeight(args));
+                final var server = new JavalinServer(new CachingSearchEngine(index), maxSearchResults);
+                server.start();
+                server.awaitTermination();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        // Compaction replaces the database files, so it opens the indexes itself
+        if (args[0].equals("compact")) {
+            final var shardCount = parseShardCount(args);
+            if (shardCount > 0) {
+                final var results = ShardedIndexer.compact(Indexer.DB_NAME, shardCount);
+                for (int i = 0; i < results.size(); ++i)
+                    System.out.println("Compacted shard " + i + ": " + results.get(i));
+            } else {
+                System.out.println("Compacted " + Indexer.compact());
+            }
+            return;
+        }
+
+        // Rebuilding starts from empty indexes, which the crawl bulk loads
+        final var rebuild = args[0].equals("crawl") && Arrays.asList(args).contains("--rebuild");
+        final var shardCount = parseShardCount(args);
+        if (rebuild) {
+            if (shardCount > 0)
+                ShardedIndexer.deleteIndexes(Indexer.DB_NAME, shardCount);
+            else
+                Indexer.deleteIndexes();
+        }
+
+        // Transactions can only be disabled when an interrupted crawl can be
+        // recovered by rebuilding from scratch
+        var commitPolicy = CommitPolicy.DEFAULT;
+        if (Arrays.asList(args).contains("--no-transactions")) {
+            if (!rebuild) {
+                System.err.println("--no-transactions can only be used with 'crawl --rebuild'");
+                System.exit(1);
+            }
+            commitPolicy = commitPolicy.withoutTransactions();
+        }
+
+        if (shardCount > 0) {
+            runSharded(args, shardCount, commitPolicy, baseURL, maxPages, maxSearchResults);
+            return;
+        }
+
+        try (final var indexer = new Indexer(commitPolicy)) {
             switch (args[0]) {
                 case "crawl":
                     indexer.bfs(baseURL, maxPages);
+                    System.out.println("Commits: " + indexer.getCommitter());
+                    System.out.println("Published " + new SnapshotStore(SNAPSHOTS).publish(indexer::compile));
                     break;
 
                 case "search":
                     final var words = Arrays.stream(args).skip(1).collect(Collectors.toSet());
-                    final var results = indexer.search(words, List.of());
-                    results.entrySet().stream()
-                            .sorted(Comparator.comparing(entry -> entry.getValue().score(), Comparator.reverseOrder()))
-                            .limit(maxSearchResults)
-                            .forEach(entry -> System.out.println(entry.getValue().toResultFormat()));
+                    printResults(indexer.search(words, List.of(), 0, maxSearchResults));
                     break;
 
                 case "phrase":
                     final var phrase = Arrays.stream(args).skip(1).collect(Collectors.toList());
-                    final var phraseResults = indexer.search(phrase.stream().collect(Collectors.toSet()), phrase);
-                    phraseResults.entrySet().stream()
-                            .sorted(Comparator.comparing(entry -> entry.getValue().score(), Comparator.reverseOrder()))
-                            .limit(maxSearchResults)
-                            .forEach(entry -> System.out.println(entry.getValue().toResultFormat()));
+                    printResults(indexer.search(phrase.stream().collect(Collectors.toSet()), phrase, 0,
+                            maxSearchResults));
                     break;
 
                 case "server":
-                    final var server = new JavalinServer(indexer, maxSearchResults);
-                    server.start();
-                    server.awaitTermination();
+                    try (final var parallelScoring = parseParallelScoring(args)) {
+                        indexer.setParallelScoring(parallelScoring);
+                        indexer.setProximityBoost(parseProximityBoost(args));
+                        indexer.setPageRankWeight(parsePageRankWeight(args));
+                        final var server = new JavalinServer(new CachingSearchEngine(indexer), maxSearchResults);
+                        server.start();
+                        server.awaitTermination();
+                    }
+                    break;
+
+                case "pagerank":
+                    final var threads = parsePositiveOption(args, "--threads", "threads");
+                    try (final var parallelScoring = new ParallelScoring(
+                            threads > 0 ? threads : Runtime.getRuntime().availableProcessors())) {
+                        final var start = System.nanoTime();
+                        final var ranks = indexer.computePageRank(parallelScoring);
+                        System.out.printf("Ranked %d documents in %d iterations (delta %.2e) in %d ms%n",
+                                ranks.ranks().length, ranks.iterations(), ranks.delta(),
+                                (System.nanoTime() - start) / 1_000_000);
+                    }
+                    break;
+
+                case "compile":
+                    System.out.println("Published " + new SnapshotStore(SNAPSHOTS).publish(indexer::compile));
+                    break;
+
+                case "migrate":
+                    System.out.println("Migrated " + indexer.migrate() + " records");
+                    break;
+
+                case "stats":
+                    System.out.print(indexer.getStatistics().orElseThrow());
                     break;
 
                 case "print":
@@ -69,4 +160,106 @@ public class App {
             Thread.currentThread().interrupt();
         }
     }
+
+    // Returns the value of an option taking a positive number, or 0 if it is
+    // not given
+    private static int parsePositiveOption(String[] args, String option, String description) {
+        final var idx = Arrays.asList(args).indexOf(option);
+        if (idx < 0)
+            return 0;
+
+        try {
+            final var value = Integer.parseInt(args[idx + 1]);
+            if (value > 0)
+                return value;
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println(option + " requires a positive number of " + description);
+        System.exit(1);
+        return 0;
+    }
+
+    private static int parseShardCount(String[] args) {
+        return parsePositiveOption(args, "--shards", "shards");
+    }
+
+    // Large queries of the server are scored on this many threads
+    private static ParallelScoring parseParallelScoring(String[] args) {
+        final var queryThreads = parsePositiveOption(args, "--query-threads", "threads");
+        return queryThreads > 0 ? new ParallelScoring(queryThreads) : ParallelScoring.SEQUENTIAL;
+    }
+
+    // Multi-word queries are reranked by the proximity of their words unless
+    // disabled
+    private static ProximityBoost parseProximityBoost(String[] args) {
+        return Arrays.asList(args).contains("--no-proximity") ? ProximityBoost.NONE : ProximityBoost.DEFAULT;
+    }
+
+    // Queries are ranked by the PageRank of the documents as well, once computed
+    // by 'pagerank'
+    private static double parsePageRankWeight(String[] args) {
+        return Arrays.asList(args).contains("--pagerank") ? PageRank.DEFAULT_WEIGHT : 0;
+    }
+
+    private static void printResults(List<SearchResult> results) {
+        results.forEach(result -> System.out.println(result.toResultFormat()));
+    }
+
+    private static void runSharded(String[] args, int shardCount, CommitPolicy commitPolicy, String baseURL,
+            int maxPages, int maxSearchResults) {
+        // The query words are the arguments before the options
+        final var queryWords = Arrays.stream(args).skip(1).takeWhile(arg -> !arg.startsWith("--")).toList();
+
+        // The links of a shard point to pages stored in the other shards, so the
+        // ranks cannot be computed per shard
+        if (args[0].equals("pagerank") || parsePageRankWeight(args) > 0) {
+            System.err.println("PageRank is not supported with --shards");
+            System.exit(1);
+        }
+
+        try (final var indexer = ShardedIndexer.open(Indexer.DB_NAME, shardCount, commitPolicy)) {
+            switch (args[0]) {
+                case "crawl":
+                    indexer.bfs(baseURL, maxPages);
+                    final var committers = indexer.getCommitters();
+                    for (int i = 0; i < committers.size(); ++i)
+                        System.out.println("Commits of shard " + i + ": " + committers.get(i));
+                    break;
+
+                case "search":
+                    printResults(indexer.search(Set.copyOf(queryWords), List.of(), 0, maxSearchResults));
+                    break;
+
+                case "phrase":
+                    printResults(indexer.search(Set.copyOf(queryWords), queryWords, 0, maxSearchResults));
+                    break;
+
+                case "server":
+                    try (final var parallelScoring = parseParallelScoring(args)) {
+                        indexer.setParallelScoring(parallelScoring);
+                        indexer.setProximityBoost(parseProximityBoost(args));
+                        final var server = new JavalinServer(new CachingSearchEngine(indexer), maxSearchResults);
+                        server.start();
+                        server.awaitTermination();
+                    }
+                    break;
+
+                case "stats":
+                    System.out.print(indexer.getStatistics().orElseThrow());
+                    break;
+
+                default:
+                    System.out.println("Unknown argument. Use 'crawl', 'search', 'phrase', 'server' or 'stats' "
+                            + "with --shards");
+                    System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("An error occurred: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package com.comp4321;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.comp4321.indexers.IndexStatistics;
+import com.comp4321.indexers.ScoringModel;
+import com.comp4321.jdbm.ObjectCache;
+import com.comp4321.query.Query;
+import com.comp4321.query.QueryPlanner;
+
+/**
+ * Caches the result pages of another search engine. Queries are keyed by their
+ * canonical form, the sorted distinct stems of the words and the stems of the
+ * phrase, so that queries differing only in word order, inflection or stop
+ * words share an entry. Boolean queries are keyed by their normalized form and
+ * their scoring model.
+ * Every entry is tagged with the generation of the indexes it was computed from
+ * and is only served while that generation is current.
+ */
+public class CachingSearchEngine implements SearchEngine {
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    public static final String QUERY_RESULTS = "Query results";
+
+    private record KeywordQuery(List<String> stems, List<String> phrase, int slop, int offset, int k) {
+    }
+
+    private record BooleanQuery(Query query, ScoringModel model, int offset, int k) {
+    }
+
+    private record Page(long generation, List<SearchResult> results) {
+    }
+
+    private final SearchEngine engine;
+    private final ObjectCache<Record, Page> cache;
+    private long generation;
+
+    public CachingSearchEngine(SearchEngine engine, long maxBytes) {
+        this.engine = engine;
+        this.cache = ObjectCache.withMaxBytes(maxBytes, CachingSearchEngine::estimateSize);
+        this.generation = engine.getGeneration();
+    }
+
+    public CachingSearchEngine(SearchEngine engine) {
+        this(engine, DEFAULT_MAX_BYTES);
+    }
+
+    // Rough heap sizes of a page: object headers, references and the characters
+    // of the strings
+    private static long estimateSize(Page page) {
+        var size = 64L;
+        for (final var result : page.results()) {
+            size += 160 + 2L * (result.title().length() + result.url().length());
+            for (final var keyword : result.keywords().keySet())
+                size += 64 + 2L * keyword.length();
+            for (final var link : result.parentLinks())
+                size += 48 + 2L * link.length();
+            for (final var link : result.childLinks())
+                size += 48 + 2L * link.length();
+        }
+        return size;
+    }
+
+    private KeywordQuery canonicalQuery(Set<String> words, List<String> phrase, int slop, int offset, int k) {
+        final var stems = words.stream()
+                .map(engine::stemWord)
+                .flatMap(Optional::stream)
+                .distinct()
+                .sorted()
+                .toList();
+        final var phraseStems = phrase.stream()
+                .map(engine::stemWord)
+                .flatMap(Optional::stream)
+                .toList();
+        return new KeywordQuery(stems, phraseStems, slop, offset, k);
+    }
+
+    // Entries of older generations are never served, so they are dropped at once
+    // instead of waiting to be evicted
+    private synchronized void advanceTo(long current) {
+        if (current != generation) {
+            cache.clear();
+            generation = current;
+        }
+    }
+
+    @Override
+    public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase) throws IOException {
+        return engine.search(words, phrase);
+    }
+
+    /**
+     * Returns the cached page of the query if it was computed from the current
+     * generation of the indexes, or searches the engine and caches the page.
+     */
+    @Override
+    public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, int offset, int k)
+            throws IOException {
+        return search(canonicalQuery(words, phrase, slop, offset, k),
+                () -> engine.search(words, phrase, slop, offset, k));
+    }
+
+    /**
+     * Returns the cached page of the boolean query like
+     * {@link #search(Set, List, int, int, int)}.
+     */
+    @Override
+    public List<SearchResult> search(Query query, ScoringModel model, int offset, int k) throws IOException {
+        return search(new BooleanQuery(QueryPlanner.normalize(query), model, offset, k),
+                () -> engine.search(query, model, offset, k));
+    }
+
+    @FunctionalInterface
+    private interface PageSearch {
+        List<SearchResult> search() throws IOException;
+    }
+
+    private List<SearchResult> search(Record key, PageSearch search) throws IOException {
+        // The generation is read before searching, so that a page is never tagged
+        // with a newer generation than the one it was computed from
+        final var current = engine.getGeneration();
+        advanceTo(current);
+
+        final var cached = cache.get(key);
+        if (cached != null && cached.generation() == current)
+            return cached.results();
+
+        final var results = search.search();
+        cache.put(key, new Page(current, results));
+        return results;
+    }
+
+    @Override
+    public Optional<String> stemWord(String word) {
+        return engine.stemWord(word);
+    }
+
+    @Override
+    public Optional<IndexStatistics> getStatistics() throws IOException {
+        return engine.getStatistics();
+    }
+
+    @Override
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        final var caches = new LinkedHashMap<String, ObjectCache<?, ?>>();
+        caches.put(QUERY_RESULTS, cache);
+        caches.putAll(engine.getCaches());
+        return caches;
+    }
+
+    @Override
+    public long getGeneration() {
+        return engine.getGeneration();
+    }
+}
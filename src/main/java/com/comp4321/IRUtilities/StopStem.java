@@ -3,6 +3,7 @@ package com.comp4321.IRUtilities;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.HashSet;
+import java.util.Optional;
 
 public class StopStem {
 	private static final String STOPWORDS_FILE = "stopwords.txt";
@@ -32,4 +33,24 @@ public class StopStem {
 		return porter.stripAffixes(str);
 	}
 
+	/**
+	 * Stems a word by converting it to lowercase, removing any affixes using
+	 * Porter's algorithm, and checking if it is a stop word.
+	 *
+	 * @param word the word to be stemmed
+	 * @return an Optional containing the stemmed word if it is not a stop word and
+	 *         not blank, or an empty Optional otherwise
+	 */
+	public Optional<String> stemWord(String word) {
+		word = word.toLowerCase();
+		if (isStopWord(word))
+			return Optional.empty();
+
+		word = stem(word);
+		if (word.isBlank())
+			return Optional.empty();
+
+		return Optional.of(word);
+	}
+
 }
@@ -6,8 +6,107 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
+import com.comp4321.indexers.IndexStatistics;
+import com.comp4321.indexers.ScoringModel;
+import com.comp4321.jdbm.ObjectCache;
+import com.comp4321.query.Query;
+
 public interface SearchEngine {
     public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase) throws IOException;
 
+    /**
+     * Searches for the given set of words and phrase and returns one page of the
+     * results, ranked by descending score.
+     *
+     * @param words  the set of words to search for (words in the phrase are
+     *               included)
+     * @param phrase the phrase to search for (if any)
+     * @param offset the number of top results to skip
+     * @param k      the maximum number of results to return
+     * @return the results ranked from offset to offset + k
+     * @throws IOException if an I/O error occurs while searching the index
+     */
+    public default List<SearchResult> search(Set<String> words, List<String> phrase, int offset, int k)
+            throws IOException {
+        return search(words, phrase, 0, offset, k);
+    }
+
+    /**
+     * Searches for the given set of words and sloppy phrase and returns one page
+     * of the results, ranked by descending score. A sloppy phrase matches when
+     * its words occur in any order within a window of its length plus the slop.
+     *
+     * @param words  the set of words to search for (words in the phrase are
+     *               included)
+     * @param phrase the phrase to search for (if any)
+     * @param slop   the number of extra positions allowed in the phrase, 0 for an
+     *               exact phrase
+     * @param offset the number of top results to skip
+     * @param k      the maximum number of results to return
+     * @return the results ranked from offset to offset + k
+     * @throws IOException if an I/O error occurs while searching the index
+     */
+    public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, int offset, int k)
+            throws IOException;
+
+    /**
+     * Searches for the documents matching a boolean query and returns one page of
+     * the results, ranked by descending score. The matching documents are scored
+     * by the words of the query that are not negated.
+     *
+     * @param query  the parsed query
+     * @param offset the number of top results to skip
+     * @param k      the maximum number of results to return
+     * @return the results ranked from offset to offset + k
+     * @throws IOException if an I/O error occurs while searching the index
+     */
+    public default List<SearchResult> search(Query query, int offset, int k) throws IOException {
+        return search(query, ScoringModel.DEFAULT, offset, k);
+    }
+
+    /**
+     * Searches for the documents matching a boolean query like
+     * {@link #search(Query, int, int)}, but ranks them with the given scoring
+     * model.
+     *
+     * @param query  the parsed query
+     * @param model  the scoring model
+     * @param offset the number of top results to skip
+     * @param k      the maximum number of results to return
+     * @return the results ranked from offset to offset + k
+     * @throws IOException if an I/O error occurs while searching the index
+     */
+    public List<SearchResult> search(Query query, ScoringModel model, int offset, int k) throws IOException;
+
     public Optional<String> stemWord(String word);
+
+    /**
+     * Computes aggregate statistics of the indexes behind this engine.
+     *
+     * @return the statistics, or empty if this engine cannot compute them
+     * @throws IOException if an I/O error occurs while reading the indexes
+     */
+    public default Optional<IndexStatistics> getStatistics() throws IOException {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the caches of this engine by name, with their hit and miss
+     * counters.
+     *
+     * @return the caches
+     */
+    public default Map<String, ObjectCache<?, ?>> getCaches() {
+        return Map.of();
+    }
+
+    /**
+     * Returns the generation of the indexes behind this engine, which advances
+     * whenever the results of a query may have changed.
+     *
+     * @return the generation
+     */
+    public default long getGeneration() {
+        return 0;
+    }
 }
@@ -0,0 +1,84 @@
+package com.comp4321.indexers;
+
+/**
+ * Scores documents with BM25 over the title and the body (BM25F). The
+ * frequencies of the fields are normalized by the field lengths and combined
+ * before they are saturated:
+ *
+ * <pre>
+ * tf     = titleWeight * title_tf / B(title) + body_tf / B(body)
+ * B(f)   = 1 - b + b * length(f) / averageLength(f)
+ * weight = tf * (k1 + 1) / (k1 + tf)
+ * score  = sum(weight * ln(1 + (N - df + 0.5) / (df + 0.5)))
+ * </pre>
+ *
+ * The weight of a posting is below k1 + 1, which bounds the contribution of a
+ * word without any precomputed impact.
+ *
+ * @param k1          how slowly the weight saturates with the frequency, above 0
+ * @param b           how much the frequencies are normalized by the field
+ *                    lengths, from 0 to 1
+ * @param titleWeight how many body words a title word counts as
+ */
+public record BM25Scoring(double k1, double b, double titleWeight) implements ScoringModel {
+    public static final double DEFAULT_K1 = 1.2;
+    public static final double DEFAULT_B = 0.75;
+
+    // Title words weigh as much relative to body words as in TF-IDF
+    public static final double DEFAULT_TITLE_WEIGHT = InvertedIndex.TITLE_MATCH_MULTIPLIER
+            / (1 - InvertedIndex.TITLE_MATCH_MULTIPLIER);
+
+    public static final BM25Scoring DEFAULT = new BM25Scoring(DEFAULT_K1, DEFAULT_B, DEFAULT_TITLE_WEIGHT);
+
+    public BM25Scoring {
+        if (k1 <= 0 || b < 0 || b > 1 || titleWeight < 0)
+            throw new IllegalArgumentException("Invalid BM25 parameters");
+    }
+
+    private record QueryScorer(BM25Scoring model, int totalDocuments, double averageTitleLength,
+            double averageBodyLength) implements Scorer {
+        private double lengthNorm(int length, double averageLength) {
+            return averageLength > 0 ? 1 - model.b + model.b * length / averageLength : 1;
+        }
+
+        @Override
+        public double idf(int df) {
+            return Math.log(1 + (totalDocuments - df + 0.5) / (df + 0.5));
+        }
+
+        @Override
+        public double weight(int titleTF, int bodyTF, int tfMax, int titleLength, int bodyLength) {
+            var tf = 0.0;
+            if (titleTF > 0)
+                tf += model.titleWeight * titleTF / lengthNorm(titleLength, averageTitleLength);
+            if (bodyTF > 0)
+                tf += bodyTF / lengthNorm(bodyLength, averageBodyLength);
+            return tf * (model.k1 + 1) / (model.k1 + tf);
+        }
+
+        @Override
+        public double normalize(double score, double norm) {
+            return score;
+        }
+
+        @Override
+        public double bound(double idf, double maxImpact) {
+            return idf * (model.k1 + 1);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "bm25";
+    }
+
+    @Override
+    public Scorer scorer(int totalDocuments, double averageTitleLength, double averageBodyLength) {
+        return new QueryScorer(this, totalDocuments, averageTitleLength, averageBodyLength);
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+}
@@ -0,0 +1,195 @@
+package com.comp4321.indexers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds posting lists with an external merge sort instead of one
+ * read-modify-write per term and document. Postings are buffered as (termId,
+ * docId, positions) tuples, sorted and spilled to run files whenever the
+ * buffer exceeds its memory budget, and finally merged so that each term's
+ * posting list is produced exactly once, in ascending order of term ID.
+ */
+class BulkPostingBuilder implements AutoCloseable {
+    // Bounds the number of open run files per merge pass
+    private static final int MAX_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Rough heap cost of a buffered tuple besides its positions
+    private static final int TUPLE_OVERHEAD = 64;
+
+    private record Tuple(int termId, int docId, int[] titleLocations, int[] bodyLocations) {
+        static final Comparator<Tuple> ORDER = Comparator.comparingInt(Tuple::termId)
+                .thenComparingInt(Tuple::docId);
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(termId);
+            out.writeInt(docId);
+            out.writeInt(titleLocations.length);
+            out.writeInt(bodyLocations.length);
+            for (final var location : titleLocations)
+                out.writeInt(location);
+            for (final var location : bodyLocations)
+                out.writeInt(location);
+        }
+
+        Posting toPosting() {
+            return new Posting(docId, titleLocations, bodyLocations);
+        }
+
+        static Tuple readFrom(DataInputStream in) throws IOException {
+            final int termId;
+            try {
+                termId = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            final var docId = in.readInt();
+            final var titleLocations = new int[in.readInt()];
+            final var bodyLocations = new int[in.readInt()];
+            for (int i = 0; i < titleLocations.length; ++i)
+                titleLocations[i] = in.readInt();
+            for (int i = 0; i < bodyLocations.length; ++i)
+                bodyLocations[i] = in.readInt();
+            return new Tuple(termId, docId, titleLocations, bodyLocations);
+        }
+    }
+
+    @FunctionalInterface
+    interface TermConsumer {
+        void accept(int termId, List<Posting> postings) throws IOException;
+    }
+
+    private final Path spillDirectory;
+    private final long memoryBudget;
+    private final List<Path> runs = new ArrayList<>();
+    private List<Tuple> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+
+    BulkPostingBuilder(Path spillDirectory, long memoryBudget) {
+        this.spillDirectory = spillDirectory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Buffers the posting of a term in a document, spilling the buffer to a run
+     * file if it exceeds the memory budget.
+     */
+    void add(int termId, int docId, int[] titleLocations, int[] bodyLocations) throws IOException {
+        buffer.add(new Tuple(termId, docId, titleLocations, bodyLocations));
+        bufferedBytes += TUPLE_OVERHEAD + (long) Integer.BYTES * (titleLocations.length + bodyLocations.length);
+        if (bufferedBytes >= memoryBudget)
+            spill();
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty())
+            return;
+
+        buffer.sort(Tuple.ORDER);
+        final var run = Files.createTempFile(spillDirectory, "run", ".spill");
+        try (final var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+            for (final var tuple : buffer)
+                tuple.writeTo(out);
+        }
+        runs.add(run);
+
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+    }
+
+    private record RunHead(Tuple tuple, DataInputStream in) {
+    }
+
+    private interface TupleConsumer {
+        void accept(Tuple tuple) throws IOException;
+    }
+
+    private static void mergeRuns(List<Path> runs, TupleConsumer consumer) throws IOException {
+        final var heads = new PriorityQueue<RunHead>(Comparator.comparing(RunHead::tuple, Tuple.ORDER));
+        final var inputs = new ArrayList<DataInputStream>();
+        try {
+            for (final var run : runs) {
+                final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+                inputs.add(in);
+                final var tuple = Tuple.readFrom(in);
+                if (tuple != null)
+                    heads.add(new RunHead(tuple, in));
+            }
+
+            while (!heads.isEmpty()) {
+                final var head = heads.poll();
+                consumer.accept(head.tuple());
+                final var next = Tuple.readFrom(head.in());
+                if (next != null)
+                    heads.add(new RunHead(next, head.in()));
+            }
+        } finally {
+            for (final var in : inputs)
+                in.close();
+        }
+    }
+
+    /**
+     * Merges all buffered and spilled postings and hands each term's posting
+     * list, sorted by document ID, to the consumer exactly once.
+     *
+     * @param consumer receives the term ID and its postings
+     * @throws IOException if an I/O error occurs while reading the runs
+     */
+    void finish(TermConsumer consumer) throws IOException {
+        spill();
+
+        // Merge in passes until the remaining runs fit in one merge
+        var pending = new ArrayList<>(runs);
+        while (pending.size() > MAX_FAN_IN) {
+            final var merged = new ArrayList<Path>();
+            for (int i = 0; i < pending.size(); i += MAX_FAN_IN) {
+                final var group = pending.subList(i, Math.min(i + MAX_FAN_IN, pending.size()));
+                final var run = Files.createTempFile(spillDirectory, "run", ".spill");
+                try (final var out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+                    mergeRuns(group, tuple -> tuple.writeTo(out));
+                }
+                for (final var path : group)
+                    Files.deleteIfExists(path);
+                merged.add(run);
+            }
+            runs.clear();
+            runs.addAll(merged);
+            pending = merged;
+        }
+
+        final var postings = new ArrayList<Posting>();
+        final var curTerm = new int[] { -1 };
+        mergeRuns(pending, tuple -> {
+            if (tuple.termId() != curTerm[0] && !postings.isEmpty()) {
+                consumer.accept(curTerm[0], new ArrayList<>(postings));
+                postings.clear();
+            }
+            curTerm[0] = tuple.termId();
+            postings.add(tuple.toPosting());
+        });
+        if (!postings.isEmpty())
+            consumer.accept(curTerm[0], postings);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final var run : runs)
+            Files.deleteIfExists(run);
+        runs.clear();
+        buffer = new ArrayList<>();
+    }
+}
@@ -0,0 +1,47 @@
+package com.comp4321.indexers;
+
+import java.io.Serializable;
+
+/**
+ * Statistics of the whole collection. The field lengths are the numbers of
+ * words in all titles and all bodies, which BM25 normalizes the frequencies by.
+ * The posting churn counts every posting ever added or removed, so that a
+ * re-crawl that replaces as many postings as it removes still shows its df
+ * changes. Statistics stored by older versions have no field lengths and no
+ * churn and read them as 0.
+ */
+public record CollectionStats(int totalDocuments, long totalPostings, long totalTitleLength, long totalBodyLength,
+        long postingChurn) implements Serializable {
+    public CollectionStats {
+        if (totalDocuments < 0 || totalPostings < 0 || totalTitleLength < 0 || totalBodyLength < 0
+                || postingChurn < 0)
+            throw new IllegalArgumentException("Collection statistics must be non-negative");
+    }
+
+    public CollectionStats(int totalDocuments, long totalPostings) {
+        this(totalDocuments, totalPostings, 0, 0, 0);
+    }
+
+    /**
+     * Measures how far these statistics have drifted from an earlier snapshot, as
+     * the larger relative change of the document count and the postings. The
+     * postings stand in for the document frequencies, since every df change adds
+     * or removes a posting, and they change by the churn since the snapshot.
+     *
+     * @param other the earlier statistics
+     * @return the relative drift, or positive infinity if the earlier statistics
+     *         were empty
+     */
+    public double driftFrom(CollectionStats other) {
+        if (other.totalDocuments() == 0 || other.totalPostings() == 0)
+            return equals(other) ? 0.0 : Double.POSITIVE_INFINITY;
+
+        // Snapshots of older versions have no churn, so the net change is a lower
+        // bound of it
+        final var churn = Math.max(Math.abs(totalPostings - other.totalPostings()),
+                postingChurn - other.postingChurn());
+        final var documentDrift = Math.abs(totalDocuments - other.totalDocuments()) / (double) other.totalDocuments();
+        final var postingDrift = churn / (double) other.totalPostings();
+        return Math.max(documentDrift, postingDrift);
+    }
+}
@@ -0,0 +1,27 @@
+package com.comp4321.indexers;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * When the indexer commits while crawling: after a number of documents or
+ * after an amount of time, whichever comes first. Without transactions, JDBM
+ * writes straight to the database file and skips its transaction log, which is
+ * faster but leaves a corrupt index if the crawl is interrupted before the
+ * final checkpoint.
+ */
+public record CommitPolicy(int maxDocuments, Duration maxInterval, boolean transactional) {
+    public static final CommitPolicy DEFAULT = new CommitPolicy(100, Duration.ofSeconds(30), true);
+
+    public CommitPolicy {
+        Objects.requireNonNull(maxInterval);
+        if (maxDocuments <= 0)
+            throw new IllegalArgumentException("maxDocuments must be positive");
+        if (maxInterval.isNegative() || maxInterval.isZero())
+            throw new IllegalArgumentException("maxInterval must be positive");
+    }
+
+    public CommitPolicy withoutTransactions() {
+        return new CommitPolicy(maxDocuments, maxInterval, false);
+    }
+}
@@ -0,0 +1,15 @@
+package com.comp4321.indexers;
+
+/**
+ * The outcome of compacting the index database.
+ *
+ * @param records     the number of records copied into the compacted database
+ * @param bytesBefore the size of the database files before compaction
+ * @param bytesAfter  the size of the database files after compaction
+ */
+public record CompactionResult(int records, long bytesBefore, long bytesAfter) {
+    @Override
+    public String toString() {
+        return String.format("%d records, %,d bytes -> %,d bytes", records, bytesBefore, bytesAfter);
+    }
+}
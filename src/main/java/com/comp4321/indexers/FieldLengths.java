@@ -0,0 +1,13 @@
+package com.comp4321.indexers;
+
+/**
+ * The number of words in the title and in the body of a document.
+ */
+public record FieldLengths(int title, int body) {
+    public static final FieldLengths EMPTY = new FieldLengths(0, 0);
+
+    public FieldLengths {
+        if (title < 0 || body < 0)
+            throw new IllegalArgumentException("Field lengths must be non-negative");
+    }
+}
@@ -0,0 +1,31 @@
+package com.comp4321.indexers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.comp4321.jdbm.VersionedSerializer;
+
+/**
+ * Serializes field lengths as the title length followed by the body length.
+ */
+public class FieldLengthsSerializer extends VersionedSerializer<FieldLengths> {
+    private static final long serialVersionUID = 1L;
+
+    public static final FieldLengthsSerializer INSTANCE = new FieldLengthsSerializer();
+
+    public FieldLengthsSerializer() {
+        super(1);
+    }
+
+    @Override
+    protected void write(DataOutput out, FieldLengths lengths) throws IOException {
+        writeVarInt(out, lengths.title());
+        writeVarInt(out, lengths.body());
+    }
+
+    @Override
+    protected FieldLengths read(DataInput in, int version) throws IOException {
+        return new FieldLengths(readVarInt(in), readVarInt(in));
+    }
+}
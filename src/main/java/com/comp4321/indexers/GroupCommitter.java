@@ -0,0 +1,132 @@
+package com.comp4321.indexers;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import jdbm.RecordManager;
+
+/**
+ * Commits the record manager in groups of documents according to a
+ * {@link CommitPolicy}, so that JDBM's transaction buffers stay bounded and a
+ * crash loses at most one group. The latency of the commits and the size of
+ * the transaction log are recorded.
+ */
+public class GroupCommitter {
+    private final RecordManager recman;
+    private final CommitPolicy policy;
+    private final Path databaseFile;
+    private final Path logFile;
+    private final LongSupplier nanoClock;
+
+    private int pendingDocuments = 0;
+    private long lastCommit;
+
+    // Read by queries on other threads as the generation of the indexes
+    private volatile int commitCount = 0;
+    private long totalCommitNanos = 0;
+    private long maxCommitNanos = 0;
+    private long maxLogSize = 0;
+
+    GroupCommitter(RecordManager recman, CommitPolicy policy, String dbName, LongSupplier nanoClock) {
+        this.recman = recman;
+        this.policy = policy;
+        this.databaseFile = dbName == null ? null : Path.of(dbName + ".db");
+        this.logFile = dbName == null ? null : Path.of(dbName + ".lg");
+        this.nanoClock = nanoClock;
+        this.lastCommit = nanoClock.getAsLong();
+    }
+
+    /**
+     * @param recman the record manager to commit
+     * @param policy when to commit
+     * @param dbName the name the record manager was created with, to measure and
+     *               sync its files, or null if it has no files
+     */
+    public GroupCommitter(RecordManager recman, CommitPolicy policy, String dbName) {
+        this(recman, policy, dbName, System::nanoTime);
+    }
+
+    /**
+     * Records that a document was indexed, committing if the policy says so.
+     *
+     * @throws IOException if the commit fails
+     */
+    public void documentIndexed() throws IOException {
+        ++pendingDocuments;
+        final var elapsed = nanoClock.getAsLong() - lastCommit;
+        if (pendingDocuments >= policy.maxDocuments() || elapsed >= policy.maxInterval().toNanos())
+            commit();
+    }
+
+    /**
+     * Commits the record manager.
+     *
+     * @throws IOException if the commit fails
+     */
+    public void commit() throws IOException {
+        final var start = nanoClock.getAsLong();
+        recman.commit();
+        final var end = nanoClock.getAsLong();
+
+        ++commitCount;
+        totalCommitNanos += end - start;
+        maxCommitNanos = Math.max(maxCommitNanos, end - start);
+        maxLogSize = Math.max(maxLogSize, getLogSize());
+        pendingDocuments = 0;
+        lastCommit = end;
+    }
+
+    /**
+     * Commits the record manager and forces its files to disk, which is the only
+     * durable point when transactions are disabled.
+     *
+     * @throws IOException if the commit or the sync fails
+     */
+    public void checkpoint() throws IOException {
+        commit();
+        for (final var file : new Path[] { databaseFile, logFile }) {
+            if (file == null || !Files.exists(file))
+                continue;
+            try (final var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private long getLogSize() throws IOException {
+        return logFile != null && Files.exists(logFile) ? Files.size(logFile) : 0;
+    }
+
+    public int getCommitCount() {
+        return commitCount;
+    }
+
+    public Duration getAverageCommitLatency() {
+        return commitCount == 0 ? Duration.ZERO : Duration.ofNanos(totalCommitNanos / commitCount);
+    }
+
+    public Duration getMaxCommitLatency() {
+        return Duration.ofNanos(maxCommitNanos);
+    }
+
+    /**
+     * Returns the largest size of the transaction log seen after a commit.
+     *
+     * @return the size in bytes
+     */
+    public long getMaxLogSize() {
+        return maxLogSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d commits, average latency %d ms, max latency %d ms, max log size %d KiB",
+                commitCount, getAverageCommitLatency().toMillis(), getMaxCommitLatency().toMillis(),
+                maxLogSize / 1024);
+    }
+}
@@ -0,0 +1,95 @@
+package com.comp4321.indexers;
+
+import java.util.Arrays;
+
+/**
+ * Counts non-negative values in power-of-two buckets, so that heavily skewed
+ * distributions such as document frequencies fit in a few lines. Bucket 0 holds
+ * the value 0 and bucket i holds the values from 2^(i-1) to 2^i - 1.
+ */
+public class Histogram {
+    private final long[] counts = new long[Long.SIZE + 1];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    private static int bucketOf(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    public void add(long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Histogram values must be non-negative");
+
+        ++counts[bucketOf(value)];
+        ++count;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all values counted by another histogram.
+     *
+     * @param other the histogram to add
+     */
+    public void addAll(Histogram other) {
+        for (int i = 0; i < counts.length; ++i)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the number of values in the bucket containing the given value.
+     *
+     * @param value a value in the bucket
+     * @return the number of values in the bucket
+     */
+    public long bucketCount(long value) {
+        return counts[bucketOf(value)];
+    }
+
+    @Override
+    public String toString() {
+        final var sb = new StringBuilder();
+        sb.append(String.format("  count %,d, mean %.2f, max %,d%n", count, mean(), max));
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] == 0)
+                continue;
+
+            final var low = i == 0 ? 0 : 1L << (i - 1);
+            final var high = i == 0 ? 0 : (i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1);
+            final var range = low == high ? Long.toString(low) : low + "-" + high;
+            sb.append(String.format("  %s: %,d%n", range, counts[i]));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Histogram other && Arrays.equals(counts, other.counts) && sum == other.sum
+                && max == other.max;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counts);
+    }
+}
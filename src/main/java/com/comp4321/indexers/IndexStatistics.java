@@ -0,0 +1,243 @@
+package com.comp4321.indexers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.comp4321.jdbm.IntSetSerializer;
+
+/**
+ * Aggregates of the indexes, collected by streaming over the trees one record
+ * at a time: record counts and sizes, histograms of the document frequencies,
+ * positions and link degrees, and the largest records of each tree. The sizes
+ * are the serialized sizes of the records, without the JDBM page overhead.
+ */
+public class IndexStatistics {
+    public static final String POSTING_LISTS = "Posting lists";
+    public static final String TERM_VECTORS = "Term vectors";
+    public static final String CHILD_LINKS = "Child links";
+    public static final String PARENT_LINKS = "Parent links";
+
+    private static final int LARGEST_RECORDS = 10;
+
+    /**
+     * A record of a tree and its serialized size.
+     *
+     * @param id    the key of the record
+     * @param label the word or URL of the key, or null if not resolved
+     * @param bytes the serialized size of the record
+     */
+    public record RecordSize(int id, String label, long bytes) {
+        @Override
+        public String toString() {
+            return String.format("%s: %,d bytes", label == null ? "#" + id : label, bytes);
+        }
+    }
+
+    @FunctionalInterface
+    interface Labeler {
+        String label(int id) throws IOException;
+    }
+
+    private long documentCount;
+    private long urlCount;
+    private long termCount;
+    private long postingCount = 0;
+    private long titlePositions = 0;
+    private long bodyPositions = 0;
+
+    private final Histogram documentFrequencies = new Histogram();
+    private final Histogram positionsPerTerm = new Histogram();
+    private final Histogram termsPerDocument = new Histogram();
+    private final Histogram outDegrees = new Histogram();
+    private final Histogram inDegrees = new Histogram();
+
+    private final Map<String, Long> bytesPerTree = new LinkedHashMap<>();
+    // Min-heaps of the largest records of each tree
+    private final Map<String, PriorityQueue<RecordSize>> largestRecords = new LinkedHashMap<>();
+
+    public IndexStatistics(long documentCount, long urlCount, long termCount) {
+        this.documentCount = documentCount;
+        this.urlCount = urlCount;
+        this.termCount = termCount;
+        for (final var tree : List.of(POSTING_LISTS, TERM_VECTORS, CHILD_LINKS, PARENT_LINKS)) {
+            bytesPerTree.put(tree, 0L);
+            largestRecords.put(tree, new PriorityQueue<>(Comparator.comparingLong(RecordSize::bytes)));
+        }
+    }
+
+    private void addRecord(String tree, int id, long bytes) {
+        bytesPerTree.merge(tree, bytes, Long::sum);
+
+        final var largest = largestRecords.get(tree);
+        if (largest.size() < LARGEST_RECORDS) {
+            largest.add(new RecordSize(id, null, bytes));
+        } else if (largest.peek().bytes() < bytes) {
+            largest.poll();
+            largest.add(new RecordSize(id, null, bytes));
+        }
+    }
+
+    void addPostingList(int wordId, List<Posting> postings) throws IOException {
+        var positions = 0L;
+        for (final var posting : postings) {
+            titlePositions += posting.titleTF();
+            bodyPositions += posting.bodyTF();
+            positions += posting.titleTF() + posting.bodyTF();
+        }
+        postingCount += postings.size();
+        documentFrequencies.add(postings.size());
+        positionsPerTerm.add(positions);
+        addRecord(POSTING_LISTS, wordId, PostingListSerializer.INSTANCE.serialize(postings).length);
+    }
+
+    void addTermVector(int docId, TermVector vector) throws IOException {
+        termsPerDocument.add(vector.size());
+        addRecord(TERM_VECTORS, docId, TermVectorSerializer.INSTANCE.serialize(vector).length);
+    }
+
+    void addChildLinks(int docId, Set<Integer> children) throws IOException {
+        outDegrees.add(children.size());
+        addRecord(CHILD_LINKS, docId, IntSetSerializer.INSTANCE.serialize(children).length);
+    }
+
+    void addParentLinks(int docId, Set<Integer> parents) throws IOException {
+        inDegrees.add(parents.size());
+        addRecord(PARENT_LINKS, docId, IntSetSerializer.INSTANCE.serialize(parents).length);
+    }
+
+    /**
+     * Resolves the keys of the largest records of a tree to words or URLs. Only
+     * the few largest records are resolved, so the scans never look up keys.
+     */
+    void labelRecords(String tree, Labeler labeler) throws IOException {
+        final var largest = largestRecords.get(tree);
+        final var labeled = new ArrayList<RecordSize>();
+        for (final var record : largest)
+            labeled.add(new RecordSize(record.id(), labeler.label(record.id()), record.bytes()));
+        largest.clear();
+        largest.addAll(labeled);
+    }
+
+    /**
+     * Adds the statistics of another partition of the collection. The term
+     * count becomes the sum of the partitions' vocabularies, which counts a word
+     * once per partition it occurs in.
+     *
+     * @param other the statistics of the other partition
+     * @return these statistics
+     */
+    public IndexStatistics merge(IndexStatistics other) {
+        documentCount += other.documentCount;
+        urlCount += other.urlCount;
+        termCount += other.termCount;
+        postingCount += other.postingCount;
+        titlePositions += other.titlePositions;
+        bodyPositions += other.bodyPositions;
+        documentFrequencies.addAll(other.documentFrequencies);
+        positionsPerTerm.addAll(other.positionsPerTerm);
+        termsPerDocument.addAll(other.termsPerDocument);
+        outDegrees.addAll(other.outDegrees);
+        inDegrees.addAll(other.inDegrees);
+
+        other.bytesPerTree.forEach((tree, bytes) -> bytesPerTree.merge(tree, bytes, Long::sum));
+        other.largestRecords.forEach((tree, records) -> {
+            final var largest = largestRecords.get(tree);
+            largest.addAll(records);
+            while (largest.size() > LARGEST_RECORDS)
+                largest.poll();
+        });
+        return this;
+    }
+
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getURLCount() {
+        return urlCount;
+    }
+
+    public long getTermCount() {
+        return termCount;
+    }
+
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    public long getTitlePositions() {
+        return titlePositions;
+    }
+
+    public long getBodyPositions() {
+        return bodyPositions;
+    }
+
+    public Histogram getDocumentFrequencies() {
+        return documentFrequencies;
+    }
+
+    public Histogram getPositionsPerTerm() {
+        return positionsPerTerm;
+    }
+
+    public Histogram getTermsPerDocument() {
+        return termsPerDocument;
+    }
+
+    public Histogram getOutDegrees() {
+        return outDegrees;
+    }
+
+    public Histogram getInDegrees() {
+        return inDegrees;
+    }
+
+    public long getBytes(String tree) {
+        return bytesPerTree.getOrDefault(tree, 0L);
+    }
+
+    /**
+     * Returns the largest records of a tree.
+     *
+     * @param tree the name of the tree
+     * @return the largest records, largest first
+     */
+    public List<RecordSize> getLargestRecords(String tree) {
+        return largestRecords.get(tree).stream()
+                .sorted(Comparator.comparingLong(RecordSize::bytes).reversed())
+                .toList();
+    }
+
+    @Override
+    public String toString() {
+        final var sb = new StringBuilder();
+        sb.append(String.format("Documents: %,d%n", documentCount));
+        sb.append(String.format("URLs: %,d%n", urlCount));
+        sb.append(String.format("Terms: %,d%n", termCount));
+        sb.append(String.format("Postings: %,d (%.2f bytes per posting)%n", postingCount,
+                postingCount == 0 ? 0.0 : (double) getBytes(POSTING_LISTS) / postingCount));
+        sb.append(String.format("Positions: %,d title, %,d body%n", titlePositions, bodyPositions));
+
+        sb.append(String.format("%nRecord sizes:%n"));
+        bytesPerTree.forEach((tree, bytes) -> sb.append(String.format("  %s: %,d bytes%n", tree, bytes)));
+
+        sb.append(String.format("%nDocument frequency per term:%n")).append(documentFrequencies);
+        sb.append(String.format("%nPositions per term:%n")).append(positionsPerTerm);
+        sb.append(String.format("%nTerms per document:%n")).append(termsPerDocument);
+        sb.append(String.format("%nChild links per document:%n")).append(outDegrees);
+        sb.append(String.format("%nParent links per document:%n")).append(inDegrees);
+
+        for (final var tree : largestRecords.keySet()) {
+            sb.append(String.format("%nLargest records of %s:%n", tree));
+            getLargestRecords(tree).forEach(record -> sb.append("  ").append(record).append(System.lineSeparator()));
+        }
+        return sb.toString();
+    }
+}
@@ -2,15 +2,24 @@ package com.comp4321.indexers;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.ZonedDateTime;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.Set;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 import org.htmlparser.beans.LinkBean;
@@ -19,18 +28,32 @@ import org.htmlparser.util.ParserException;
 import com.comp4321.SearchEngine;
 import com.comp4321.SearchResult;
 import com.comp4321.IRUtilities.Crawler;
-import com.comp4321.IRUtilities.Porter;
 import com.comp4321.IRUtilities.StopStem;
+import com.comp4321.jdbm.ObjectCache;
+import com.comp4321.mapped.DocumentColumns;
+import com.comp4321.mapped.MappedIndex;
+import com.comp4321.mapped.MappedIndexWriter;
+import com.comp4321.query.Query;
+import com.comp4321.query.QueryIndex;
+import com.comp4321.query.QueryPlanner;
 
 import jdbm.RecordManager;
 import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
 import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
 
 public class Indexer implements AutoCloseable, SearchEngine {
-    private static final String DB_NAME = "indexes";
+    public static final String DB_NAME = "indexes";
+
+    // Postings buffered in memory per sorted run while bulk loading
+    private static final long BULK_LOAD_MEMORY = 64L * 1024 * 1024;
 
     private final RecordManager recman;
+    private final DocumentColumns columns;
+    private final GroupCommitter committer;
+    // The name of the index files, or null if the record manager was given
+    private final String dbName;
     private final URLIndexer urlIndexer;
     private final MetadataIndexer metadataIndexer;
     private final LinkIndexer linkIndexer;
@@ -38,19 +61,223 @@ public class Indexer implements AutoCloseable, SearchEngine {
     private final InvertedIndex invertedIndex;
 
     private final StopStem stopStem = new StopStem();
-    private final Porter porter = new Porter();
 
-    public Indexer(RecordManager recman) throws IOException {
+    // The spill directory of the current crawl if it is a bulk load
+    private Path bulkLoadDirectory = null;
+
+    private ProximityBoost proximityBoost = ProximityBoost.DEFAULT;
+
+    // The postings boolean queries are matched against. The words are only looked
+    // up, so that queries do not add words to the index
+    private final QueryIndex queryIndex = new QueryIndex() {
+        @Override
+        public int getDF(String stem) throws IOException {
+            final var wordId = wordIndexer.getId(stem);
+            return wordId.isPresent() ? invertedIndex.getDF(wordId.get()) : 0;
+        }
+
+        @Override
+        public List<Posting> getPostings(String stem) throws IOException {
+            final var wordId = wordIndexer.getId(stem);
+            return wordId.isPresent() ? invertedIndex.getPostings(wordId.get()) : List.of();
+        }
+    };
+
+    public Indexer(RecordManager recman, DocumentColumns columns) throws IOException {
+        this(recman, columns, new GroupCommitter(recman, CommitPolicy.DEFAULT, null), null);
+    }
+
+    private Indexer(RecordManager recman, DocumentColumns columns, GroupCommitter committer, String dbName)
+            throws IOException {
         this.recman = recman;
+        this.columns = columns;
+        this.committer = committer;
+        this.dbName = dbName;
+
+        // Columns that were not closed cleanly may hold rows of uncommitted
+        // documents, so they are rebuilt from scratch by the indexers below
+        if (!columns.isClean())
+            columns.clear();
+
+        InvertedIndex.checkFormat(recman);
         urlIndexer = new URLIndexer(recman);
         linkIndexer = new LinkIndexer(recman);
-        metadataIndexer = new MetadataIndexer(recman);
+        metadataIndexer = new MetadataIndexer(recman, columns);
         wordIndexer = new WordIndexer(recman);
-        invertedIndex = new InvertedIndex(recman);
+        invertedIndex = new InvertedIndex(recman, columns);
+    }
+
+    public Indexer(RecordManager recman) throws IOException {
+        this(recman, DocumentColumns.inMemory());
     }
 
     public Indexer() throws IOException {
-        this(RecordManagerFactory.createRecordManager(DB_NAME));
+        this(CommitPolicy.DEFAULT);
+    }
+
+    public Indexer(CommitPolicy policy) throws IOException {
+        this(DB_NAME, policy);
+    }
+
+    /**
+     * Opens the indexes stored in the files with the given name.
+     *
+     * @param dbName the name of the database, the columns and the marker files
+     * @param policy when to commit while crawling
+     * @throws IOException if the indexes cannot be opened
+     */
+    public Indexer(String dbName, CommitPolicy policy) throws IOException {
+        this(openRecordManager(dbName, policy), DocumentColumns.open(columnsPath(dbName)), policy, dbName);
+    }
+
+    private Indexer(RecordManager recman, DocumentColumns columns, CommitPolicy policy, String dbName)
+            throws IOException {
+        this(recman, columns, new GroupCommitter(recman, policy, dbName), dbName);
+    }
+
+    private static Path columnsPath(String dbName) {
+        return Path.of(dbName + ".columns");
+    }
+
+    // Exists while the indexes may be inconsistent after a crash: during a bulk
+    // load, or while transactions are disabled, until the final checkpoint
+    private static Path incompleteMarker(String dbName) {
+        return Path.of(dbName + ".incomplete");
+    }
+
+    private static RecordManager openRecordManager(String dbName, CommitPolicy policy) throws IOException {
+        if (Files.exists(incompleteMarker(dbName)))
+            throw new IndexerException("The indexes " + dbName + " were not completed by the last crawl, "
+                    + "rebuild them with 'crawl --rebuild'");
+
+        final var properties = new Properties();
+        if (!policy.transactional()) {
+            properties.setProperty(RecordManagerOptions.DISABLE_TRANSACTIONS, "true");
+            Files.createFile(incompleteMarker(dbName));
+        }
+        return RecordManagerFactory.createRecordManager(dbName, properties);
+    }
+
+    /**
+     * Deletes the on-disk indexes, so that the next crawl rebuilds them from
+     * scratch with a bulk load.
+     *
+     * @throws IOException if the index files cannot be deleted
+     */
+    public static void deleteIndexes() throws IOException {
+        deleteIndexes(DB_NAME);
+    }
+
+    /**
+     * Deletes the on-disk indexes with the given name.
+     *
+     * @param dbName the name of the indexes
+     * @throws IOException if the index files cannot be deleted
+     */
+    public static void deleteIndexes(String dbName) throws IOException {
+        Files.deleteIfExists(Path.of(dbName + ".db"));
+        Files.deleteIfExists(Path.of(dbName + ".lg"));
+        Files.deleteIfExists(incompleteMarker(dbName));
+        deleteRecursively(columnsPath(dbName));
+    }
+
+    private static long databaseSize(String dbName) throws IOException {
+        var size = 0L;
+        for (final var file : List.of(Path.of(dbName + ".db"), Path.of(dbName + ".lg")))
+            if (Files.exists(file))
+                size += Files.size(file);
+        return size;
+    }
+
+    /**
+     * Compacts the on-disk indexes. Updates leave freed pages and scatter the
+     * records of a term across the file, so every tree is streamed into a fresh
+     * database with the records that are read together stored together: the
+     * dictionaries in key order, the per-document records in docId order and the
+     * posting lists in dictionary order. The fresh database then atomically
+     * replaces the old one, and the columns are rebuilt from it. The indexes must
+     * not be open in another process.
+     *
+     * @return the number of records and the sizes before and after
+     * @throws IOException if the indexes cannot be copied or replaced
+     */
+    public static CompactionResult compact() throws IOException {
+        return compact(DB_NAME);
+    }
+
+    /**
+     * Compacts the on-disk indexes with the given name.
+     *
+     * @param dbName the name of the indexes
+     * @return the number of records and the sizes before and after
+     * @throws IOException if the indexes cannot be copied or replaced
+     * @see #compact()
+     */
+    public static CompactionResult compact(String dbName) throws IOException {
+        final var database = Path.of(dbName + ".db");
+        if (!Files.exists(database))
+            throw new IndexerException("There are no indexes " + dbName + " to compact");
+
+        final var compactName = dbName + ".compact";
+        final var compactDatabase = Path.of(compactName + ".db");
+        final var compactLog = Path.of(compactName + ".lg");
+        Files.deleteIfExists(compactDatabase);
+        Files.deleteIfExists(compactLog);
+
+        final var bytesBefore = databaseSize(dbName);
+        final int records;
+        try (final var source = new Indexer(dbName, CommitPolicy.DEFAULT)) {
+            // An interrupted compaction leaves the original files untouched, so the
+            // copy does not need a transaction log
+            final var properties = new Properties();
+            properties.setProperty(RecordManagerOptions.DISABLE_TRANSACTIONS, "true");
+            try (final var target = new Indexer(RecordManagerFactory.createRecordManager(compactName, properties),
+                    DocumentColumns.inMemory())) {
+                records = source.copyTo(target);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(compactDatabase);
+            Files.deleteIfExists(compactLog);
+            throw e;
+        }
+
+        // The original indexes were closed cleanly, so their log holds no pending
+        // transactions that could be replayed onto the compacted database
+        Files.deleteIfExists(Path.of(dbName + ".lg"));
+        Files.deleteIfExists(compactLog);
+        Files.move(compactDatabase, database, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        final var bytesAfter = databaseSize(dbName);
+
+        // Replaced titles stay in the title blob of the columns, so the columns are
+        // rebuilt from the compacted indexes as well
+        deleteRecursively(columnsPath(dbName));
+        new Indexer(dbName, CommitPolicy.DEFAULT).close();
+        return new CompactionResult(records, bytesBefore, bytesAfter);
+    }
+
+    private int copyTo(Indexer target) throws IOException {
+        final var docIds = new ArrayList<Integer>();
+        for (final var entry : urlIndexer.getURLs())
+            docIds.add(entry.getKey());
+        final var wordIds = new ArrayList<Integer>();
+        for (final var entry : wordIndexer.getWords())
+            wordIds.add(entry.getValue());
+
+        return urlIndexer.copyTo(target.urlIndexer)
+                + wordIndexer.copyTo(target.wordIndexer)
+                + metadataIndexer.copyTo(target.metadataIndexer, docIds)
+                + linkIndexer.copyTo(target.linkIndexer, docIds)
+                + invertedIndex.copyTo(target.invertedIndex, docIds, wordIds);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+
+        try (final var paths = Files.walk(path)) {
+            for (final var file : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
     }
 
     /**
@@ -63,15 +290,7 @@ public class Indexer implements AutoCloseable, SearchEngine {
      *         not blank, or an empty Optional otherwise
      */
     public Optional<String> stemWord(String word) {
-        word = word.toLowerCase();
-        if (stopStem.isStopWord(word))
-            return Optional.empty();
-
-        word = porter.stripAffixes(word);
-        if (word.isBlank())
-            return Optional.empty();
-
-        return Optional.of(word);
+        return stopStem.stemWord(word);
     }
 
     private boolean isFreshDocument(Crawler crawler) throws IOException {
@@ -89,12 +308,14 @@ public class Indexer implements AutoCloseable, SearchEngine {
      * title, and words, and adding them to the respective indexes.
      *
      * @param url the URL of the document to be indexed
+     * @return true if the document was indexed, or false if it is already indexed
+     *         and not modified
      */
-    public void indexDocument(Crawler crawler) throws IOException, ParserException {
+    public boolean indexDocument(Crawler crawler) throws IOException, ParserException {
         // Skip if the document is already indexed and not modified
         final var docId = urlIndexer.getOrCreateDocumentId(crawler.url);
         if (!isFreshDocument(crawler))
-            return;
+            return false;
 
         // Add the metadata to metadata index
         final var title = String.join(" ", crawler.extractTitle(false));
@@ -139,6 +360,8 @@ public class Indexer implements AutoCloseable, SearchEngine {
                 })
                 .toList();
         invertedIndex.addDocument(docId, titles, words);
+        committer.documentIndexed();
+        return true;
     }
 
     /**
@@ -149,6 +372,143 @@ public class Indexer implements AutoCloseable, SearchEngine {
      * @param maxPages The maximum number of pages to visit.
      */
     public void bfs(String baseURL, int maxPages) throws IOException, ParserException {
+        startCrawl();
+        try {
+            crawl(baseURL, maxPages);
+        } finally {
+            // The forward index already holds the crawled documents, so their
+            // postings are written even if the crawl failed
+            finishCrawl();
+        }
+    }
+
+    /**
+     * Prepares the indexes for a crawl. An empty index is built with a bulk load,
+     * which writes each posting list once at the end instead of updating it for
+     * every document.
+     *
+     * @throws IOException if the spill directory cannot be created
+     */
+    public void startCrawl() throws IOException {
+        if (bulkLoadDirectory != null || invertedIndex.getDocumentCount() != 0)
+            return;
+
+        // Group commits during a bulk load hold documents without postings,
+        // so an interrupted load can only be rebuilt
+        if (dbName != null && !Files.exists(incompleteMarker(dbName)))
+            Files.createFile(incompleteMarker(dbName));
+        bulkLoadDirectory = Files.createTempDirectory((dbName == null ? DB_NAME : dbName) + "-bulk");
+        invertedIndex.beginBulkLoad(bulkLoadDirectory, BULK_LOAD_MEMORY);
+    }
+
+    /**
+     * Completes the crawl started by {@link #startCrawl()}: writes the bulk
+     * loaded postings, purges the postings of changed pages, refreshes the norms
+     * if the collection statistics drifted and makes the indexes durable.
+     *
+     * @throws IOException if an I/O error occurs while updating the indexes
+     */
+    public void finishCrawl() throws IOException {
+        if (bulkLoadDirectory != null) {
+            try {
+                invertedIndex.finishBulkLoad();
+            } finally {
+                deleteRecursively(bulkLoadDirectory);
+                bulkLoadDirectory = null;
+            }
+        }
+
+        // Postings of changed pages are only tombstoned while crawling, so purge
+        // them in one pass
+        invertedIndex.purgeDeleted();
+
+        // Changed pages refresh their own norms, so the other norms are only
+        // recomputed once the final statistics drifted as far as while crawling
+        invertedIndex.recomputeNormsIfDrifted(InvertedIndex.NORM_DRIFT_THRESHOLD);
+
+        committer.checkpoint();
+        if (dbName != null)
+            Files.deleteIfExists(incompleteMarker(dbName));
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return the number of documents
+     */
+    public int getDocumentCount() {
+        return invertedIndex.getDocumentCount();
+    }
+
+    /**
+     * Returns the number of commits, since queries only see a consistent index
+     * between commits.
+     */
+    @Override
+    public long getGeneration() {
+        return committer.getCommitCount();
+    }
+
+    /**
+     * Sets where the work units of large queries are run, see
+     * {@link InvertedIndex#setParallelScoring(ParallelScoring)}.
+     *
+     * @param parallelScoring the pool for the work units
+     */
+    public void setParallelScoring(ParallelScoring parallelScoring) {
+        invertedIndex.setParallelScoring(parallelScoring);
+    }
+
+    /**
+     * Sets how the pages of queries with several words are reranked by the
+     * proximity of the words, {@link ProximityBoost#DEFAULT} unless set.
+     *
+     * @param proximityBoost the boost, or {@link ProximityBoost#NONE} to rank by
+     *                       the plain scores
+     */
+    public void setProximityBoost(ProximityBoost proximityBoost) {
+        this.proximityBoost = proximityBoost;
+    }
+
+    /**
+     * Sets how much the PageRank of a document adds to its query scores, see
+     * {@link InvertedIndex#setStaticScoreWeight(double)}. The ranks are computed by
+     * {@link #computePageRank(ParallelScoring)}.
+     *
+     * @param weight the score of the document with the highest rank, 0 to ignore
+     *               the ranks
+     */
+    public void setPageRankWeight(double weight) {
+        invertedIndex.setStaticScoreWeight(weight);
+    }
+
+    /**
+     * Computes the PageRank of all documents from the link index and stores it as
+     * their static scores.
+     *
+     * @param parallelScoring the pool the iterations are computed on
+     * @return the ranks
+     * @throws IOException if an I/O error occurs while reading the links or
+     *                     writing the scores
+     */
+    public PageRank.Ranks computePageRank(ParallelScoring parallelScoring) throws IOException {
+        final var ranks = PageRank.fromLinks(linkIndexer.getAllChildLinks()).compute(parallelScoring);
+        invertedIndex.setStaticScores(ranks.docIds(), ranks.staticScores());
+        // A new generation, so that cached result pages are ranked again
+        committer.commit();
+        return ranks;
+    }
+
+    /**
+     * Returns the committer, whose metrics describe the commits of the crawl.
+     *
+     * @return the group committer
+     */
+    public GroupCommitter getCommitter() {
+        return committer;
+    }
+
+    private void crawl(String baseURL, int maxPages) throws IOException, ParserException {
         final var queue = new ArrayDeque<String>();
         final var visited = new HashSet<String>();
 
@@ -159,10 +519,8 @@ public class Indexer implements AutoCloseable, SearchEngine {
                 .build()) {
             final var baseCrawler = new Crawler(baseURL);
             visited.add(baseURL);
-            if (isFreshDocument(baseCrawler)) {
+            if (indexDocument(baseCrawler))
                 queue.add(baseURL);
-                indexDocument(baseCrawler);
-            }
             pb.step();
 
             final var lb = new LinkBean();
@@ -177,10 +535,8 @@ public class Indexer implements AutoCloseable, SearchEngine {
                                 if (!visited.contains(link) && visited.size() < maxPages) {
                                     final var crawler = new Crawler(link);
                                     visited.add(link);
-                                    if (isFreshDocument(crawler)) {
+                                    if (indexDocument(crawler))
                                         queue.add(link);
-                                        indexDocument(crawler);
-                                    }
                                     pb.step();
                                 }
                             } catch (IOException | ParserException e) {
@@ -192,11 +548,15 @@ public class Indexer implements AutoCloseable, SearchEngine {
     }
 
     private SearchResult buildSearchResult(Integer docId, Double score) throws IOException {
-        final var keywordFrequencies = new HashMap<String, Integer>();
-        invertedIndex.getKeywordsWithFrequency(docId)
-                .forEach((wordId, freq) -> {
+        // The keywords come sorted by frequency, so only the ones that are shown
+        // need their words looked up
+        final var keywordFrequencies = new LinkedHashMap<String, Integer>();
+        invertedIndex.getKeywordsWithFrequency(docId).entrySet().stream()
+                .limit(SearchResult.MAX_KEYWORD_COUNT)
+                .forEach(entry -> {
                     try {
-                        wordIndexer.getWord(wordId).ifPresent(word -> keywordFrequencies.put(word, freq));
+                        wordIndexer.getWord(entry.getKey())
+                                .ifPresent(word -> keywordFrequencies.put(word, entry.getValue()));
                     } catch (IOException e) {
                         throw new IndexerException("Failed to get word", e);
                     }
@@ -220,16 +580,75 @@ public class Indexer implements AutoCloseable, SearchEngine {
 
         // While it is an error to not have metadata, I think it's better to return
         // empty metadata than to throw an exception
-        final var metadata = metadataIndexer.getMetadata(docId);
-        final var title = metadata.map(Metadata::title).orElse("");
-        final var pageSize = metadata.map(Metadata::pageSize).orElse(0L);
-        final var lastModified = metadata.map(Metadata::lastModified).orElse(ZonedDateTime.now());
+        final var title = columns.getTitle(docId).orElse("");
+        final var pageSize = columns.getPageSize(docId);
+        final var lastModified = columns.getLastModified(docId).orElseGet(ZonedDateTime::now);
         final var url = urlIndexer.getURL(docId).orElse("");
 
         return new SearchResult(score, title, url, lastModified,
                 pageSize, keywordFrequencies, parentLinks, childLinks);
     }
 
+    private Set<String> stemWords(Collection<String> words) {
+        return words.stream()
+                .map(this::stemWord)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns the number of indexed documents containing each of the given
+     * stemmed words.
+     *
+     * @param stems the stemmed words
+     * @return the document frequency of each word, which is 0 for unknown words
+     * @throws IOException if an I/O error occurs while reading the postings
+     */
+    public Map<String, Integer> getDocumentFrequencies(Set<String> stems) throws IOException {
+        final var frequencies = new HashMap<String, Integer>();
+        for (final var stem : stems) {
+            final var wordId = wordIndexer.getId(stem);
+            frequencies.put(stem, wordId.isPresent() ? invertedIndex.getDF(wordId.get()) : 0);
+        }
+        return frequencies;
+    }
+
+    /**
+     * Returns the statistics this index scores a query with on its own.
+     *
+     * @param stems the stemmed query words
+     * @return the document count, the field lengths and the document frequency
+     *         of each word
+     * @throws IOException if an I/O error occurs while reading the indexes
+     */
+    public QueryStatistics getQueryStatistics(Set<String> stems) throws IOException {
+        final var stats = invertedIndex.getCollectionStats();
+        return new QueryStatistics(getDocumentCount(), stats.totalTitleLength(), stats.totalBodyLength(),
+                getDocumentFrequencies(stems));
+    }
+
+    /**
+     * Returns the URLs of the indexed pages that link to each of the given URLs.
+     *
+     * @param urls the URLs of the linked pages
+     * @return the parent URLs of each URL that is known to the index
+     * @throws IOException if an I/O error occurs while reading the links
+     */
+    public Map<String, Set<String>> getParentURLs(Collection<String> urls) throws IOException {
+        final var parents = new HashMap<String, Set<String>>();
+        for (final var url : urls) {
+            final var docId = urlIndexer.getDocumentId(url);
+            if (docId.isEmpty())
+                continue;
+
+            final var parentURLs = new HashSet<String>();
+            for (final var parentId : linkIndexer.getParentLinks(docId.get()))
+                urlIndexer.getURL(parentId).ifPresent(parentURLs::add);
+            parents.put(url, parentURLs);
+        }
+        return parents;
+    }
+
     /**
      * Searches for the given set of words and phrase in the index.
      * Returns a map of docIds and their corresponding search results.
@@ -242,38 +661,24 @@ public class Indexer implements AutoCloseable, SearchEngine {
      */
     @Override
     public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase) throws IOException {
-        // Compute the scores for the given words
-        final var wordIds = words.stream()
-                .map(this::stemWord)
-                .flatMap(Optional::stream)
-                .map(word -> {
-                    try {
-                        return wordIndexer.getOrCreateId(word);
-                    } catch (IOException e) {
-                        throw new IndexerException("Failed to get or create word ID for query", e);
-                    }
-                })
-                .collect(Collectors.toSet());
-        final var scores = invertedIndex.getScores(wordIds);
+        final var stats = getQueryStatistics(stemWords(words));
+        return search(words, phrase, stats);
+    }
 
-        // Get the documents with the given phrase if the phrase is not empty
-        final var phraseIds = phrase.stream()
-                .map(this::stemWord)
-                .flatMap(Optional::stream)
-                .map(word -> {
-                    try {
-                        return wordIndexer.getOrCreateId(word);
-                    } catch (IOException e) {
-                        throw new IndexerException("Failed to get or create word ID for phrase", e);
-                    }
-                }).toList();
-        final var documentsWithPhrase = phraseIds.isEmpty() ? scores.keySet()
-                : invertedIndex.getDocumentsWithPhrase(phraseIds);
-
-        // Filter the scores with the documents with the given phrase
-        // and convert to the search result
-        return scores.entrySet().stream()
-                .filter(entry -> documentsWithPhrase.contains(entry.getKey()))
+    /**
+     * Searches for the given set of words and phrase in the index, scoring the
+     * documents with the given collection statistics.
+     *
+     * @param words  the set of words to search for (words in the phrase are
+     *               included)
+     * @param phrase the phrase to search for (if any)
+     * @param stats  the statistics of the collection the index is part of
+     * @return a map of docIds and their corresponding search results
+     * @throws IOException if an I/O error occurs while searching the index
+     */
+    public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase, QueryStatistics stats)
+            throws IOException {
+        return scoreDocuments(words, phrase, stats).entrySet().stream()
                 .collect(Collectors.toMap(Map.Entry::getKey, entry -> {
                     try {
                         return buildSearchResult(entry.getKey(), entry.getValue());
@@ -283,6 +688,229 @@ public class Indexer implements AutoCloseable, SearchEngine {
                 }));
     }
 
+    @Override
+    public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, int offset, int k)
+            throws IOException {
+        final var stats = getQueryStatistics(stemWords(words));
+        return search(words, phrase, slop, stats, offset, k);
+    }
+
+    /**
+     * Searches for the given set of words and sloppy phrase in the index, scoring
+     * the documents with the given collection statistics, and returns one page of
+     * the results. Only the documents on the page are turned into results. Queries
+     * with several words are reranked by the proximity of the words, see
+     * {@link #setProximityBoost(ProximityBoost)}.
+     *
+     * @param words  the set of words to search for (words in the phrase are
+     *               included)
+     * @param phrase the phrase to search for (if any)
+     * @param slop   the number of extra positions allowed in the phrase, 0 for an
+     *               exact phrase
+     * @param stats  the statistics of the collection the index is part of
+     * @param offset the number of top results to skip
+     * @param k      the maximum number of results to return
+     * @return the results ranked from offset to offset + k
+     * @throws IOException if an I/O error occurs while searching the index
+     */
+    public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, QueryStatistics stats,
+            int offset, int k) throws IOException {
+        final var dfByWord = getDFByWordId(stemWords(words), stats);
+        final var top = newSelection(dfByWord, offset + k);
+        final var phraseIds = getPhraseIds(phrase);
+        if (phraseIds.isPresent()) {
+            // Documents without the phrase are skipped before they can raise the
+            // threshold of the selection
+            final IntPredicate filter = phraseIds.get().isEmpty() ? docId -> true
+                    : invertedIndex.getDocumentsWithPhrase(phraseIds.get(), slop)::contains;
+            invertedIndex.selectTopScores(dfByWord, stats.scorer(ScoringModel.DEFAULT), filter, top);
+        }
+        return toPage(top, dfByWord, offset, k);
+    }
+
+    @Override
+    public List<SearchResult> search(Query query, ScoringModel model, int offset, int k) throws IOException {
+        return search(query, model, getQueryStatistics(query.scoredStems()), offset, k);
+    }
+
+    /**
+     * Searches for the documents matching a boolean query, scoring them with the
+     * given model and collection statistics, and returns one page of the
+     * results. The documents are matched by a {@link QueryPlanner}, unless the
+     * query is a plain disjunction of words.
+     *
+     * @param query  the parsed query
+     * @param model  the scoring model
+     * @param stats  the statistics of the collection the index is part of
+     * @param offset the number of top results to skip
+     * @param k      the maximum number of results to return
+     * @return the results ranked from offset to offset + k
+     * @throws IOException if an I/O error occurs while searching the index
+     */
+    public List<SearchResult> search(Query query, ScoringModel model, QueryStatistics stats, int offset, int k)
+            throws IOException {
+        final var dfByWord = getDFByWordId(query.scoredStems(), stats);
+        final var scorer = stats.scorer(model);
+        final var top = newSelection(dfByWord, offset + k);
+        if (query.isDisjunctionOfWords())
+            invertedIndex.selectTopScores(dfByWord, scorer, docId -> true, top);
+        else
+            invertedIndex.selectTopScores(dfByWord, scorer, new QueryPlanner(queryIndex).match(query), top);
+        return toPage(top, dfByWord, offset, k);
+    }
+
+    // Queries that are reranked by proximity select more candidates
+    private TopScores newSelection(Map<Integer, Integer> dfByWord, int k) {
+        return new TopScores(proximityBoost.appliesTo(dfByWord.size()) ? proximityBoost.candidates(k) : k);
+    }
+
+    // Reranks the selection by proximity if it is boosted and turns the page into
+    // results
+    private List<SearchResult> toPage(TopScores top, Map<Integer, Integer> dfByWord, int offset, int k)
+            throws IOException {
+        top.sort();
+        if (proximityBoost.appliesTo(dfByWord.size()))
+            top = proximityBoost.rerank(top, invertedIndex.getPostingLists(List.copyOf(dfByWord.keySet())),
+                    offset + k);
+
+        final var results = new ArrayList<SearchResult>();
+        for (int rank = offset; rank < top.size(); ++rank)
+            results.add(buildSearchResult(top.docId(rank), top.score(rank)));
+        return results;
+    }
+
+    // The query words are only looked up, so that queries do not add words to
+    // the index
+    private Map<Integer, Integer> getDFByWordId(Set<String> stems, QueryStatistics stats) throws IOException {
+        final var dfByWord = new HashMap<Integer, Integer>();
+        for (final var stem : stems) {
+            final var wordId = wordIndexer.getId(stem);
+            if (wordId.isPresent())
+                dfByWord.put(wordId.get(), stats.documentFrequencies().getOrDefault(stem, 0));
+        }
+        return dfByWord;
+    }
+
+    // No document contains a phrase with an unknown word, so there are no phrase
+    // IDs for it
+    private Optional<List<Integer>> getPhraseIds(List<String> phrase) throws IOException {
+        final var phraseIds = new ArrayList<Integer>();
+        for (final var stem : phrase.stream().map(this::stemWord).flatMap(Optional::stream).toList()) {
+            final var wordId = wordIndexer.getId(stem);
+            if (wordId.isEmpty())
+                return Optional.empty();
+            phraseIds.add(wordId.get());
+        }
+        return Optional.of(phraseIds);
+    }
+
+    /**
+     * Scores the documents matching the words, keeping only the ones that
+     * contain the phrase.
+     */
+    private Map<Integer, Double> scoreDocuments(Set<String> words, List<String> phrase, QueryStatistics stats)
+            throws IOException {
+        final var phraseIds = getPhraseIds(phrase);
+        if (phraseIds.isEmpty())
+            return Map.of();
+
+        final var scores = new ScoreAccumulator();
+        invertedIndex.accumulateScores(getDFByWordId(stemWords(words), stats), stats.scorer(ScoringModel.DEFAULT),
+                scores);
+        if (!phraseIds.get().isEmpty())
+            scores.retainAll(invertedIndex.getDocumentsWithPhrase(phraseIds.get())::contains);
+        return scores.toMap();
+    }
+
+    /**
+     * Computes aggregate statistics of the indexes. Every tree is streamed one
+     * record at a time, so the index is never materialized in memory.
+     *
+     * @return the statistics
+     * @throws IOException if an I/O error occurs while reading the indexes
+     */
+    @Override
+    public Optional<IndexStatistics> getStatistics() throws IOException {
+        final var stats = new IndexStatistics(invertedIndex.getDocumentCount(), urlIndexer.getURLCount(),
+                wordIndexer.getWordCount());
+        for (final var entry : invertedIndex.getPostingLists())
+            stats.addPostingList(entry.getKey(), entry.getValue());
+        for (final var entry : invertedIndex.getTermVectors())
+            stats.addTermVector(entry.getKey(), entry.getValue());
+        for (final var entry : linkIndexer.getAllChildLinks())
+            stats.addChildLinks(entry.getKey(), entry.getValue());
+        for (final var entry : linkIndexer.getAllParentLinks())
+            stats.addParentLinks(entry.getKey(), entry.getValue());
+
+        stats.labelRecords(IndexStatistics.POSTING_LISTS, id -> wordIndexer.getWord(id).orElse(null));
+        for (final var tree : List.of(IndexStatistics.TERM_VECTORS, IndexStatistics.CHILD_LINKS,
+                IndexStatistics.PARENT_LINKS))
+            stats.labelRecords(tree, id -> urlIndexer.getURL(id).orElse(null));
+        return Optional.of(stats);
+    }
+
+    /**
+     * Compiles the indexes into a read-only, memory-mapped file that can be
+     * served by {@link MappedIndex}.
+     *
+     * @param path the path of the compiled index
+     * @throws IOException if an I/O error occurs while reading the indexes or
+     *                     writing the compiled index
+     */
+    public void compile(Path path) throws IOException {
+        try (final var writer = new MappedIndexWriter(path, invertedIndex.getDocumentCount())) {
+            for (final var entry : wordIndexer.getWords())
+                writer.addTerm(entry.getKey(), entry.getValue(), invertedIndex.getPostings(entry.getValue()));
+
+            for (final var entry : urlIndexer.getURLs()) {
+                final var docId = entry.getKey();
+                final var tfMax = invertedIndex.getTFMax(docId);
+                writer.addDocument(docId, entry.getValue(),
+                        metadataIndexer.getMetadata(docId).orElse(null),
+                        tfMax.orElse(0),
+                        tfMax.isPresent() ? invertedIndex.getDocumentLength(docId) : 0.0,
+                        invertedIndex.getFieldLengths(docId),
+                        invertedIndex.getStaticScore(docId),
+                        invertedIndex.getKeywordsWithFrequency(docId),
+                        linkIndexer.getChildLinks(docId),
+                        linkIndexer.getParentLinks(docId));
+            }
+
+            writer.commit();
+        }
+    }
+
+    /**
+     * Returns the caches of the indexes by index name, with their hit and miss
+     * counters.
+     *
+     * @return the caches
+     */
+    @Override
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        final var caches = new LinkedHashMap<String, ObjectCache<?, ?>>();
+        caches.putAll(urlIndexer.getCaches());
+        caches.putAll(linkIndexer.getCaches());
+        caches.putAll(wordIndexer.getCaches());
+        caches.putAll(invertedIndex.getCaches());
+        return caches;
+    }
+
+    /**
+     * Rewrites all indexes with the compact record serializers, converting
+     * records written with Java serialization by older versions. Indexes of the
+     * first version cannot be opened, see {@link InvertedIndex#checkFormat}.
+     *
+     * @return the number of records rewritten
+     * @throws IOException if an I/O error occurs while rewriting the records
+     */
+    public int migrate() throws IOException {
+        final var migrated = urlIndexer.migrate() + metadataIndexer.migrate() + linkIndexer.migrate()
+                + wordIndexer.migrate() + invertedIndex.migrate();
+        recman.commit();
+        return migrated;
+    }
+
     /**
      * Prints all the indexes.
      *
@@ -298,7 +926,10 @@ public class Indexer implements AutoCloseable, SearchEngine {
 
     @Override
     public void close() throws IOException {
-        recman.commit();
+        committer.commit();
+        // The columns are only marked clean once the indexes they mirror are
+        // committed
+        columns.close();
         recman.close();
     }
 }
@@ -1,60 +1,352 @@
 package com.comp4321.indexers;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
+import com.comp4321.jdbm.DoubleSerializer;
+import com.comp4321.jdbm.IntSetSerializer;
+import com.comp4321.jdbm.IntegerSerializer;
+import com.comp4321.jdbm.ObjectCache;
 import com.comp4321.jdbm.SafeBTree;
 import com.comp4321.jdbm.SafeHTree;
+import com.comp4321.mapped.DocumentColumns;
 
 import jdbm.RecordManager;
 
 public class InvertedIndex {
     public static final String DOCID_TO_WORDID = "docIdToWordId";
     public static final String WORDID_TO_DOCID = "wordIdToDocId";
+    public static final String DOCID_TO_TOMBSTONES = "docIdToTombstones";
     public static final String DOCID_TO_TFMAX = "docIdToTfMax";
+    public static final String DOCID_TO_NORM = "docIdToNorm";
+    public static final String DOCID_TO_FIELD_LENGTHS = "docIdToFieldLengths";
+    public static final String DOCID_TO_STATIC_SCORE = "docIdToStaticScore";
+    public static final String COLLECTION_STATS = "collectionStats";
+    public static final String WORDID_TO_MAX_IMPACT = "wordIdToMaxImpact";
 
     public static final double TITLE_MATCH_MULTIPLIER = 0.9;
 
+    // Stored norms are recomputed once N or the df's drift by more than 10%
+    // from the statistics they were computed with
+    public static final double NORM_DRIFT_THRESHOLD = 0.1;
+
+    // Score bounds are widened by this factor so that rounding errors in the
+    // scores never exceed them
+    private static final double BOUND_SLACK = 1 + 1e-9;
+
+    // Posting lists of popular terms are read by every query that uses them
+    private static final long POSTINGS_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long FORWARD_CACHE_BYTES = 16L * 1024 * 1024;
+
+    private static final String CURRENT_STATS = "current";
+    private static final String NORM_STATS = "norms";
+
     private final PostingIndex postingIndex;
     private final SafeBTree<Integer, Integer> docIdToTFMaxMap;
+    private final SafeBTree<Integer, Double> docIdToNormMap;
+    private final SafeBTree<Integer, FieldLengths> docIdToFieldLengthsMap;
+    // The query-independent scores between 0 and 1, such as the PageRank
+    private final SafeBTree<Integer, Double> docIdToStaticScoreMap;
+    private final SafeHTree<String, CollectionStats> collectionStatsMap;
+
+    // wordId -> the highest adjustedTF / tfMax / ||doc|| of the word's postings,
+    // which times the idf bounds the word's contribution to any score
+    private final SafeHTree<Integer, Double> maxImpactMap;
+
+    // tfMax, the norms, the field lengths and the static scores are mirrored
+    // into columns for the scoring loop
+    private final DocumentColumns columns;
+
+    private ParallelScoring parallelScoring = ParallelScoring.SEQUENTIAL;
+
+    // How much of the static score of a document is added to its query score
+    private double staticScoreWeight = 0;
 
     public InvertedIndex(PostingIndex postingIndex,
-            SafeBTree<Integer, Integer> docIdToTFMaxMap) {
+            SafeBTree<Integer, Integer> docIdToTFMaxMap,
+            SafeBTree<Integer, Double> docIdToNormMap,
+            SafeBTree<Integer, FieldLengths> docIdToFieldLengthsMap,
+            SafeBTree<Integer, Double> docIdToStaticScoreMap,
+            SafeHTree<String, CollectionStats> collectionStatsMap,
+            SafeHTree<Integer, Double> maxImpactMap,
+            DocumentColumns columns) {
         this.postingIndex = postingIndex;
         this.docIdToTFMaxMap = docIdToTFMaxMap;
+        this.docIdToNormMap = docIdToNormMap;
+        this.docIdToFieldLengthsMap = docIdToFieldLengthsMap;
+        this.docIdToStaticScoreMap = docIdToStaticScoreMap;
+        this.collectionStatsMap = collectionStatsMap;
+        this.maxImpactMap = maxImpactMap;
+        this.columns = columns;
+    }
+
+    public InvertedIndex(RecordManager recman, DocumentColumns columns) throws IOException {
+        this(new PostingIndex("Postings",
+                new SafeHTree<>(recman, DOCID_TO_WORDID, TermVectorSerializer.INSTANCE,
+                        ObjectCache.withMaxBytes(FORWARD_CACHE_BYTES, InvertedIndex::estimateSize)),
+                new SafeHTree<>(recman, WORDID_TO_DOCID, PostingListSerializer.INSTANCE,
+                        ObjectCache.withMaxBytes(POSTINGS_CACHE_BYTES, InvertedIndex::estimateSize)),
+                new SafeHTree<>(recman, DOCID_TO_TOMBSTONES, IntSetSerializer.INSTANCE)),
+                new SafeBTree<>(recman, DOCID_TO_TFMAX, Comparator.<Integer>naturalOrder(),
+                        IntegerSerializer.INSTANCE, IntegerSerializer.INSTANCE),
+                new SafeBTree<>(recman, DOCID_TO_NORM, Comparator.<Integer>naturalOrder(),
+                        IntegerSerializer.INSTANCE, DoubleSerializer.INSTANCE),
+                new SafeBTree<>(recman, DOCID_TO_FIELD_LENGTHS, Comparator.<Integer>naturalOrder(),
+                        IntegerSerializer.INSTANCE, FieldLengthsSerializer.INSTANCE),
+                new SafeBTree<>(recman, DOCID_TO_STATIC_SCORE, Comparator.<Integer>naturalOrder(),
+                        IntegerSerializer.INSTANCE, DoubleSerializer.INSTANCE),
+                new SafeHTree<>(recman, COLLECTION_STATS),
+                new SafeHTree<>(recman, WORDID_TO_MAX_IMPACT, DoubleSerializer.INSTANCE),
+                columns);
+
+        if (!columns.isClean())
+            rebuildColumns();
+        // Indexes created by older versions have no score bounds yet
+        if (!maxImpactMap.iterator().hasNext() && getDocumentCount() > 0)
+            rebuildMaxImpacts();
+        // ... and no field lengths
+        if (docIdToFieldLengthsMap.size() == 0 && getDocumentCount() > 0)
+            rebuildFieldLengths();
+    }
+
+    /**
+     * Checks that the indexes were not created by the first version of the search
+     * engine. Its forward index holds sets of word IDs without frequencies and its
+     * postings hold sets of locations, so they cannot be converted by
+     * {@link #migrate()} and have to be rebuilt by a crawl.
+     *
+     * @param recman the record manager of the indexes
+     * @throws IOException if an I/O error occurs while reading the forward index
+     */
+    public static void checkFormat(RecordManager recman) throws IOException {
+        if (recman.getNamedObject(DOCID_TO_WORDID) == 0)
+            return;
+
+        // Read without the serializer, so that the record is returned as stored
+        final var forwardIndex = new SafeHTree<Integer, Object>(recman, DOCID_TO_WORDID).iterator();
+        if (forwardIndex.hasNext() && forwardIndex.next().getValue() instanceof Set)
+            throw new IndexerException("The indexes were created by a version that cannot be migrated, "
+                    + "rebuild them with 'crawl --rebuild'");
     }
 
     public InvertedIndex(RecordManager recman) throws IOException {
-        this(new PostingIndex("Postings", new SafeHTree<>(recman, DOCID_TO_WORDID),
-                new SafeHTree<>(recman, WORDID_TO_DOCID)),
-                new SafeBTree<>(recman, DOCID_TO_TFMAX, Comparator.<Integer>naturalOrder()));
+        this(recman, DocumentColumns.inMemory());
     }
 
-    private void updateTFMax(Integer docId) throws IOException {
-        final var wordIds = postingIndex.getForwardWords(docId);
-
-        final var tfMax = wordIds.stream().mapToInt(wordId -> {
-            try {
-                final var posting = postingIndex.getPosting(docId, wordId);
-                return posting.titleLocations().size() + posting.bodyLocations().size();
-            } catch (IOException e) {
-                throw new IndexerException("Error while updating TFMax", e);
+    // Rough heap sizes of the cached values: object headers, references and
+    // the backing arrays
+    private static long estimateSize(TermVector vector) {
+        return 64 + 8L * vector.size();
+    }
+
+    private static long estimateSize(List<Posting> postings) {
+        var size = 40 + 8L * postings.size();
+        for (final var posting : postings)
+            size += 64 + 4L * (posting.titleTF() + posting.bodyTF());
+        return size;
+    }
+
+    /**
+     * Sets where the work units of large queries are run. The postings are still
+     * read from the index on the calling thread.
+     *
+     * @param parallelScoring the pool for the work units
+     */
+    public void setParallelScoring(ParallelScoring parallelScoring) {
+        this.parallelScoring = parallelScoring;
+    }
+
+    /**
+     * Returns all posting lists, read one record at a time.
+     *
+     * @return the posting lists by word ID
+     */
+    public Iterable<Map.Entry<Integer, List<Posting>>> getPostingLists() {
+        return postingIndex.getPostingLists();
+    }
+
+    /**
+     * Returns the term vectors of all documents, read one record at a time.
+     *
+     * @return the term vectors by document ID
+     */
+    public Iterable<Map.Entry<Integer, TermVector>> getTermVectors() {
+        return postingIndex.getTermVectors();
+    }
+
+    /**
+     * Returns the caches of the indexes by index name.
+     *
+     * @return the caches
+     */
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        return postingIndex.getCaches();
+    }
+
+    /**
+     * Adds the static score of each document, times the given weight, to its
+     * query scores. The static scores are read from the columns together with the
+     * norms, so blending them in costs no lookup.
+     *
+     * @param staticScoreWeight the score of the document with the highest static
+     *                          score, 0 to rank by the query alone
+     */
+    public void setStaticScoreWeight(double staticScoreWeight) {
+        if (!(staticScoreWeight >= 0))
+            throw new IllegalArgumentException("staticScoreWeight must be non-negative");
+        this.staticScoreWeight = staticScoreWeight;
+    }
+
+    /**
+     * Copies tfMax, the norms, the field lengths and the static scores of all
+     * documents into the columns.
+     *
+     * @throws IOException if an I/O error occurs while reading the indexes
+     */
+    public final void rebuildColumns() throws IOException {
+        for (final var entry : docIdToTFMaxMap) {
+            final var docId = entry.getKey();
+            columns.setTFMax(docId, entry.getValue());
+
+            final var norm = docIdToNormMap.find(docId);
+            columns.setNorm(docId, norm != null ? norm : computeDocumentLength(docId, new HashMap<>()));
+        }
+        for (final var entry : docIdToFieldLengthsMap)
+            columns.setWordCounts(entry.getKey(), entry.getValue().title(), entry.getValue().body());
+        for (final var entry : docIdToStaticScoreMap)
+            columns.setStaticScore(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Replaces the static scores of all documents. The documents not given have
+     * a static score of 0.
+     *
+     * @param docIds the document IDs in ascending order
+     * @param scores the static score of each document, between 0 and 1
+     * @throws IOException if an I/O error occurs while writing the scores
+     */
+    public void setStaticScores(int[] docIds, double[] scores) throws IOException {
+        if (docIds.length != scores.length)
+            throw new IllegalArgumentException("Every document needs one score");
+
+        final var removed = new ArrayList<Integer>();
+        for (final var entry : docIdToStaticScoreMap) {
+            if (Arrays.binarySearch(docIds, entry.getKey()) < 0)
+                removed.add(entry.getKey());
+        }
+        for (final var docId : removed) {
+            docIdToStaticScoreMap.remove(docId);
+            columns.setStaticScore(docId, 0);
+        }
+
+        for (int i = 0; i < docIds.length; ++i) {
+            if (!(scores[i] >= 0 && scores[i] <= 1))
+                throw new IllegalArgumentException("Static scores must be between 0 and 1");
+            docIdToStaticScoreMap.insert(docIds[i], scores[i]);
+            columns.setStaticScore(docIds[i], scores[i]);
+        }
+    }
+
+    /**
+     * Returns the query-independent score of a document.
+     *
+     * @param docId the ID of the document
+     * @return the static score between 0 and 1, 0 if the document has none
+     */
+    public double getStaticScore(Integer docId) {
+        return columns.getStaticScore(docId);
+    }
+
+    /**
+     * Recomputes the field lengths of all documents and of the collection from
+     * the live postings, for indexes created before the lengths were stored.
+     *
+     * @throws IOException if an I/O error occurs while reading the postings
+     */
+    public final void rebuildFieldLengths() throws IOException {
+        final var titleLengths = new HashMap<Integer, Integer>();
+        final var bodyLengths = new HashMap<Integer, Integer>();
+        for (final var entry : postingIndex.getPostingLists()) {
+            for (final var posting : entry.getValue()) {
+                if (!postingIndex.isLive(entry.getKey(), posting.docId()))
+                    continue;
+                titleLengths.merge(posting.docId(), posting.titleTF(), Integer::sum);
+                bodyLengths.merge(posting.docId(), posting.bodyTF(), Integer::sum);
             }
-        }).max();
+        }
+
+        var totalTitleLength = 0L;
+        var totalBodyLength = 0L;
+        for (final var entry : docIdToTFMaxMap) {
+            final var docId = entry.getKey();
+            final var lengths = new FieldLengths(titleLengths.getOrDefault(docId, 0),
+                    bodyLengths.getOrDefault(docId, 0));
+            storeFieldLengths(docId, lengths);
+            totalTitleLength += lengths.title();
+            totalBodyLength += lengths.body();
+        }
+
+        final var stats = getStats(CURRENT_STATS);
+        collectionStatsMap.put(CURRENT_STATS, new CollectionStats(stats.totalDocuments(), stats.totalPostings(),
+                totalTitleLength, totalBodyLength, stats.postingChurn()));
+    }
 
-        if (tfMax.isEmpty())
+    private void storeFieldLengths(Integer docId, FieldLengths lengths) throws IOException {
+        docIdToFieldLengthsMap.insert(docId, lengths);
+        columns.setWordCounts(docId, lengths.title(), lengths.body());
+    }
+
+    /**
+     * Returns the statistics of the whole index.
+     *
+     * @return the statistics
+     * @throws IOException if an I/O error occurs while reading the statistics
+     */
+    public CollectionStats getCollectionStats() throws IOException {
+        return getStats(CURRENT_STATS);
+    }
+
+    private void storeNorm(Integer docId, Double norm) throws IOException {
+        docIdToNormMap.insert(docId, norm);
+        columns.setNorm(docId, norm);
+    }
+
+    private CollectionStats getStats(String key) throws IOException {
+        final var stats = collectionStatsMap.get(key);
+        return stats == null ? new CollectionStats(0, 0) : stats;
+    }
+
+    private void updateTFMax(Integer docId) throws IOException {
+        // The term vector is sorted by frequency, so tfMax is its first frequency
+        final var tfMax = postingIndex.getTermVector(docId).maxFrequency();
+        if (tfMax == 0)
             throw new IndexerException("Error while updating TFMax: no words found");
 
-        docIdToTFMaxMap.insert(docId, tfMax.getAsInt());
+        if (columns.getTFMax(docId) == tfMax)
+            return;
+        docIdToTFMaxMap.insert(docId, tfMax);
+        columns.setTFMax(docId, tfMax);
     }
 
     /**
-     * Adds a document to the inverted index.
+     * Adds a document to the inverted index. Re-indexing a document only writes
+     * what changed, see {@link PostingIndex#addDocument(Integer, List, List)}.
+     * tfMax, the field lengths, the collection statistics, the norm and the score
+     * bounds are only updated if a posting of the document changed. A word moving
+     * between title and body changes its weight but not the term vector, so the
+     * bounds are raised for it too.
      *
      * @param docId    the ID of the document to be added
      * @param titleIds the list of term IDs in the document's title in order
@@ -62,114 +354,527 @@ public class InvertedIndex {
      * @throws IOException if an I/O error occurs while adding the document
      */
     public void addDocument(Integer docId, List<Integer> titleIds, List<Integer> bodyIds) throws IOException {
-        postingIndex.addDocument(docId, titleIds, bodyIds);
+        final var oldVector = postingIndex.getTermVector(docId);
+        if (!postingIndex.addDocument(docId, titleIds, bodyIds))
+            return;
+        final var vector = postingIndex.getTermVector(docId);
         updateTFMax(docId);
+
+        final var oldLengths = docIdToFieldLengthsMap.find(docId);
+        final var lengths = new FieldLengths(titleIds.size(), bodyIds.size());
+        if (!lengths.equals(oldLengths))
+            storeFieldLengths(docId, lengths);
+        final var oldTitleLength = oldLengths == null ? 0 : oldLengths.title();
+        final var oldBodyLength = oldLengths == null ? 0 : oldLengths.body();
+
+        final var stats = getStats(CURRENT_STATS);
+        final var newStats = new CollectionStats(docIdToTFMaxMap.size(),
+                stats.totalPostings() - oldVector.size() + vector.size(),
+                stats.totalTitleLength() - oldTitleLength + lengths.title(),
+                stats.totalBodyLength() - oldBodyLength + lengths.body(),
+                stats.postingChurn() + postingChurn(oldVector, vector));
+        if (!newStats.equals(stats))
+            collectionStatsMap.put(CURRENT_STATS, newStats);
+
+        // The document frequencies are incomplete while bulk loading, so all
+        // norms are computed once the load finishes
+        if (postingIndex.isBulkLoading())
+            return;
+
+        // Only this document's norm is refreshed while the statistics are close
+        // to the ones the other norms were computed with
+        if (!recomputeNormsIfDrifted(NORM_DRIFT_THRESHOLD)) {
+            storeNorm(docId, computeDocumentLength(docId, new HashMap<>()));
+            raiseMaxImpacts(docId, titleIds, bodyIds);
+        }
+    }
+
+    // The number of words added to or removed from a document, each of which
+    // changes a document frequency
+    private static int postingChurn(TermVector oldVector, TermVector vector) {
+        final var common = oldVector.wordIdSet();
+        common.retainAll(vector.wordIdSet());
+        return oldVector.size() + vector.size() - 2 * common.size();
+    }
+
+    // The TF-IDF contribution of a posting to the score of its document before
+    // the idf and the document length are applied
+    private double termWeight(Posting posting) {
+        final var tfMax = columns.getTFMax(posting.docId());
+        if (tfMax == 0)
+            throw new IndexerException("Error while calculating scores: tfMax not found");
+
+        return TFIDFScoring.termWeight(posting.titleTF(), posting.bodyTF(), tfMax);
+    }
+
+    // The contribution of a posting to the score of its document before the idf
+    // and the normalization are applied. Every model gets the same
+    // per-document inputs, read from the columns.
+    private double termWeight(ScoringModel.Scorer scorer, Posting posting) {
+        final var docId = posting.docId();
+        final var tfMax = columns.getTFMax(docId);
+        if (tfMax == 0)
+            throw new IndexerException("Error while calculating scores: tfMax not found");
+
+        return scorer.weight(posting.titleTF(), posting.bodyTF(), tfMax, columns.getTitleWordCount(docId),
+                columns.getBodyWordCount(docId));
+    }
+
+    // Only the norm of the added document changed, so only the bounds of its
+    // words can have grown
+    private void raiseMaxImpacts(Integer docId, List<Integer> titleIds, List<Integer> bodyIds) throws IOException {
+        final var titleTFs = new HashMap<Integer, Integer>();
+        titleIds.forEach(wordId -> titleTFs.merge(wordId, 1, Integer::sum));
+        final var bodyTFs = new HashMap<Integer, Integer>();
+        bodyIds.forEach(wordId -> bodyTFs.merge(wordId, 1, Integer::sum));
+
+        final var tfMax = columns.getTFMax(docId);
+        final var norm = columns.getNorm(docId);
+        final var wordIds = new HashSet<>(titleTFs.keySet());
+        wordIds.addAll(bodyTFs.keySet());
+        for (final var wordId : wordIds) {
+            final var impact = TFIDFScoring.termWeight(titleTFs.getOrDefault(wordId, 0),
+                    bodyTFs.getOrDefault(wordId, 0), tfMax) / norm;
+            final var maxImpact = maxImpactMap.get(wordId);
+            if (maxImpact == null || impact > maxImpact)
+                maxImpactMap.put(wordId, impact);
+        }
+    }
+
+    /**
+     * Recomputes the score bounds of all words from the posting lists and the
+     * current norms.
+     *
+     * @throws IOException if an I/O error occurs while reading the postings
+     */
+    public final void rebuildMaxImpacts() throws IOException {
+        for (final var entry : postingIndex.getPostingLists()) {
+            var maxImpact = 0.0;
+            for (final var posting : entry.getValue()) {
+                // Stale postings of deleted documents have no tfMax, the ones of
+                // re-indexed documents at worst loosen the bound
+                if (columns.getTFMax(posting.docId()) != 0)
+                    maxImpact = Math.max(maxImpact, termWeight(posting) / columns.getNorm(posting.docId()));
+            }
+            maxImpactMap.put(entry.getKey(), maxImpact);
+        }
+    }
+
+    /**
+     * Starts bulk loading new documents, see
+     * {@link PostingIndex#beginBulkLoad(Path, long)}. The forward index and tfMax
+     * are still written per document, but the norms are only computed by
+     * {@link #finishBulkLoad()}.
+     *
+     * @param spillDirectory the directory for the temporary sorted runs
+     * @param memoryBudget   the approximate number of bytes of postings buffered
+     *                       in memory
+     */
+    public void beginBulkLoad(Path spillDirectory, long memoryBudget) {
+        postingIndex.beginBulkLoad(spillDirectory, memoryBudget);
     }
 
-    private Double getDocumentLength(Integer docId) throws IOException {
+    /**
+     * Writes the postings collected while bulk loading and computes the norms of
+     * all documents.
+     *
+     * @throws IOException if an I/O error occurs while writing the postings
+     */
+    public void finishBulkLoad() throws IOException {
+        postingIndex.finishBulkLoad();
+        recomputeNormsIfDrifted(0.0);
+    }
+
+    /**
+     * Recomputes the stored norms of all documents if the collection statistics
+     * have drifted from the ones the norms were computed with by more than the
+     * given threshold.
+     *
+     * @param threshold the maximum relative drift of N or the document
+     *                  frequencies, measured by the postings added and removed,
+     *                  0 to recompute on any change
+     * @return true if the norms were recomputed
+     * @throws IOException if an I/O error occurs while recomputing the norms
+     */
+    public boolean recomputeNormsIfDrifted(double threshold) throws IOException {
+        final var stats = getStats(CURRENT_STATS);
+        if (stats.driftFrom(getStats(NORM_STATS)) <= threshold)
+            return false;
+
+        // Document frequencies are shared by many documents, so look each one up
+        // only once per batch
+        final var dfCache = new HashMap<Integer, Integer>();
+        for (final var entry : docIdToTFMaxMap)
+            storeNorm(entry.getKey(), computeDocumentLength(entry.getKey(), dfCache));
+        rebuildMaxImpacts();
+
+        collectionStatsMap.put(NORM_STATS, stats);
+        return true;
+    }
+
+    /**
+     * Physically removes the postings of deleted and re-indexed documents.
+     *
+     * @return the number of postings removed
+     * @throws IOException if an I/O error occurs while rewriting the postings
+     */
+    public int purgeDeleted() throws IOException {
+        return postingIndex.purgeDeleted();
+    }
+
+    /**
+     * Returns the number of documents in the inverted index.
+     *
+     * @return the number of documents
+     */
+    public final int getDocumentCount() {
+        return docIdToTFMaxMap.size();
+    }
+
+    /**
+     * Returns the maximum term frequency of a document.
+     *
+     * @param docId the ID of the document
+     * @return the maximum term frequency, if the document is indexed
+     * @throws IOException if an I/O error occurs while retrieving the value
+     */
+    public Optional<Integer> getTFMax(Integer docId) throws IOException {
+        final var tfMax = columns.getTFMax(docId);
+        return tfMax == 0 ? Optional.empty() : Optional.of(tfMax);
+    }
+
+    /**
+     * Returns the numbers of words in the title and the body of a document.
+     *
+     * @param docId the ID of the document
+     * @return the field lengths, which are 0 if the document is not indexed
+     */
+    public FieldLengths getFieldLengths(Integer docId) {
+        return new FieldLengths(columns.getTitleWordCount(docId), columns.getBodyWordCount(docId));
+    }
+
+    /**
+     * Retrieves the list of postings associated with a given word ID.
+     *
+     * @param wordId the ID of the word
+     * @return the list of postings sorted by document ID
+     * @throws IOException if an I/O error occurs while retrieving the postings
+     */
+    public List<Posting> getPostings(Integer wordId) throws IOException {
+        return postingIndex.getPostings(wordId);
+    }
+
+    /**
+     * Returns the length of the document vector used to normalize the scores, as
+     * precomputed at index time.
+     *
+     * @param docId the ID of the document
+     * @return the length of the document vector
+     * @throws IOException if an I/O error occurs while retrieving the length
+     */
+    public Double getDocumentLength(Integer docId) throws IOException {
+        if (columns.getTFMax(docId) == 0)
+            throw new IndexerException("Error while calculating document length: tfMax not found");
+
+        return columns.getNorm(docId);
+    }
+
+    private Double computeDocumentLength(Integer docId, Map<Integer, Integer> dfCache) throws IOException {
         // Calculate the document lengths by iterating over the inverted index
         // and adding (tf * idf / tfMax)^2 for each term in the index
         final var totalDocuments = docIdToTFMaxMap.size();
-        final var tfMax = docIdToTFMaxMap.find(docId);
-        if (tfMax == null)
+        final var tfMax = columns.getTFMax(docId);
+        if (tfMax == 0)
             throw new IndexerException("Error while calculating document length: tfMax not found");
 
-        final var docLen = postingIndex.getForwardWords(docId).stream().mapToDouble(wordId -> {
-            try {
-                final var posting = postingIndex.getPosting(docId, wordId);
+        final var vector = postingIndex.getTermVector(docId);
+        var docLen = 0.0;
+        for (int i = 0; i < vector.size(); ++i) {
+            final var wordId = vector.wordIds()[i];
+            final var tf = vector.frequencies()[i];
+            var df = dfCache.get(wordId);
+            if (df == null) {
+                df = postingIndex.getDF(wordId);
+                dfCache.put(wordId, df);
+            }
+            final var idf = TFIDFScoring.idf(df, totalDocuments);
 
-                final var titleTF = posting.titleLocations().size();
-                final var bodyTF = posting.bodyLocations().size();
+            docLen += Math.pow(tf * idf / tfMax, 2.0);
+        }
 
-                final var tf = titleTF + bodyTF;
-                final var df = postingIndex.getDF(wordId);
-                final var idf = Math.log10((double) totalDocuments / df);
+        return Math.sqrt(docLen);
+    }
 
-                return Math.pow(tf * idf / tfMax, 2.0);
-            } catch (IOException e) {
-                throw new IndexerException("Error while calculating document length", e);
-            }
-        }).sum();
+    // The length of a document, read from the columns so that it can be read
+    // from any thread
+    private double normOf(int docId) {
+        if (columns.getTFMax(docId) == 0)
+            throw new IndexerException("Error while calculating document length: tfMax not found");
 
-        return Math.sqrt(docLen);
+        return columns.getNorm(docId);
     }
 
-    private Map<Integer, Double> computeScoresForWord(Integer wordId) throws IOException {
-        /*
-         * Scores are calculated as:
-         * title_score = title_tf * log(N / df) / tfMax
-         * body_score = body_tf * log(N / df) / tfMax
-         * score = a * title_score + (1 - a) * body_score
-         * = (a * title_tf + (1 - a) * body_tf) * log(N / df) / tfMax
-         * 
-         * a: magic constant to give priority to title matches (default: 0.9)
-         * title_tf: term frequency in the title of the document
-         * body_tf: term frequency in the body of the document
-         * N: total number of documents
-         * df: document frequency of the term in either title or body
-         * tfMax: maximum (title_tf + body_tf) in the document
-         */
+    // The final score of a document, read from the columns like the norm
+    private double finalScore(ScoringModel.Scorer scorer, int docId, double score) {
+        return scorer.normalize(score, normOf(docId)) + staticScoreWeight * columns.getStaticScore(docId);
+    }
 
-        final var totalDocuments = docIdToTFMaxMap.size();
+    private List<PostingCursor> openCursors(Map<Integer, Integer> dfByWord, ScoringModel.Scorer scorer)
+            throws IOException {
+        final var cursors = new ArrayList<PostingCursor>();
+        for (final var entry : dfByWord.entrySet()) {
+            final var postings = postingIndex.getPostings(entry.getKey());
+            if (entry.getValue() == 0 || postings.isEmpty())
+                continue;
+
+            final var idf = scorer.idf(entry.getValue());
+            final var maxImpact = maxImpactMap.get(entry.getKey());
+            final var bound = maxImpact == null ? Double.POSITIVE_INFINITY
+                    : idf == 0 ? 0.0 : scorer.bound(idf, maxImpact) * BOUND_SLACK;
+            cursors.add(new PostingCursor(postings, idf, bound));
+        }
+        return cursors;
+    }
 
-        final var df = postingIndex.getDF(wordId);
-        if (df == 0)
-            return Map.of();
-
-        // The base of the logarithm is irrelevant since we are only interested in the
-        // relative scores, which are not affected by the base
-        final var idf = Math.log10(((double) totalDocuments) / df);
-        final var postings = postingIndex.getPostings(wordId);
-        if (postings == null)
-            return Map.of();
-
-        return postings.stream().collect(Collectors.toMap(Posting::docId, posting -> {
-            try {
-                final var docId = posting.docId();
-                final var tfMax = docIdToTFMaxMap.find(docId);
-                if (tfMax == null)
-                    throw new IndexerException("Error while calculating scores: tfMax not found");
-
-                final var titleTF = posting.titleLocations().size();
-                final var bodyTF = posting.bodyLocations().size();
-                final var adjustedTF = TITLE_MATCH_MULTIPLIER * titleTF + (1 - TITLE_MATCH_MULTIPLIER) * bodyTF;
-
-                return adjustedTF * idf / tfMax;
-            } catch (IOException e) {
-                throw new IndexerException("Error while calculating scores", e);
+    /**
+     * Splits the posting lists of a query into equal docId ranges, one per work
+     * unit. The postings are read from the index before, so that the ranges only
+     * read memory and the columns and can be scored on any thread.
+     */
+    private List<List<PostingCursor>> partition(List<PostingCursor> cursors) {
+        final var postings = cursors.stream().mapToLong(PostingCursor::size).sum();
+        final var taskCount = parallelScoring.taskCount(postings);
+        if (taskCount == 1)
+            return List.of(cursors);
+
+        final long firstDocId = cursors.stream().mapToInt(PostingCursor::docId).min().getAsInt();
+        final long endDocId = cursors.stream().mapToInt(PostingCursor::lastDocId).max().getAsInt() + 1L;
+        final var width = (endDocId - firstDocId + taskCount - 1) / taskCount;
+        final var parts = new ArrayList<List<PostingCursor>>();
+        for (var from = firstDocId; from < endDocId; from += width) {
+            final var to = Math.min(from + width, endDocId);
+            final var part = new ArrayList<PostingCursor>();
+            for (final var cursor : cursors) {
+                final var slice = cursor.slice((int) from, (int) to);
+                if (slice.size() > 0)
+                    part.add(slice);
             }
-        }));
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    private void scoreRange(List<PostingCursor> cursors, ScoringModel.Scorer scorer, ScoreAccumulator scores) {
+        // See the scoring models for the formulas, such as TFIDFScoring
+        for (final var cursor : cursors) {
+            for (; !cursor.isExhausted(); cursor.advance())
+                scores.add(cursor.docId(), termWeight(scorer, cursor.posting()) * cursor.idf());
+        }
+        scores.replaceAll((docId, score) -> finalScore(scorer, docId, score));
+    }
+
+    /**
+     * Returns the number of documents containing the given word.
+     *
+     * @param wordId the ID of the word
+     * @return the document frequency of the word
+     * @throws IOException if an I/O error occurs while retrieving the postings
+     */
+    public int getDF(Integer wordId) throws IOException {
+        return postingIndex.getDF(wordId);
+    }
+
+    /**
+     * Prepares a scoring model for the statistics of this index alone.
+     *
+     * @param model the scoring model
+     * @return the scorer
+     * @throws IOException if an I/O error occurs while reading the statistics
+     */
+    public ScoringModel.Scorer scorer(ScoringModel model) throws IOException {
+        final var stats = getStats(CURRENT_STATS);
+        return new QueryStatistics(getDocumentCount(), stats.totalTitleLength(), stats.totalBodyLength(), Map.of())
+                .scorer(model);
     }
 
     /**
-     * Calculates the scores for a given set of word IDs.
+     * Calculates the TF-IDF scores for a given set of word IDs.
      *
      * @param wordIds the set of word IDs for which scores need to be calculated
      * @return a map of document IDs to their corresponding scores
      * @throws IOException if an error occurs while calculating the scores
      */
     public Map<Integer, Double> getScores(Set<Integer> wordIds) throws IOException {
-        // Calculate the scores for each word and merge them into the final scores
-        final var scores = wordIds.stream().flatMap(wordId -> {
-            try {
-                return computeScoresForWord(wordId).entrySet().stream();
-            } catch (IOException e) {
-                throw new IndexerException("Error while calculating scores", e);
+        final var dfByWord = new HashMap<Integer, Integer>();
+        for (final var wordId : wordIds)
+            dfByWord.put(wordId, postingIndex.getDF(wordId));
+        return getScores(dfByWord, scorer(ScoringModel.TF_IDF));
+    }
+
+    /**
+     * Calculates the scores for a given set of word IDs with a scorer prepared for
+     * the collection statistics, so that the scores of a partition of the
+     * collection are comparable with the scores of the other partitions.
+     *
+     * @param dfByWord the document frequency of each word in the collection
+     * @param scorer   the scoring model prepared for the collection
+     * @return a map of document IDs to their corresponding scores
+     * @throws IOException if an error occurs while calculating the scores
+     */
+    public Map<Integer, Double> getScores(Map<Integer, Integer> dfByWord, ScoringModel.Scorer scorer)
+            throws IOException {
+        final var scores = new ScoreAccumulator();
+        accumulateScores(dfByWord, scorer, scores);
+        return scores.toMap();
+    }
+
+    /**
+     * Calculates the scores for a given set of word IDs like
+     * {@link #getScores(Map, ScoringModel.Scorer)}, but into an accumulator, so
+     * that no score is boxed. Queries reading many postings are split into docId
+     * ranges that are scored in parallel, see
+     * {@link #setParallelScoring(ParallelScoring)}.
+     *
+     * @param dfByWord the document frequency of each word in the collection
+     * @param scorer   the scoring model prepared for the collection
+     * @param scores   the accumulator to calculate the scores in, which is cleared
+     *                 first
+     * @throws IOException if an error occurs while calculating the scores
+     */
+    public void accumulateScores(Map<Integer, Integer> dfByWord, ScoringModel.Scorer scorer,
+            ScoreAccumulator scores) throws IOException {
+        scores.clear();
+        final var parts = partition(openCursors(dfByWord, scorer));
+        if (parts.size() == 1) {
+            scoreRange(parts.get(0), scorer, scores);
+            return;
+        }
+
+        // The ranges are disjoint, so their scores are simply added up
+        final var partScores = parallelScoring.invokeAll(parts.stream().<Supplier<ScoreAccumulator>>map(part -> () -> {
+            final var partial = new ScoreAccumulator();
+            scoreRange(part, scorer, partial);
+            return partial;
+        }).toList());
+        partScores.forEach(partial -> partial.forEach(scores::add));
+    }
+
+    /**
+     * Selects the documents with the highest scores, as computed by
+     * {@link #accumulateScores(Map, ScoringModel.Scorer, ScoreAccumulator)}, without scoring
+     * every posting. The posting lists are traversed one document at a time in
+     * document order (MaxScore). Once the selection is full, the words whose
+     * score bounds add up to at most the lowest selected score cannot bring in a
+     * document on their own, so their lists are only probed for the documents of
+     * the other lists, and only while the document can still be selected. Queries
+     * reading many postings select the top documents of docId ranges in parallel
+     * and merge them.
+     *
+     * @param dfByWord the document frequency of each word in the collection
+     * @param scorer   the scoring model prepared for the collection
+     * @param filter   the documents that may be selected
+     * @param top      the selection to offer the documents to
+     * @throws IOException if an error occurs while reading the postings
+     */
+    public void selectTopScores(Map<Integer, Integer> dfByWord, ScoringModel.Scorer scorer, IntPredicate filter,
+            TopScores top) throws IOException {
+        final var cursors = openCursors(dfByWord, scorer);
+        if (cursors.isEmpty())
+            return;
+
+        final var parts = partition(cursors);
+        if (parts.size() == 1) {
+            selectRange(parts.get(0), scorer, filter, top);
+            return;
+        }
+
+        final var partTops = parallelScoring.invokeAll(parts.stream().<Supplier<TopScores>>map(part -> () -> {
+            final var partial = new TopScores(top.capacity());
+            selectRange(part, scorer, filter, partial);
+            partial.sort();
+            return partial;
+        }).toList());
+        for (final var partial : partTops) {
+            for (int rank = 0; rank < partial.size(); ++rank)
+                top.offer(partial.docId(rank), partial.score(rank));
+        }
+    }
+
+    /**
+     * Selects the documents with the highest scores among the given candidates,
+     * such as the documents matching a boolean query. Every posting list is
+     * sought to the candidates in ascending order, so the cost follows the number
+     * of candidates rather than the length of the lists.
+     *
+     * @param dfByWord   the document frequency of each word in the collection
+     * @param scorer     the scoring model prepared for the collection
+     * @param candidates the documents that may be selected
+     * @param top        the selection to offer the documents to
+     * @throws IOException if an error occurs while reading the postings
+     */
+    public void selectTopScores(Map<Integer, Integer> dfByWord, ScoringModel.Scorer scorer, BitSet candidates,
+            TopScores top) throws IOException {
+        final var cursors = openCursors(dfByWord, scorer);
+        for (var docId = candidates.nextSetBit(0); docId >= 0; docId = candidates.nextSetBit(docId + 1)) {
+            var score = 0.0;
+            for (final var cursor : cursors) {
+                if (cursor.seek(docId))
+                    score += termWeight(scorer, cursor.posting()) * cursor.idf();
+            }
+            top.offer(docId, finalScore(scorer, docId, score));
+        }
+    }
+
+    private void selectRange(List<PostingCursor> cursors, ScoringModel.Scorer scorer, IntPredicate filter,
+            TopScores top) {
+        // upperBounds[i] bounds the contribution of the words 0 to i to a score,
+        // to which at most staticScoreWeight is added by the static score
+        final var sorted = new ArrayList<>(cursors);
+        sorted.sort(Comparator.comparingDouble(PostingCursor::bound));
+        final var upperBounds = new double[sorted.size()];
+        for (int i = 0; i < sorted.size(); ++i)
+            upperBounds[i] = sorted.get(i).bound() + (i > 0 ? upperBounds[i - 1] : 0.0);
+
+        // Only documents in the lists from the first essential word onwards can
+        // be selected. Documents are visited in ascending order and ties go to the
+        // lower docId, so a document must score above the threshold.
+        var firstEssential = 0;
+        while (firstEssential < sorted.size()) {
+            var docId = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < sorted.size(); ++i) {
+                if (!sorted.get(i).isExhausted())
+                    docId = Math.min(docId, sorted.get(i).docId());
             }
-        }).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, Double::sum));
-
-        // Normalize the scores by the document lengths
-        // We ignore query length normalization since we are only interested in the
-        // relative scores, which are not affected by the query length
-        scores.replaceAll((docId, score) -> {
-            try {
-                return score / getDocumentLength(docId);
-            } catch (IOException e) {
-                throw new IndexerException("Error while normalizing scores", e);
+            if (docId == Integer.MAX_VALUE)
+                break;
+
+            var score = 0.0;
+            for (int i = firstEssential; i < sorted.size(); ++i) {
+                final var cursor = sorted.get(i);
+                if (!cursor.isExhausted() && cursor.docId() == docId) {
+                    score += termWeight(scorer, cursor.posting()) * cursor.idf();
+                    cursor.advance();
+                }
             }
-        });
+            if (!filter.test(docId))
+                continue;
+
+            final var norm = normOf(docId);
+            final var staticScore = staticScoreWeight * columns.getStaticScore(docId);
+            var i = firstEssential - 1;
+            for (; i >= 0 && scorer.normalize(score, norm) + staticScore + upperBounds[i] > top.threshold(); --i) {
+                final var cursor = sorted.get(i);
+                if (cursor.seek(docId))
+                    score += termWeight(scorer, cursor.posting()) * cursor.idf();
+            }
+            if (i >= 0)
+                continue;
 
-        return scores;
+            top.offer(docId, scorer.normalize(score, norm) + staticScore);
+            while (firstEssential < sorted.size()
+                    && upperBounds[firstEssential] + staticScoreWeight <= top.threshold())
+                ++firstEssential;
+        }
     }
 
     /**
@@ -182,26 +887,73 @@ public class InvertedIndex {
         return postingIndex.getDocumentsWithPhrase(phrase);
     }
 
+    /**
+     * Returns a set of document IDs that contain the given phrase, allowing extra
+     * positions between its words, see
+     * {@link PostingIndex#getDocumentsWithPhrase(List, int)}.
+     *
+     * @param phrase a phrase represented as an ordered list of word IDs
+     * @param slop   the number of extra positions, 0 for an exact phrase
+     * @return a set of document IDs that contain the given phrase
+     */
+    public Set<Integer> getDocumentsWithPhrase(List<Integer> phrase, int slop) throws IOException {
+        return postingIndex.getDocumentsWithPhrase(phrase, slop);
+    }
+
+    /**
+     * Returns the posting lists of the given words.
+     *
+     * @param wordIds the IDs of the words
+     * @return the posting list of each word, in order
+     */
+    public List<List<Posting>> getPostingLists(List<Integer> wordIds) throws IOException {
+        return postingIndex.getPostingLists(wordIds);
+    }
+
     /**
      * Retrieves the keywords with their corresponding frequencies for a given
      * document ID.
      *
      * @param docId The ID of the document.
-     * @return A map containing the wordIds as keys and their frequencies as values.
+     * @return A map containing the wordIds as keys and their frequencies as values,
+     *         iterating in descending order of frequency.
      * @throws IOException If an I/O error occurs while retrieving the keywords and
      *                     frequencies.
      */
     public Map<Integer, Integer> getKeywordsWithFrequency(Integer docId) throws IOException {
-        return postingIndex.getForwardWords(docId).stream().collect(Collectors.toMap(
-                Function.identity(),
-                wordId -> {
-                    try {
-                        final var posting = postingIndex.getPosting(docId, wordId);
-                        return posting.titleLocations().size() + posting.bodyLocations().size();
-                    } catch (IOException e) {
-                        throw new IndexerException("Error while getting keywords with frequency", e);
-                    }
-                }));
+        return postingIndex.getTermVector(docId).toMap();
+    }
+
+    /**
+     * Rewrites the indexes in the current record format.
+     *
+     * @return the number of records rewritten
+     * @throws IOException if an I/O error occurs while rewriting the records
+     */
+    public int migrate() throws IOException {
+        return postingIndex.migrate() + docIdToTFMaxMap.migrate() + docIdToNormMap.migrate()
+                + docIdToFieldLengthsMap.migrate() + docIdToStaticScoreMap.migrate() + maxImpactMap.migrate();
+    }
+
+    /**
+     * Copies the index into another inverted index, with the per-document
+     * records in the given document order and the posting lists in the given
+     * word order.
+     *
+     * @param target  the index to copy into
+     * @param docIds  the document IDs in the order to copy them
+     * @param wordIds the word IDs in the order to copy them
+     * @return the number of records copied
+     * @throws IOException if an I/O error occurs while copying the records
+     */
+    public int copyTo(InvertedIndex target, List<Integer> docIds, List<Integer> wordIds) throws IOException {
+        return postingIndex.copyTo(target.postingIndex, docIds, wordIds)
+                + docIdToTFMaxMap.copyTo(target.docIdToTFMaxMap)
+                + docIdToNormMap.copyTo(target.docIdToNormMap)
+                + docIdToFieldLengthsMap.copyTo(target.docIdToFieldLengthsMap)
+                + docIdToStaticScoreMap.copyTo(target.docIdToStaticScoreMap)
+                + collectionStatsMap.copyTo(target.collectionStatsMap, List.of())
+                + maxImpactMap.copyTo(target.maxImpactMap, wordIds);
     }
 
     public void printAll() {
@@ -212,5 +964,11 @@ public class InvertedIndex {
             System.out.println(entry.getKey() + " -> " + entry.getValue());
         }
         System.out.println();
+
+        System.out.println("DOCID_TO_NORM:");
+        for (final var entry : docIdToNormMap) {
+            System.out.println(entry.getKey() + " -> " + entry.getValue());
+        }
+        System.out.println();
     }
 }
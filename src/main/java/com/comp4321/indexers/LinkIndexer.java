@@ -1,9 +1,15 @@
 package com.comp4321.indexers;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import com.comp4321.jdbm.IntSetSerializer;
+import com.comp4321.jdbm.ObjectCache;
 import com.comp4321.jdbm.SafeHTree;
 
 import jdbm.RecordManager;
@@ -12,6 +18,8 @@ public class LinkIndexer {
     public static final String PARENT_TO_CHILD = "parentToChild";
     public static final String CHILD_TO_PARENT = "childToParent";
 
+    private static final int CACHE_ENTRIES = 10_000;
+
     private final SafeHTree<Integer, Set<Integer>> parentToChildMap;
     private final SafeHTree<Integer, Set<Integer>> childToParentMap;
 
@@ -22,72 +30,63 @@ public class LinkIndexer {
     }
 
     public LinkIndexer(RecordManager recman) throws IOException {
-        this(new SafeHTree<>(recman, PARENT_TO_CHILD), new SafeHTree<>(recman, CHILD_TO_PARENT));
+        this(new SafeHTree<>(recman, PARENT_TO_CHILD, IntSetSerializer.INSTANCE,
+                ObjectCache.withMaxEntries(CACHE_ENTRIES)),
+                new SafeHTree<>(recman, CHILD_TO_PARENT, IntSetSerializer.INSTANCE,
+                        ObjectCache.withMaxEntries(CACHE_ENTRIES)));
     }
 
     private void addChildLink(int parent, int child) throws IOException {
-        var parentsValue = childToParentMap.get(child);
-        if (parentsValue == null)
-            parentsValue = new HashSet<>();
-
+        // The cached set is shared with the readers, so a copy is changed
+        final var oldParents = childToParentMap.get(child);
+        final var parentsValue = oldParents == null ? new HashSet<Integer>() : new HashSet<>(oldParents);
         parentsValue.add(parent);
-        childToParentMap.put(child, parentsValue);
+        childToParentMap.put(child, Collections.unmodifiableSet(parentsValue));
     }
 
     private void removeChildLink(int parent, int child) throws IOException {
-        final var parentsValue = childToParentMap.get(child);
-        if (parentsValue == null)
+        final var oldParents = childToParentMap.get(child);
+        if (oldParents == null)
             return;
 
+        final var parentsValue = new HashSet<>(oldParents);
         parentsValue.remove(parent);
 
         // Update the child's parent links (if it's not empty)
         if (parentsValue.isEmpty())
             childToParentMap.remove(child);
         else
-            childToParentMap.put(child, parentsValue);
+            childToParentMap.put(child, Collections.unmodifiableSet(parentsValue));
     }
 
     /**
      * Adds links for a given document ID to the index.
-     * If links already exist for the document, they will be removed and replaced
+     * If links already exist for the document, only the links that were added
+     * or removed are updated
      * 
      * @param docId The ID of the document.
      * @param links The set of links to be added.
      */
     public void addLinks(int docId, Set<Integer> links) throws IOException {
-        removeLinks(docId);
-        parentToChildMap.put(docId, links);
-        links.stream().forEach(child -> {
-            try {
-                addChildLink(docId, child);
-            } catch (IOException e) {
-                throw new IndexerException(String.format("DocId: %d", docId), e);
-            }
-        });
-    }
-
-    /**
-     * Removes the links associated with the given document ID.
-     *
-     * @param docId the ID of the document whose links are to be removed
-     */
-    private void removeLinks(int docId) throws IOException {
         final var oldLinks = parentToChildMap.get(docId);
-        if (oldLinks == null)
+        if (oldLinks == null) {
+            parentToChildMap.put(docId, Set.copyOf(links));
+            for (final var child : links)
+                addChildLink(docId, child);
+            return;
+        }
+        if (oldLinks.equals(links))
             return;
 
-        // Remove child links
-        oldLinks.stream().forEach(child -> {
-            try {
+        for (final var child : oldLinks) {
+            if (!links.contains(child))
                 removeChildLink(docId, child);
-            } catch (IOException e) {
-                throw new IndexerException(String.format("DocId: %d", docId), e);
-            }
-        });
-
-        // Remove parent link
-        parentToChildMap.remove(docId);
+        }
+        for (final var child : links) {
+            if (!oldLinks.contains(child))
+                addChildLink(docId, child);
+        }
+        parentToChildMap.put(docId, Set.copyOf(links));
     }
 
     /**
@@ -102,7 +101,8 @@ public class LinkIndexer {
         if (parentLinks == null)
             return Set.of();
 
-        return parentLinks;
+        // The set may be cached, so it must not be modified by the caller
+        return Collections.unmodifiableSet(parentLinks);
     }
 
     /**
@@ -117,7 +117,61 @@ public class LinkIndexer {
         if (childLinks == null)
             return Set.of();
 
-        return childLinks;
+        return Collections.unmodifiableSet(childLinks);
+    }
+
+    /**
+     * Returns the child links of all documents, read one record at a time.
+     *
+     * @return the child links by document ID
+     */
+    public Iterable<Map.Entry<Integer, Set<Integer>>> getAllChildLinks() {
+        return parentToChildMap;
+    }
+
+    /**
+     * Returns the parent links of all documents, read one record at a time.
+     *
+     * @return the parent links by document ID
+     */
+    public Iterable<Map.Entry<Integer, Set<Integer>>> getAllParentLinks() {
+        return childToParentMap;
+    }
+
+    /**
+     * Returns the caches of the indexes by index name.
+     *
+     * @return the caches
+     */
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        final var caches = new LinkedHashMap<String, ObjectCache<?, ?>>();
+        caches.put(PARENT_TO_CHILD, parentToChildMap.getCache());
+        caches.put(CHILD_TO_PARENT, childToParentMap.getCache());
+        caches.values().removeIf(cache -> cache == null);
+        return caches;
+    }
+
+    /**
+     * Rewrites the indexes in the current record format.
+     *
+     * @return the number of records rewritten
+     * @throws IOException if an I/O error occurs while rewriting the records
+     */
+    public int migrate() throws IOException {
+        return parentToChildMap.migrate() + childToParentMap.migrate();
+    }
+
+    /**
+     * Copies the links into another link indexer in the given document order.
+     *
+     * @param target the indexer to copy into
+     * @param docIds the document IDs in the order to copy them
+     * @return the number of records copied
+     * @throws IOException if an I/O error occurs while copying the records
+     */
+    public int copyTo(LinkIndexer target, List<Integer> docIds) throws IOException {
+        return parentToChildMap.copyTo(target.parentToChildMap, docIds)
+                + childToParentMap.copyTo(target.childToParentMap, docIds);
     }
 
     public void printAll() {
@@ -1,9 +1,11 @@
 package com.comp4321.indexers;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 
 import com.comp4321.jdbm.SafeHTree;
+import com.comp4321.mapped.DocumentColumns;
 
 import jdbm.RecordManager;
 
@@ -11,13 +13,34 @@ public class MetadataIndexer {
     public static final String DOCID_TO_METADATA = "docIdToMetadata";
 
     private final SafeHTree<Integer, Metadata> metadataMap;
+    private final DocumentColumns columns;
 
-    public MetadataIndexer(SafeHTree<Integer, Metadata> metadataMap) {
+    public MetadataIndexer(SafeHTree<Integer, Metadata> metadataMap, DocumentColumns columns) {
         this.metadataMap = metadataMap;
+        this.columns = columns;
+    }
+
+    public MetadataIndexer(RecordManager recman, DocumentColumns columns) throws IOException {
+        this(new SafeHTree<>(recman, DOCID_TO_METADATA, MetadataSerializer.INSTANCE), columns);
+
+        if (!columns.isClean())
+            rebuildColumns();
     }
 
     public MetadataIndexer(RecordManager recman) throws IOException {
-        this(new SafeHTree<>(recman, DOCID_TO_METADATA));
+        this(recman, DocumentColumns.inMemory());
+    }
+
+    /**
+     * Copies the metadata of all documents into the columns.
+     */
+    public final void rebuildColumns() throws IOException {
+        for (final var entry : metadataMap)
+            setColumns(entry.getKey(), entry.getValue());
+    }
+
+    private void setColumns(int docId, Metadata metadata) throws IOException {
+        columns.setMetadata(docId, metadata.title(), metadata.pageSize(), metadata.lastModified());
     }
 
     /**
@@ -39,9 +62,37 @@ public class MetadataIndexer {
      * @param docId    The document ID.
      * @param metadata The metadata to be added.
      * @throws IOException if an error occurs while adding the metadata.
+     * @throws IllegalArgumentException if the document ID is negative.
      */
     public void addMetadata(int docId, Metadata metadata) throws IOException {
+        if (docId < 0)
+            throw new IllegalArgumentException("Negative document ID: " + docId);
+
         metadataMap.put(docId, metadata);
+        setColumns(docId, metadata);
+    }
+
+    /**
+     * Rewrites the indexes in the current record format.
+     *
+     * @return the number of records rewritten
+     * @throws IOException if an I/O error occurs while rewriting the records
+     */
+    public int migrate() throws IOException {
+        return metadataMap.migrate();
+    }
+
+    /**
+     * Copies the metadata into another metadata indexer in the given document
+     * order.
+     *
+     * @param target the indexer to copy into
+     * @param docIds the document IDs in the order to copy them
+     * @return the number of records copied
+     * @throws IOException if an I/O error occurs while copying the records
+     */
+    public int copyTo(MetadataIndexer target, List<Integer> docIds) throws IOException {
+        return metadataMap.copyTo(target.metadataMap, docIds);
     }
 
     public void printAll() {
@@ -0,0 +1,41 @@
+package com.comp4321.indexers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import com.comp4321.jdbm.VersionedSerializer;
+
+/**
+ * Serializes metadata as the title, the last modification time as epoch
+ * seconds, nanoseconds and zone ID, and the page size.
+ */
+public class MetadataSerializer extends VersionedSerializer<Metadata> {
+    private static final long serialVersionUID = 1L;
+
+    public static final MetadataSerializer INSTANCE = new MetadataSerializer();
+
+    public MetadataSerializer() {
+        super(1);
+    }
+
+    @Override
+    protected void write(DataOutput out, Metadata metadata) throws IOException {
+        writeString(out, metadata.title());
+        out.writeLong(metadata.lastModified().toEpochSecond());
+        writeVarInt(out, metadata.lastModified().getNano());
+        writeString(out, metadata.lastModified().getZone().getId());
+        out.writeLong(metadata.pageSize());
+    }
+
+    @Override
+    protected Metadata read(DataInput in, int version) throws IOException {
+        final var title = readString(in);
+        final var instant = Instant.ofEpochSecond(in.readLong(), readVarInt(in));
+        final var lastModified = ZonedDateTime.ofInstant(instant, ZoneId.of(readString(in)));
+        return new Metadata(title, lastModified, in.readLong());
+    }
+}
@@ -0,0 +1,308 @@
+package com.comp4321.indexers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Computes the PageRank of the documents from the link index. The graph is
+ * loaded into compressed sparse rows of primitive arrays: the nodes are the
+ * sorted document IDs, and the incoming links of node v are the node indices
+ * {@code sources[offsets[v]]} to {@code sources[offsets[v + 1] - 1]}, so that
+ * a graph costs 4 bytes per link and no object per link or node.
+ *
+ * <p>
+ * Every iteration pulls the rank of each node from its parents, so disjoint
+ * node ranges are computed on separate threads without synchronization:
+ *
+ * <pre>
+ * rank'(v) = (1 - d) / n + d * (dangling / n + sum(rank(u) / outDegree(u)))
+ * </pre>
+ *
+ * where the sum runs over the parents u of v, and dangling is the rank of the
+ * nodes without links, which is spread over all nodes. The iteration stops once
+ * the ranks change by less than the tolerance in L1 norm.
+ */
+public class PageRank {
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    // Document IDs are mapped with a table while it takes fewer than this many
+    // entries per document with links
+    private static final int MAX_TABLE_SIZE_PER_NODE = 4;
+
+    // The static score of the highest ranked document, relative to cosine scores
+    // of at most 1
+    public static final double DEFAULT_WEIGHT = 0.1;
+
+    private final int[] docIds;
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] outDegrees;
+
+    /**
+     * The ranks of all nodes, which add up to 1.
+     *
+     * @param docIds     the document ID of each node, in ascending order
+     * @param ranks      the rank of each node
+     * @param iterations the number of iterations run
+     * @param delta      the L1 change of the ranks in the last iteration
+     */
+    public record Ranks(int[] docIds, double[] ranks, int iterations, double delta) {
+        /**
+         * Scales the ranks into static scores between 0 and 1. The ranks are
+         * heavily skewed towards a few hubs, so they are compared on a logarithmic
+         * scale relative to the rank of a node in a graph without links, 1 / n.
+         *
+         * @return the static score of each node, 1 for the highest rank
+         */
+        public double[] staticScores() {
+            final var n = ranks.length;
+            final var max = Arrays.stream(ranks).max().orElse(0);
+            final var scale = Math.log1p(max * n);
+            final var scores = new double[n];
+            for (int i = 0; i < n; ++i)
+                scores[i] = scale > 0 ? Math.log1p(ranks[i] * n) / scale : 0;
+            return scores;
+        }
+    }
+
+    private PageRank(int[] docIds, int[] offsets, int[] sources, int[] outDegrees) {
+        this.docIds = docIds;
+        this.offsets = offsets;
+        this.sources = sources;
+        this.outDegrees = outDegrees;
+    }
+
+    // A growable array of ints, so that the links are collected without boxing
+    private static final class IntList {
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    // Returns the sorted distinct values of both lists
+    private static int[] distinct(IntList first, IntList second) {
+        final var values = Arrays.copyOf(first.values, first.size + second.size);
+        System.arraycopy(second.values, 0, values, first.size, second.size);
+        Arrays.sort(values);
+        var size = 0;
+        for (int i = 0; i < values.length; ++i) {
+            if (size == 0 || values[i] != values[size - 1])
+                values[size++] = values[i];
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Loads the link graph. Links of a document to itself are ignored.
+     *
+     * @param childLinks the child links of each document, as stored by
+     *                   {@link LinkIndexer#getAllChildLinks()}
+     * @return the graph
+     */
+    public static PageRank fromLinks(Iterable<Map.Entry<Integer, Set<Integer>>> childLinks) {
+        final var keys = new IntList();
+        final var parents = new IntList();
+        final var children = new IntList();
+        var minDocId = Integer.MAX_VALUE;
+        var maxDocId = Integer.MIN_VALUE;
+        for (final var entry : childLinks) {
+            final int parent = entry.getKey();
+            keys.add(parent);
+            minDocId = Math.min(minDocId, parent);
+            maxDocId = Math.max(maxDocId, parent);
+            for (final int child : entry.getValue()) {
+                if (child == parent)
+                    continue;
+                parents.add(parent);
+                children.add(child);
+                minDocId = Math.min(minDocId, child);
+                maxDocId = Math.max(maxDocId, child);
+            }
+        }
+
+        // The URL index hands out consecutive IDs, so the IDs are usually dense
+        // enough to be mapped to the nodes with a table rather than sorted and
+        // binary searched, which is several times slower on large graphs
+        final int[] docIds;
+        final IntUnaryOperator nodeOf;
+        if (keys.size > 0 && minDocId >= 0 && maxDocId < MAX_TABLE_SIZE_PER_NODE * (long) keys.size) {
+            final var present = new BitSet(maxDocId + 1);
+            for (int i = 0; i < keys.size; ++i)
+                present.set(keys.values[i]);
+            for (int e = 0; e < children.size; ++e)
+                present.set(children.values[e]);
+            docIds = present.stream().toArray();
+
+            final var table = new int[maxDocId + 1];
+            for (int v = 0; v < docIds.length; ++v)
+                table[docIds[v]] = v;
+            nodeOf = docId -> table[docId];
+        } else {
+            docIds = distinct(keys, children);
+            nodeOf = docId -> Arrays.binarySearch(docIds, docId);
+        }
+        final var n = docIds.length;
+        final var edges = parents.size;
+
+        // Replace the document IDs by node indices and count the links per node
+        final var outDegrees = new int[n];
+        final var offsets = new int[n + 1];
+        for (int e = 0; e < edges; ++e) {
+            parents.values[e] = nodeOf.applyAsInt(parents.values[e]);
+            children.values[e] = nodeOf.applyAsInt(children.values[e]);
+            ++outDegrees[parents.values[e]];
+            ++offsets[children.values[e] + 1];
+        }
+        for (int v = 0; v < n; ++v)
+            offsets[v + 1] += offsets[v];
+
+        final var next = Arrays.copyOf(offsets, n);
+        final var sources = new int[edges];
+        for (int e = 0; e < edges; ++e)
+            sources[next[children.values[e]]++] = parents.values[e];
+        return new PageRank(docIds, offsets, sources, outDegrees);
+    }
+
+    /**
+     * Returns the number of documents in the graph.
+     *
+     * @return the number of nodes
+     */
+    public int nodeCount() {
+        return docIds.length;
+    }
+
+    /**
+     * Returns the number of links between distinct documents.
+     *
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return sources.length;
+    }
+
+    /**
+     * Computes the ranks with the default parameters.
+     *
+     * @param parallelScoring the pool the node ranges are computed on
+     * @return the ranks
+     */
+    public Ranks compute(ParallelScoring parallelScoring) {
+        return compute(DEFAULT_DAMPING, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS, parallelScoring);
+    }
+
+    /**
+     * Computes the ranks by power iteration.
+     *
+     * @param damping         the probability of following a link rather than
+     *                        jumping to a random document, from 0 to 1
+     * @param tolerance       the L1 change of the ranks below which they have
+     *                        converged
+     * @param maxIterations   the number of iterations after which the ranks are
+     *                        returned even if they have not converged
+     * @param parallelScoring the pool the node ranges are computed on, split by
+     *                        the number of links
+     * @return the ranks
+     */
+    public Ranks compute(double damping, double tolerance, int maxIterations, ParallelScoring parallelScoring) {
+        if (!(damping >= 0 && damping <= 1))
+            throw new IllegalArgumentException("damping must be between 0 and 1");
+        if (maxIterations <= 0)
+            throw new IllegalArgumentException("maxIterations must be positive");
+
+        final var n = docIds.length;
+        if (n == 0)
+            return new Ranks(docIds, new double[0], 0, 0);
+
+        // Node ranges of about the same number of links
+        final var taskCount = parallelScoring.taskCount(edgeCount() + (long) n);
+        final var bounds = new int[taskCount + 1];
+        for (int t = 1; t < taskCount; ++t) {
+            final var edge = (int) ((long) edgeCount() * t / taskCount);
+            final var node = Arrays.binarySearch(offsets, edge);
+            bounds[t] = Math.min(n, Math.max(bounds[t - 1], node >= 0 ? node : -node - 2));
+        }
+        bounds[taskCount] = n;
+
+        var ranks = new double[n];
+        var nextRanks = new double[n];
+        final var contributions = new double[n];
+        Arrays.fill(ranks, 1.0 / n);
+
+        var iterations = 0;
+        var delta = Double.POSITIVE_INFINITY;
+        while (iterations < maxIterations && delta >= tolerance) {
+            final var current = ranks;
+            final var next = nextRanks;
+
+            // The share of each node's rank passed to each child, and the rank of
+            // the nodes without children
+            final var dangling = sum(parallelScoring.invokeAll(ranges(bounds, (from, to) -> {
+                var partial = 0.0;
+                for (int u = from; u < to; ++u) {
+                    if (outDegrees[u] == 0) {
+                        contributions[u] = 0;
+                        partial += current[u];
+                    } else {
+                        contributions[u] = current[u] / outDegrees[u];
+                    }
+                }
+                return partial;
+            })));
+
+            final var base = (1 - damping) / n + damping * dangling / n;
+            delta = sum(parallelScoring.invokeAll(ranges(bounds, (from, to) -> {
+                var partial = 0.0;
+                for (int v = from; v < to; ++v) {
+                    var rank = 0.0;
+                    for (int e = offsets[v]; e < offsets[v + 1]; ++e)
+                        rank += contributions[sources[e]];
+                    next[v] = base + damping * rank;
+                    partial += Math.abs(next[v] - current[v]);
+                }
+                return partial;
+            })));
+
+            nextRanks = current;
+            ranks = next;
+            ++iterations;
+        }
+        return new Ranks(docIds, ranks, iterations, delta);
+    }
+
+    private interface RangeTask {
+        double run(int from, int to);
+    }
+
+    private static List<Supplier<Double>> ranges(int[] bounds, RangeTask task) {
+        final var tasks = new ArrayList<Supplier<Double>>(bounds.length - 1);
+        for (int t = 0; t + 1 < bounds.length; ++t) {
+            final var from = bounds[t];
+            final var to = bounds[t + 1];
+            tasks.add(() -> task.run(from, to));
+        }
+        return tasks;
+    }
+
+    // The partial sums are added in range order, so the result does not depend
+    // on the scheduling
+    private static double sum(List<Double> partials) {
+        var sum = 0.0;
+        for (final var partial : partials)
+            sum += partial;
+        return sum;
+    }
+}
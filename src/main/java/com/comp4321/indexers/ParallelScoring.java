@@ -0,0 +1,94 @@
+package com.comp4321.indexers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Runs the work units of a single query on a dedicated ForkJoin pool. Queries
+ * are split by the number of postings they read: below the cost threshold a
+ * query stays on the calling thread, above it the query gets one unit per
+ * threshold's worth of postings, up to the parallelism. The calling thread
+ * runs the first unit itself, so the pool only has parallelism - 1 threads.
+ */
+public class ParallelScoring implements AutoCloseable {
+    public static final long DEFAULT_MIN_POSTINGS_PER_TASK = 16 * 1024;
+
+    /**
+     * Scores every query on the calling thread.
+     */
+    public static final ParallelScoring SEQUENTIAL = new ParallelScoring(null, 1, Long.MAX_VALUE);
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final long minPostingsPerTask;
+
+    private ParallelScoring(ForkJoinPool pool, int parallelism, long minPostingsPerTask) {
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.minPostingsPerTask = minPostingsPerTask;
+    }
+
+    /**
+     * Creates a pool for the given number of threads per query, including the
+     * calling thread.
+     *
+     * @param parallelism        the maximum number of threads a query uses
+     * @param minPostingsPerTask the number of postings below which a query is not
+     *                           split
+     */
+    public ParallelScoring(int parallelism, long minPostingsPerTask) {
+        this(parallelism > 1 ? new ForkJoinPool(parallelism - 1) : null, parallelism, minPostingsPerTask);
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be positive");
+        if (minPostingsPerTask <= 0)
+            throw new IllegalArgumentException("minPostingsPerTask must be positive");
+    }
+
+    public ParallelScoring(int parallelism) {
+        this(parallelism, DEFAULT_MIN_POSTINGS_PER_TASK);
+    }
+
+    /**
+     * Returns the number of work units to split a query into.
+     *
+     * @param postings the number of postings the query reads
+     * @return the number of work units, 1 to run the query on the calling thread
+     */
+    public int taskCount(long postings) {
+        if (pool == null)
+            return 1;
+
+        return (int) Math.max(1, Math.min(parallelism, postings / minPostingsPerTask));
+    }
+
+    /**
+     * Runs the work units of a query, the first one on the calling thread and the
+     * others on the pool.
+     *
+     * @param tasks the work units
+     * @return the results of the work units in order
+     */
+    public <T> List<T> invokeAll(List<Supplier<T>> tasks) {
+        if (tasks.size() == 1 || pool == null)
+            return tasks.stream().map(Supplier::get).toList();
+
+        final var forked = new ArrayList<ForkJoinTask<T>>();
+        for (final var task : tasks.subList(1, tasks.size()))
+            forked.add(pool.submit(ForkJoinTask.adapt(task::get)));
+
+        final var results = new ArrayList<T>(tasks.size());
+        results.add(tasks.get(0).get());
+        for (final var task : forked)
+            results.add(task.join());
+        return results;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null)
+            pool.shutdown();
+    }
+}
@@ -0,0 +1,206 @@
+package com.comp4321.indexers;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the documents containing a phrase by intersecting sorted posting lists
+ * and sorted location arrays. The rarest word drives both intersections, the
+ * other lists and arrays are searched with galloping, and a document is
+ * accepted at its first occurrence of the phrase. Sloppy phrases, whose words
+ * only have to occur within a window in any order, are matched with a single
+ * merge over the location arrays.
+ */
+public final class PhraseMatcher {
+    private PhraseMatcher() {
+    }
+
+    /**
+     * Returns the first index of the array at or after the given index whose
+     * value is at least the target. The distance is first bounded by doubling
+     * steps, so that nearby targets are found in a few comparisons.
+     *
+     * @param values sorted values
+     * @param from   the index to start from
+     * @param target the value to search for
+     * @return the index, or the length of the array if all values are smaller
+     */
+    public static int gallop(int[] values, int from, int target) {
+        if (from >= values.length || values[from] >= target)
+            return from;
+
+        // values[low] is smaller than the target, values[high] is not (or is past
+        // the end)
+        var low = from;
+        var step = 1;
+        while (low + step < values.length && values[low + step] < target) {
+            low += step;
+            step *= 2;
+        }
+        var high = Math.min(low + step, values.length);
+        while (high - low > 1) {
+            final var mid = (low + high) >>> 1;
+            if (values[mid] < target)
+                low = mid;
+            else
+                high = mid;
+        }
+        return high;
+    }
+
+    /**
+     * Checks whether the words occur at the given offsets from a common start.
+     *
+     * @param locations the sorted locations of each word in one section of a
+     *                  document
+     * @param offsets   the offset of each word in the phrase
+     * @return true if there is a start s such that every word i is at s +
+     *         offsets[i]
+     */
+    public static boolean containsPhrase(int[][] locations, int[] offsets) {
+        // The starts are taken from the word with the fewest locations
+        var rarest = 0;
+        for (int i = 1; i < locations.length; ++i) {
+            if (locations[i].length < locations[rarest].length)
+                rarest = i;
+        }
+
+        // The starts only grow, so every array is searched from where the
+        // previous start left it
+        final var next = new int[locations.length];
+        for (final var location : locations[rarest]) {
+            final var start = location - offsets[rarest];
+            if (start < 0)
+                continue;
+
+            var matches = true;
+            for (int i = 0; i < locations.length && matches; ++i) {
+                if (i == rarest)
+                    continue;
+
+                final var target = start + offsets[i];
+                next[i] = gallop(locations[i], next[i], target);
+                // No later start can match a word without later locations
+                if (next[i] == locations[i].length)
+                    return false;
+                matches = locations[i][next[i]] == target;
+            }
+            if (matches)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the length of the shortest window containing a location of every
+     * word, with a single merge over the location arrays that always advances
+     * the array with the lowest current location.
+     *
+     * @param locations the non-empty sorted locations of each distinct word in
+     *                  one section of a document
+     * @param stopAt    a window length that is short enough, at which the merge
+     *                  stops early
+     * @return the length of the shortest window, or the first one no longer than
+     *         stopAt
+     */
+    public static int minimalWindow(int[][] locations, int stopAt) {
+        final var next = new int[locations.length];
+        var best = Integer.MAX_VALUE;
+        while (true) {
+            var lowest = 0;
+            var highestLocation = Integer.MIN_VALUE;
+            for (int i = 0; i < locations.length; ++i) {
+                final var location = locations[i][next[i]];
+                if (location < locations[lowest][next[lowest]])
+                    lowest = i;
+                highestLocation = Math.max(highestLocation, location);
+            }
+
+            best = Math.min(best, highestLocation - locations[lowest][next[lowest]] + 1);
+            // Any later window still contains the next location of the lowest array
+            if (best <= stopAt || ++next[lowest] == locations[lowest].length)
+                return best;
+        }
+    }
+
+    /**
+     * Checks whether the words occur within a window of the given length, in any
+     * order.
+     *
+     * @param locations the sorted locations of each distinct word in one section
+     *                  of a document
+     * @param window    the length of the window
+     * @return true if a window of that length contains a location of every word
+     */
+    public static boolean containsWithin(int[][] locations, int window) {
+        for (final var wordLocations : locations) {
+            if (wordLocations.length == 0)
+                return false;
+        }
+        return minimalWindow(locations, window) <= window;
+    }
+
+    /**
+     * Returns the documents containing the phrase in their title or their body.
+     *
+     * @param postings the posting list of each word of the phrase, in phrase
+     *                 order and sorted by document ID
+     * @return the IDs of the documents containing the phrase
+     */
+    public static Set<Integer> getDocumentsWithPhrase(List<List<Posting>> postings) {
+        final var offsets = IntStream.range(0, postings.size()).toArray();
+        return getDocuments(postings, locations -> containsPhrase(locations, offsets));
+    }
+
+    /**
+     * Returns the documents containing all the words within a window of the
+     * given length in their title or their body, in any order.
+     *
+     * @param postings the posting list of each distinct word, sorted by document
+     *                 ID
+     * @param window   the length of the window
+     * @return the IDs of the documents containing the words within the window
+     */
+    public static Set<Integer> getDocumentsWithin(List<List<Posting>> postings, int window) {
+        return getDocuments(postings, locations -> containsWithin(locations, window));
+    }
+
+    // Intersects the posting lists and keeps the documents that have a section
+    // whose locations match. The locations are passed in the order of the lists
+    private static Set<Integer> getDocuments(List<List<Posting>> postings, Predicate<int[][]> matches) {
+        if (postings.isEmpty() || postings.stream().anyMatch(List::isEmpty))
+            return Set.of();
+
+        // The rarest word drives the intersection of the documents
+        final var cursors = postings.stream().map(PostingCursor::new).toArray(PostingCursor[]::new);
+        final var order = IntStream.range(0, cursors.length)
+                .boxed()
+                .sorted(Comparator.comparingInt(i -> cursors[i].size()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        final var documents = new HashSet<Integer>();
+        final var titleLocations = new int[cursors.length][];
+        final var bodyLocations = new int[cursors.length][];
+        for (final var rarest = cursors[order[0]]; !rarest.isExhausted(); rarest.advance()) {
+            final var docId = rarest.docId();
+            var inAll = true;
+            for (int i = 1; i < order.length && inAll; ++i)
+                inAll = cursors[order[i]].seek(docId);
+            if (!inAll)
+                continue;
+
+            for (int i = 0; i < cursors.length; ++i) {
+                titleLocations[i] = cursors[i].posting().titleLocations();
+                bodyLocations[i] = cursors[i].posting().bodyLocations();
+            }
+            if (matches.test(titleLocations) || matches.test(bodyLocations))
+                documents.add(docId);
+        }
+        return documents;
+    }
+}
@@ -1,14 +1,19 @@
 package com.comp4321.indexers;
 
 import java.io.Serializable;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.function.IntConsumer;
+
+/**
+ * The locations of a word in the title and the body of a document. The
+ * locations are kept in sorted int arrays, which must not be modified after
+ * the posting is constructed.
+ */
+public record Posting(int docId, int[] titleLocations, int[] bodyLocations) implements Serializable {
+    private static final int[] NO_LOCATIONS = new int[0];
 
-public record Posting(Integer docId, Set<Integer> titleLocations, Set<Integer> bodyLocations) implements Serializable {
     public Posting {
-        Objects.requireNonNull(docId);
         Objects.requireNonNull(titleLocations);
         Objects.requireNonNull(bodyLocations);
         if (docId < 0)
@@ -21,31 +26,85 @@ public record Posting(Integer docId, Set<Integer> titleLocations, Set<Integer> b
      *
      * @param docId the document ID of the posting
      */
-    public Posting(Integer docId) {
-        this(docId, Set.of(), Set.of());
+    public Posting(int docId) {
+        this(docId, NO_LOCATIONS, NO_LOCATIONS);
+    }
+
+    public int titleTF() {
+        return titleLocations.length;
+    }
+
+    public int bodyTF() {
+        return bodyLocations.length;
+    }
+
+    public boolean hasTitleLocation(int location) {
+        return Arrays.binarySearch(titleLocations, location) >= 0;
+    }
+
+    public boolean hasBodyLocation(int location) {
+        return Arrays.binarySearch(bodyLocations, location) >= 0;
+    }
+
+    public void forEachTitleLocation(IntConsumer action) {
+        for (final var location : titleLocations)
+            action.accept(location);
+    }
+
+    public void forEachBodyLocation(IntConsumer action) {
+        for (final var location : bodyLocations)
+            action.accept(location);
+    }
+
+    private static int[] withLocation(int[] locations, int location) {
+        final var idx = Arrays.binarySearch(locations, location);
+        if (idx >= 0)
+            return locations;
+
+        final var insertAt = -idx - 1;
+        final var newLocations = new int[locations.length + 1];
+        System.arraycopy(locations, 0, newLocations, 0, insertAt);
+        newLocations[insertAt] = location;
+        System.arraycopy(locations, insertAt, newLocations, insertAt + 1, locations.length - insertAt);
+        return newLocations;
     }
 
     /**
      * Constructs a new Posting object with the addtional title location.
-     * 
+     *
      * @param titleLocation The location of the term within the document's title.
      * @return A new Posting object with the added title location.
      */
-    public Posting withTitleLocation(Integer titleLocation) {
-        final var newTitleLocations = new TreeSet<>(titleLocations);
-        newTitleLocations.add(titleLocation);
-        return new Posting(docId, Collections.unmodifiableSet(newTitleLocations), bodyLocations);
+    public Posting withTitleLocation(int titleLocation) {
+        return new Posting(docId, withLocation(titleLocations, titleLocation), bodyLocations);
     }
 
     /**
      * Constructs a new Posting object with the addtional body location.
-     * 
+     *
      * @param bodyLocation The location of the term within the document's body.
      * @return A new Posting object with the added body location.
      */
-    public Posting withBodyLocation(Integer bodyLocation) {
-        final var newBodyLocations = new TreeSet<>(bodyLocations);
-        newBodyLocations.add(bodyLocation);
-        return new Posting(docId, titleLocations, Collections.unmodifiableSet(newBodyLocations));
+    public Posting withBodyLocation(int bodyLocation) {
+        return new Posting(docId, titleLocations, withLocation(bodyLocations, bodyLocation));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Posting other
+                && docId == other.docId
+                && Arrays.equals(titleLocations, other.titleLocations)
+                && Arrays.equals(bodyLocations, other.bodyLocations);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(docId, Arrays.hashCode(titleLocations), Arrays.hashCode(bodyLocations));
+    }
+
+    @Override
+    public String toString() {
+        return "Posting[docId=" + docId + ", titleLocations=" + Arrays.toString(titleLocations)
+                + ", bodyLocations=" + Arrays.toString(bodyLocations) + "]";
     }
 }
@@ -0,0 +1,116 @@
+package com.comp4321.indexers;
+
+import java.util.List;
+
+/**
+ * A position in a posting list sorted by document ID, together with the idf of
+ * the word and the bound of its contribution to a score. Lists are matched
+ * against each other by seeking forward, without reading the skipped postings.
+ */
+public class PostingCursor {
+    private final List<Posting> postings;
+    private final double idf;
+    private final double bound;
+    private int position = 0;
+
+    PostingCursor(List<Posting> postings, double idf, double bound) {
+        this.postings = postings;
+        this.idf = idf;
+        this.bound = bound;
+    }
+
+    public PostingCursor(List<Posting> postings) {
+        this(postings, 0, 0);
+    }
+
+    double idf() {
+        return idf;
+    }
+
+    double bound() {
+        return bound;
+    }
+
+    int size() {
+        return postings.size() - position;
+    }
+
+    /**
+     * Returns a cursor over the postings of the documents in a range, from the
+     * start of the list.
+     *
+     * @param fromDocId the first document of the range
+     * @param toDocId   the document after the range
+     * @return the cursor over the range
+     */
+    PostingCursor slice(int fromDocId, int toDocId) {
+        return new PostingCursor(postings.subList(lowerBound(fromDocId), lowerBound(toDocId)), idf, bound);
+    }
+
+    // The index of the first posting of a document at or after the given one
+    private int lowerBound(int docId) {
+        var low = 0;
+        var high = postings.size();
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (postings.get(mid).docId() < docId)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    int lastDocId() {
+        return postings.get(postings.size() - 1).docId();
+    }
+
+    public boolean isExhausted() {
+        return position >= postings.size();
+    }
+
+    public Posting posting() {
+        return postings.get(position);
+    }
+
+    public int docId() {
+        return postings.get(position).docId();
+    }
+
+    public void advance() {
+        ++position;
+    }
+
+    /**
+     * Moves forward to the first posting of a document at or after the given one.
+     * The distance is first bounded by doubling steps, so that short skips stay
+     * cheap on long lists.
+     *
+     * @param docId the document to move to
+     * @return true if the list contains a posting of the document
+     */
+    public boolean seek(int docId) {
+        if (isExhausted() || docId() >= docId)
+            return !isExhausted() && docId() == docId;
+
+        // postings[low] is before the document, postings[high] is not (or is past
+        // the end)
+        var low = position;
+        var step = 1;
+        while (low + step < postings.size() && postings.get(low + step).docId() < docId) {
+            low += step;
+            step *= 2;
+        }
+        var high = Math.min(low + step, postings.size());
+        while (high - low > 1) {
+            final var mid = (low + high) >>> 1;
+            if (postings.get(mid).docId() < docId)
+                low = mid;
+            else
+                high = mid;
+        }
+
+        position = high;
+        return !isExhausted() && docId() == docId;
+    }
+}
@@ -1,91 +1,265 @@
 package com.comp4321.indexers;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
+import com.comp4321.jdbm.ObjectCache;
 import com.comp4321.jdbm.SafeHTree;
 
 public class PostingIndex {
     private final String indexName;
 
     // Inverted index is maintained in sorted order for efficient search
-    private final SafeHTree<Integer, Set<Integer>> forwardIndexMap;
+    private final SafeHTree<Integer, TermVector> forwardIndexMap;
     private final SafeHTree<Integer, List<Posting>> invertedIndexMap;
 
+    // Removing a document only tombstones its postings: docId -> word IDs whose
+    // posting for the document is stale until the next purge. The tombstones are
+    // mirrored in memory, with a bitmap of the affected documents so that the
+    // postings of all other documents are checked with a single bit test.
+    private final SafeHTree<Integer, Set<Integer>> tombstoneMap;
+    private final Map<Integer, Set<Integer>> tombstones = new HashMap<>();
+    private final BitSet tombstonedDocs = new BitSet();
+
+    // While bulk loading, postings are collected here and written in one pass
+    private BulkPostingBuilder bulkBuilder = null;
+
     public PostingIndex(
             String indexName,
-            SafeHTree<Integer, Set<Integer>> forwardIndex,
-            SafeHTree<Integer, List<Posting>> invertedIndex) {
+            SafeHTree<Integer, TermVector> forwardIndex,
+            SafeHTree<Integer, List<Posting>> invertedIndex,
+            SafeHTree<Integer, Set<Integer>> tombstoneMap) {
         this.indexName = indexName;
         this.forwardIndexMap = forwardIndex;
         this.invertedIndexMap = invertedIndex;
+        this.tombstoneMap = tombstoneMap;
+
+        for (final var entry : tombstoneMap) {
+            tombstones.put(entry.getKey(), entry.getValue());
+            tombstonedDocs.set(entry.getKey());
+        }
+    }
+
+    boolean isLive(int wordId, int docId) {
+        if (!tombstonedDocs.get(docId))
+            return true;
+
+        final var staleWords = tombstones.get(docId);
+        return staleWords == null || !staleWords.contains(wordId);
+    }
+
+    private void putTombstones(Integer docId, Set<Integer> staleWords) throws IOException {
+        if (staleWords.isEmpty()) {
+            tombstoneMap.remove(docId);
+            tombstones.remove(docId);
+            tombstonedDocs.clear(docId);
+        } else {
+            tombstoneMap.put(docId, staleWords);
+            tombstones.put(docId, staleWords);
+            tombstonedDocs.set(docId);
+        }
     }
 
     /**
-     * Adds a document to the posting index.
+     * Adds a document to the posting index. If the document is already indexed,
+     * only the differences to the indexed version are written: postings that did
+     * not change are left alone, changed postings are overwritten and the
+     * postings of words that were removed are tombstoned.
+     *
+     * <p>
+     * The postings hold absolute locations, so inserting or removing a word
+     * shifts the locations of all later words of its field and rewrites their
+     * posting lists. Only edits that keep the other locations, such as changes at
+     * the end of a field or replacing a word by another, write less than the
+     * whole document.
      *
      * @param docId    The ID of the document
      * @param titleIds The list of word IDs in the document's title in order
      * @param bodyIds  The list of word IDs in the document's body in order
+     * @return true if any posting of the document changed, even if its term
+     *         vector did not, such as when a word moved between title and body
      * @throws IOException if an I/O error occurs.
      */
-    public void addDocument(Integer docId, List<Integer> titleIds, List<Integer> bodyIds) throws IOException {
-        // Remove the document if it already exists
-        removeDocument(docId);
+    public boolean addDocument(Integer docId, List<Integer> titleIds, List<Integer> bodyIds) throws IOException {
+        if (bulkBuilder != null) {
+            addDocumentBulk(docId, titleIds, bodyIds);
+            return true;
+        }
 
-        // Update the forward index
-        final var totalWords = new HashSet<Integer>(titleIds);
-        totalWords.addAll(bodyIds);
-        forwardIndexMap.put(docId, totalWords);
+        // Update the forward index with the term frequencies, so that the
+        // frequencies of a document can be read without touching the postings
+        final var frequencies = new HashMap<Integer, Integer>();
+        titleIds.forEach(wordId -> frequencies.merge(wordId, 1, Integer::sum));
+        bodyIds.forEach(wordId -> frequencies.merge(wordId, 1, Integer::sum));
+        final var vector = TermVector.of(frequencies);
+        final var oldVector = forwardIndexMap.get(docId);
+        var changed = !vector.equals(oldVector);
+        if (changed)
+            forwardIndexMap.put(docId, vector);
+
+        // The posting lists hold a posting of this document for the words of the
+        // indexed version and for the words tombstoned by earlier versions
+        final var oldWords = oldVector == null ? Set.<Integer>of() : oldVector.wordIdSet();
+        final var staleWords = new HashSet<>(tombstones.getOrDefault(docId, Set.of()));
 
         // Update the inverted index
-        final var titleLocations = new HashMap<Integer, Set<Integer>>();
-        for (int i = 0; i < titleIds.size(); ++i) {
-            final var titleId = titleIds.get(i);
-            final var locations = titleLocations.getOrDefault(titleId, new HashSet<>());
-            locations.add(i);
-            titleLocations.put(titleId, locations);
+        final var titleLocations = collectLocations(titleIds);
+        final var bodyLocations = collectLocations(bodyIds);
+
+        final var none = new int[0];
+        for (final var wordId : frequencies.keySet()) {
+            final var postingToAdd = new Posting(docId, titleLocations.getOrDefault(wordId, none),
+                    bodyLocations.getOrDefault(wordId, none));
+            final var hasPosting = oldWords.contains(wordId) || staleWords.remove(wordId);
+
+            final var oldPostings = invertedIndexMap.get(wordId);
+            final var postingIdx = oldPostings == null ? -1
+                    : Collections.binarySearch(oldPostings, postingToAdd, Comparator.comparingInt(Posting::docId));
+            if (postingIdx >= 0) {
+                // A posting of a previous version is overwritten, any other
+                // existing posting is an error
+                if (!hasPosting)
+                    throw new IndexerException(
+                            "Posting already exists for word ID " + wordId + " and document ID " + docId);
+                if (oldPostings.get(postingIdx).equals(postingToAdd))
+                    continue;
+            }
+
+            // The cached list is shared with the readers, so a copy is changed
+            final var postings = oldPostings == null ? new ArrayList<Posting>() : new ArrayList<>(oldPostings);
+            if (postingIdx >= 0)
+                postings.set(postingIdx, postingToAdd);
+            else
+                postings.add(-postingIdx - 1, postingToAdd);
+            invertedIndexMap.put(wordId, Collections.unmodifiableList(postings));
+            changed = true;
         }
 
-        final var bodyLocations = new HashMap<Integer, Set<Integer>>();
-        for (int i = 0; i < bodyIds.size(); ++i) {
-            final var bodyId = bodyIds.get(i);
-            final var locations = bodyLocations.getOrDefault(bodyId, new HashSet<>());
-            locations.add(i);
-            bodyLocations.put(bodyId, locations);
+        // Words that are no longer in the document are tombstoned, and stay so if
+        // they were only in an earlier version
+        for (final var wordId : oldWords) {
+            if (!frequencies.containsKey(wordId))
+                staleWords.add(wordId);
         }
+        if (!staleWords.equals(tombstones.getOrDefault(docId, Set.of()))) {
+            putTombstones(docId, staleWords);
+            changed = true;
+        }
+        return changed;
+    }
 
-        for (final var wordId : totalWords) {
-            final var postingToAdd = new Posting(docId, titleLocations.getOrDefault(wordId, new HashSet<>()),
-                    bodyLocations.getOrDefault(wordId, new HashSet<>()));
-
-            var postings = invertedIndexMap.get(wordId);
-            if (postings == null)
-                postings = new ArrayList<>();
-
-            final var postingIdx = Collections.binarySearch(postings, postingToAdd,
-                    Comparator.comparing(Posting::docId));
-            if (0 <= postingIdx && postingIdx < postings.size()) {
-                // It is an error if the posting already exists
-                throw new IndexerException(
-                        "Posting already exists for word ID " + wordId + " and document ID " + docId);
-            } else {
-                postings.add(-postingIdx - 1, postingToAdd);
-            }
-            invertedIndexMap.put(wordId, postings);
+    /**
+     * Groups the locations of the words in a sequence by word ID, in ascending
+     * order.
+     */
+    private static Map<Integer, int[]> collectLocations(List<Integer> wordIds) {
+        final var counts = new HashMap<Integer, Integer>();
+        wordIds.forEach(wordId -> counts.merge(wordId, 1, Integer::sum));
+
+        final var locations = new HashMap<Integer, int[]>();
+        counts.forEach((wordId, count) -> locations.put(wordId, new int[count]));
+        counts.clear();
+        for (int i = 0; i < wordIds.size(); ++i) {
+            final var wordId = wordIds.get(i);
+            locations.get(wordId)[counts.merge(wordId, 1, Integer::sum) - 1] = i;
+        }
+        return locations;
+    }
+
+    private void addDocumentBulk(Integer docId, List<Integer> titleIds, List<Integer> bodyIds) throws IOException {
+        // The postings are only written when the load finishes, so a document
+        // can neither replace an indexed one nor be added twice
+        if (tombstonedDocs.get(docId) || forwardIndexMap.get(docId) != null)
+            throw new IndexerException("Document ID " + docId + " is already indexed, cannot bulk load it");
+
+        final var titleLocations = collectLocations(titleIds);
+        final var bodyLocations = collectLocations(bodyIds);
+
+        final var frequencies = new HashMap<Integer, Integer>();
+        titleLocations.forEach((wordId, locations) -> frequencies.merge(wordId, locations.length, Integer::sum));
+        bodyLocations.forEach((wordId, locations) -> frequencies.merge(wordId, locations.length, Integer::sum));
+        forwardIndexMap.put(docId, TermVector.of(frequencies));
+
+        final var none = new int[0];
+        for (final var wordId : frequencies.keySet())
+            bulkBuilder.add(wordId, docId, titleLocations.getOrDefault(wordId, none),
+                    bodyLocations.getOrDefault(wordId, none));
+    }
+
+    /**
+     * Switches the index to bulk loading. Until {@link #finishBulkLoad()} is
+     * called, added documents only update the forward index, while their postings
+     * are sorted externally and appended to the posting lists at the end, so that
+     * each posting list is written once instead of once per document. Only new
+     * documents can be added, and the posting lists do not reflect them until the
+     * load finishes.
+     *
+     * @param spillDirectory the directory for the temporary sorted runs
+     * @param memoryBudget   the approximate number of bytes of postings buffered
+     *                       in memory before a run is spilled
+     */
+    public void beginBulkLoad(Path spillDirectory, long memoryBudget) {
+        if (bulkBuilder != null)
+            throw new IndexerException(indexName + " is already bulk loading");
+
+        bulkBuilder = new BulkPostingBuilder(spillDirectory, memoryBudget);
+    }
+
+    public boolean isBulkLoading() {
+        return bulkBuilder != null;
+    }
+
+    /**
+     * Merges the postings collected since {@link #beginBulkLoad(Path, long)} into
+     * the posting lists and leaves bulk loading.
+     *
+     * @throws IOException if an I/O error occurs while merging the postings
+     */
+    public void finishBulkLoad() throws IOException {
+        if (bulkBuilder == null)
+            throw new IndexerException(indexName + " is not bulk loading");
+
+        try (final var builder = bulkBuilder) {
+            bulkBuilder = null;
+            builder.finish((wordId, postings) -> {
+                // Bulk loaded documents are new, so their postings are merged
+                // with any existing list without duplicates
+                final var existing = invertedIndexMap.get(wordId);
+                invertedIndexMap.put(wordId,
+                        Collections.unmodifiableList(existing == null ? postings : mergeByDocId(existing, postings)));
+            });
+        }
+    }
+
+    private static List<Posting> mergeByDocId(List<Posting> left, List<Posting> right) {
+        final var merged = new ArrayList<Posting>(left.size() + right.size());
+        var leftIdx = 0;
+        var rightIdx = 0;
+        while (leftIdx < left.size() && rightIdx < right.size()) {
+            if (left.get(leftIdx).docId() < right.get(rightIdx).docId())
+                merged.add(left.get(leftIdx++));
+            else
+                merged.add(right.get(rightIdx++));
         }
+        merged.addAll(left.subList(leftIdx, left.size()));
+        merged.addAll(right.subList(rightIdx, right.size()));
+        return merged;
     }
 
     /**
-     * Removes a document from the posting index.
+     * Removes a document from the posting index. The postings of the document
+     * are only tombstoned and are no longer returned, but they stay in the
+     * posting lists until {@link #purgeDeleted()} is called.
      *
      * @param docId the ID of the document to be removed
      * @throws IOException if an I/O error occurs while removing the document
@@ -97,21 +271,41 @@ public class PostingIndex {
             return;
         forwardIndexMap.remove(docId);
 
-        // Remove the document from the inverted index
-        for (final var wordId : forwardWords) {
-            final var postings = invertedIndexMap.get(wordId);
-            if (postings == null)
-                throw new IndexerException("Inconsistent index");
+        // Tombstone the postings of the document
+        final var staleWords = new HashSet<>(tombstones.getOrDefault(docId, Set.of()));
+        staleWords.addAll(forwardWords.wordIdSet());
+        putTombstones(docId, staleWords);
+    }
 
-            final var postingIdx = Collections.binarySearch(postings, new Posting(docId),
-                    Comparator.comparing(Posting::docId));
-            if (0 <= postingIdx && postingIdx < postings.size()) {
-                postings.remove(postingIdx);
-                invertedIndexMap.put(wordId, postings);
-            } else {
+    /**
+     * Physically removes all tombstoned postings, rewriting each affected
+     * posting list once.
+     *
+     * @return the number of postings removed
+     * @throws IOException if an I/O error occurs while rewriting the postings
+     */
+    public int purgeDeleted() throws IOException {
+        // Group the tombstones by word, so each posting list is rewritten once
+        final var docsByWord = new HashMap<Integer, Set<Integer>>();
+        tombstones.forEach((docId, staleWords) -> staleWords
+                .forEach(wordId -> docsByWord.computeIfAbsent(wordId, key -> new HashSet<>()).add(docId)));
+
+        var removed = 0;
+        for (final var entry : docsByWord.entrySet()) {
+            final var oldPostings = invertedIndexMap.get(entry.getKey());
+            if (oldPostings == null)
                 throw new IndexerException("Inconsistent index");
-            }
+
+            final var postings = oldPostings.stream()
+                    .filter(posting -> !entry.getValue().contains(posting.docId()))
+                    .toList();
+            removed += oldPostings.size() - postings.size();
+            invertedIndexMap.put(entry.getKey(), postings);
         }
+
+        for (final var docId : List.copyOf(tombstones.keySet()))
+            putTombstones(docId, Set.of());
+        return removed;
     }
 
     /**
@@ -122,26 +316,45 @@ public class PostingIndex {
      * @throws IOException if an I/O error occurs while retrieving the forward words
      */
     public Set<Integer> getForwardWords(Integer docId) throws IOException {
-        final var words = forwardIndexMap.get(docId);
-        if (words == null)
-            return Set.of();
+        return getTermVector(docId).wordIdSet();
+    }
 
-        return words;
+    /**
+     * Retrieves the word IDs of a document with their term frequencies, sorted by
+     * frequency in descending order.
+     *
+     * @param docId the document ID
+     * @return the term vector of the document, empty if it is not indexed
+     * @throws IOException if an I/O error occurs while retrieving the vector
+     */
+    public TermVector getTermVector(Integer docId) throws IOException {
+        final var vector = forwardIndexMap.get(docId);
+        if (vector == null)
+            return TermVector.EMPTY;
+
+        return vector;
     }
 
     /**
      * Retrieves the list of postings associated with a given word ID.
      *
      * @param wordId the ID of the word
-     * @return the list of postings associated with the word ID
+     * @return the unmodifiable list of postings associated with the word ID
      * @throws IOException if an I/O error occurs while retrieving the postings
      */
     public List<Posting> getPostings(Integer wordId) throws IOException {
         final var postings = invertedIndexMap.get(wordId);
         if (postings == null)
             return List.of();
+        if (tombstonedDocs.isEmpty())
+            return postings;
 
-        return postings;
+        // Only copy the list if it actually contains tombstoned postings
+        final var hasStale = postings.stream().anyMatch(posting -> !isLive(wordId, posting.docId()));
+        if (!hasStale)
+            return postings;
+
+        return postings.stream().filter(posting -> isLive(wordId, posting.docId())).toList();
     }
 
     /**
@@ -159,7 +372,7 @@ public class PostingIndex {
             throw new IndexerException(indexName + " Inverted Index does not contain word ID " + wordId);
 
         final var postingIdx = Collections.binarySearch(postings, new Posting(docId),
-                Comparator.comparing(Posting::docId));
+                Comparator.comparingInt(Posting::docId));
         if (postingIdx < 0 || postingIdx >= postings.size())
             throw new IndexerException(indexName + " Inverted Index does not contain posting for word ID " + wordId
                     + " and document ID " + docId);
@@ -175,48 +388,21 @@ public class PostingIndex {
      * @throws IOException if an I/O error occurs
      */
     public int getDF(Integer wordId) throws IOException {
-        final var postings = invertedIndexMap.get(wordId);
-        if (postings == null)
-            return 0;
-        return postings.size();
+        return getPostings(wordId).size();
     }
 
-    private List<Posting> mergePhrase(List<Posting> prevPostings, List<Posting> curPostings) {
-        final var mergedPostings = new ArrayList<Posting>();
-
-        var prevIdx = 0;
-        var curIdx = 0;
-        while (prevIdx < prevPostings.size() && curIdx < curPostings.size()) {
-            final var prevPosting = prevPostings.get(prevIdx);
-            final var curPosting = curPostings.get(curIdx);
-
-            if (prevPosting.docId() < curPosting.docId()) {
-                ++prevIdx;
-            } else if (prevPosting.docId() > curPosting.docId()) {
-                ++curIdx;
-            } else {
-                final var docId = prevPosting.docId();
-                final var newTitleLocations = prevPosting.titleLocations()
-                        .stream()
-                        .map(loc -> loc + 1)
-                        .collect(Collectors.toSet());
-                newTitleLocations.retainAll(curPosting.titleLocations());
-
-                final var newBodyLocations = prevPosting.bodyLocations()
-                        .stream()
-                        .map(loc -> loc + 1)
-                        .collect(Collectors.toSet());
-                newBodyLocations.retainAll(curPosting.bodyLocations());
-
-                if (!newTitleLocations.isEmpty() || !newBodyLocations.isEmpty())
-                    mergedPostings.add(new Posting(docId, newTitleLocations, newBodyLocations));
-
-                ++prevIdx;
-                ++curIdx;
-            }
-        }
-
-        return mergedPostings;
+    /**
+     * Retrieves the posting lists of the given words.
+     *
+     * @param wordIds the IDs of the words
+     * @return the posting list of each word, in order
+     * @throws IOException if an I/O error occurs while retrieving the postings
+     */
+    public List<List<Posting>> getPostingLists(List<Integer> wordIds) throws IOException {
+        final var postingLists = new ArrayList<List<Posting>>(wordIds.size());
+        for (final var wordId : wordIds)
+            postingLists.add(getPostings(wordId));
+        return postingLists;
     }
 
     /**
@@ -228,27 +414,90 @@ public class PostingIndex {
      * @throws IOException if an I/O error occurs while retrieving the postings
      */
     public Set<Integer> getDocumentsWithPhrase(List<Integer> phrase) throws IOException {
-        final var phrasePostings = phrase.stream().map(wordId -> {
-            try {
-                return getPostings(wordId);
-            } catch (IOException e) {
-                throw new IndexerException("An error occurred while retrieving postings", e);
-            }
-        }).toList();
+        return getDocumentsWithPhrase(phrase, 0);
+    }
 
-        if (phrasePostings.isEmpty())
-            return Set.of();
+    /**
+     * Retrieves the set of documents that contain the given phrase, allowing the
+     * given number of extra positions between its words. A sloppy phrase matches
+     * when all its distinct words occur in any order within a window of its
+     * length plus the slop.
+     *
+     * @param phrase the list of integers representing the phrase
+     * @param slop   the number of extra positions, 0 for an exact phrase
+     * @return a set of integers representing the document IDs that contain the
+     *         phrase
+     * @throws IOException if an I/O error occurs while retrieving the postings
+     */
+    public Set<Integer> getDocumentsWithPhrase(List<Integer> phrase, int slop) throws IOException {
+        if (slop == 0)
+            return PhraseMatcher.getDocumentsWithPhrase(getPostingLists(phrase));
 
-        // We don't use Stream::reduce because mergePhrase is not associative
-        var mergedPostings = phrasePostings.get(0);
-        for (int i = 1; i < phrasePostings.size(); ++i)
-            mergedPostings = mergePhrase(mergedPostings, phrasePostings.get(i));
-        return mergedPostings.stream().map(Posting::docId).collect(Collectors.toSet());
+        final var distinctWords = phrase.stream().distinct().toList();
+        return PhraseMatcher.getDocumentsWithin(getPostingLists(distinctWords), phrase.size() + slop);
+    }
+
+    /**
+     * Returns all posting lists, read one record at a time.
+     *
+     * @return the posting lists by word ID
+     */
+    public Iterable<Map.Entry<Integer, List<Posting>>> getPostingLists() {
+        return invertedIndexMap;
+    }
+
+    /**
+     * Returns the term vectors of all documents, read one record at a time.
+     *
+     * @return the term vectors by document ID
+     */
+    public Iterable<Map.Entry<Integer, TermVector>> getTermVectors() {
+        return forwardIndexMap;
+    }
+
+    /**
+     * Returns the caches of the indexes by index name.
+     *
+     * @return the caches
+     */
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        final var caches = new LinkedHashMap<String, ObjectCache<?, ?>>();
+        caches.put(indexName + " Forward Index", forwardIndexMap.getCache());
+        caches.put(indexName + " Inverted Index", invertedIndexMap.getCache());
+        caches.values().removeIf(cache -> cache == null);
+        return caches;
+    }
+
+    /**
+     * Rewrites the indexes in the current record format.
+     *
+     * @return the number of records rewritten
+     * @throws IOException if an I/O error occurs while rewriting the records
+     */
+    public int migrate() throws IOException {
+        return forwardIndexMap.migrate() + invertedIndexMap.migrate() + tombstoneMap.migrate();
+    }
+
+    /**
+     * Copies the index into another posting index. The per-document records are
+     * copied in the given document order and the posting lists in the given word
+     * order, so that the records read together are stored together.
+     *
+     * @param target  the index to copy into
+     * @param docIds  the document IDs in the order to copy them
+     * @param wordIds the word IDs in the order to copy them
+     * @return the number of records copied
+     * @throws IOException if an I/O error occurs while copying the records
+     */
+    public int copyTo(PostingIndex target, List<Integer> docIds, List<Integer> wordIds) throws IOException {
+        return forwardIndexMap.copyTo(target.forwardIndexMap, docIds)
+                + tombstoneMap.copyTo(target.tombstoneMap, docIds)
+                + invertedIndexMap.copyTo(target.invertedIndexMap, wordIds);
     }
 
     public void printAll() {
         System.out.println(indexName + " Forward Index:");
-        for (Map.Entry<Integer, Set<Integer>> entry : forwardIndexMap) {
+        for (Map.Entry<Integer, TermVector> entry : forwardIndexMap) {
             System.out.println(entry.getKey() + " -> " + entry.getValue());
         }
 
@@ -256,5 +505,10 @@ public class PostingIndex {
         for (Map.Entry<Integer, List<Posting>> entry : invertedIndexMap) {
             System.out.println(entry.getKey() + " -> " + entry.getValue());
         }
+
+        System.out.println(indexName + " Tombstones:");
+        for (Map.Entry<Integer, Set<Integer>> entry : tombstoneMap) {
+            System.out.println(entry.getKey() + " -> " + entry.getValue());
+        }
     }
 }
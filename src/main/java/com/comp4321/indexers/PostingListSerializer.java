@@ -0,0 +1,50 @@
+package com.comp4321.indexers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.comp4321.jdbm.VersionedSerializer;
+
+/**
+ * Serializes a posting list sorted by document ID as the number of postings
+ * followed by, for each posting, the gap from the previous document ID and the
+ * gap-encoded title and body locations. The lists are read as unmodifiable,
+ * since they may be cached.
+ */
+public class PostingListSerializer extends VersionedSerializer<List<Posting>> {
+    private static final long serialVersionUID = 1L;
+
+    public static final PostingListSerializer INSTANCE = new PostingListSerializer();
+
+    public PostingListSerializer() {
+        super(1);
+    }
+
+    @Override
+    protected void write(DataOutput out, List<Posting> postings) throws IOException {
+        writeVarInt(out, postings.size());
+        var prevDocId = 0;
+        for (final var posting : postings) {
+            writeVarInt(out, posting.docId() - prevDocId);
+            writeSortedInts(out, posting.titleLocations());
+            writeSortedInts(out, posting.bodyLocations());
+            prevDocId = posting.docId();
+        }
+    }
+
+    @Override
+    protected List<Posting> read(DataInput in, int version) throws IOException {
+        final var size = readVarInt(in);
+        final var postings = new ArrayList<Posting>(size);
+        var docId = 0;
+        for (int i = 0; i < size; ++i) {
+            docId += readVarInt(in);
+            postings.add(new Posting(docId, readSortedInts(in), readSortedInts(in)));
+        }
+        return Collections.unmodifiableList(postings);
+    }
+}
@@ -0,0 +1,143 @@
+package com.comp4321.indexers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Boosts the documents whose query words occur close together. The boost only
+ * reranks the best candidates by their plain scores, so the locations are read
+ * for a bounded number of documents: the candidates are visited in document
+ * order and the posting lists of the query words are merged to them once.
+ *
+ * <p>
+ * The proximity of a section of a document is the fraction of the query words
+ * beyond the first that it contains, times the number of those words over the
+ * length of the shortest window containing them. A section with all the words
+ * next to each other has a proximity of 1, and the score of its document is
+ * multiplied by 1 + weight.
+ */
+public class ProximityBoost {
+    public static final double DEFAULT_WEIGHT = 0.5;
+    public static final int DEFAULT_DEPTH = 100;
+
+    public static final ProximityBoost NONE = new ProximityBoost(0, 0);
+    public static final ProximityBoost DEFAULT = new ProximityBoost(DEFAULT_WEIGHT, DEFAULT_DEPTH);
+
+    private final double weight;
+    private final int depth;
+
+    /**
+     * Constructs a boost.
+     *
+     * @param weight the boost of a document with all the query words next to each
+     *               other, 0 to disable the boost
+     * @param depth  the number of candidates that are reranked when fewer results
+     *               are requested
+     */
+    public ProximityBoost(double weight, int depth) {
+        if (!(weight >= 0))
+            throw new IllegalArgumentException("weight must be non-negative");
+        if (depth < 0)
+            throw new IllegalArgumentException("depth must be non-negative");
+
+        this.weight = weight;
+        this.depth = depth;
+    }
+
+    /**
+     * Checks whether a query is boosted.
+     *
+     * @param words the number of distinct query words in the index
+     * @return true if the query has several words and the boost is enabled
+     */
+    public boolean appliesTo(int words) {
+        return weight > 0 && words > 1;
+    }
+
+    /**
+     * Returns the number of candidates to select for a page.
+     *
+     * @param k the number of results of the page, including the skipped ones
+     * @return the number of candidates to rerank
+     */
+    public int candidates(int k) {
+        return Math.max(k, depth);
+    }
+
+    /**
+     * Returns the IDs of the candidates in ascending order, the order in which
+     * their postings are read.
+     *
+     * @param candidates the sorted candidates
+     * @return the document IDs of the candidates
+     */
+    public static int[] sortedDocIds(TopScores candidates) {
+        final var docIds = new int[candidates.size()];
+        for (int rank = 0; rank < docIds.length; ++rank)
+            docIds[rank] = candidates.docId(rank);
+        Arrays.sort(docIds);
+        return docIds;
+    }
+
+    /**
+     * Computes the proximity of the query words in one section of a document.
+     *
+     * @param locations the sorted locations of each query word in the section,
+     *                  empty for the words it does not contain
+     * @param words     the number of distinct query words
+     * @return the proximity, between 0 and 1
+     */
+    public static double proximity(int[][] locations, int words) {
+        final var present = Arrays.stream(locations).filter(wordLocations -> wordLocations.length > 0)
+                .toArray(int[][]::new);
+        if (present.length < 2)
+            return 0;
+
+        final var window = PhraseMatcher.minimalWindow(present, present.length);
+        return (double) (present.length - 1) / (words - 1) * present.length / window;
+    }
+
+    /**
+     * Reranks the candidates by their boosted scores.
+     *
+     * @param candidates the sorted candidates, selected by their plain scores
+     * @param postings   the posting list of each distinct query word, sorted by
+     *                   document ID, which must contain the postings of the
+     *                   candidates
+     * @param k          the number of documents to select
+     * @return the sorted selection of the best boosted candidates
+     */
+    public TopScores rerank(TopScores candidates, List<List<Posting>> postings, int k) {
+        final var scoreByRank = new double[candidates.size()];
+        final var docIds = new int[candidates.size()];
+        for (int rank = 0; rank < docIds.length; ++rank) {
+            docIds[rank] = candidates.docId(rank);
+            scoreByRank[rank] = candidates.score(rank);
+        }
+        final var ranks = IntStream.range(0, docIds.length)
+                .boxed()
+                .sorted((i, j) -> Integer.compare(docIds[i], docIds[j]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        final var cursors = postings.stream().map(PostingCursor::new).toArray(PostingCursor[]::new);
+        final var titleLocations = new int[cursors.length][];
+        final var bodyLocations = new int[cursors.length][];
+        final var top = new TopScores(k);
+        for (final var rank : ranks) {
+            final var docId = docIds[rank];
+            for (int i = 0; i < cursors.length; ++i) {
+                final var posting = cursors[i].seek(docId) ? cursors[i].posting() : new Posting(docId);
+                titleLocations[i] = posting.titleLocations();
+                bodyLocations[i] = posting.bodyLocations();
+            }
+
+            final var proximity = Math.max(proximity(titleLocations, cursors.length),
+                    proximity(bodyLocations, cursors.length));
+            top.offer(docId, scoreByRank[rank] * (1 + weight * proximity));
+        }
+        top.sort();
+        return top;
+    }
+}
@@ -0,0 +1,35 @@
+package com.comp4321.indexers;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The collection statistics a query is scored with. A partition of the
+ * collection scores its documents with the statistics of the whole collection,
+ * so that its scores can be merged with the scores of the other partitions.
+ *
+ * @param totalDocuments      the number of documents in the collection
+ * @param totalTitleLength    the number of words in all titles
+ * @param totalBodyLength     the number of words in all bodies
+ * @param documentFrequencies the document frequency of each stemmed query word
+ */
+public record QueryStatistics(int totalDocuments, long totalTitleLength, long totalBodyLength,
+        Map<String, Integer> documentFrequencies) {
+    public QueryStatistics {
+        Objects.requireNonNull(documentFrequencies);
+        if (totalDocuments < 0 || totalTitleLength < 0 || totalBodyLength < 0)
+            throw new IllegalArgumentException("Statistics must be non-negative");
+    }
+
+    /**
+     * Prepares a scoring model for these statistics.
+     *
+     * @param model the model
+     * @return the scorer of the query
+     */
+    public ScoringModel.Scorer scorer(ScoringModel model) {
+        final var documents = Math.max(totalDocuments, 1);
+        return model.scorer(totalDocuments, (double) totalTitleLength / documents,
+                (double) totalBodyLength / documents);
+    }
+}
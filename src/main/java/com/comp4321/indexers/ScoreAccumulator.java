@@ -0,0 +1,177 @@
+package com.comp4321.indexers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Sums the scores of documents in an open-addressing hash table over primitive
+ * arrays, so that scoring a posting allocates nothing. An accumulator can be
+ * cleared and reused for the next query.
+ */
+public class ScoreAccumulator {
+    @FunctionalInterface
+    public interface DocumentScoreConsumer {
+        void accept(int docId, double score);
+    }
+
+    @FunctionalInterface
+    public interface DocumentScoreFunction {
+        double apply(int docId, double score);
+    }
+
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    // Linear probing, kept at most half full
+    private int[] docIds;
+    private double[] scores;
+    private int shift;
+    private int size = 0;
+
+    public ScoreAccumulator() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Constructs an empty accumulator.
+     *
+     * @param expectedSize the number of documents expected, so that the table
+     *                     does not have to grow while scoring
+     */
+    public ScoreAccumulator(int expectedSize) {
+        allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) * 2));
+    }
+
+    private void allocate(int capacity) {
+        docIds = new int[capacity];
+        scores = new double[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        Arrays.fill(docIds, EMPTY);
+    }
+
+    private int slotOf(int docId) {
+        // Document IDs are mostly consecutive, so spread them over the table with
+        // the high bits of a multiplicative hash
+        final var mask = docIds.length - 1;
+        var slot = (docId * 0x9E3779B9) >>> shift;
+        while (docIds[slot] != EMPTY && docIds[slot] != docId)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Adds to the score of a document, which starts at zero.
+     *
+     * @param docId the document ID, which must be non-negative
+     * @param score the score to add
+     */
+    public void add(int docId, double score) {
+        if (docId < 0)
+            throw new IllegalArgumentException("Document IDs must be non-negative");
+
+        var slot = slotOf(docId);
+        if (docIds[slot] == EMPTY) {
+            if (2 * (size + 1) > docIds.length) {
+                grow();
+                slot = slotOf(docId);
+            }
+            docIds[slot] = docId;
+            ++size;
+        }
+        scores[slot] += score;
+    }
+
+    private void grow() {
+        final var oldDocIds = docIds;
+        final var oldScores = scores;
+        allocate(docIds.length * 2);
+        for (int i = 0; i < oldDocIds.length; ++i) {
+            if (oldDocIds[i] != EMPTY) {
+                final var slot = slotOf(oldDocIds[i]);
+                docIds[slot] = oldDocIds[i];
+                scores[slot] = oldScores[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int docId) {
+        return docId >= 0 && docIds[slotOf(docId)] == docId;
+    }
+
+    /**
+     * Returns the score of a document.
+     *
+     * @param docId the document ID
+     * @return the accumulated score, or zero if nothing was added for the
+     *         document
+     */
+    public double get(int docId) {
+        if (docId < 0)
+            return 0.0;
+
+        final var slot = slotOf(docId);
+        return docIds[slot] == docId ? scores[slot] : 0.0;
+    }
+
+    public void forEach(DocumentScoreConsumer action) {
+        for (int i = 0; i < docIds.length; ++i) {
+            if (docIds[i] != EMPTY)
+                action.accept(docIds[i], scores[i]);
+        }
+    }
+
+    /**
+     * Replaces the score of every document with the result of the function.
+     *
+     * @param function the function of the document ID and its current score
+     */
+    public void replaceAll(DocumentScoreFunction function) {
+        for (int i = 0; i < docIds.length; ++i) {
+            if (docIds[i] != EMPTY)
+                scores[i] = function.apply(docIds[i], scores[i]);
+        }
+    }
+
+    /**
+     * Removes the documents that do not match the filter.
+     *
+     * @param filter the documents to keep
+     */
+    public void retainAll(IntPredicate filter) {
+        final var retained = new ScoreAccumulator(size);
+        forEach((docId, score) -> {
+            if (filter.test(docId))
+                retained.add(docId, score);
+        });
+        docIds = retained.docIds;
+        scores = retained.scores;
+        shift = retained.shift;
+        size = retained.size;
+    }
+
+    /**
+     * Removes all documents, keeping the table for the next query.
+     */
+    public void clear() {
+        Arrays.fill(docIds, EMPTY);
+        Arrays.fill(scores, 0.0);
+        size = 0;
+    }
+
+    /**
+     * Copies the scores into a map.
+     *
+     * @return a map of document IDs to their scores
+     */
+    public Map<Integer, Double> toMap() {
+        final var map = new HashMap<Integer, Double>(size * 2);
+        forEach(map::put);
+        return map;
+    }
+}
@@ -0,0 +1,102 @@
+package com.comp4321.indexers;
+
+import java.util.Optional;
+
+/**
+ * Ranks documents by summing one weight per matching posting, times the idf of
+ * the word, and normalizing the sum per document. The per-document inputs are
+ * precomputed at index time and read from the document columns, so that every
+ * model scores a posting with the same reads.
+ */
+public interface ScoringModel {
+    /**
+     * The cosine-normalized TF-IDF the index was built for, see
+     * {@link TFIDFScoring}.
+     */
+    public static final ScoringModel TF_IDF = TFIDFScoring.INSTANCE;
+
+    /**
+     * BM25 over the title and the body with the default parameters, see
+     * {@link BM25Scoring}.
+     */
+    public static final ScoringModel BM25 = BM25Scoring.DEFAULT;
+
+    public static final ScoringModel DEFAULT = TF_IDF;
+
+    /**
+     * Returns the name the model is selected by.
+     *
+     * @return the name
+     */
+    public String name();
+
+    /**
+     * Prepares the model for the statistics of the collection a query is scored
+     * with.
+     *
+     * @param totalDocuments     the number of documents in the collection
+     * @param averageTitleLength the average number of words in a title
+     * @param averageBodyLength  the average number of words in a body
+     * @return the scorer of the query
+     */
+    public Scorer scorer(int totalDocuments, double averageTitleLength, double averageBodyLength);
+
+    /**
+     * Scores the postings of one query.
+     */
+    public interface Scorer {
+        /**
+         * Returns the weight of a word, which multiplies the weights of its postings.
+         *
+         * @param df the number of documents containing the word
+         * @return the weight of the word
+         */
+        public double idf(int df);
+
+        /**
+         * Returns the weight of a posting before the idf is applied.
+         *
+         * @param titleTF     the frequency of the word in the title
+         * @param bodyTF      the frequency of the word in the body
+         * @param tfMax       the highest frequency of a word in the document
+         * @param titleLength the number of words in the title
+         * @param bodyLength  the number of words in the body
+         * @return the weight of the posting
+         */
+        public double weight(int titleTF, int bodyTF, int tfMax, int titleLength, int bodyLength);
+
+        /**
+         * Normalizes the sum of the weights of a document.
+         *
+         * @param score the sum of the weights times the idfs
+         * @param norm  the length of the document vector, as precomputed for TF-IDF
+         * @return the score of the document
+         */
+        public double normalize(double score, double norm);
+
+        /**
+         * Bounds the normalized contribution of a word to any score, for the
+         * MaxScore selection.
+         *
+         * @param idf       the weight of the word
+         * @param maxImpact the highest TF-IDF weight of the word's postings divided by
+         *                  the document norm, as precomputed at index time
+         * @return the bound, or positive infinity if there is none
+         */
+        public double bound(double idf, double maxImpact);
+    }
+
+    /**
+     * Returns the built-in model with the given name.
+     *
+     * @param name the name, case-insensitive
+     * @return the model, if there is one with the name
+     */
+    public static Optional<ScoringModel> forName(String name) {
+        if (name.equalsIgnoreCase(TF_IDF.name()))
+            return Optional.of(TF_IDF);
+        if (name.equalsIgnoreCase(BM25.name()))
+            return Optional.of(BM25);
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,486 @@
+package com.comp4321.indexers;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.htmlparser.beans.LinkBean;
+import org.htmlparser.util.ParserException;
+
+import com.comp4321.SearchEngine;
+import com.comp4321.SearchResult;
+import com.comp4321.IRUtilities.Crawler;
+import com.comp4321.IRUtilities.StopStem;
+import com.comp4321.jdbm.ObjectCache;
+import com.comp4321.query.Query;
+
+import me.tongfei.progressbar.ProgressBarBuilder;
+import me.tongfei.progressbar.ProgressBarStyle;
+
+/**
+ * Partitions the documents across several indexes, each in its own record
+ * manager files. A document belongs to the shard chosen by the hash of its URL,
+ * and is known to the other shards only as the target of their links.
+ *
+ * Each shard is written by its own thread, so the shards crawl and commit in
+ * parallel. Queries are fanned out to all shards and scored with the
+ * statistics of the whole collection, so that the results of the shards can be
+ * merged. The document IDs of the merged results interleave the local IDs of
+ * the shards.
+ */
+public class ShardedIndexer implements AutoCloseable, SearchEngine {
+    private final List<Indexer> shards;
+    // JDBM record managers are not thread-safe, so all writes of a shard run on
+    // its own thread
+    private final List<ExecutorService> writers;
+    private final ExecutorService queryPool;
+
+    private final StopStem stopStem = new StopStem();
+
+    /**
+     * Constructs a sharded indexer over the given shards. The order of the shards
+     * must be the same every time they are opened.
+     *
+     * @param shards the shards, which are closed with this indexer
+     */
+    public ShardedIndexer(List<Indexer> shards) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("At least one shard is required");
+
+        this.shards = List.copyOf(shards);
+        this.writers = shards.stream().map(shard -> Executors.newSingleThreadExecutor()).toList();
+        this.queryPool = Executors.newFixedThreadPool(shards.size());
+    }
+
+    /**
+     * Opens the shards stored in the files named {@code name-0} to
+     * {@code name-(shardCount - 1)}.
+     *
+     * @param name       the name of the indexes
+     * @param shardCount the number of shards
+     * @param policy     when the shards commit while crawling
+     * @return the sharded indexer
+     * @throws IOException if a shard cannot be opened
+     */
+    public static ShardedIndexer open(String name, int shardCount, CommitPolicy policy) throws IOException {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("shardCount must be positive");
+
+        final var shards = new ArrayList<Indexer>();
+        try {
+            for (int i = 0; i < shardCount; ++i)
+                shards.add(new Indexer(shardName(name, i), policy));
+        } catch (IOException | RuntimeException e) {
+            for (final var shard : shards) {
+                try {
+                    shard.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            throw e;
+        }
+        return new ShardedIndexer(shards);
+    }
+
+    /**
+     * Deletes the on-disk indexes of all shards.
+     *
+     * @param name       the name of the indexes
+     * @param shardCount the number of shards
+     * @throws IOException if the index files cannot be deleted
+     */
+    public static void deleteIndexes(String name, int shardCount) throws IOException {
+        for (int i = 0; i < shardCount; ++i)
+            Indexer.deleteIndexes(shardName(name, i));
+    }
+
+    /**
+     * Compacts the on-disk indexes of all shards.
+     *
+     * @param name       the name of the indexes
+     * @param shardCount the number of shards
+     * @return the result of each shard, in shard order
+     * @throws IOException if a shard cannot be compacted
+     * @see Indexer#compact()
+     */
+    public static List<CompactionResult> compact(String name, int shardCount) throws IOException {
+        final var results = new ArrayList<CompactionResult>();
+        for (int i = 0; i < shardCount; ++i)
+            results.add(Indexer.compact(shardName(name, i)));
+        return results;
+    }
+
+    private static String shardName(String name, int shard) {
+        return name + "-" + shard;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    int shardOf(String url) {
+        return Math.floorMod(url.hashCode(), shards.size());
+    }
+
+    private int toGlobalId(int shard, int localId) {
+        return localId * shards.size() + shard;
+    }
+
+    @FunctionalInterface
+    private interface ShardTask<T> {
+        T apply(Indexer shard) throws IOException, ParserException;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexerException("Interrupted while waiting for a shard", e);
+        } catch (ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof IOException ioException)
+                throw ioException;
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IndexerException("Shard task failed", cause);
+        }
+    }
+
+    /**
+     * Runs the task on every shard in parallel and waits for all of them, even if
+     * some fail, so that no shard is left running when this returns.
+     */
+    private <T> List<T> onEachShard(ShardTask<T> task, boolean write) throws IOException {
+        final var futures = new ArrayList<Future<T>>();
+        for (int i = 0; i < shards.size(); ++i) {
+            final var shard = shards.get(i);
+            final var executor = write ? writers.get(i) : queryPool;
+            futures.add(executor.submit(() -> task.apply(shard)));
+        }
+
+        final var results = new ArrayList<T>();
+        Exception failure = null;
+        for (final var future : futures) {
+            try {
+                results.add(await(future));
+            } catch (IOException | RuntimeException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+
+        if (failure instanceof IOException ioException)
+            throw ioException;
+        if (failure instanceof RuntimeException runtimeException)
+            throw runtimeException;
+        return results;
+    }
+
+    private Future<Boolean> submitDocument(String url) {
+        final var shard = shardOf(url);
+        return writers.get(shard).submit(() -> shards.get(shard).indexDocument(new Crawler(url)));
+    }
+
+    /**
+     * Indexes a document in the shard of its URL.
+     *
+     * @param crawler the crawler of the document
+     * @return true if the document was indexed, or false if it is already indexed
+     *         and not modified
+     * @throws IOException if an I/O error occurs while indexing
+     */
+    public boolean indexDocument(Crawler crawler) throws IOException {
+        final var shard = shardOf(crawler.url);
+        return await(writers.get(shard).submit(() -> shards.get(shard).indexDocument(crawler)));
+    }
+
+    /**
+     * Performs a breadth-first search starting from the specified base URL and
+     * visits a maximum number of pages. The links of a page are fetched and
+     * indexed by their shards in parallel.
+     *
+     * @param baseURL  The base URL to start the search from.
+     * @param maxPages The maximum number of pages to visit.
+     */
+    public void bfs(String baseURL, int maxPages) throws IOException {
+        onEachShard(shard -> {
+            shard.startCrawl();
+            return null;
+        }, true);
+
+        try {
+            crawl(baseURL, maxPages);
+        } finally {
+            onEachShard(shard -> {
+                shard.finishCrawl();
+                return null;
+            }, true);
+        }
+    }
+
+    private void crawl(String baseURL, int maxPages) throws IOException {
+        final var queue = new ArrayDeque<String>();
+        final var visited = new HashSet<String>();
+
+        try (final var pb = new ProgressBarBuilder()
+                .setTaskName("Crawl")
+                .setInitialMax(maxPages)
+                .setStyle(ProgressBarStyle.ASCII)
+                .build()) {
+            visited.add(baseURL);
+            if (await(submitDocument(baseURL)))
+                queue.add(baseURL);
+            pb.step();
+
+            final var lb = new LinkBean();
+            while (!queue.isEmpty() && visited.size() < maxPages) {
+                lb.setURL(queue.remove());
+
+                // Submit all new links before waiting, so that the shards index
+                // them in parallel. The queue keeps the order of the links
+                final var pending = new LinkedHashMap<String, Future<Boolean>>();
+                for (final var link : lb.getLinks()) {
+                    if (visited.size() >= maxPages)
+                        break;
+
+                    final var url = link.toString();
+                    if (visited.add(url))
+                        pending.put(url, submitDocument(url));
+                }
+
+                for (final var entry : pending.entrySet()) {
+                    if (await(entry.getValue()))
+                        queue.add(entry.getKey());
+                    pb.step();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed documents in all shards.
+     *
+     * @return the number of documents
+     * @throws IOException if a shard cannot be read
+     */
+    public int getDocumentCount() throws IOException {
+        return onEachShard(Indexer::getDocumentCount, false).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Returns the committers of the shards, in shard order.
+     *
+     * @return the group committers
+     */
+    public List<GroupCommitter> getCommitters() {
+        return shards.stream().map(Indexer::getCommitter).toList();
+    }
+
+    /**
+     * Returns the total number of commits of all shards, which advances whenever
+     * any shard commits.
+     */
+    @Override
+    public long getGeneration() {
+        return shards.stream().mapToLong(Indexer::getGeneration).sum();
+    }
+
+    @Override
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        final var caches = new LinkedHashMap<String, ObjectCache<?, ?>>();
+        for (int i = 0; i < shards.size(); ++i) {
+            final var shard = i;
+            shards.get(i).getCaches().forEach((name, cache) -> caches.put("Shard " + shard + " " + name, cache));
+        }
+        return caches;
+    }
+
+    /**
+     * Sets where the work units of large queries are run. The shards share the
+     * pool, so its parallelism caps the threads of all shards together.
+     *
+     * @param parallelScoring the pool for the work units
+     */
+    public void setParallelScoring(ParallelScoring parallelScoring) {
+        shards.forEach(shard -> shard.setParallelScoring(parallelScoring));
+    }
+
+    /**
+     * Sets how every shard reranks its page by the proximity of the query words.
+     * The boost only depends on the locations within a document, so the pages of
+     * the shards can still be merged by score.
+     *
+     * @param proximityBoost the boost
+     */
+    public void setProximityBoost(ProximityBoost proximityBoost) {
+        shards.forEach(shard -> shard.setProximityBoost(proximityBoost));
+    }
+
+    @Override
+    public Optional<String> stemWord(String word) {
+        return stopStem.stemWord(word);
+    }
+
+    // Gathers the collection statistics of the query words from all shards
+    private QueryStatistics gatherStatistics(Set<String> words) throws IOException {
+        return gatherStemStatistics(words.stream()
+                .map(this::stemWord)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toSet()));
+    }
+
+    private QueryStatistics gatherStemStatistics(Set<String> stems) throws IOException {
+        final var shardStats = onEachShard(shard -> shard.getQueryStatistics(stems), false);
+        final var totalDocuments = shardStats.stream().mapToInt(QueryStatistics::totalDocuments).sum();
+        final var totalTitleLength = shardStats.stream().mapToLong(QueryStatistics::totalTitleLength).sum();
+        final var totalBodyLength = shardStats.stream().mapToLong(QueryStatistics::totalBodyLength).sum();
+        final var documentFrequencies = new HashMap<String, Integer>();
+        shardStats.forEach(stats -> stats.documentFrequencies().forEach(
+                (stem, df) -> documentFrequencies.merge(stem, df, Integer::sum)));
+        return new QueryStatistics(totalDocuments, totalTitleLength, totalBodyLength, documentFrequencies);
+    }
+
+    // A page is linked from pages in any shard, but each link is only stored in
+    // the shard of the linking page
+    private SearchResult withAllParentLinks(SearchResult result, Map<String, Set<String>> parentURLs) {
+        return new SearchResult(result.score(), result.title(), result.url(), result.lastModified(),
+                result.pageSize(), result.keywords(), parentURLs.getOrDefault(result.url(), result.parentLinks()),
+                result.childLinks());
+    }
+
+    private Map<String, Set<String>> getParentURLs(Collection<SearchResult> results) throws IOException {
+        final var urls = results.stream().map(SearchResult::url).collect(Collectors.toSet());
+        final var parentURLs = new HashMap<String, Set<String>>();
+        for (final var shardParents : onEachShard(shard -> shard.getParentURLs(urls), false))
+            shardParents.forEach((url, parents) -> parentURLs.computeIfAbsent(url, key -> new HashSet<>())
+                    .addAll(parents));
+        return parentURLs;
+    }
+
+    /**
+     * Searches all shards for the given set of words and phrase. The shards score
+     * their documents with the document frequencies of the whole collection, but
+     * normalize them with their local document lengths.
+     *
+     * @param words  the set of words to search for (words in the phrase are
+     *               included)
+     * @param phrase the phrase to search for (if any)
+     * @return a map of global docIds and their corresponding search results
+     * @throws IOException if an I/O error occurs while searching a shard
+     */
+    @Override
+    public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase) throws IOException {
+        final var stats = gatherStatistics(words);
+        final var shardResults = onEachShard(shard -> shard.search(words, phrase, stats), false);
+        final var results = new HashMap<Integer, SearchResult>();
+        for (int i = 0; i < shardResults.size(); ++i) {
+            for (final var entry : shardResults.get(i).entrySet())
+                results.put(toGlobalId(i, entry.getKey()), entry.getValue());
+        }
+        if (results.isEmpty())
+            return results;
+
+        final var parentURLs = getParentURLs(results.values());
+        results.replaceAll((docId, result) -> withAllParentLinks(result, parentURLs));
+        return results;
+    }
+
+    /**
+     * Searches all shards and returns one page of the merged results. Every shard
+     * only hydrates its own top offset + k results.
+     */
+    @Override
+    public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, int offset, int k)
+            throws IOException {
+        final var stats = gatherStatistics(words);
+        return mergePages(onEachShard(shard -> shard.search(words, phrase, slop, stats, 0, offset + k), false),
+                offset, k);
+    }
+
+    /**
+     * Matches a boolean query on all shards and returns one page of the merged
+     * results. Every shard plans the query against its own postings, so a clause
+     * that is rare in one shard drives the evaluation there.
+     */
+    @Override
+    public List<SearchResult> search(Query query, ScoringModel model, int offset, int k) throws IOException {
+        final var stats = gatherStemStatistics(query.scoredStems());
+        return mergePages(onEachShard(shard -> shard.search(query, model, stats, 0, offset + k), false), offset, k);
+    }
+
+    // Merges the top pages of the shards by score
+    private List<SearchResult> mergePages(List<List<SearchResult>> shardPages, int offset, int k)
+            throws IOException {
+        final var page = shardPages.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(SearchResult::score, Comparator.reverseOrder()))
+                .skip(offset)
+                .limit(k)
+                .toList();
+        if (page.isEmpty())
+            return page;
+
+        final var parentURLs = getParentURLs(page);
+        return page.stream().map(result -> withAllParentLinks(result, parentURLs)).toList();
+    }
+
+    /**
+     * Computes the statistics of all shards in parallel and merges them.
+     *
+     * @return the merged statistics
+     * @throws IOException if a shard cannot be read
+     */
+    @Override
+    public Optional<IndexStatistics> getStatistics() throws IOException {
+        final var statistics = onEachShard(shard -> shard.getStatistics().orElseThrow(), false);
+        final var merged = statistics.get(0);
+        statistics.stream().skip(1).forEach(merged::merge);
+        return Optional.of(merged);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writers.forEach(ExecutorService::shutdown);
+        queryPool.shutdown();
+
+        IOException failure = null;
+        for (final var writer : writers) {
+            try {
+                writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (final var shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+}
@@ -0,0 +1,84 @@
+package com.comp4321.indexers;
+
+/**
+ * Scores documents by the cosine similarity of their TF-IDF vectors with the
+ * query, as the index has always done:
+ *
+ * <pre>
+ * weight = (a * title_tf + (1 - a) * body_tf) / tfMax
+ * score  = sum(weight * log(N / df)) / ||doc||
+ * </pre>
+ *
+ * where a is {@link InvertedIndex#TITLE_MATCH_MULTIPLIER}, and ||doc|| is the
+ * length of the document vector precomputed at index time. The query length is
+ * ignored since it does not change the ranking.
+ */
+public final class TFIDFScoring implements ScoringModel {
+    static final TFIDFScoring INSTANCE = new TFIDFScoring();
+
+    private TFIDFScoring() {
+    }
+
+    /**
+     * Returns the weight of a posting before the idf and the norm are applied.
+     *
+     * @param titleTF the frequency of the word in the title
+     * @param bodyTF  the frequency of the word in the body
+     * @param tfMax   the highest frequency of a word in the document
+     * @return the weight of the posting
+     */
+    public static double termWeight(int titleTF, int bodyTF, int tfMax) {
+        return (InvertedIndex.TITLE_MATCH_MULTIPLIER * titleTF
+                + (1 - InvertedIndex.TITLE_MATCH_MULTIPLIER) * bodyTF) / tfMax;
+    }
+
+    /**
+     * Returns the idf of a word. The base of the logarithm is irrelevant since we
+     * are only interested in the relative scores, which are not affected by the
+     * base.
+     *
+     * @param df             the number of documents containing the word
+     * @param totalDocuments the number of documents in the collection
+     * @return the idf
+     */
+    public static double idf(int df, int totalDocuments) {
+        return Math.log10(((double) totalDocuments) / df);
+    }
+
+    private record QueryScorer(int totalDocuments) implements Scorer {
+        @Override
+        public double idf(int df) {
+            return TFIDFScoring.idf(df, totalDocuments);
+        }
+
+        @Override
+        public double weight(int titleTF, int bodyTF, int tfMax, int titleLength, int bodyLength) {
+            return termWeight(titleTF, bodyTF, tfMax);
+        }
+
+        @Override
+        public double normalize(double score, double norm) {
+            return score / norm;
+        }
+
+        @Override
+        public double bound(double idf, double maxImpact) {
+            return idf * maxImpact;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "tfidf";
+    }
+
+    @Override
+    public Scorer scorer(int totalDocuments, double averageTitleLength, double averageBodyLength) {
+        return new QueryScorer(totalDocuments);
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+}
@@ -0,0 +1,102 @@
+package com.comp4321.indexers;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The forward index entry of a document: its distinct word IDs and their term
+ * frequencies (title and body combined), sorted by frequency in descending
+ * order and then by word ID.
+ */
+public record TermVector(int[] wordIds, int[] frequencies) implements Serializable {
+    public static final TermVector EMPTY = new TermVector(new int[0], new int[0]);
+
+    public TermVector {
+        Objects.requireNonNull(wordIds);
+        Objects.requireNonNull(frequencies);
+        if (wordIds.length != frequencies.length)
+            throw new IllegalArgumentException("wordIds and frequencies must have the same length");
+    }
+
+    /**
+     * Builds a term vector from word frequencies, sorting the terms by frequency.
+     *
+     * @param frequencies the frequency of each word ID
+     * @return the term vector
+     */
+    public static TermVector of(Map<Integer, Integer> frequencies) {
+        final var entries = frequencies.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .toList();
+
+        final var wordIds = new int[entries.size()];
+        final var tfs = new int[entries.size()];
+        for (int i = 0; i < entries.size(); ++i) {
+            wordIds[i] = entries.get(i).getKey();
+            tfs[i] = entries.get(i).getValue();
+        }
+        return new TermVector(wordIds, tfs);
+    }
+
+    public int size() {
+        return wordIds.length;
+    }
+
+    /**
+     * Returns the highest term frequency, which is the first one.
+     *
+     * @return the highest term frequency, or 0 if the vector is empty
+     */
+    public int maxFrequency() {
+        return frequencies.length == 0 ? 0 : frequencies[0];
+    }
+
+    /**
+     * Returns the word IDs as a set.
+     *
+     * @return the set of word IDs
+     */
+    public Set<Integer> wordIdSet() {
+        final var set = new HashSet<Integer>(wordIds.length * 2);
+        for (final var wordId : wordIds)
+            set.add(wordId);
+        return set;
+    }
+
+    /**
+     * Returns the word IDs and their frequencies, iterating in descending order of
+     * frequency.
+     *
+     * @return the word ID to frequency map
+     */
+    public Map<Integer, Integer> toMap() {
+        final var map = new LinkedHashMap<Integer, Integer>(wordIds.length * 2);
+        for (int i = 0; i < wordIds.length; ++i)
+            map.put(wordIds[i], frequencies[i]);
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TermVector other
+                && Arrays.equals(wordIds, other.wordIds)
+                && Arrays.equals(frequencies, other.frequencies);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(wordIds) + Arrays.hashCode(frequencies);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,42 @@
+package com.comp4321.indexers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.comp4321.jdbm.VersionedSerializer;
+
+/**
+ * Serializes a term vector as the number of terms followed by the word ID and
+ * frequency of each term, in the order of the vector.
+ */
+public class TermVectorSerializer extends VersionedSerializer<TermVector> {
+    private static final long serialVersionUID = 1L;
+
+    public static final TermVectorSerializer INSTANCE = new TermVectorSerializer();
+
+    public TermVectorSerializer() {
+        super(1);
+    }
+
+    @Override
+    protected void write(DataOutput out, TermVector vector) throws IOException {
+        writeVarInt(out, vector.size());
+        for (int i = 0; i < vector.size(); ++i) {
+            writeVarInt(out, vector.wordIds()[i]);
+            writeVarInt(out, vector.frequencies()[i]);
+        }
+    }
+
+    @Override
+    protected TermVector read(DataInput in, int version) throws IOException {
+        final var size = readVarInt(in);
+        final var wordIds = new int[size];
+        final var frequencies = new int[size];
+        for (int i = 0; i < size; ++i) {
+            wordIds[i] = readVarInt(in);
+            frequencies[i] = readVarInt(in);
+        }
+        return new TermVector(wordIds, frequencies);
+    }
+}
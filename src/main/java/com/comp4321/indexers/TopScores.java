@@ -0,0 +1,149 @@
+package com.comp4321.indexers;
+
+/**
+ * Selects the documents with the highest scores with a bounded min-heap over
+ * primitive arrays, so that only the selected documents need to be turned into
+ * search results. Among equal scores the lower document ID ranks higher, which
+ * makes the selection deterministic.
+ */
+public class TopScores {
+    private final int[] docIds;
+    private final double[] scores;
+    private int size = 0;
+    private boolean sorted = false;
+
+    /**
+     * Constructs an empty selection.
+     *
+     * @param capacity the number of documents to select
+     */
+    public TopScores(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must be non-negative");
+
+        docIds = new int[capacity];
+        scores = new double[capacity];
+    }
+
+    // Whether the document at i ranks below the document at j
+    private boolean ranksBelow(int i, int j) {
+        return scores[i] < scores[j] || (scores[i] == scores[j] && docIds[i] > docIds[j]);
+    }
+
+    private void swap(int i, int j) {
+        final var docId = docIds[i];
+        docIds[i] = docIds[j];
+        docIds[j] = docId;
+        final var score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    private void siftDown(int i, int heapSize) {
+        while (true) {
+            final var left = 2 * i + 1;
+            final var right = left + 1;
+            var lowest = i;
+            if (left < heapSize && ranksBelow(left, lowest))
+                lowest = left;
+            if (right < heapSize && ranksBelow(right, lowest))
+                lowest = right;
+            if (lowest == i)
+                return;
+            swap(i, lowest);
+            i = lowest;
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            final var parent = (i - 1) / 2;
+            if (!ranksBelow(i, parent))
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    public int capacity() {
+        return docIds.length;
+    }
+
+    public boolean isFull() {
+        return size == docIds.length;
+    }
+
+    /**
+     * Returns the score a document has to exceed to be selected once the
+     * selection is full.
+     *
+     * @return the lowest selected score, or negative infinity if the selection
+     *         is not full
+     */
+    public double threshold() {
+        return isFull() && size > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Offers a document to the selection. It is kept if the selection is not full
+     * or if it ranks above the lowest selected document, which is then dropped.
+     *
+     * @param docId the document ID
+     * @param score the score of the document
+     */
+    public void offer(int docId, double score) {
+        if (sorted)
+            throw new IllegalStateException("The selection is already sorted");
+
+        if (!isFull()) {
+            docIds[size] = docId;
+            scores[size] = score;
+            siftUp(size++);
+            return;
+        }
+        if (size == 0 || score < scores[0] || (score == scores[0] && docId > docIds[0]))
+            return;
+
+        docIds[0] = docId;
+        scores[0] = score;
+        siftDown(0, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the selected documents from the highest to the lowest score. No more
+     * documents can be offered afterwards.
+     */
+    public void sort() {
+        if (sorted)
+            return;
+
+        // Heap sort: moving the lowest document to the end of the shrinking heap
+        // leaves the array in descending order
+        for (int end = size - 1; end > 0; --end) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        sorted = true;
+    }
+
+    public int docId(int rank) {
+        checkRank(rank);
+        return docIds[rank];
+    }
+
+    public double score(int rank) {
+        checkRank(rank);
+        return scores[rank];
+    }
+
+    private void checkRank(int rank) {
+        if (!sorted)
+            throw new IllegalStateException("The selection is not sorted");
+        if (rank < 0 || rank >= size)
+            throw new IndexOutOfBoundsException(rank);
+    }
+}
@@ -2,9 +2,14 @@ package com.comp4321.indexers;
 
 import java.io.IOException;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
+import com.comp4321.jdbm.IntegerSerializer;
+import com.comp4321.jdbm.ObjectCache;
 import com.comp4321.jdbm.SafeBTree;
+import com.comp4321.jdbm.StringSerializer;
 
 import jdbm.RecordManager;
 
@@ -12,6 +17,8 @@ public class URLIndexer {
     public static final String URL_TO_DOCID = "urlToDocId";
     public static final String DOCID_TO_URL = "docIdToUrl";
 
+    private static final int CACHE_ENTRIES = 10_000;
+
     private final SafeBTree<String, Integer> urlToDocIdMap;
     private final SafeBTree<Integer, String> docIdToUrlMap;
 
@@ -21,8 +28,10 @@ public class URLIndexer {
     }
 
     public URLIndexer(RecordManager recman) throws IOException {
-        this(new SafeBTree<>(recman, URL_TO_DOCID, Comparator.<String>naturalOrder()),
-                new SafeBTree<>(recman, DOCID_TO_URL, Comparator.<Integer>naturalOrder()));
+        this(new SafeBTree<>(recman, URL_TO_DOCID, Comparator.<String>naturalOrder(),
+                StringSerializer.INSTANCE, IntegerSerializer.INSTANCE, ObjectCache.withMaxEntries(CACHE_ENTRIES)),
+                new SafeBTree<>(recman, DOCID_TO_URL, Comparator.<Integer>naturalOrder(),
+                        IntegerSerializer.INSTANCE, StringSerializer.INSTANCE, ObjectCache.withMaxEntries(CACHE_ENTRIES)));
     }
 
     /**
@@ -47,6 +56,18 @@ public class URLIndexer {
         return docId;
     }
 
+    /**
+     * Retrieves the document ID associated with the given URL without creating
+     * one.
+     *
+     * @param url the URL of the document
+     * @return the document ID, if the URL is indexed
+     * @throws IOException if an I/O error occurs while retrieving the ID
+     */
+    public Optional<Integer> getDocumentId(String url) throws IOException {
+        return Optional.ofNullable(urlToDocIdMap.find(url));
+    }
+
     /**
      * Retrieves the URL associated with the given document ID.
      *
@@ -58,6 +79,60 @@ public class URLIndexer {
         return Optional.ofNullable(docIdToUrlMap.find(docId));
     }
 
+    /**
+     * Returns the number of URLs in the index, including the URLs that are
+     * only known as link targets.
+     *
+     * @return the number of URLs
+     */
+    public int getURLCount() {
+        return docIdToUrlMap.size();
+    }
+
+    /**
+     * Returns all the document IDs and their URLs in ascending order of the
+     * document IDs.
+     *
+     * @return the document IDs and their URLs
+     */
+    public Iterable<Map.Entry<Integer, String>> getURLs() {
+        return docIdToUrlMap;
+    }
+
+    /**
+     * Rewrites the indexes in the current record format.
+     *
+     * @return the number of records rewritten
+     * @throws IOException if an I/O error occurs while rewriting the records
+     */
+    /**
+     * Returns the caches of the indexes by index name.
+     *
+     * @return the caches
+     */
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        final var caches = new LinkedHashMap<String, ObjectCache<?, ?>>();
+        caches.put(URL_TO_DOCID, urlToDocIdMap.getCache());
+        caches.put(DOCID_TO_URL, docIdToUrlMap.getCache());
+        caches.values().removeIf(cache -> cache == null);
+        return caches;
+    }
+
+    public int migrate() throws IOException {
+        return urlToDocIdMap.migrate() + docIdToUrlMap.migrate();
+    }
+
+    /**
+     * Copies the indexes into another URL indexer in key order.
+     *
+     * @param target the indexer to copy into
+     * @return the number of records copied
+     * @throws IOException if an I/O error occurs while copying the records
+     */
+    public int copyTo(URLIndexer target) throws IOException {
+        return urlToDocIdMap.copyTo(target.urlToDocIdMap) + docIdToUrlMap.copyTo(target.docIdToUrlMap);
+    }
+
     public void printAll() {
         System.out.println("URL_TO_DOCID:");
         for (final var urlTuple : urlToDocIdMap)
@@ -2,9 +2,14 @@ package com.comp4321.indexers;
 
 import java.io.IOException;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
+import com.comp4321.jdbm.IntegerSerializer;
+import com.comp4321.jdbm.ObjectCache;
 import com.comp4321.jdbm.SafeBTree;
+import com.comp4321.jdbm.StringSerializer;
 
 import jdbm.RecordManager;
 
@@ -12,6 +17,9 @@ public class WordIndexer {
     public static final String WORD_TO_ID = "wordToId";
     public static final String ID_TO_WORD = "idToWord";
 
+    // Every token of a crawled page and every query word looks up its ID
+    private static final int CACHE_ENTRIES = 50_000;
+
     private final SafeBTree<String, Integer> wordToIdMap;
     private final SafeBTree<Integer, String> idToWordMap;
 
@@ -21,8 +29,10 @@ public class WordIndexer {
     }
 
     public WordIndexer(RecordManager recman) throws IOException {
-        this(new SafeBTree<>(recman, WORD_TO_ID, Comparator.<String>naturalOrder()),
-                new SafeBTree<>(recman, ID_TO_WORD, Comparator.<Integer>naturalOrder()));
+        this(new SafeBTree<>(recman, WORD_TO_ID, Comparator.<String>naturalOrder(),
+                StringSerializer.INSTANCE, IntegerSerializer.INSTANCE, ObjectCache.withMaxEntries(CACHE_ENTRIES)),
+                new SafeBTree<>(recman, ID_TO_WORD, Comparator.<Integer>naturalOrder(),
+                        IntegerSerializer.INSTANCE, StringSerializer.INSTANCE, ObjectCache.withMaxEntries(CACHE_ENTRIES)));
     }
 
     /**
@@ -46,6 +56,18 @@ public class WordIndexer {
         return id;
     }
 
+    /**
+     * Retrieves the ID associated with the given word without creating one, so
+     * that queries do not grow the index.
+     *
+     * @param word the word to retrieve the ID for
+     * @return the ID associated with the word, if it exists
+     * @throws IOException if an error occurs while accessing the wordToIdMap
+     */
+    public Optional<Integer> getId(String word) throws IOException {
+        return Optional.ofNullable(wordToIdMap.find(word));
+    }
+
     /**
      * Retrieves the word associated with the given ID.
      *
@@ -57,6 +79,58 @@ public class WordIndexer {
         return Optional.ofNullable(idToWordMap.find(id));
     }
 
+    /**
+     * Returns the number of words in the index.
+     *
+     * @return the number of words
+     */
+    public int getWordCount() {
+        return wordToIdMap.size();
+    }
+
+    /**
+     * Returns all the words and their IDs in ascending order of the words.
+     *
+     * @return the words and their IDs
+     */
+    public Iterable<Map.Entry<String, Integer>> getWords() {
+        return wordToIdMap;
+    }
+
+    /**
+     * Rewrites the indexes in the current record format.
+     *
+     * @return the number of records rewritten
+     * @throws IOException if an I/O error occurs while rewriting the records
+     */
+    /**
+     * Returns the caches of the indexes by index name.
+     *
+     * @return the caches
+     */
+    public Map<String, ObjectCache<?, ?>> getCaches() {
+        final var caches = new LinkedHashMap<String, ObjectCache<?, ?>>();
+        caches.put(WORD_TO_ID, wordToIdMap.getCache());
+        caches.put(ID_TO_WORD, idToWordMap.getCache());
+        caches.values().removeIf(cache -> cache == null);
+        return caches;
+    }
+
+    public int migrate() throws IOException {
+        return wordToIdMap.migrate() + idToWordMap.migrate();
+    }
+
+    /**
+     * Copies the indexes into another word indexer in key order.
+     *
+     * @param target the indexer to copy into
+     * @return the number of records copied
+     * @throws IOException if an I/O error occurs while copying the records
+     */
+    public int copyTo(WordIndexer target) throws IOException {
+        return wordToIdMap.copyTo(target.wordToIdMap) + idToWordMap.copyTo(target.idToWordMap);
+    }
+
     public void printAll() {
         System.out.println("WORD_TO_ID:");
         for (final var entry : wordToIdMap) {
@@ -0,0 +1,25 @@
+package com.comp4321.jdbm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import jdbm.helper.Serializer;
+
+/**
+ * Serializes double values as 8 big-endian bytes.
+ */
+public class DoubleSerializer implements Serializer {
+    private static final long serialVersionUID = 1L;
+
+    public static final DoubleSerializer INSTANCE = new DoubleSerializer();
+
+    @Override
+    public byte[] serialize(Object obj) throws IOException {
+        return ByteBuffer.allocate(Double.BYTES).putDouble((Double) obj).array();
+    }
+
+    @Override
+    public Object deserialize(byte[] serialized) throws IOException {
+        return ByteBuffer.wrap(serialized).getDouble();
+    }
+}
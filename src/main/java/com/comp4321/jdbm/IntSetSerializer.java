@@ -0,0 +1,36 @@
+package com.comp4321.jdbm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Serializes sets of non-negative integers, such as document IDs, as sorted
+ * gaps. The sets are read as unmodifiable, since they may be cached.
+ */
+public class IntSetSerializer extends VersionedSerializer<Set<Integer>> {
+    private static final long serialVersionUID = 1L;
+
+    public static final IntSetSerializer INSTANCE = new IntSetSerializer();
+
+    public IntSetSerializer() {
+        super(1);
+    }
+
+    @Override
+    protected void write(DataOutput out, Set<Integer> value) throws IOException {
+        writeSortedInts(out, value.stream().mapToInt(Integer::intValue).sorted().toArray());
+    }
+
+    @Override
+    protected Set<Integer> read(DataInput in, int version) throws IOException {
+        final var values = readSortedInts(in);
+        final var set = new HashSet<Integer>(values.length * 2);
+        for (final var value : values)
+            set.add(value);
+        return Collections.unmodifiableSet(set);
+    }
+}
@@ -0,0 +1,26 @@
+package com.comp4321.jdbm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import jdbm.helper.Serializer;
+
+/**
+ * Serializes integer keys and values as 4 big-endian bytes. Unlike records,
+ * scalars carry no version byte.
+ */
+public class IntegerSerializer implements Serializer {
+    private static final long serialVersionUID = 1L;
+
+    public static final IntegerSerializer INSTANCE = new IntegerSerializer();
+
+    @Override
+    public byte[] serialize(Object obj) throws IOException {
+        return ByteBuffer.allocate(Integer.BYTES).putInt((Integer) obj).array();
+    }
+
+    @Override
+    public Object deserialize(byte[] serialized) throws IOException {
+        return ByteBuffer.wrap(serialized).getInt();
+    }
+}
@@ -0,0 +1,131 @@
+package com.comp4321.jdbm;
+
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe LRU cache of deserialized values, bounded either by the number
+ * of entries or by an estimate of their size in bytes.
+ *
+ * Cached values are shared with every caller, so only immutable values are
+ * cached: the serializers of the cached trees read unmodifiable collections,
+ * and the indexers write changed copies.
+ */
+public class ObjectCache<K, V> {
+    private record Weighted<V>(V value, long weight) {
+    }
+
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    private ObjectCache(long capacity, ToLongFunction<V> weigher) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Creates a cache that holds at most the given number of entries.
+     */
+    public static <K, V> ObjectCache<K, V> withMaxEntries(int maxEntries) {
+        return new ObjectCache<>(maxEntries, value -> 1);
+    }
+
+    /**
+     * Creates a cache whose values weigh at most the given number of bytes in
+     * total. A value heavier than the whole cache is never cached.
+     *
+     * @param maxBytes the maximum total weight
+     * @param weigher  estimates the size of a value in bytes
+     */
+    public static <K, V> ObjectCache<K, V> withMaxBytes(long maxBytes, ToLongFunction<V> weigher) {
+        return new ObjectCache<>(maxBytes, weigher);
+    }
+
+    /**
+     * Returns the cached value of a key.
+     *
+     * @param key the key
+     * @return the value, or null if it is not cached
+     */
+    public synchronized V get(K key) {
+        final var entry = entries.get(key);
+        if (entry == null) {
+            ++missCount;
+            return null;
+        }
+
+        ++hitCount;
+        return entry.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        invalidate(key);
+
+        final var valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > capacity)
+            return;
+
+        entries.put(key, new Weighted<>(value, valueWeight));
+        weight += valueWeight;
+
+        // The iteration order is the access order, so the eldest entry is the
+        // least recently used one
+        final var it = entries.values().iterator();
+        while (weight > capacity) {
+            weight -= it.next().weight();
+            it.remove();
+            ++evictionCount;
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        final var entry = entries.remove(key);
+        if (entry != null)
+            weight -= entry.weight();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of the cached values, which is the number of
+     * entries for a cache bounded by entries.
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final var requests = hitCount + missCount;
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d entries, weight %d/%d",
+                hitCount, missCount, requests == 0 ? 0.0 : 100.0 * hitCount / requests, evictionCount,
+                entries.size(), weight, capacity);
+    }
+}
@@ -9,37 +9,135 @@ import java.util.Objects;
 
 import jdbm.RecordManager;
 import jdbm.btree.BTree;
+import jdbm.helper.Serializer;
 import jdbm.helper.Tuple;
 import jdbm.helper.TupleBrowser;
 
 public class SafeBTree<K, V> implements Iterable<Entry<K, V>> {
-    private final BTree btree;
+    private final RecordManager recman;
+    private final String name;
+    private final Comparator<K> comparator;
+    private final Serializer keySerializer;
+    private final Serializer valueSerializer;
+    private BTree btree;
+
+    // Optional cache of deserialized values, kept up to date on writes
+    private final ObjectCache<K, V> cache;
 
     public SafeBTree(RecordManager recman, String name, Comparator<K> comparator) throws IOException {
+        this(recman, name, comparator, null, null);
+    }
+
+    /**
+     * Loads or creates a BTree. A new BTree stores its keys and values with the
+     * given serializers, while an existing BTree keeps the serializers it was
+     * created with until it is migrated.
+     *
+     * @param recman          the record manager
+     * @param name            the name of the BTree
+     * @param comparator      the order of the keys
+     * @param keySerializer   the key serializer, or null for Java serialization
+     * @param valueSerializer the value serializer, or null for Java serialization
+     * @throws IOException if the BTree cannot be loaded or created
+     */
+    public SafeBTree(RecordManager recman, String name, Comparator<K> comparator, Serializer keySerializer,
+            Serializer valueSerializer) throws IOException {
+        this(recman, name, comparator, keySerializer, valueSerializer, null);
+    }
+
+    public SafeBTree(RecordManager recman, String name, Comparator<K> comparator, Serializer keySerializer,
+            Serializer valueSerializer, ObjectCache<K, V> cache) throws IOException {
+        this.recman = recman;
+        this.name = name;
+        this.comparator = comparator;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.cache = cache;
+
         long recid = recman.getNamedObject(name);
         if (recid != 0) {
             btree = BTree.load(recman, recid);
         } else {
-            btree = BTree.createInstance(recman, comparator);
+            btree = BTree.createInstance(recman, comparator, keySerializer, valueSerializer);
             recman.setNamedObject(name, btree.getRecid());
         }
     }
 
+    /**
+     * Copies all entries into a new BTree that uses the serializers of this
+     * wrapper and makes it the named BTree. The pages of the old BTree are not
+     * reclaimed.
+     *
+     * @return the number of entries copied
+     * @throws IOException if an I/O error occurs while copying the entries
+     */
+    public int migrate() throws IOException {
+        final var migrated = BTree.createInstance(recman, comparator, keySerializer, valueSerializer);
+        for (final var entry : this)
+            migrated.insert(entry.getKey(), entry.getValue(), true);
+
+        recman.setNamedObject(name, migrated.getRecid());
+        btree = migrated;
+        return btree.size();
+    }
+
+    /**
+     * Copies all entries into another tree in key order, bypassing the caches.
+     *
+     * @param target the tree to copy into
+     * @return the number of entries copied
+     * @throws IOException if an I/O error occurs while copying the entries
+     */
+    public int copyTo(SafeBTree<K, V> target) throws IOException {
+        var copied = 0;
+        for (final var entry : this) {
+            target.btree.insert(entry.getKey(), entry.getValue(), true);
+            ++copied;
+        }
+        return copied;
+    }
+
     public V find(K key) throws IOException {
-        @SuppressWarnings("unchecked")
-        final var value = (V) btree.find(key);
+        var value = cache == null ? null : cache.get(key);
+        if (value == null) {
+            @SuppressWarnings("unchecked")
+            final var loaded = (V) btree.find(key);
+            value = loaded;
+            if (cache != null && value != null)
+                cache.put(key, value);
+        }
         return value;
     }
 
     public void insert(K key, V value) throws IOException {
-        btree.insert(key, value, true);
+        try {
+            btree.insert(key, value, true);
+        } catch (IOException e) {
+            if (cache != null)
+                cache.invalidate(key);
+            throw e;
+        }
+
+        if (cache != null)
+            cache.put(key, value);
     }
 
     public void remove(K key) throws IOException {
+        if (cache != null)
+            cache.invalidate(key);
         if (btree.find(key) != null)
             btree.remove(key);
     }
 
+    /**
+     * Returns the cache of this tree.
+     *
+     * @return the cache, or null if the tree is not cached
+     */
+    public ObjectCache<K, V> getCache() {
+        return cache;
+    }
+
     public int size() {
         return btree.size();
     }
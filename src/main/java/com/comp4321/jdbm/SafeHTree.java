@@ -1,19 +1,41 @@
 package com.comp4321.jdbm;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
 import jdbm.RecordManager;
 import jdbm.helper.FastIterator;
+import jdbm.helper.Serializer;
 import jdbm.htree.HTree;
 
 public class SafeHTree<K, V> implements Iterable<Entry<K, V>> {
     private final HTree htree;
 
+    // HTree buckets are always written with Java serialization, so values are
+    // stored as the byte arrays produced by this serializer instead
+    private final Serializer valueSerializer;
+
+    // Optional cache of deserialized values, kept up to date on writes
+    private final ObjectCache<K, V> cache;
+
     public SafeHTree(RecordManager recman, String name) throws IOException {
+        this(recman, name, null);
+    }
+
+    public SafeHTree(RecordManager recman, String name, Serializer valueSerializer) throws IOException {
+        this(recman, name, valueSerializer, null);
+    }
+
+    public SafeHTree(RecordManager recman, String name, Serializer valueSerializer, ObjectCache<K, V> cache)
+            throws IOException {
+        this.valueSerializer = valueSerializer;
+        this.cache = cache;
         long recid = recman.getNamedObject(name);
         if (recid != 0) {
             htree = HTree.load(recman, recid);
@@ -24,16 +46,114 @@ public class SafeHTree<K, V> implements Iterable<Entry<K, V>> {
     }
 
     public V get(K key) throws IOException {
-        @SuppressWarnings("unchecked")
-        final var value = (V) htree.get(key);
+        if (cache == null)
+            return load(key);
+
+        var value = cache.get(key);
+        if (value == null) {
+            value = load(key);
+            if (value != null)
+                cache.put(key, value);
+        }
         return value;
     }
 
+    private V load(K key) throws IOException {
+        var value = htree.get(key);
+        // Values written before the serializer was introduced are still objects
+        if (valueSerializer != null && value instanceof byte[] bytes)
+            value = valueSerializer.deserialize(bytes);
+
+        @SuppressWarnings("unchecked")
+        final var result = (V) value;
+        return result;
+    }
+
+    private void store(K key, V value) throws IOException {
+        htree.put(key, valueSerializer == null ? value : valueSerializer.serialize(value));
+    }
+
     public void put(K key, V value) throws IOException {
-        htree.put(key, value);
+        try {
+            store(key, value);
+        } catch (IOException e) {
+            // The failed write may have left either value in the tree
+            if (cache != null)
+                cache.invalidate(key);
+            throw e;
+        }
+
+        if (cache != null)
+            cache.put(key, value);
+    }
+
+    /**
+     * Returns the cache of this tree.
+     *
+     * @return the cache, or null if the tree is not cached
+     */
+    public ObjectCache<K, V> getCache() {
+        return cache;
+    }
+
+    // The keys are collected first since the HTree cannot be modified while
+    // iterating over it
+    private List<K> keys() throws IOException {
+        final var keys = new ArrayList<K>();
+        final var keyIt = htree.keys();
+        for (var key = keyIt.next(); key != null; key = keyIt.next()) {
+            @SuppressWarnings("unchecked")
+            final var typedKey = (K) key;
+            keys.add(typedKey);
+        }
+        return keys;
+    }
+
+    /**
+     * Rewrites all values with the value serializer, converting values written
+     * with Java serialization.
+     *
+     * @return the number of values rewritten
+     * @throws IOException if an I/O error occurs while rewriting the values
+     */
+    public int migrate() throws IOException {
+        if (valueSerializer == null)
+            return 0;
+
+        final var keys = keys();
+        for (final var key : keys)
+            put(key, load(key));
+        return keys.size();
+    }
+
+    /**
+     * Copies all values into another tree, bypassing the caches. The keys in
+     * the given order are copied first and the remaining keys after them, so
+     * that the records of the target are allocated in that order.
+     *
+     * @param target the tree to copy into
+     * @param order  the keys to copy first
+     * @return the number of values copied
+     * @throws IOException if an I/O error occurs while copying the values
+     */
+    public int copyTo(SafeHTree<K, V> target, Iterable<K> order) throws IOException {
+        final var copied = new HashSet<K>();
+        for (final var key : order) {
+            final var value = load(key);
+            if (value != null && copied.add(key))
+                target.store(key, value);
+        }
+
+        for (final var key : keys()) {
+            if (copied.add(key))
+                target.store(key, load(key));
+        }
+        return copied.size();
     }
 
     public void remove(K key) throws IOException {
+        if (cache != null)
+            cache.invalidate(key);
         htree.remove(key);
     }
 
@@ -65,7 +185,9 @@ public class SafeHTree<K, V> implements Iterable<Entry<K, V>> {
 
                         return new Entry<K, V>() {
                             private final K key = curKey;
-                            private final V value = get(key);
+                            // Scans bypass the cache so that they don't evict
+                            // the hot entries
+                            private final V value = load(key);
 
                             @Override
                             public K getKey() {
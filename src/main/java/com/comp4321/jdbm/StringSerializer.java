@@ -0,0 +1,25 @@
+package com.comp4321.jdbm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import jdbm.helper.Serializer;
+
+/**
+ * Serializes string keys and values as their UTF-8 bytes.
+ */
+public class StringSerializer implements Serializer {
+    private static final long serialVersionUID = 1L;
+
+    public static final StringSerializer INSTANCE = new StringSerializer();
+
+    @Override
+    public byte[] serialize(Object obj) throws IOException {
+        return ((String) obj).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object deserialize(byte[] serialized) throws IOException {
+        return new String(serialized, StandardCharsets.UTF_8);
+    }
+}
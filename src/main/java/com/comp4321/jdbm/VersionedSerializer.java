@@ -0,0 +1,150 @@
+package com.comp4321.jdbm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import jdbm.helper.Serializer;
+
+/**
+ * Base class of the hand-written record serializers. Every record starts with
+ * a version byte, followed by the encoding of that version, so that the format
+ * can change without breaking existing indexes. Integers are written as
+ * varints.
+ *
+ * Serializers are stored in the header of the trees that use them, so
+ * subclasses must stay serializable.
+ */
+public abstract class VersionedSerializer<T> implements Serializer {
+    private static final long serialVersionUID = 1L;
+
+    private final int version;
+
+    protected VersionedSerializer(int version) {
+        if (version <= 0 || version > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("version must be between 1 and 127");
+        this.version = version;
+    }
+
+    /**
+     * Writes a record in the current version.
+     */
+    protected abstract void write(DataOutput out, T value) throws IOException;
+
+    /**
+     * Reads a record written in the given version, which is never newer than the
+     * current version.
+     */
+    protected abstract T read(DataInput in, int version) throws IOException;
+
+    @Override
+    public byte[] serialize(Object obj) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeByte(version);
+            @SuppressWarnings("unchecked")
+            final var value = (T) obj;
+            write(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] serialized) throws IOException {
+        try (final var in = new DataInputStream(new ByteArrayInputStream(serialized))) {
+            final var recordVersion = in.readUnsignedByte();
+            if (recordVersion == 0 || recordVersion > version)
+                throw new JDBMException("Unsupported record version " + recordVersion + " for "
+                        + getClass().getSimpleName());
+
+            return read(in, recordVersion);
+        }
+    }
+
+    /**
+     * Writes a non-negative integer in 7-bit groups, least significant first.
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        var value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final var b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new JDBMException("Malformed varint");
+    }
+
+    /**
+     * Writes a non-negative long in 7-bit groups, least significant first.
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        var value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final var b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new JDBMException("Malformed varint");
+    }
+
+    /**
+     * Writes a string as its varint length followed by its UTF-8 bytes.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        final var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        final var bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes sorted, distinct non-negative integers as their count followed by the
+     * gaps between them.
+     */
+    public static void writeSortedInts(DataOutput out, int[] values) throws IOException {
+        writeVarInt(out, values.length);
+        var prev = 0;
+        for (final var value : values) {
+            writeVarInt(out, value - prev);
+            prev = value;
+        }
+    }
+
+    public static int[] readSortedInts(DataInput in) throws IOException {
+        final var values = new int[readVarInt(in)];
+        var prev = 0;
+        for (int i = 0; i < values.length; ++i) {
+            prev += readVarInt(in);
+            values[i] = prev;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,166 @@
+package com.comp4321.mapped;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A growable array of fixed-width values stored off-heap, either in a
+ * memory-mapped file or in a direct buffer. Values are addressed by index, and
+ * reading past the written values returns zero, so a missing row reads as an
+ * all-zero row. The first 8 bytes hold the number of bytes written.
+ *
+ * Reads use absolute offsets and are safe from multiple threads, but there must
+ * be at most one writer.
+ */
+final class Column implements AutoCloseable {
+    private static final int HEADER_SIZE = Long.BYTES;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final FileChannel channel;
+    private final int width;
+    private volatile ByteBuffer buffer;
+
+    private Column(FileChannel channel, int width) throws IOException {
+        this.channel = channel;
+        this.width = width;
+        if (channel != null)
+            buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_CAPACITY));
+        else
+            buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    }
+
+    static Column open(Path path, int width) throws IOException {
+        return new Column(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE), width);
+    }
+
+    static Column inMemory(int width) throws IOException {
+        return new Column(null, width);
+    }
+
+    /**
+     * Returns the number of bytes written, excluding the header.
+     */
+    long length() {
+        return buffer.getLong(0);
+    }
+
+    /**
+     * Returns the number of rows written.
+     */
+    int size() {
+        return (int) (length() / width);
+    }
+
+    private long position(int index) {
+        return HEADER_SIZE + (long) index * width;
+    }
+
+    private boolean isReadable(ByteBuffer buffer, int index, int bytes) {
+        return index >= 0 && position(index) + bytes <= HEADER_SIZE + buffer.getLong(0);
+    }
+
+    private ByteBuffer reserve(long end) throws IOException {
+        if (end > Integer.MAX_VALUE)
+            throw new MappedIndexException("Column exceeds 2 GiB");
+
+        var cur = buffer;
+        if (end > cur.capacity()) {
+            final var capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(end, 2L * cur.capacity()));
+            if (channel != null) {
+                // Mapping past the end of the file extends it
+                cur = channel.map(MapMode.READ_WRITE, 0, capacity);
+            } else {
+                final var grown = ByteBuffer.allocateDirect(capacity);
+                grown.put(0, cur, 0, cur.capacity());
+                cur = grown;
+            }
+            buffer = cur;
+        }
+
+        if (end - HEADER_SIZE > cur.getLong(0))
+            cur.putLong(0, end - HEADER_SIZE);
+        return cur;
+    }
+
+    int getInt(int index) {
+        final var cur = buffer;
+        return isReadable(cur, index, Integer.BYTES) ? cur.getInt((int) position(index)) : 0;
+    }
+
+    long getLong(int index) {
+        final var cur = buffer;
+        return isReadable(cur, index, Long.BYTES) ? cur.getLong((int) position(index)) : 0;
+    }
+
+    double getDouble(int index) {
+        final var cur = buffer;
+        return isReadable(cur, index, Double.BYTES) ? cur.getDouble((int) position(index)) : 0.0;
+    }
+
+    // Rows are addressed by document ID, so a negative index is a bug of the
+    // caller rather than a missing row
+    private static void checkIndex(int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("Negative row index: " + index);
+    }
+
+    void putInt(int index, int value) throws IOException {
+        checkIndex(index);
+        reserve(position(index) + Integer.BYTES).putInt((int) position(index), value);
+    }
+
+    void putLong(int index, long value) throws IOException {
+        checkIndex(index);
+        reserve(position(index) + Long.BYTES).putLong((int) position(index), value);
+    }
+
+    void putDouble(int index, double value) throws IOException {
+        checkIndex(index);
+        reserve(position(index) + Double.BYTES).putDouble((int) position(index), value);
+    }
+
+    /**
+     * Appends bytes to a column of width 1.
+     *
+     * @param bytes the bytes to append
+     * @return the index of the first appended byte
+     */
+    long append(byte[] bytes) throws IOException {
+        final var offset = length();
+        reserve(HEADER_SIZE + offset + bytes.length).put(HEADER_SIZE + (int) offset, bytes);
+        return offset;
+    }
+
+    byte[] read(long offset, int length) {
+        final var bytes = new byte[length];
+        buffer.get(HEADER_SIZE + (int) offset, bytes);
+        return bytes;
+    }
+
+    void clear() {
+        final var cur = buffer;
+        final var zeros = new byte[4096];
+        final var end = HEADER_SIZE + cur.getLong(0);
+        for (long pos = HEADER_SIZE; pos < end; pos += zeros.length)
+            cur.put((int) pos, zeros, 0, (int) Math.min(zeros.length, end - pos));
+        cur.putLong(0, 0);
+    }
+
+    void force() {
+        if (buffer instanceof MappedByteBuffer mapped)
+            mapped.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        if (channel != null)
+            channel.close();
+    }
+}
@@ -0,0 +1,256 @@
+package com.comp4321.mapped;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Dense, docId-indexed primitive columns of per-document attributes, kept off
+ * the Java heap so that attribute access in the scoring loop is a
+ * bounds-checked array read instead of a JDBM lookup. Titles are stored in an
+ * append-only blob and addressed by an offset and a length column.
+ *
+ * The columns are a copy of data owned by the JDBM indexes. A file-backed store
+ * is marked clean when it is closed; a store that was not closed cleanly (or is
+ * in memory) must be rebuilt from the JDBM indexes before it is read, see
+ * {@link #isClean()}.
+ */
+public class DocumentColumns implements AutoCloseable {
+    private static final String CLEAN_MARKER = "clean";
+
+    private final Path directory;
+    private final boolean clean;
+    private final List<Column> columns = new ArrayList<>();
+
+    private final Column tfMax;
+    private final Column norm;
+    private final Column titleWordCount;
+    private final Column bodyWordCount;
+    private final Column staticScore;
+    private final Column pageSize;
+    private final Column lastModifiedSeconds;
+    private final Column lastModifiedNanos;
+    private final Column titleOffset;
+    private final Column titleLength;
+    private final Column titles;
+
+    private interface ColumnFactory {
+        Column create(String name, int width) throws IOException;
+    }
+
+    private DocumentColumns(Path directory, boolean clean, ColumnFactory factory) throws IOException {
+        this.directory = directory;
+        this.clean = clean;
+
+        tfMax = add(factory.create("tfmax", Integer.BYTES));
+        norm = add(factory.create("norm", Double.BYTES));
+        titleWordCount = add(factory.create("titlewords", Integer.BYTES));
+        bodyWordCount = add(factory.create("bodywords", Integer.BYTES));
+        staticScore = add(factory.create("staticscore", Double.BYTES));
+        pageSize = add(factory.create("pagesize", Long.BYTES));
+        lastModifiedSeconds = add(factory.create("lastmodified", Long.BYTES));
+        lastModifiedNanos = add(factory.create("lastmodifiednanos", Integer.BYTES));
+        titleOffset = add(factory.create("titleoffset", Long.BYTES));
+        titleLength = add(factory.create("titlelength", Integer.BYTES));
+        titles = add(factory.create("titles", 1));
+    }
+
+    private Column add(Column column) {
+        columns.add(column);
+        return column;
+    }
+
+    /**
+     * Opens the columns stored in the given directory, creating it if necessary.
+     * The store stays marked dirty until it is closed.
+     *
+     * @param directory the directory holding one file per column
+     * @return the columns
+     * @throws IOException if the column files cannot be opened
+     */
+    public static DocumentColumns open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        final var marker = directory.resolve(CLEAN_MARKER);
+        final var clean = Files.exists(marker);
+        Files.deleteIfExists(marker);
+
+        return new DocumentColumns(directory, clean,
+                (name, width) -> Column.open(directory.resolve(name + ".col"), width));
+    }
+
+    /**
+     * Creates empty columns in direct memory, which have to be rebuilt from the
+     * JDBM indexes.
+     *
+     * @return the columns
+     * @throws IOException never
+     */
+    public static DocumentColumns inMemory() throws IOException {
+        return new DocumentColumns(null, false, (name, width) -> Column.inMemory(width));
+    }
+
+    /**
+     * Returns whether the columns were closed cleanly and therefore match the
+     * committed JDBM indexes.
+     *
+     * @return true if the columns can be used without a rebuild
+     */
+    public boolean isClean() {
+        return clean;
+    }
+
+    public int getTFMax(int docId) {
+        return tfMax.getInt(docId);
+    }
+
+    public void setTFMax(int docId, int value) throws IOException {
+        tfMax.putInt(docId, value);
+    }
+
+    public double getNorm(int docId) {
+        return norm.getDouble(docId);
+    }
+
+    public void setNorm(int docId, double value) throws IOException {
+        norm.putDouble(docId, value);
+    }
+
+    public int getTitleWordCount(int docId) {
+        return titleWordCount.getInt(docId);
+    }
+
+    public int getBodyWordCount(int docId) {
+        return bodyWordCount.getInt(docId);
+    }
+
+    /**
+     * Stores the field lengths of a document, which BM25 normalizes the
+     * frequencies by.
+     *
+     * @param docId the document ID
+     * @param title the number of words in the title
+     * @param body  the number of words in the body
+     * @throws IOException if the columns cannot be grown
+     */
+    public void setWordCounts(int docId, int title, int body) throws IOException {
+        titleWordCount.putInt(docId, title);
+        bodyWordCount.putInt(docId, body);
+    }
+
+    /**
+     * Returns the query-independent score of a document, such as its PageRank.
+     *
+     * @param docId the document ID
+     * @return the static score between 0 and 1, 0 if the document has none
+     */
+    public double getStaticScore(int docId) {
+        return staticScore.getDouble(docId);
+    }
+
+    public void setStaticScore(int docId, double value) throws IOException {
+        staticScore.putDouble(docId, value);
+    }
+
+    public long getPageSize(int docId) {
+        return pageSize.getLong(docId);
+    }
+
+    /**
+     * Returns the title of a document.
+     *
+     * @param docId the document ID
+     * @return the title, if the document has metadata
+     */
+    public Optional<String> getTitle(int docId) {
+        // Titles are stored with their length plus one so that 0 means missing
+        final var length = titleLength.getInt(docId);
+        if (length == 0)
+            return Optional.empty();
+
+        return Optional.of(new String(titles.read(titleOffset.getLong(docId), length - 1), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the last modification time of a document in GMT, the time zone the
+     * crawler records it in.
+     *
+     * @param docId the document ID
+     * @return the last modification time, if the document has metadata
+     */
+    public Optional<ZonedDateTime> getLastModified(int docId) {
+        if (titleLength.getInt(docId) == 0)
+            return Optional.empty();
+
+        final var instant = Instant.ofEpochSecond(lastModifiedSeconds.getLong(docId), lastModifiedNanos.getInt(docId));
+        return Optional.of(ZonedDateTime.ofInstant(instant, ZoneId.of("GMT")));
+    }
+
+    /**
+     * Stores the metadata columns of a document. An unchanged title is not
+     * appended again, and a replaced title stays in the blob until the columns
+     * are rebuilt.
+     *
+     * @param docId        the document ID
+     * @param title        the title of the document
+     * @param pageSize     the size of the document
+     * @param lastModified the last modification time of the document
+     * @throws IOException if the columns cannot be grown
+     */
+    public void setMetadata(int docId, String title, long pageSize, ZonedDateTime lastModified) throws IOException {
+        final var bytes = title.getBytes(StandardCharsets.UTF_8);
+        if (!hasTitle(docId, bytes)) {
+            titleOffset.putLong(docId, titles.append(bytes));
+            titleLength.putInt(docId, bytes.length + 1);
+        }
+        this.pageSize.putLong(docId, pageSize);
+        lastModifiedSeconds.putLong(docId, lastModified.toEpochSecond());
+        lastModifiedNanos.putInt(docId, lastModified.getNano());
+    }
+
+    // Re-crawls store the same title again, which would otherwise grow the blob
+    // with every crawl
+    private boolean hasTitle(int docId, byte[] bytes) {
+        return titleLength.getInt(docId) == bytes.length + 1
+                && Arrays.equals(titles.read(titleOffset.getLong(docId), bytes.length), bytes);
+    }
+
+    /**
+     * Returns the number of bytes in the title blob, including replaced titles.
+     *
+     * @return the size of the blob
+     */
+    public long titleBytes() {
+        return titles.length();
+    }
+
+    /**
+     * Removes all values, before the columns are rebuilt from the JDBM indexes.
+     */
+    public void clear() {
+        columns.forEach(Column::clear);
+    }
+
+    /**
+     * Flushes the columns to disk.
+     */
+    public void force() {
+        columns.forEach(Column::force);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final var column : columns)
+            column.close();
+
+        if (directory != null)
+            Files.createFile(directory.resolve(CLEAN_MARKER));
+    }
+}
@@ -0,0 +1,391 @@
+package com.comp4321.mapped;
+
+import static com.comp4321.mapped.MappedIndexFormat.*;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import com.comp4321.SearchEngine;
+import com.comp4321.SearchResult;
+import com.comp4321.IRUtilities.StopStem;
+import com.comp4321.indexers.PhraseMatcher;
+import com.comp4321.indexers.Posting;
+import com.comp4321.indexers.ProximityBoost;
+import com.comp4321.indexers.ScoreAccumulator;
+import com.comp4321.indexers.ScoringModel;
+import com.comp4321.indexers.TopScores;
+import com.comp4321.query.Query;
+import com.comp4321.query.QueryIndex;
+import com.comp4321.query.QueryPlanner;
+
+/**
+ * A read-only search engine serving queries directly from a compiled index
+ * file. Nothing is deserialized on startup or per query: the file is mapped
+ * into memory and the OS page cache does the caching, so several server
+ * processes can share one copy of the index. All reads use absolute offsets,
+ * which makes the index safe to query from multiple threads.
+ */
+public class MappedIndex implements AutoCloseable, SearchEngine {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private final int documentCount;
+    private final int maxDocId;
+    private final int termCount;
+    private final int maxWordId;
+    private final int dictionaryOffset;
+    private final int wordTableOffset;
+    private final int docTableOffset;
+    private final long totalTitleLength;
+    private final long totalBodyLength;
+
+    private final StopStem stopStem = new StopStem();
+
+    private ProximityBoost proximityBoost = ProximityBoost.DEFAULT;
+    private double pageRankWeight = 0;
+
+    private final QueryIndex queryIndex = new QueryIndex() {
+        @Override
+        public int getDF(String stem) {
+            final var termEntry = findTerm(stem);
+            return termEntry < 0 ? 0 : buffer.getInt(termEntry + DICTIONARY_DF);
+        }
+
+        @Override
+        public List<Posting> getPostings(String stem) {
+            final var termEntry = findTerm(stem);
+            return termEntry < 0 ? List.of() : readPostings(termEntry, docId -> true);
+        }
+    };
+
+    public MappedIndex(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (channel.size() > Integer.MAX_VALUE)
+            throw new MappedIndexException("Compiled index exceeds 2 GiB: " + path);
+        buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(HEADER_MAGIC) != MAGIC)
+            throw new MappedIndexException("Not a compiled index: " + path);
+        if (buffer.getInt(HEADER_VERSION) != VERSION)
+            throw new MappedIndexException("Unsupported compiled index version " + buffer.getInt(HEADER_VERSION));
+
+        documentCount = buffer.getInt(HEADER_DOCUMENT_COUNT);
+        maxDocId = buffer.getInt(HEADER_MAX_DOC_ID);
+        termCount = buffer.getInt(HEADER_TERM_COUNT);
+        maxWordId = buffer.getInt(HEADER_MAX_WORD_ID);
+        dictionaryOffset = buffer.getInt(HEADER_DICTIONARY_OFFSET);
+        wordTableOffset = buffer.getInt(HEADER_WORD_TABLE_OFFSET);
+        docTableOffset = buffer.getInt(HEADER_DOC_TABLE_OFFSET);
+        totalTitleLength = buffer.getLong(HEADER_TOTAL_TITLE_LENGTH);
+        totalBodyLength = buffer.getLong(HEADER_TOTAL_BODY_LENGTH);
+    }
+
+    private String readString(int offset) {
+        final var bytes = new byte[buffer.getInt(offset)];
+        buffer.get(offset + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int dictionaryEntry(int index) {
+        return dictionaryOffset + index * DICTIONARY_ENTRY_SIZE;
+    }
+
+    /**
+     * Finds the dictionary entry of a term by binary search.
+     *
+     * @param term the stemmed term
+     * @return the offset of the dictionary entry, or -1 if the term is not indexed
+     */
+    private int findTerm(String term) {
+        var low = 0;
+        var high = termCount - 1;
+        while (low <= high) {
+            final var mid = (low + high) >>> 1;
+            final var cmp = readString(buffer.getInt(dictionaryEntry(mid) + DICTIONARY_TERM)).compareTo(term);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return dictionaryEntry(mid);
+        }
+        return -1;
+    }
+
+    private int docEntry(int docId) {
+        if (docId < 0 || docId > maxDocId)
+            throw new MappedIndexException("Document ID out of range: " + docId);
+        return docTableOffset + docId * DOC_ENTRY_SIZE;
+    }
+
+    private Optional<String> getWord(int wordId) {
+        if (wordId < 0 || wordId > maxWordId)
+            return Optional.empty();
+
+        final var offset = buffer.getInt(wordTableOffset + wordId * Integer.BYTES);
+        return offset == MISSING ? Optional.empty() : Optional.of(readString(offset));
+    }
+
+    private Optional<String> getURL(int docId) {
+        if (docId < 0 || docId > maxDocId)
+            return Optional.empty();
+
+        final var offset = buffer.getInt(docEntry(docId) + DOC_URL);
+        return offset == MISSING ? Optional.empty() : Optional.of(readString(offset));
+    }
+
+    private Set<String> readLinks(int offset) {
+        final var count = buffer.getInt(offset);
+        final var links = new HashSet<String>();
+        for (int i = 0; i < count; ++i)
+            getURL(buffer.getInt(offset + (i + 1) * Integer.BYTES)).ifPresent(links::add);
+        return links;
+    }
+
+    private ScoringModel.Scorer scorer(ScoringModel model) {
+        final var documents = Math.max(documentCount, 1);
+        return model.scorer(documentCount, (double) totalTitleLength / documents,
+                (double) totalBodyLength / documents);
+    }
+
+    private void accumulateScores(int termEntry, ScoringModel.Scorer scorer, ScoreAccumulator scores) {
+        // Same scoring as InvertedIndex, with the per-document inputs read from
+        // the doc table
+        final var df = buffer.getInt(termEntry + DICTIONARY_DF);
+        if (df == 0)
+            return;
+
+        final var idf = scorer.idf(df);
+        var pos = buffer.getInt(termEntry + DICTIONARY_POSTINGS);
+        final var count = buffer.getInt(pos);
+        pos += Integer.BYTES;
+        for (int i = 0; i < count; ++i) {
+            final var docId = buffer.getInt(pos);
+            final var titleTF = buffer.getInt(pos + 4);
+            final var bodyTF = buffer.getInt(pos + 8);
+            final var entry = docEntry(docId);
+            final var weight = scorer.weight(titleTF, bodyTF, buffer.getInt(entry + DOC_TF_MAX),
+                    buffer.getInt(entry + DOC_TITLE_LENGTH), buffer.getInt(entry + DOC_BODY_LENGTH));
+
+            scores.add(docId, weight * idf);
+            pos += 12 + (titleTF + bodyTF) * Integer.BYTES;
+        }
+    }
+
+    private int[] readLocations(int offset, int count) {
+        final var locations = new int[count];
+        for (int i = 0; i < count; ++i)
+            locations[i] = buffer.getInt(offset + i * Integer.BYTES);
+        return locations;
+    }
+
+    // Only the locations of the kept documents are read, the others are skipped
+    private List<Posting> readPostings(int termEntry, IntPredicate keep) {
+        var pos = buffer.getInt(termEntry + DICTIONARY_POSTINGS);
+        final var count = buffer.getInt(pos);
+        pos += Integer.BYTES;
+
+        final var postings = new ArrayList<Posting>();
+        for (int i = 0; i < count; ++i) {
+            final var docId = buffer.getInt(pos);
+            final var titleTF = buffer.getInt(pos + 4);
+            final var bodyTF = buffer.getInt(pos + 8);
+            pos += 12;
+            if (keep.test(docId))
+                postings.add(new Posting(docId, readLocations(pos, titleTF),
+                        readLocations(pos + titleTF * Integer.BYTES, bodyTF)));
+            pos += (titleTF + bodyTF) * Integer.BYTES;
+        }
+        return postings;
+    }
+
+    private Set<Integer> getDocumentsWithPhrase(List<String> phrase, int slop) {
+        final var terms = slop == 0 ? phrase : phrase.stream().distinct().toList();
+        final var postings = new ArrayList<List<Posting>>(terms.size());
+        for (final var term : terms) {
+            final var termEntry = findTerm(term);
+            if (termEntry < 0)
+                return Set.of();
+            postings.add(readPostings(termEntry, docId -> true));
+        }
+        return slop == 0 ? PhraseMatcher.getDocumentsWithPhrase(postings)
+                : PhraseMatcher.getDocumentsWithin(postings, phrase.size() + slop);
+    }
+
+    private SearchResult buildSearchResult(int docId, double score) {
+        final var entry = docEntry(docId);
+
+        // The forward list is sorted by frequency, so only the keywords that are
+        // shown are read
+        final var keywordFrequencies = new LinkedHashMap<String, Integer>();
+        final var forwardOffset = buffer.getInt(entry + DOC_FORWARD);
+        final var keywordCount = Math.min(buffer.getInt(forwardOffset), SearchResult.MAX_KEYWORD_COUNT);
+        for (int i = 0; i < keywordCount; ++i) {
+            final var pos = forwardOffset + Integer.BYTES + i * 2 * Integer.BYTES;
+            final var freq = buffer.getInt(pos + Integer.BYTES);
+            getWord(buffer.getInt(pos)).ifPresent(word -> keywordFrequencies.put(word, freq));
+        }
+
+        final var parentLinks = readLinks(buffer.getInt(entry + DOC_PARENTS));
+        final var childLinks = readLinks(buffer.getInt(entry + DOC_CHILDREN));
+
+        // Documents that were never crawled have no metadata, see
+        // Indexer::buildSearchResult
+        final var titleOffset = buffer.getInt(entry + DOC_TITLE);
+        final var title = titleOffset == MISSING ? "" : readString(titleOffset);
+        final var pageSize = buffer.getLong(entry + DOC_PAGE_SIZE);
+        final var lastModified = titleOffset == MISSING ? ZonedDateTime.now()
+                : ZonedDateTime.ofInstant(Instant.ofEpochSecond(buffer.getLong(entry + DOC_LAST_MODIFIED_SECONDS),
+                        buffer.getInt(entry + DOC_LAST_MODIFIED_NANOS)), ZoneId.of("GMT"));
+        final var url = getURL(docId).orElse("");
+
+        return new SearchResult(score, title, url, lastModified,
+                pageSize, keywordFrequencies, parentLinks, childLinks);
+    }
+
+    private List<Integer> findTerms(Set<String> words) {
+        return words.stream()
+                .map(this::stemWord)
+                .flatMap(Optional::stream)
+                .distinct()
+                .map(this::findTerm)
+                .filter(termEntry -> termEntry >= 0)
+                .toList();
+    }
+
+    private ScoreAccumulator scoreTerms(List<Integer> termEntries, ScoringModel model) {
+        final var scorer = scorer(model);
+        final var scores = new ScoreAccumulator();
+        termEntries.forEach(termEntry -> accumulateScores(termEntry, scorer, scores));
+        scores.replaceAll((docId, score) -> finalScore(scorer, docEntry(docId), score));
+        return scores;
+    }
+
+    // The normalized score plus the weighted static score, both read from the
+    // doc table entry
+    private double finalScore(ScoringModel.Scorer scorer, int entry, double score) {
+        return scorer.normalize(score, buffer.getDouble(entry + DOC_NORM))
+                + pageRankWeight * buffer.getDouble(entry + DOC_STATIC_SCORE);
+    }
+
+    private ScoreAccumulator scoreDocuments(List<Integer> termEntries, List<String> phrase, int slop) {
+        final var scores = scoreTerms(termEntries, ScoringModel.DEFAULT);
+        final var phraseTerms = phrase.stream()
+                .map(this::stemWord)
+                .flatMap(Optional::stream)
+                .toList();
+        if (!phraseTerms.isEmpty())
+            scores.retainAll(getDocumentsWithPhrase(phraseTerms, slop)::contains);
+        return scores;
+    }
+
+    /**
+     * Sets how the pages of queries with several words are reranked by the
+     * proximity of the words, {@link ProximityBoost#DEFAULT} unless set.
+     *
+     * @param proximityBoost the boost, or {@link ProximityBoost#NONE} to rank by
+     *                       the plain scores
+     */
+    public void setProximityBoost(ProximityBoost proximityBoost) {
+        this.proximityBoost = proximityBoost;
+    }
+
+    /**
+     * Sets how much the PageRank of the documents, compiled as their static
+     * scores, adds to their query scores.
+     *
+     * @param weight the score of the document with the highest rank, 0 to ignore
+     *               the ranks
+     */
+    public void setPageRankWeight(double weight) {
+        if (!(weight >= 0))
+            throw new IllegalArgumentException("weight must be non-negative");
+        this.pageRankWeight = weight;
+    }
+
+    @Override
+    public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase) {
+        final var results = new HashMap<Integer, SearchResult>();
+        scoreDocuments(findTerms(words), phrase, 0)
+                .forEach((docId, score) -> results.put(docId, buildSearchResult(docId, score)));
+        return results;
+    }
+
+    @Override
+    public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, int offset, int k) {
+        final var termEntries = findTerms(words);
+        return toPage(scoreDocuments(termEntries, phrase, slop), termEntries, offset, k);
+    }
+
+    /**
+     * Searches for the documents matching a boolean query. The postings of the
+     * mapped index are read sequentially, so the clauses are matched by a
+     * {@link QueryPlanner} but every scored word is still read in full.
+     */
+    @Override
+    public List<SearchResult> search(Query query, ScoringModel model, int offset, int k) {
+        final var termEntries = query.scoredStems().stream()
+                .map(this::findTerm)
+                .filter(termEntry -> termEntry >= 0)
+                .toList();
+        final var scores = scoreTerms(termEntries, model);
+        if (!query.isDisjunctionOfWords()) {
+            try {
+                scores.retainAll(new QueryPlanner(queryIndex).match(query)::get);
+            } catch (IOException e) {
+                throw new MappedIndexException("Failed to match the query", e);
+            }
+        }
+        return toPage(scores, termEntries, offset, k);
+    }
+
+    // Selects the page, reranked by proximity if it is boosted, and turns it into
+    // results
+    private List<SearchResult> toPage(ScoreAccumulator scores, List<Integer> termEntries, int offset, int k) {
+        final var boosted = proximityBoost.appliesTo(termEntries.size());
+        var top = new TopScores(boosted ? proximityBoost.candidates(offset + k) : offset + k);
+        scores.forEach(top::offer);
+        top.sort();
+        if (boosted) {
+            final var docIds = ProximityBoost.sortedDocIds(top);
+            final var postings = termEntries.stream()
+                    .map(termEntry -> readPostings(termEntry, docId -> Arrays.binarySearch(docIds, docId) >= 0))
+                    .toList();
+            top = proximityBoost.rerank(top, postings, offset + k);
+        }
+
+        final var results = new ArrayList<SearchResult>();
+        for (int rank = offset; rank < top.size(); ++rank)
+            results.add(buildSearchResult(top.docId(rank), top.score(rank)));
+        return results;
+    }
+
+    @Override
+    public Optional<String> stemWord(String word) {
+        return stopStem.stemWord(word);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping itself stays valid until the buffer is garbage collected
+        channel.close();
+    }
+}
@@ -0,0 +1,11 @@
+package com.comp4321.mapped;
+
+public class MappedIndexException extends RuntimeException {
+    public MappedIndexException(String message) {
+        super(message);
+    }
+
+    public MappedIndexException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,65 @@
+package com.comp4321.mapped;
+
+/**
+ * Layout of the compiled index file shared by {@link MappedIndexWriter} and
+ * {@link MappedIndex}.
+ *
+ * <pre>
+ * header      fixed-size, see the HEADER_* offsets below, including the
+ *             numbers of words in all titles and all bodies
+ * data        variable-length records, addressed by offset:
+ *               string:   length, UTF-8 bytes
+ *               postings: count, (docId, titleTF, bodyTF, titleLocations..., bodyLocations...)*
+ *               forward:  count, (wordId, tf)* sorted by tf in descending order
+ *               links:    count, docId*
+ * dictionary  termCount entries sorted by term: termOffset, wordId, df, postingsOffset
+ * word table  (maxWordId + 1) entries: offset of the word string
+ * doc table   (maxDocId + 1) entries, see the DOC_* offsets below
+ * </pre>
+ *
+ * All integers are big-endian and an offset of 0 denotes a missing record,
+ * since offset 0 always belongs to the header.
+ */
+final class MappedIndexFormat {
+    static final int MAGIC = 0x43343332; // "C432"
+    static final int VERSION = 3;
+
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_DOCUMENT_COUNT = 8;
+    static final int HEADER_MAX_DOC_ID = 12;
+    static final int HEADER_TERM_COUNT = 16;
+    static final int HEADER_MAX_WORD_ID = 20;
+    static final int HEADER_DICTIONARY_OFFSET = 24;
+    static final int HEADER_WORD_TABLE_OFFSET = 28;
+    static final int HEADER_DOC_TABLE_OFFSET = 32;
+    static final int HEADER_TOTAL_TITLE_LENGTH = 36;
+    static final int HEADER_TOTAL_BODY_LENGTH = 44;
+    static final int HEADER_SIZE = 64;
+
+    static final int DICTIONARY_TERM = 0;
+    static final int DICTIONARY_WORD_ID = 4;
+    static final int DICTIONARY_DF = 8;
+    static final int DICTIONARY_POSTINGS = 12;
+    static final int DICTIONARY_ENTRY_SIZE = 16;
+
+    static final int DOC_NORM = 0;
+    static final int DOC_PAGE_SIZE = 8;
+    static final int DOC_LAST_MODIFIED_SECONDS = 16;
+    static final int DOC_TF_MAX = 24;
+    static final int DOC_LAST_MODIFIED_NANOS = 28;
+    static final int DOC_TITLE = 32;
+    static final int DOC_URL = 36;
+    static final int DOC_FORWARD = 40;
+    static final int DOC_CHILDREN = 44;
+    static final int DOC_PARENTS = 48;
+    static final int DOC_TITLE_LENGTH = 52;
+    static final int DOC_BODY_LENGTH = 56;
+    static final int DOC_STATIC_SCORE = 60;
+    static final int DOC_ENTRY_SIZE = 68;
+
+    static final int MISSING = 0;
+
+    private MappedIndexFormat() {
+    }
+}
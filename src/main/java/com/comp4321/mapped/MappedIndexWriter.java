@@ -0,0 +1,261 @@
+package com.comp4321.mapped;
+
+import static com.comp4321.mapped.MappedIndexFormat.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.comp4321.indexers.FieldLengths;
+import com.comp4321.indexers.Metadata;
+import com.comp4321.indexers.Posting;
+
+/**
+ * Streams the indexes into the compiled index format described in
+ * {@link MappedIndexFormat}. The file is written to a temporary path and only
+ * moved into place by {@link #commit()}, so readers never observe a partially
+ * written index.
+ */
+public class MappedIndexWriter implements AutoCloseable {
+    private final Path path;
+    private final Path tempPath;
+    private final DataOutputStream out;
+    private final int documentCount;
+    private long position = 0;
+    private boolean committed = false;
+
+    private String lastTerm = null;
+    private int termCount = 0;
+    private ByteBuffer dictionary = ByteBuffer.allocate(DICTIONARY_ENTRY_SIZE * 1024);
+    private int[] wordTable = new int[1024];
+    private int maxWordId = 0;
+    private ByteBuffer docTable = ByteBuffer.allocate(DOC_ENTRY_SIZE * 1024);
+    private int maxDocId = 0;
+    private long totalTitleLength = 0;
+    private long totalBodyLength = 0;
+
+    /**
+     * Creates a writer for the compiled index.
+     *
+     * @param path          the path of the compiled index
+     * @param documentCount the number of indexed documents, used as N in the IDF
+     * @throws IOException if the temporary file cannot be created
+     */
+    public MappedIndexWriter(Path path, int documentCount) throws IOException {
+        this.path = path.toAbsolutePath();
+        this.tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        this.documentCount = documentCount;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)));
+
+        // The header is written last, once all the offsets are known
+        writeBytes(new byte[HEADER_SIZE]);
+    }
+
+    private int offset() {
+        if (position > Integer.MAX_VALUE)
+            throw new MappedIndexException("Compiled index exceeds 2 GiB");
+        return (int) position;
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.writeInt(value);
+        position += Integer.BYTES;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private int writeString(String str) throws IOException {
+        final var offset = offset();
+        final var bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        writeBytes(bytes);
+        return offset;
+    }
+
+    private int writeLinks(Set<Integer> links) throws IOException {
+        final var offset = offset();
+        final var sortedLinks = links.stream().mapToInt(Integer::intValue).sorted().toArray();
+        writeInt(sortedLinks.length);
+        for (final var link : sortedLinks)
+            writeInt(link);
+        return offset;
+    }
+
+    private int writeForward(Map<Integer, Integer> keywords) throws IOException {
+        final var offset = offset();
+        final var entries = keywords.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .toList();
+        writeInt(entries.size());
+        for (final var entry : entries) {
+            writeInt(entry.getKey());
+            writeInt(entry.getValue());
+        }
+        return offset;
+    }
+
+    private int writePostings(List<Posting> postings) throws IOException {
+        final var offset = offset();
+        writeInt(postings.size());
+        for (final var posting : postings) {
+            final var titleLocations = posting.titleLocations();
+            final var bodyLocations = posting.bodyLocations();
+            writeInt(posting.docId());
+            writeInt(titleLocations.length);
+            writeInt(bodyLocations.length);
+            for (final var location : titleLocations)
+                writeInt(location);
+            for (final var location : bodyLocations)
+                writeInt(location);
+        }
+        return offset;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        if (capacity <= buffer.capacity())
+            return buffer;
+
+        final var grown = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        grown.put(0, buffer, 0, buffer.capacity());
+        return grown;
+    }
+
+    /**
+     * Adds a term and its postings. Terms must be added in ascending order, which
+     * is the order the dictionary is searched in.
+     *
+     * @param term     the stemmed term
+     * @param wordId   the word ID of the term
+     * @param postings the postings of the term sorted by document ID
+     * @throws IOException if an I/O error occurs while writing the postings
+     */
+    public void addTerm(String term, int wordId, List<Posting> postings) throws IOException {
+        if (lastTerm != null && lastTerm.compareTo(term) >= 0)
+            throw new IllegalArgumentException("Terms must be added in ascending order: " + term);
+        lastTerm = term;
+
+        final var termOffset = writeString(term);
+        final var postingsOffset = writePostings(postings);
+
+        dictionary = ensureCapacity(dictionary, (termCount + 1) * DICTIONARY_ENTRY_SIZE);
+        final var entry = termCount * DICTIONARY_ENTRY_SIZE;
+        dictionary.putInt(entry + DICTIONARY_TERM, termOffset);
+        dictionary.putInt(entry + DICTIONARY_WORD_ID, wordId);
+        dictionary.putInt(entry + DICTIONARY_DF, postings.size());
+        dictionary.putInt(entry + DICTIONARY_POSTINGS, postingsOffset);
+        ++termCount;
+
+        if (wordId >= wordTable.length)
+            wordTable = Arrays.copyOf(wordTable, Math.max(wordId + 1, wordTable.length * 2));
+        wordTable[wordId] = termOffset;
+        maxWordId = Math.max(maxWordId, wordId);
+    }
+
+    /**
+     * Adds a document and its per-document data.
+     *
+     * @param docId       the document ID
+     * @param url         the URL of the document
+     * @param metadata    the metadata of the document, or null if it was never
+     *                    crawled
+     * @param tfMax       the maximum term frequency of the document
+     * @param norm        the length of the document vector
+     * @param lengths     the numbers of words in the title and the body
+     * @param staticScore the query-independent score of the document between 0
+     *                    and 1
+     * @param keywords    the word IDs of the document and their frequencies
+     * @param children    the document IDs the document links to
+     * @param parents     the document IDs linking to the document
+     * @throws IOException if an I/O error occurs while writing the document
+     */
+    public void addDocument(int docId, String url, Metadata metadata, int tfMax, double norm, FieldLengths lengths,
+            double staticScore, Map<Integer, Integer> keywords, Set<Integer> children, Set<Integer> parents)
+            throws IOException {
+        docTable = ensureCapacity(docTable, (docId + 1) * DOC_ENTRY_SIZE);
+        maxDocId = Math.max(maxDocId, docId);
+
+        final var entry = docId * DOC_ENTRY_SIZE;
+        docTable.putDouble(entry + DOC_NORM, norm);
+        docTable.putInt(entry + DOC_TF_MAX, tfMax);
+        docTable.putInt(entry + DOC_TITLE_LENGTH, lengths.title());
+        docTable.putInt(entry + DOC_BODY_LENGTH, lengths.body());
+        docTable.putDouble(entry + DOC_STATIC_SCORE, staticScore);
+        totalTitleLength += lengths.title();
+        totalBodyLength += lengths.body();
+        docTable.putInt(entry + DOC_URL, writeString(url));
+        if (metadata != null) {
+            docTable.putLong(entry + DOC_PAGE_SIZE, metadata.pageSize());
+            docTable.putLong(entry + DOC_LAST_MODIFIED_SECONDS, metadata.lastModified().toEpochSecond());
+            docTable.putInt(entry + DOC_LAST_MODIFIED_NANOS, metadata.lastModified().getNano());
+            docTable.putInt(entry + DOC_TITLE, writeString(metadata.title()));
+        }
+        docTable.putInt(entry + DOC_FORWARD, writeForward(keywords));
+        docTable.putInt(entry + DOC_CHILDREN, writeLinks(children));
+        docTable.putInt(entry + DOC_PARENTS, writeLinks(parents));
+    }
+
+    /**
+     * Writes the tables and the header, and atomically moves the compiled index
+     * into place.
+     *
+     * @throws IOException if an I/O error occurs while finishing the index
+     */
+    public void commit() throws IOException {
+        final var dictionaryOffset = offset();
+        writeBytes(Arrays.copyOf(dictionary.array(), termCount * DICTIONARY_ENTRY_SIZE));
+
+        final var wordTableOffset = offset();
+        for (int wordId = 0; wordId <= maxWordId; ++wordId)
+            writeInt(wordTable[wordId]);
+
+        final var docTableOffset = offset();
+        writeBytes(Arrays.copyOf(docTable.array(), (maxDocId + 1) * DOC_ENTRY_SIZE));
+        offset();
+        out.close();
+
+        final var header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(HEADER_MAGIC, MAGIC);
+        header.putInt(HEADER_VERSION, VERSION);
+        header.putInt(HEADER_DOCUMENT_COUNT, documentCount);
+        header.putInt(HEADER_MAX_DOC_ID, maxDocId);
+        header.putInt(HEADER_TERM_COUNT, termCount);
+        header.putInt(HEADER_MAX_WORD_ID, maxWordId);
+        header.putInt(HEADER_DICTIONARY_OFFSET, dictionaryOffset);
+        header.putInt(HEADER_WORD_TABLE_OFFSET, wordTableOffset);
+        header.putInt(HEADER_DOC_TABLE_OFFSET, docTableOffset);
+        header.putLong(HEADER_TOTAL_TITLE_LENGTH, totalTitleLength);
+        header.putLong(HEADER_TOTAL_BODY_LENGTH, totalBodyLength);
+        try (final var channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+            channel.force(true);
+        }
+
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed)
+            return;
+
+        out.close();
+        Files.deleteIfExists(tempPath);
+    }
+}
@@ -0,0 +1,163 @@
+package com.comp4321.mapped;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.comp4321.SearchEngine;
+import com.comp4321.SearchResult;
+import com.comp4321.IRUtilities.StopStem;
+import com.comp4321.indexers.ProximityBoost;
+import com.comp4321.indexers.ScoringModel;
+import com.comp4321.query.Query;
+
+/**
+ * A search engine serving the current snapshot of a {@link SnapshotStore}. The
+ * store is polled in the background, and a newly published snapshot replaces
+ * the served one without interrupting queries, so the indexes can be crawled
+ * while they are being served.
+ */
+public class SnapshotIndex implements AutoCloseable, SearchEngine {
+    private record Snapshot(Path path, MappedIndex index) {
+    }
+
+    private final SnapshotStore store;
+    private final ScheduledExecutorService refresher;
+    private final StopStem stopStem = new StopStem();
+
+    private volatile Snapshot current;
+    private volatile ProximityBoost proximityBoost = ProximityBoost.DEFAULT;
+    private volatile double pageRankWeight = 0;
+
+    private SnapshotIndex(SnapshotStore store) throws IOException {
+        this.store = store;
+        final var path = store.current()
+                .orElseThrow(() -> new MappedIndexException("No snapshot has been published yet"));
+        this.current = new Snapshot(path, new MappedIndex(path));
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "snapshot-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the current snapshot of the store. The store is only polled once the
+     * index is fully constructed.
+     *
+     * @param store           the store the snapshots are published to
+     * @param refreshInterval how often to check for a new snapshot
+     * @return the index
+     * @throws IOException if the current snapshot cannot be opened
+     */
+    public static SnapshotIndex open(SnapshotStore store, Duration refreshInterval) throws IOException {
+        final var index = new SnapshotIndex(store);
+        index.refresher.scheduleWithFixedDelay(index::refreshQuietly, refreshInterval.toMillis(),
+                refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        return index;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (IOException | RuntimeException e) {
+            // Keep serving the current snapshot and retry on the next poll
+            System.err.println("Failed to refresh the snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Switches to the current snapshot of the store if it has changed.
+     *
+     * @return true if a new snapshot is served
+     * @throws IOException if the new snapshot cannot be opened
+     */
+    public synchronized boolean refresh() throws IOException {
+        final var latest = store.current();
+        if (latest.isEmpty() || latest.get().equals(current.path()))
+            return false;
+
+        final var previous = current;
+        final var index = new MappedIndex(latest.get());
+        index.setProximityBoost(proximityBoost);
+        index.setPageRankWeight(pageRankWeight);
+        current = new Snapshot(latest.get(), index);
+
+        // Queries that are still running keep reading the previous mapping, which
+        // stays valid after its channel is closed
+        previous.index().close();
+        return true;
+    }
+
+    /**
+     * Sets how the served snapshot and the ones published later rerank their
+     * pages by the proximity of the query words.
+     *
+     * @param proximityBoost the boost
+     */
+    public synchronized void setProximityBoost(ProximityBoost proximityBoost) {
+        this.proximityBoost = proximityBoost;
+        current.index().setProximityBoost(proximityBoost);
+    }
+
+    /**
+     * Sets how much the PageRank of the pages adds to the query scores of the
+     * served snapshot and the ones published later.
+     *
+     * @param weight the score of the page with the highest rank, 0 to ignore the
+     *               ranks
+     */
+    public synchronized void setPageRankWeight(double weight) {
+        current.index().setPageRankWeight(weight);
+        this.pageRankWeight = weight;
+    }
+
+    /**
+     * Returns the path of the served snapshot.
+     *
+     * @return the path of the snapshot
+     */
+    public Path getPath() {
+        return current.path();
+    }
+
+    @Override
+    public long getGeneration() {
+        return SnapshotStore.generationOf(current.path());
+    }
+
+    @Override
+    public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase) throws IOException {
+        return current.index().search(words, phrase);
+    }
+
+    @Override
+    public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, int offset, int k)
+            throws IOException {
+        return current.index().search(words, phrase, slop, offset, k);
+    }
+
+    @Override
+    public List<SearchResult> search(Query query, ScoringModel model, int offset, int k) {
+        return current.index().search(query, model, offset, k);
+    }
+
+    @Override
+    public Optional<String> stemWord(String word) {
+        return stopStem.stemWord(word);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        refresher.shutdownNow();
+        current.index().close();
+    }
+}
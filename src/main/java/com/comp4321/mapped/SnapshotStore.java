@@ -0,0 +1,127 @@
+package com.comp4321.mapped;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * A directory of compiled index generations with a {@code CURRENT} file naming
+ * the published one. A generation is never modified once written: publishing
+ * compiles a new generation next to the old ones and then atomically replaces
+ * {@code CURRENT}, so readers always see a complete snapshot and can keep using
+ * the previous one while they switch.
+ */
+public class SnapshotStore {
+    private static final String CURRENT = "CURRENT";
+    private static final Pattern GENERATION = Pattern.compile("generation-(\\d+)\\.idx");
+
+    // Generations before the current one that are kept for servers that have not
+    // switched yet
+    private static final int RETAINED_GENERATIONS = 1;
+
+    private final Path directory;
+
+    /**
+     * Writes a compiled index to the given path.
+     */
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        void write(Path path) throws IOException;
+    }
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    private static String fileName(long generation) {
+        return String.format("generation-%d.idx", generation);
+    }
+
+    private List<Long> generations() throws IOException {
+        if (!Files.isDirectory(directory))
+            return List.of();
+
+        try (final var files = Files.list(directory)) {
+            return files.map(file -> GENERATION.matcher(file.getFileName().toString()))
+                    .filter(matcher -> matcher.matches())
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Returns the generation number of a snapshot.
+     *
+     * @param snapshot the path of the snapshot
+     * @return the generation number
+     */
+    public static long generationOf(Path snapshot) {
+        final var matcher = GENERATION.matcher(snapshot.getFileName().toString());
+        if (!matcher.matches())
+            throw new MappedIndexException("Not a snapshot: " + snapshot);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * Returns the path of the published snapshot.
+     *
+     * @return the path of the current generation, or empty if nothing has been
+     *         published yet
+     * @throws IOException if the {@code CURRENT} file cannot be read
+     */
+    public Optional<Path> current() throws IOException {
+        try {
+            return Optional.of(directory.resolve(Files.readString(directory.resolve(CURRENT)).strip()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes a new generation and publishes it as the current snapshot. Older
+     * generations beyond the retained ones are deleted.
+     *
+     * @param writer writes the compiled index of the new generation
+     * @return the path of the published generation
+     * @throws IOException if the generation cannot be written or published
+     */
+    public Path publish(SnapshotWriter writer) throws IOException {
+        Files.createDirectories(directory);
+        final var existing = generations();
+        final var generation = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        final var path = directory.resolve(fileName(generation));
+
+        writer.write(path);
+        if (!Files.exists(path))
+            throw new MappedIndexException("Snapshot was not written: " + path);
+
+        // Readers only follow CURRENT, so the switch is a single atomic rename
+        final var pointer = directory.resolve(CURRENT + ".tmp");
+        Files.writeString(pointer, path.getFileName().toString());
+        Files.move(pointer, directory.resolve(CURRENT), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        prune(generation);
+        return path;
+    }
+
+    private void prune(long current) throws IOException {
+        for (final var generation : generations()) {
+            if (generation >= current - RETAINED_GENERATIONS)
+                continue;
+
+            try {
+                Files.deleteIfExists(directory.resolve(fileName(generation)));
+            } catch (IOException e) {
+                // A generation that is still mapped cannot be deleted on some
+                // platforms, so it is left for the next publish
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.comp4321.query;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A boolean query over stemmed words, as parsed by {@link QueryParser}. The
+ * clauses decide which documents match, and the matching documents are ranked
+ * by the words of the clauses that are not negated.
+ */
+public sealed interface Query {
+    /**
+     * Matches the documents containing a word.
+     *
+     * @param stem      the stemmed word
+     * @param titleOnly whether the word has to be in the title
+     */
+    public record Term(String stem, boolean titleOnly) implements Query {
+        public Term {
+            Objects.requireNonNull(stem);
+        }
+
+        @Override
+        public String toString() {
+            return (titleOnly ? "title:" : "") + stem;
+        }
+    }
+
+    /**
+     * Matches the documents containing a phrase in their title or their body. A
+     * sloppy phrase matches when its words occur in any order within a window of
+     * its length plus the slop.
+     *
+     * @param stems     the stemmed words of the phrase
+     * @param slop      the number of extra positions, 0 for an exact phrase
+     * @param titleOnly whether the phrase has to be in the title
+     */
+    public record Phrase(List<String> stems, int slop, boolean titleOnly) implements Query {
+        public Phrase {
+            stems = List.copyOf(stems);
+            if (slop < 0)
+                throw new IllegalArgumentException("slop must be non-negative");
+        }
+
+        @Override
+        public String toString() {
+            return (titleOnly ? "title:" : "") + "\"" + String.join(" ", stems) + "\"" + (slop > 0 ? "~" + slop : "");
+        }
+    }
+
+    /**
+     * Matches the documents matching all the clauses.
+     *
+     * @param clauses the clauses
+     */
+    public record And(List<Query> clauses) implements Query {
+        public And {
+            clauses = List.copyOf(clauses);
+        }
+
+        @Override
+        public String toString() {
+            return clauses.stream().map(Query::toString).collect(Collectors.joining(" AND ", "(", ")"));
+        }
+    }
+
+    /**
+     * Matches the documents matching any of the clauses. Without clauses, no
+     * document matches.
+     *
+     * @param clauses the clauses
+     */
+    public record Or(List<Query> clauses) implements Query {
+        public Or {
+            clauses = List.copyOf(clauses);
+        }
+
+        @Override
+        public String toString() {
+            return clauses.stream().map(Query::toString).collect(Collectors.joining(" OR ", "(", ")"));
+        }
+    }
+
+    /**
+     * Excludes the documents matching the clause from the documents matched by
+     * the rest of a conjunction. On its own, it matches no document.
+     *
+     * @param clause the negated clause
+     */
+    public record Not(Query clause) implements Query {
+        public Not {
+            Objects.requireNonNull(clause);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + clause;
+        }
+    }
+
+    /**
+     * Returns the stems the matching documents are ranked by, which are the words
+     * of the clauses that are not negated.
+     *
+     * @return the stems, in query order
+     */
+    public default Set<String> scoredStems() {
+        final var stems = new LinkedHashSet<String>();
+        collectScoredStems(this, false, stems);
+        return stems;
+    }
+
+    private static void collectScoredStems(Query query, boolean negated, Set<String> stems) {
+        if (query instanceof Term term && !negated)
+            stems.add(term.stem());
+        else if (query instanceof Phrase phrase && !negated)
+            stems.addAll(phrase.stems());
+        else if (query instanceof And and)
+            and.clauses().forEach(clause -> collectScoredStems(clause, negated, stems));
+        else if (query instanceof Or or)
+            or.clauses().forEach(clause -> collectScoredStems(clause, negated, stems));
+        else if (query instanceof Not not)
+            collectScoredStems(not.clause(), !negated, stems);
+    }
+
+    /**
+     * Checks whether every document containing one of the scored words matches,
+     * in which case the documents can be ranked without matching the clauses.
+     *
+     * @return true if the query is a word or a disjunction of words in any field
+     */
+    public default boolean isDisjunctionOfWords() {
+        if (this instanceof Term term)
+            return !term.titleOnly();
+        return this instanceof Or or && !or.clauses().isEmpty()
+                && or.clauses().stream().allMatch(Query::isDisjunctionOfWords);
+    }
+}
@@ -0,0 +1,11 @@
+package com.comp4321.query;
+
+public class QueryException extends RuntimeException {
+    public QueryException(String message) {
+        super(message);
+    }
+
+    public QueryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
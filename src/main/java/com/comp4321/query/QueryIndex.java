@@ -0,0 +1,30 @@
+package com.comp4321.query;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.comp4321.indexers.Posting;
+
+/**
+ * The postings a {@link QueryPlanner} matches queries against.
+ */
+public interface QueryIndex {
+    /**
+     * Returns the number of documents containing a word, which the planner uses
+     * to order the clauses.
+     *
+     * @param stem the stemmed word
+     * @return the document frequency, 0 for an unknown word
+     * @throws IOException if an I/O error occurs while reading the index
+     */
+    public int getDF(String stem) throws IOException;
+
+    /**
+     * Returns the postings of a word.
+     *
+     * @param stem the stemmed word
+     * @return the postings sorted by document ID, empty for an unknown word
+     * @throws IOException if an I/O error occurs while reading the index
+     */
+    public List<Posting> getPostings(String stem) throws IOException;
+}
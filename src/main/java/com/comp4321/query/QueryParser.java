@@ -0,0 +1,242 @@
+package com.comp4321.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Parses the queries of the search box into a {@link Query}. The grammar, from
+ * the loosest to the tightest binding, is:
+ *
+ * <pre>
+ * query    := and ("OR" and)*
+ * and      := sequence ("AND" sequence)*
+ * sequence := unary+
+ * unary    := "NOT" unary | "title:" primary | primary
+ * primary  := word | '"' words '"' ["~" slop] | "(" query ")"
+ * </pre>
+ *
+ * The operators are only recognized in upper case. Within a sequence, the
+ * words are alternatives as in a plain keyword query, while the phrases, the
+ * groups and the negations are required. Words are stemmed, and stop words are
+ * dropped together with the clauses they leave empty.
+ */
+public class QueryParser {
+    private enum Kind {
+        WORD, PHRASE, FIELD, AND, OR, NOT, OPEN, CLOSE, END
+    }
+
+    private record Token(Kind kind, String text, int slop) {
+    }
+
+    private static final int MAX_SLOP_DIGITS = 4;
+
+    private final Function<String, Optional<String>> stemmer;
+
+    /**
+     * Constructs a parser.
+     *
+     * @param stemmer stems a word, or returns empty for a stop word
+     */
+    public QueryParser(Function<String, Optional<String>> stemmer) {
+        this.stemmer = Objects.requireNonNull(stemmer);
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    private static List<Token> tokenize(String text) {
+        final var tokens = new ArrayList<Token>();
+        var i = 0;
+        while (i < text.length()) {
+            final var c = text.charAt(i);
+            if (c == '(' || c == ')') {
+                tokens.add(new Token(c == '(' ? Kind.OPEN : Kind.CLOSE, String.valueOf(c), 0));
+                ++i;
+            } else if (c == '"') {
+                // An unterminated phrase runs to the end of the query
+                var end = text.indexOf('"', i + 1);
+                if (end < 0)
+                    end = text.length();
+                final var phrase = text.substring(i + 1, end);
+                i = Math.min(end + 1, text.length());
+
+                var slop = 0;
+                if (i < text.length() && text.charAt(i) == '~') {
+                    var digitsEnd = i + 1;
+                    while (digitsEnd < text.length() && digitsEnd - i <= MAX_SLOP_DIGITS
+                            && Character.isDigit(text.charAt(digitsEnd)))
+                        ++digitsEnd;
+                    if (digitsEnd > i + 1)
+                        slop = Integer.parseInt(text.substring(i + 1, digitsEnd));
+                    i = digitsEnd;
+                }
+                tokens.add(new Token(Kind.PHRASE, phrase, slop));
+            } else if (isWordChar(c)) {
+                final var start = i;
+                while (i < text.length() && isWordChar(text.charAt(i)))
+                    ++i;
+                final var word = text.substring(start, i);
+                if (word.equals("title") && i < text.length() && text.charAt(i) == ':') {
+                    tokens.add(new Token(Kind.FIELD, word, 0));
+                    ++i;
+                } else {
+                    final var kind = switch (word) {
+                        case "AND" -> Kind.AND;
+                        case "OR" -> Kind.OR;
+                        case "NOT" -> Kind.NOT;
+                        default -> Kind.WORD;
+                    };
+                    tokens.add(new Token(kind, word, 0));
+                }
+            } else {
+                ++i;
+            }
+        }
+        tokens.add(new Token(Kind.END, "end of query", 0));
+        return tokens;
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @param text the query as typed by the user
+     * @return the query, which matches no document if it only has stop words
+     * @throws QueryException if the query is malformed
+     */
+    public Query parse(String text) {
+        final var query = new Parser(tokenize(text)).parse();
+        return query.orElseGet(() -> new Query.Or(List.of()));
+    }
+
+    // The state of parsing one query. Clauses that only have stop words are
+    // parsed to empty
+    private class Parser {
+        private final List<Token> tokens;
+        private int position = 0;
+
+        Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        private Token peek() {
+            return tokens.get(position);
+        }
+
+        private Token next() {
+            return tokens.get(position++);
+        }
+
+        Optional<Query> parse() {
+            if (peek().kind() == Kind.END)
+                return Optional.empty();
+
+            final var query = parseOr(false);
+            if (peek().kind() != Kind.END)
+                throw new QueryException("Unexpected '" + peek().text() + "'");
+            return query;
+        }
+
+        private Optional<Query> parseOr(boolean titleOnly) {
+            final var clauses = new ArrayList<Query>();
+            parseAnd(titleOnly).ifPresent(clauses::add);
+            while (peek().kind() == Kind.OR) {
+                next();
+                parseAnd(titleOnly).ifPresent(clauses::add);
+            }
+            return clauses.size() <= 1 ? clauses.stream().findFirst() : Optional.of(new Query.Or(clauses));
+        }
+
+        private Optional<Query> parseAnd(boolean titleOnly) {
+            final var clauses = new ArrayList<Query>();
+            parseSequence(titleOnly).ifPresent(clauses::add);
+            while (peek().kind() == Kind.AND) {
+                next();
+                parseSequence(titleOnly).ifPresent(clauses::add);
+            }
+            return clauses.size() <= 1 ? clauses.stream().findFirst() : Optional.of(new Query.And(clauses));
+        }
+
+        private boolean startsUnary(Kind kind) {
+            return kind == Kind.WORD || kind == Kind.PHRASE || kind == Kind.FIELD || kind == Kind.NOT
+                    || kind == Kind.OPEN;
+        }
+
+        // The required clauses are repeated among the alternatives, so that the
+        // words rank the documents without being required next to them
+        private Optional<Query> parseSequence(boolean titleOnly) {
+            if (!startsUnary(peek().kind()))
+                throw new QueryException("Expected a word, a phrase or '(' but found '" + peek().text() + "'");
+
+            final var required = new ArrayList<Query>();
+            final var negated = new ArrayList<Query>();
+            final var alternatives = new ArrayList<Query>();
+            while (startsUnary(peek().kind())) {
+                final var clause = parseUnary(titleOnly);
+                if (clause.isEmpty())
+                    continue;
+                if (clause.get() instanceof Query.Term)
+                    alternatives.add(clause.get());
+                else if (clause.get() instanceof Query.Not)
+                    negated.add(clause.get());
+                else
+                    required.add(clause.get());
+            }
+
+            final var clauses = new ArrayList<Query>(required);
+            clauses.addAll(negated);
+            if (!alternatives.isEmpty()) {
+                if (clauses.isEmpty())
+                    return Optional.of(alternatives.size() == 1 ? alternatives.get(0) : new Query.Or(alternatives));
+
+                alternatives.addAll(required);
+                clauses.add(alternatives.size() == 1 ? alternatives.get(0) : new Query.Or(alternatives));
+            }
+            if (clauses.isEmpty())
+                return Optional.empty();
+            return Optional.of(clauses.size() == 1 ? clauses.get(0) : new Query.And(clauses));
+        }
+
+        private Optional<Query> parseUnary(boolean titleOnly) {
+            switch (peek().kind()) {
+                case NOT:
+                    next();
+                    if (!startsUnary(peek().kind()))
+                        throw new QueryException("Expected a clause after NOT");
+                    return parseUnary(titleOnly).map(Query.Not::new);
+                case FIELD:
+                    next();
+                    return parsePrimary(true);
+                default:
+                    return parsePrimary(titleOnly);
+            }
+        }
+
+        private Optional<Query> parsePrimary(boolean titleOnly) {
+            final var token = next();
+            switch (token.kind()) {
+                case WORD:
+                    return stemmer.apply(token.text()).map(stem -> new Query.Term(stem, titleOnly));
+                case PHRASE:
+                    final var stems = Arrays.stream(token.text().split("[^a-zA-Z0-9_-]+"))
+                            .filter(word -> !word.isBlank())
+                            .map(stemmer)
+                            .flatMap(Optional::stream)
+                            .toList();
+                    return stems.isEmpty() ? Optional.empty()
+                            : Optional.of(new Query.Phrase(stems, token.slop(), titleOnly));
+                case OPEN:
+                    final var group = parseOr(titleOnly);
+                    if (next().kind() != Kind.CLOSE)
+                        throw new QueryException("Missing ')'");
+                    return group;
+                default:
+                    throw new QueryException("Expected a word, a phrase or '(' but found '" + token.text() + "'");
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.comp4321.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import com.comp4321.indexers.PhraseMatcher;
+import com.comp4321.indexers.Posting;
+import com.comp4321.indexers.PostingCursor;
+
+/**
+ * Finds the documents matching a {@link Query}. The query is first normalized:
+ * negations are pushed down to the words and phrases, nested conjunctions and
+ * disjunctions are flattened, and a disjunction containing a sibling of its
+ * conjunction is dropped. Conjunctions are then evaluated from their rarest
+ * clause on, and every following clause is only evaluated for the documents
+ * matched so far, by seeking its posting lists to them. Negations are applied
+ * last, as filters over the matched documents. A conjunction with a clause that
+ * no document contains is empty without reading the other clauses.
+ */
+public class QueryPlanner {
+    private final QueryIndex index;
+    private final Map<String, Integer> dfCache = new HashMap<>();
+
+    /**
+     * Constructs a planner for the queries of one search.
+     *
+     * @param index the postings to match the queries against
+     */
+    public QueryPlanner(QueryIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Normalizes a query: negations are pushed down to the words and phrases,
+     * clauses of the same kind are flattened, duplicate clauses are removed, and
+     * disjunctions implied by a sibling clause of their conjunction are dropped.
+     *
+     * @param query the query
+     * @return an equivalent query
+     */
+    public static Query normalize(Query query) {
+        return normalize(query, false);
+    }
+
+    private static Query normalize(Query query, boolean negated) {
+        if (query instanceof Query.Not not)
+            return normalize(not.clause(), !negated);
+
+        if (query instanceof Query.And and) {
+            final var clauses = and.clauses().stream().map(clause -> normalize(clause, negated)).toList();
+            return negated ? or(clauses) : and(clauses);
+        }
+        if (query instanceof Query.Or or) {
+            final var clauses = or.clauses().stream().map(clause -> normalize(clause, negated)).toList();
+            return negated ? and(clauses) : or(clauses);
+        }
+        return negated ? new Query.Not(query) : query;
+    }
+
+    private static Query and(List<Query> clauses) {
+        final var flattened = new LinkedHashSet<Query>();
+        for (final var clause : clauses) {
+            if (clause instanceof Query.And and)
+                flattened.addAll(and.clauses());
+            else
+                flattened.add(clause);
+        }
+
+        // A AND (A OR B) is A
+        final var absorbed = flattened.stream()
+                .filter(clause -> !(clause instanceof Query.Or or)
+                        || or.clauses().stream().noneMatch(flattened::contains))
+                .toList();
+        return absorbed.size() == 1 ? absorbed.get(0) : new Query.And(absorbed);
+    }
+
+    private static Query or(List<Query> clauses) {
+        final var flattened = new LinkedHashSet<Query>();
+        for (final var clause : clauses) {
+            if (clause instanceof Query.Or or)
+                flattened.addAll(or.clauses());
+            else
+                flattened.add(clause);
+        }
+        return flattened.size() == 1 ? flattened.iterator().next() : new Query.Or(List.copyOf(flattened));
+    }
+
+    private int getDF(String stem) throws IOException {
+        var df = dfCache.get(stem);
+        if (df == null) {
+            df = index.getDF(stem);
+            dfCache.put(stem, df);
+        }
+        return df;
+    }
+
+    /**
+     * Estimates the number of documents a clause reads the postings of when it
+     * is evaluated on its own.
+     *
+     * @param query a normalized clause
+     * @return the estimated cost
+     * @throws IOException if an I/O error occurs while reading the index
+     */
+    public long cost(Query query) throws IOException {
+        if (query instanceof Query.Term term)
+            return getDF(term.stem());
+
+        if (query instanceof Query.Phrase phrase) {
+            var cost = Long.MAX_VALUE;
+            for (final var stem : phrase.stems())
+                cost = Math.min(cost, getDF(stem));
+            return cost;
+        }
+
+        if (query instanceof Query.And and) {
+            var cost = Long.MAX_VALUE;
+            for (final var clause : and.clauses()) {
+                if (!(clause instanceof Query.Not))
+                    cost = Math.min(cost, cost(clause));
+            }
+            return cost;
+        }
+
+        if (query instanceof Query.Or or) {
+            var cost = 0L;
+            for (final var clause : or.clauses()) {
+                final var clauseCost = cost(clause);
+                if (clauseCost == Long.MAX_VALUE)
+                    return Long.MAX_VALUE;
+                cost += clauseCost;
+            }
+            return cost;
+        }
+
+        // A negation matches almost every document
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the documents matching a query. A query that only excludes
+     * documents matches no document.
+     *
+     * @param query the query
+     * @return the IDs of the matching documents
+     * @throws IOException if an I/O error occurs while reading the index
+     */
+    public BitSet match(Query query) throws IOException {
+        return evaluate(normalize(query), null);
+    }
+
+    // Evaluates a normalized clause, among the candidates if there are any
+    private BitSet evaluate(Query query, BitSet candidates) throws IOException {
+        if (query instanceof Query.Term term)
+            return evaluateTerm(term, candidates);
+        if (query instanceof Query.Phrase phrase)
+            return evaluatePhrase(phrase, candidates);
+        if (query instanceof Query.And and)
+            return evaluateAnd(and, candidates);
+        if (query instanceof Query.Or or)
+            return evaluateOr(or, candidates);
+
+        final var not = (Query.Not) query;
+        if (candidates == null)
+            return new BitSet();
+        final var matches = (BitSet) candidates.clone();
+        matches.andNot(evaluate(not.clause(), candidates));
+        return matches;
+    }
+
+    private BitSet evaluateTerm(Query.Term term, BitSet candidates) throws IOException {
+        final var matches = new BitSet();
+        for (final var posting : restrict(index.getPostings(term.stem()), candidates, term.titleOnly()))
+            matches.set(posting.docId());
+        return matches;
+    }
+
+    private BitSet evaluatePhrase(Query.Phrase phrase, BitSet candidates) throws IOException {
+        final var matches = new BitSet();
+        if (cost(phrase) == 0)
+            return matches;
+
+        // A sloppy phrase only needs every distinct word once within the window
+        final var stems = phrase.slop() == 0 ? phrase.stems() : phrase.stems().stream().distinct().toList();
+        final var postings = new ArrayList<List<Posting>>(stems.size());
+        for (final var stem : stems)
+            postings.add(restrict(index.getPostings(stem), candidates, phrase.titleOnly()));
+
+        final var documents = phrase.slop() == 0 ? PhraseMatcher.getDocumentsWithPhrase(postings)
+                : PhraseMatcher.getDocumentsWithin(postings, phrase.stems().size() + phrase.slop());
+        documents.forEach(matches::set);
+        return matches;
+    }
+
+    private BitSet evaluateAnd(Query.And and, BitSet candidates) throws IOException {
+        final var positive = new ArrayList<Query>();
+        final var negative = new ArrayList<Query>();
+        for (final var clause : and.clauses())
+            (clause instanceof Query.Not ? negative : positive).add(clause);
+
+        if (positive.isEmpty())
+            return candidates == null ? new BitSet() : (BitSet) candidates.clone();
+
+        final var costs = new HashMap<Query, Long>();
+        for (final var clause : positive)
+            costs.put(clause, cost(clause));
+        if (costs.containsValue(0L))
+            return new BitSet();
+        positive.sort(Comparator.comparing(costs::get));
+
+        var matches = candidates;
+        for (final var clause : positive) {
+            matches = evaluate(clause, matches);
+            if (matches.isEmpty())
+                return matches;
+        }
+        for (final var clause : negative) {
+            matches.andNot(evaluate(((Query.Not) clause).clause(), matches));
+            if (matches.isEmpty())
+                return matches;
+        }
+        return matches;
+    }
+
+    private BitSet evaluateOr(Query.Or or, BitSet candidates) throws IOException {
+        final var matches = new BitSet();
+        for (final var clause : or.clauses()) {
+            if (candidates == null) {
+                matches.or(evaluate(clause, null));
+                continue;
+            }
+
+            // The documents that already match are not evaluated again
+            final var remaining = (BitSet) candidates.clone();
+            remaining.andNot(matches);
+            if (remaining.isEmpty())
+                break;
+            matches.or(evaluate(clause, remaining));
+        }
+        return matches;
+    }
+
+    /**
+     * Keeps the postings of the candidates, by seeking the list to each of them,
+     * and drops the body locations of title-only clauses.
+     */
+    private static List<Posting> restrict(List<Posting> postings, BitSet candidates, boolean titleOnly) {
+        if (candidates == null && !titleOnly)
+            return postings;
+
+        final var restricted = new ArrayList<Posting>();
+        if (candidates == null) {
+            for (final var posting : postings) {
+                if (posting.titleTF() > 0)
+                    restricted.add(new Posting(posting.docId(), posting.titleLocations(), new int[0]));
+            }
+            return restricted;
+        }
+
+        final var cursor = new PostingCursor(postings);
+        for (var docId = candidates.nextSetBit(0); docId >= 0 && !cursor.isExhausted(); docId = candidates
+                .nextSetBit(docId + 1)) {
+            if (!cursor.seek(docId))
+                continue;
+
+            final var posting = cursor.posting();
+            if (!titleOnly)
+                restricted.add(posting);
+            else if (posting.titleTF() > 0)
+                restricted.add(new Posting(posting.docId(), posting.titleLocations(), new int[0]));
+        }
+        return restricted;
+    }
+}
@@ -1,17 +1,16 @@
 package com.comp4321.server;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Semaphore;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import com.comp4321.SearchEngine;
-import com.comp4321.SearchResult;
+import com.comp4321.indexers.ScoringModel;
+import com.comp4321.query.Query;
+import com.comp4321.query.QueryException;
+import com.comp4321.query.QueryParser;
+import com.comp4321.query.QueryPlanner;
 
 import io.javalin.Javalin;
 import io.javalin.http.Context;
@@ -20,6 +19,7 @@ import io.javalin.rendering.template.JavalinJte;
 public class JavalinServer {
         private final SearchEngine engine;
         private final int maxSearchResults;
+        private final QueryParser parser;
 
         private final Javalin app;
         private final Semaphore isServerStopped;
@@ -27,11 +27,13 @@ public class JavalinServer {
         public JavalinServer(SearchEngine engine, int maxSearchResults) {
                 this.engine = engine;
                 this.maxSearchResults = maxSearchResults;
+                this.parser = new QueryParser(engine::stemWord);
                 this.isServerStopped = new Semaphore(0);
 
                 app = Javalin.create(config -> config.fileRenderer(new JavalinJte()));
                 app.get("/", this::renderIndexPage);
                 app.get("/result", this::renderResultPage);
+                app.get("/stats", this::renderStats);
 
                 Runtime.getRuntime().addShutdownHook(new Thread(app::stop));
                 app.events(event -> event.serverStopped(isServerStopped::release));
@@ -43,35 +45,59 @@ public class JavalinServer {
         }
 
         private void renderResultPage(Context ctx) throws IOException {
-                final var query = ctx.queryParam("search");
-
-                final var keywords = Arrays.stream(query.split("[^a-zA-Z0-9_-]+"))
-                                .filter(s -> !s.isBlank())
-                                .collect(Collectors.toSet());
-                final var keywordStems = keywords.stream()
-                                .map(engine::stemWord)
-                                .flatMap(Optional::stream)
-                                .collect(Collectors.toSet());
-
-                final var phrasePat = Pattern.compile("\"(.*)\"").matcher(query);
-                final var phrase = phrasePat.find()
-                                ? Arrays.stream(phrasePat.group(1).split("[^a-zA-Z0-9_-]+"))
-                                                .filter(s -> !s.isBlank())
-                                                .collect(Collectors.toList())
-                                : List.<String>of();
-                final var phraseStems = phrase.stream()
-                                .map(engine::stemWord)
-                                .flatMap(Optional::stream)
-                                .collect(Collectors.toList());
-
-                final var searchResults = engine.search(keywords, phrase)
-                                .values().stream()
-                                .sorted(Comparator.comparing(SearchResult::score, Comparator.reverseOrder()))
-                                .limit(maxSearchResults)
-                                .toList();
-
-                ctx.render("result.jte", Collections.singletonMap("page",
-                                new ResultPage(keywordStems, phraseStems, searchResults)));
+                final var text = ctx.queryParam("search");
+
+                final Query query;
+                try {
+                        query = parser.parse(text == null ? "" : text);
+                } catch (QueryException e) {
+                        ctx.status(400).result("Invalid query: " + e.getMessage());
+                        return;
+                }
+
+                final var modelName = ctx.queryParam("model");
+                final var model = modelName == null || modelName.isEmpty() ? Optional.of(ScoringModel.DEFAULT)
+                                : ScoringModel.forName(modelName);
+                if (model.isEmpty()) {
+                        ctx.status(400).result("Unknown scoring model: " + modelName);
+                        return;
+                }
+
+                final var searchResults = engine.search(query, model.get(), parseOffset(ctx), maxSearchResults);
+
+                // The normalized query shows what the documents are matched by, and the
+                // keywords what they are ranked by
+                ctx.render("result.jte", Collections.singletonMap("page", new ResultPage(
+                                QueryPlanner.normalize(query).toString(), query.scoredStems(), searchResults)));
+        }
+
+        // The number of results to skip, for paging through the results
+        private static int parseOffset(Context ctx) {
+                final var offset = ctx.queryParam("offset");
+                if (offset == null)
+                        return 0;
+                try {
+                        return Math.max(0, Integer.parseInt(offset));
+                } catch (NumberFormatException e) {
+                        return 0;
+                }
+        }
+
+        private void renderStats(Context ctx) throws IOException {
+                final var statistics = engine.getStatistics();
+                final var caches = engine.getCaches();
+                if (statistics.isEmpty() && caches.isEmpty()) {
+                        ctx.status(404).result("Statistics are not available for this index");
+                        return;
+                }
+
+                final var sb = new StringBuilder();
+                statistics.ifPresent(sb::append);
+                if (!caches.isEmpty()) {
+                        sb.append(String.format(statistics.isPresent() ? "%nCaches:%n" : "Caches:%n"));
+                        caches.forEach((name, cache) -> sb.append(String.format("  %s: %s%n", name, cache)));
+                }
+                ctx.contentType("text/plain").result(sb.toString());
         }
 
         public void start() {
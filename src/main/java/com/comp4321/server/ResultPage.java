@@ -6,10 +6,10 @@ import java.util.Set;
 
 import com.comp4321.SearchResult;
 
-public record ResultPage(Set<String> keywords, List<String> phrase, List<SearchResult> results) {
+public record ResultPage(String query, Set<String> keywords, List<SearchResult> results) {
     public ResultPage {
+        Objects.requireNonNull(query);
         Objects.requireNonNull(keywords);
-        Objects.requireNonNull(phrase);
         Objects.requireNonNull(results);
     }
 }
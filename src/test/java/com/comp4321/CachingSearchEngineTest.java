@@ -0,0 +1,97 @@
+package com.comp4321;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.assertj.core.api.Assertions;
+
+import com.comp4321.indexers.ScoringModel;
+import com.comp4321.query.Query;
+
+import net.jqwik.api.Example;
+
+public class CachingSearchEngineTest {
+    // Stems by lower-casing and dropping a trailing "s", with "the" as the only
+    // stop word
+    private static class FakeEngine implements SearchEngine {
+        private final List<List<String>> searches = new ArrayList<>();
+        private long generation = 0;
+
+        @Override
+        public Map<Integer, SearchResult> search(Set<String> words, List<String> phrase) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<SearchResult> search(Set<String> words, List<String> phrase, int slop, int offset, int k) {
+            searches.add(List.copyOf(phrase));
+            return List.of(new SearchResult(1.0, "title", "invalid://" + generation + ".com", ZonedDateTime.now(),
+                    42L, Map.of(), Set.of(), Set.of()));
+        }
+
+        @Override
+        public List<SearchResult> search(Query query, ScoringModel model, int offset, int k) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<String> stemWord(String word) {
+            final var lower = word.toLowerCase();
+            if (lower.equals("the"))
+                return Optional.empty();
+            return Optional.of(lower.endsWith("s") ? lower.substring(0, lower.length() - 1) : lower);
+        }
+
+        @Override
+        public long getGeneration() {
+            return generation;
+        }
+    }
+
+    @Example
+    public void sameCanonicalQueryIsCached() throws Exception {
+        final var engine = new FakeEngine();
+        final var cache = new CachingSearchEngine(engine);
+
+        final var first = cache.search(Set.of("hong", "kong"), List.of(), 0, 10);
+        Assertions.assertThat(cache.search(Set.of("Kong", "the", "hongs"), List.of(), 0, 10)).isSameAs(first);
+        Assertions.assertThat(engine.searches).hasSize(1);
+
+        // A different phrase, phrase order or page is a different query
+        cache.search(Set.of("hong", "kong"), List.of("hong", "kong"), 0, 10);
+        cache.search(Set.of("hong", "kong"), List.of("kong", "hong"), 0, 10);
+        cache.search(Set.of("hong", "kong"), List.of(), 10, 10);
+        Assertions.assertThat(engine.searches).hasSize(4);
+        cache.search(Set.of("hong", "kong"), List.of("Hongs", "the", "kong"), 0, 10);
+        Assertions.assertThat(engine.searches).hasSize(4);
+
+        final var queryCache = cache.getCaches().get(CachingSearchEngine.QUERY_RESULTS);
+        Assertions.assertThat(queryCache.getHitCount()).isEqualTo(2);
+        Assertions.assertThat(queryCache.getMissCount()).isEqualTo(4);
+        Assertions.assertThat(queryCache.weight()).isPositive();
+    }
+
+    @Example
+    public void newGenerationIsNotServedStale() throws Exception {
+        final var engine = new FakeEngine();
+        final var cache = new CachingSearchEngine(engine);
+
+        Assertions.assertThat(cache.search(Set.of("hong"), List.of(), 0, 10))
+                .extracting(SearchResult::url)
+                .containsExactly("invalid://0.com");
+
+        engine.generation = 1;
+        Assertions.assertThat(cache.search(Set.of("hong"), List.of(), 0, 10))
+                .extracting(SearchResult::url)
+                .containsExactly("invalid://1.com");
+        Assertions.assertThat(cache.search(Set.of("hong"), List.of(), 0, 10))
+                .extracting(SearchResult::url)
+                .containsExactly("invalid://1.com");
+        Assertions.assertThat(engine.searches).hasSize(2);
+        Assertions.assertThat(cache.getCaches().get(CachingSearchEngine.QUERY_RESULTS).size()).isEqualTo(1);
+    }
+}
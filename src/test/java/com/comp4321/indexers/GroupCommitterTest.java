@@ -0,0 +1,62 @@
+package com.comp4321.indexers;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.assertj.core.api.Assertions;
+import org.mockito.Mockito;
+
+import jdbm.RecordManager;
+import net.jqwik.api.Example;
+
+public class GroupCommitterTest {
+    private final RecordManager recman = Mockito.mock(RecordManager.class);
+    private long now = 0;
+
+    private GroupCommitter committer(CommitPolicy policy) {
+        return new GroupCommitter(recman, policy, null, () -> now);
+    }
+
+    @Example
+    public void commitEveryNDocuments() throws IOException {
+        final var committer = committer(new CommitPolicy(3, Duration.ofHours(1), true));
+        for (int i = 0; i < 7; ++i)
+            committer.documentIndexed();
+
+        Mockito.verify(recman, Mockito.times(2)).commit();
+        Assertions.assertThat(committer.getCommitCount()).isEqualTo(2);
+    }
+
+    @Example
+    public void commitAfterInterval() throws IOException {
+        final var committer = committer(new CommitPolicy(100, Duration.ofSeconds(10), true));
+        committer.documentIndexed();
+        Mockito.verify(recman, Mockito.never()).commit();
+
+        now += Duration.ofSeconds(11).toNanos();
+        committer.documentIndexed();
+        Mockito.verify(recman, Mockito.times(1)).commit();
+
+        // The interval restarts after the commit
+        now += Duration.ofSeconds(5).toNanos();
+        committer.documentIndexed();
+        Mockito.verify(recman, Mockito.times(1)).commit();
+    }
+
+    @Example
+    public void meterLatency() throws IOException {
+        Mockito.doAnswer(invocation -> {
+            now += Duration.ofMillis(20).toNanos();
+            return null;
+        }).when(recman).commit();
+
+        final var committer = committer(CommitPolicy.DEFAULT);
+        committer.commit();
+        committer.checkpoint();
+
+        Assertions.assertThat(committer.getCommitCount()).isEqualTo(2);
+        Assertions.assertThat(committer.getAverageCommitLatency()).isEqualTo(Duration.ofMillis(20));
+        Assertions.assertThat(committer.getMaxCommitLatency()).isEqualTo(Duration.ofMillis(20));
+        Assertions.assertThat(committer.getMaxLogSize()).isZero();
+    }
+}
@@ -0,0 +1,102 @@
+package com.comp4321.indexers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.htmlparser.util.ParserException;
+import org.mockito.Mockito;
+
+import com.comp4321.IRUtilities.Crawler;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.lifecycle.AfterProperty;
+import net.jqwik.api.lifecycle.BeforeProperty;
+
+public class IndexStatisticsTest {
+    private RecordManager recman;
+    private Indexer indexer;
+
+    @BeforeProperty
+    public void setup() throws IOException {
+        recman = RecordManagerFactory.createRecordManager("test");
+        indexer = new Indexer(recman);
+    }
+
+    @AfterProperty
+    public void teardown() {
+        try {
+            recman.close();
+            Files.deleteIfExists(Path.of("test.db"));
+            Files.deleteIfExists(Path.of("test.lg"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void indexDocument(String url, List<String> words, List<String> links)
+            throws IOException, ParserException {
+        final var spy = Mockito.spy(new Crawler(url));
+        Mockito.doReturn(words).when(spy).extractWords();
+        Mockito.doReturn(List.of("page")).when(spy).extractTitle(Mockito.anyBoolean());
+        Mockito.doReturn(links).when(spy).extractLinks();
+        Mockito.doReturn(ZonedDateTime.now()).when(spy).getLastModified();
+        Mockito.doReturn(42L).when(spy).getPageSize();
+        indexer.indexDocument(spy);
+    }
+
+    @Property
+    public void histogramBuckets(@ForAll @IntRange(min = 0, max = 1_000_000) int value) {
+        final var histogram = new Histogram();
+        histogram.add(value);
+        Assertions.assertThat(histogram.bucketCount(value)).isOne();
+        Assertions.assertThat(histogram.bucketCount(Long.highestOneBit(value))).isOne();
+        Assertions.assertThat(histogram.bucketCount(2L * value + 1)).isZero();
+    }
+
+    @Example
+    public void collectStatistics() throws IOException, ParserException {
+        indexDocument("invalid://a.com", List.of("hello", "world", "hello"), List.of("invalid://b.com"));
+        indexDocument("invalid://b.com", List.of("hello", "search"), List.of("invalid://a.com", "invalid://c.com"));
+
+        final var stats = indexer.getStatistics().orElseThrow();
+        Assertions.assertThat(stats.getDocumentCount()).isEqualTo(2);
+        Assertions.assertThat(stats.getURLCount()).isEqualTo(3);
+        // page, hello, world, search
+        Assertions.assertThat(stats.getTermCount()).isEqualTo(4);
+        Assertions.assertThat(stats.getPostingCount()).isEqualTo(6);
+        Assertions.assertThat(stats.getTitlePositions()).isEqualTo(2);
+        Assertions.assertThat(stats.getBodyPositions()).isEqualTo(5);
+
+        final var documentFrequencies = stats.getDocumentFrequencies();
+        Assertions.assertThat(documentFrequencies.bucketCount(1)).isEqualTo(2);
+        Assertions.assertThat(documentFrequencies.bucketCount(2)).isEqualTo(2);
+        Assertions.assertThat(stats.getOutDegrees().sum()).isEqualTo(3);
+        Assertions.assertThat(stats.getOutDegrees().max()).isEqualTo(2);
+        Assertions.assertThat(stats.getInDegrees().count()).isEqualTo(3);
+
+        // hello has the most positions, so it has the largest posting list
+        Assertions.assertThat(stats.getLargestRecords(IndexStatistics.POSTING_LISTS))
+                .hasSize(4)
+                .first()
+                .extracting(IndexStatistics.RecordSize::label)
+                .isEqualTo("hello");
+        Assertions.assertThat(stats.getLargestRecords(IndexStatistics.CHILD_LINKS))
+                .first()
+                .extracting(IndexStatistics.RecordSize::label)
+                .isEqualTo("invalid://b.com");
+
+        final var merged = indexer.getStatistics().orElseThrow().merge(stats);
+        Assertions.assertThat(merged.getPostingCount()).isEqualTo(12);
+        Assertions.assertThat(merged.getLargestRecords(IndexStatistics.POSTING_LISTS)).hasSize(8);
+        Assertions.assertThat(merged.toString()).contains("Documents: 4", "hello");
+    }
+}
@@ -4,14 +4,20 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.assertj.core.api.Assertions;
 import org.htmlparser.util.ParserException;
 import org.mockito.Mockito;
 
+import com.comp4321.SearchResult;
 import com.comp4321.IRUtilities.Crawler;
+import com.comp4321.mapped.DocumentColumns;
 
 import jdbm.RecordManager;
 import jdbm.RecordManagerFactory;
@@ -69,4 +75,88 @@ public class IndexerTest {
                 .extractingFromEntries(e -> e.getValue().url())
                 .isEmpty();
     }
+
+    private static Crawler mockCrawler(String url, List<String> words, ZonedDateTime lastModified)
+            throws ParserException {
+        return mockCrawler(url, List.of("page"), words, lastModified);
+    }
+
+    private static Crawler mockCrawler(String url, List<String> title, List<String> words,
+            ZonedDateTime lastModified) throws ParserException {
+        final var spy = Mockito.spy(new Crawler(url));
+        Mockito.doReturn(words).when(spy).extractWords();
+        Mockito.doReturn(title).when(spy).extractTitle(Mockito.anyBoolean());
+        Mockito.doReturn(List.of("invalid://0.com")).when(spy).extractLinks();
+        Mockito.doReturn(lastModified).when(spy).getLastModified();
+        Mockito.doReturn(42L).when(spy).getPageSize();
+        return spy;
+    }
+
+    @Example
+    public void searchPages() throws IOException, ParserException {
+        for (int i = 1; i <= 5; ++i) {
+            final var words = new ArrayList<String>(Collections.nCopies(i, "hello"));
+            words.addAll(Collections.nCopies(6 - i, "world"));
+            indexer.indexDocument(mockCrawler("invalid://" + i + ".com", words, ZonedDateTime.now()));
+        }
+        // Without it every document contains the word and scores zero
+        indexer.indexDocument(mockCrawler("invalid://6.com", List.of("world"), ZonedDateTime.now()));
+
+        final var expected = indexer.search(Set.of("hello"), List.of()).values().stream()
+                .sorted(Comparator.comparing(SearchResult::score, Comparator.reverseOrder()))
+                .map(SearchResult::url)
+                .toList();
+        Assertions.assertThat(expected).hasSize(5);
+
+        Assertions.assertThat(indexer.search(Set.of("hello"), List.of(), 0, 2))
+                .extracting(SearchResult::url)
+                .containsExactlyElementsOf(expected.subList(0, 2));
+        Assertions.assertThat(indexer.search(Set.of("hello"), List.of(), 2, 2))
+                .extracting(SearchResult::url)
+                .containsExactlyElementsOf(expected.subList(2, 4));
+        Assertions.assertThat(indexer.search(Set.of("hello"), List.of(), 4, 2))
+                .extracting(SearchResult::url)
+                .containsExactlyElementsOf(expected.subList(4, 5));
+        Assertions.assertThat(indexer.search(Set.of("hello"), List.of(), 5, 2)).isEmpty();
+    }
+
+    @Example
+    public void compact() throws IOException, ParserException {
+        final var name = "test-compact";
+        Indexer.deleteIndexes(name);
+        try {
+            final Map<Integer, SearchResult> expected;
+            try (final var fileIndexer = new Indexer(name, CommitPolicy.DEFAULT)) {
+                // Re-indexing the pages rewrites their records and leaves free pages
+                final var now = ZonedDateTime.now();
+                for (int version = 0; version < 3; ++version) {
+                    for (int page = 0; page < 20; ++page)
+                        fileIndexer.indexDocument(mockCrawler("invalid://" + page + ".com",
+                                List.of("title", "v" + version), List.of("hello", "page" + page, "version" + version),
+                                now.plusDays(version)));
+                    fileIndexer.finishCrawl();
+                }
+                expected = fileIndexer.search(Set.of("hello", "page3"), List.of());
+            }
+
+            final var result = Indexer.compact(name);
+            Assertions.assertThat(result.bytesAfter()).isLessThan(result.bytesBefore());
+            Assertions.assertThat(Path.of(name + ".compact.db")).doesNotExist();
+
+            // Only the current titles are left in the rebuilt columns
+            try (final var columns = DocumentColumns.open(Path.of(name + ".columns"))) {
+                Assertions.assertThat(columns.isClean()).isTrue();
+                Assertions.assertThat(columns.titleBytes()).isEqualTo(20 * "title v2".length());
+            }
+
+            try (final var fileIndexer = new Indexer(name, CommitPolicy.DEFAULT)) {
+                Assertions.assertThat(fileIndexer.getDocumentCount()).isEqualTo(20);
+                Assertions.assertThat(fileIndexer.search(Set.of("hello", "page3"), List.of()))
+                        .isEqualTo(expected);
+                Assertions.assertThat(fileIndexer.search(Set.of("version0"), List.of())).isEmpty();
+            }
+        } finally {
+            Indexer.deleteIndexes(name);
+        }
+    }
 }
@@ -3,9 +3,12 @@ package com.comp4321.indexers;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import org.assertj.core.api.Assertions;
 
@@ -66,6 +69,247 @@ public class InvertedIndexTest {
                 Assertions.within(1e-10));
     }
 
+    private static List<Integer> randomWords(Random random, int count) {
+        // Skewed towards low word IDs, so that some words are in most documents
+        return IntStream.range(0, count)
+                .mapToObj(i -> (int) (Math.pow(random.nextDouble(), 3) * 200))
+                .toList();
+    }
+
+    private static List<Map.Entry<Integer, Double>> select(TopScores top) {
+        top.sort();
+        return IntStream.range(0, top.size()).mapToObj(rank -> Map.entry(top.docId(rank), top.score(rank))).toList();
+    }
+
+    private void addRandomDocuments() throws IOException {
+        final var random = new Random(4321);
+        for (int docId = 0; docId < 300; ++docId)
+            invertedIndex.addDocument(docId, randomWords(random, 3), randomWords(random, 20 + random.nextInt(40)));
+        // Re-indexed documents change their norms without a full recomputation
+        for (int docId = 0; docId < 300; docId += 7)
+            invertedIndex.addDocument(docId, randomWords(random, 3), randomWords(random, 20 + random.nextInt(40)));
+    }
+
+    private static final List<Set<Integer>> QUERIES = List.of(Set.of(0), Set.of(0, 1, 2), Set.of(0, 50, 150),
+            Set.of(3, 120, 199, 500));
+
+    private Map<Integer, Integer> getDFByWord(Set<Integer> query) throws IOException {
+        final var dfByWord = new HashMap<Integer, Integer>();
+        for (final var wordId : query)
+            dfByWord.put(wordId, invertedIndex.getDF(wordId));
+        return dfByWord;
+    }
+
+    @Example
+    public void checkTopScores() throws IOException {
+        addRandomDocuments();
+        final var scorer = invertedIndex.scorer(ScoringModel.TF_IDF);
+        for (final var query : QUERIES) {
+            final var dfByWord = getDFByWord(query);
+            final var scores = invertedIndex.getScores(dfByWord, scorer);
+
+            for (final var k : List.of(1, 10, 50)) {
+                final var expected = new TopScores(k);
+                scores.forEach(expected::offer);
+                final var actual = new TopScores(k);
+                invertedIndex.selectTopScores(dfByWord, scorer, docId -> true, actual);
+                Assertions.assertThat(select(actual)).containsExactlyElementsOf(select(expected));
+
+                final var expectedEven = new TopScores(k);
+                scores.forEach((docId, score) -> {
+                    if (docId % 2 == 0)
+                        expectedEven.offer(docId, score);
+                });
+                final var actualEven = new TopScores(k);
+                invertedIndex.selectTopScores(dfByWord, scorer, docId -> docId % 2 == 0, actualEven);
+                Assertions.assertThat(select(actualEven)).containsExactlyElementsOf(select(expectedEven));
+            }
+        }
+    }
+
+    @Example
+    public void checkBM25TopScores() throws IOException {
+        addRandomDocuments();
+        final var scorer = invertedIndex.scorer(ScoringModel.BM25);
+        for (final var query : QUERIES) {
+            final var dfByWord = getDFByWord(query);
+            final var scores = invertedIndex.getScores(dfByWord, scorer);
+
+            // The words are added up in another order, so the scores may differ in
+            // the last bits
+            final var expected = new TopScores(10);
+            scores.forEach(expected::offer);
+            final var actual = new TopScores(10);
+            invertedIndex.selectTopScores(dfByWord, scorer, docId -> true, actual);
+            final var expectedTop = select(expected);
+            final var actualTop = select(actual);
+            Assertions.assertThat(actualTop).extracting(Map.Entry::getKey)
+                    .containsExactlyElementsOf(expectedTop.stream().map(Map.Entry::getKey).toList());
+            for (int rank = 0; rank < actualTop.size(); ++rank)
+                Assertions.assertThat(actualTop.get(rank).getValue())
+                        .isCloseTo(expectedTop.get(rank).getValue(), Assertions.within(1e-12));
+        }
+    }
+
+    @Example
+    public void checkBoundsAfterTitleMove() throws IOException {
+        // Word 1 is worth more in the title, where document 2 moves it without
+        // changing its term vector. Document 1 scores above the old bound of word
+        // 1, so a stale bound would skip document 2.
+        invertedIndex.addDocument(1, List.of(11), List.of(1, 10, 12, 13));
+        invertedIndex.addDocument(2, List.of(3), List.of(1));
+        invertedIndex.addDocument(3, List.of(6), List.of(7));
+        invertedIndex.addDocument(4, List.of(8), List.of(9));
+        invertedIndex.addDocument(2, List.of(1), List.of(3));
+
+        final var scorer = invertedIndex.scorer(ScoringModel.TF_IDF);
+        final var query = getDFByWord(Set.of(1, 10));
+        final var expected = new TopScores(1);
+        invertedIndex.getScores(query, scorer).forEach(expected::offer);
+        final var actual = new TopScores(1);
+        invertedIndex.selectTopScores(query, scorer, docId -> true, actual);
+        Assertions.assertThat(select(expected).get(0).getKey()).isEqualTo(2);
+        Assertions.assertThat(select(actual)).containsExactlyElementsOf(select(expected));
+    }
+
+    @Example
+    public void checkStaticScores() throws IOException {
+        addRandomDocuments();
+        final var scorer = invertedIndex.scorer(ScoringModel.TF_IDF);
+        final var query = getDFByWord(Set.of(0, 1, 2));
+        final var plainScores = invertedIndex.getScores(query, scorer);
+
+        final var random = new Random(4321);
+        final var docIds = IntStream.range(0, 300).filter(docId -> docId % 3 != 0).toArray();
+        invertedIndex.setStaticScores(docIds, random.doubles(docIds.length).toArray());
+        invertedIndex.setStaticScoreWeight(0.5);
+        final var scores = invertedIndex.getScores(query, scorer);
+        plainScores.forEach((docId, score) -> Assertions.assertThat(scores.get(docId))
+                .isEqualTo(score + 0.5 * invertedIndex.getStaticScore(docId)));
+
+        // The selection stays exact with the static scores added to the bounds
+        for (final var k : List.of(1, 10, 50)) {
+            final var expected = new TopScores(k);
+            scores.forEach(expected::offer);
+            final var actual = new TopScores(k);
+            invertedIndex.selectTopScores(query, scorer, docId -> true, actual);
+            Assertions.assertThat(select(actual)).containsExactlyElementsOf(select(expected));
+        }
+
+        // Documents missing from new scores lose their old ones
+        invertedIndex.setStaticScores(new int[] { 1 }, new double[] { 1.0 });
+        Assertions.assertThat(invertedIndex.getStaticScore(1)).isEqualTo(1.0);
+        Assertions.assertThat(invertedIndex.getStaticScore(2)).isZero();
+        Assertions.assertThatThrownBy(() -> invertedIndex.setStaticScores(new int[] { 1 }, new double[] { 2.0 }))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Example
+    public void checkBM25() throws IOException {
+        invertedIndex.addDocument(1, List.of(1), List.of(2, 3, 4));
+        invertedIndex.addDocument(2, List.of(5), List.of(1, 2, 3, 4, 6, 7, 8, 9, 10, 11));
+        invertedIndex.addDocument(3, List.of(5), List.of(2));
+        Assertions.assertThat(invertedIndex.getCollectionStats().totalTitleLength()).isEqualTo(3);
+        Assertions.assertThat(invertedIndex.getCollectionStats().totalBodyLength()).isEqualTo(14);
+
+        // Word 1 is in the title of document 1 and the body of document 2, whose
+        // fields have the average lengths 1 and 14 / 3:
+        // tf = 9 * 1 / 1 = 9 for document 1
+        // tf = 1 / (0.25 + 0.75 * 10 / (14 / 3)) for document 2
+        Assertions.assertThat(ScoringModel.forName("BM25")).contains(ScoringModel.BM25);
+        final var scores = invertedIndex.getScores(Map.of(1, 2), invertedIndex.scorer(ScoringModel.BM25));
+        final var idf = Math.log(1 + (3 - 2 + 0.5) / (2 + 0.5));
+        final var titleTF = BM25Scoring.DEFAULT_TITLE_WEIGHT;
+        final var bodyTF = 1 / (0.25 + 0.75 * 10 / (14 / 3.0));
+        Assertions.assertThat(scores).containsOnlyKeys(1, 2);
+        Assertions.assertThat(scores.get(1)).isCloseTo(idf * titleTF * 2.2 / (1.2 + titleTF), Assertions.within(1e-9));
+        Assertions.assertThat(scores.get(2)).isCloseTo(idf * bodyTF * 2.2 / (1.2 + bodyTF), Assertions.within(1e-9));
+
+        // Re-indexing replaces the lengths of the document
+        invertedIndex.addDocument(2, List.of(5, 6), List.of(1));
+        Assertions.assertThat(invertedIndex.getFieldLengths(2)).isEqualTo(new FieldLengths(2, 1));
+        Assertions.assertThat(invertedIndex.getCollectionStats().totalBodyLength()).isEqualTo(5);
+
+        // Moving word 6 to the body keeps the term vector but not the lengths
+        invertedIndex.addDocument(2, List.of(5), List.of(6, 1));
+        Assertions.assertThat(invertedIndex.getFieldLengths(2)).isEqualTo(new FieldLengths(1, 2));
+        Assertions.assertThat(invertedIndex.getCollectionStats().totalTitleLength()).isEqualTo(3);
+        Assertions.assertThat(invertedIndex.getCollectionStats().totalBodyLength()).isEqualTo(6);
+
+        // Indexes without stored lengths recompute them from the live postings
+        final var stats = invertedIndex.getCollectionStats();
+        invertedIndex.rebuildFieldLengths();
+        Assertions.assertThat(invertedIndex.getCollectionStats()).isEqualTo(stats);
+        Assertions.assertThat(invertedIndex.getFieldLengths(2)).isEqualTo(new FieldLengths(1, 2));
+    }
+
+    @Example
+    public void checkParallelScores() throws IOException {
+        addRandomDocuments();
+        final var scorer = invertedIndex.scorer(ScoringModel.TF_IDF);
+        final var expectedScores = new HashMap<Set<Integer>, Map<Integer, Double>>();
+        final var expectedTops = new HashMap<Set<Integer>, List<Map.Entry<Integer, Double>>>();
+        for (final var query : QUERIES) {
+            final var dfByWord = getDFByWord(query);
+            expectedScores.put(query, invertedIndex.getScores(dfByWord, scorer));
+            final var top = new TopScores(10);
+            invertedIndex.selectTopScores(dfByWord, scorer, docId -> true, top);
+            expectedTops.put(query, select(top));
+        }
+
+        // Split every query into as many docId ranges as possible
+        try (final var parallelScoring = new ParallelScoring(4, 1)) {
+            invertedIndex.setParallelScoring(parallelScoring);
+            for (final var query : QUERIES) {
+                final var dfByWord = getDFByWord(query);
+                Assertions.assertThat(invertedIndex.getScores(dfByWord, scorer))
+                        .containsExactlyInAnyOrderEntriesOf(expectedScores.get(query));
+                final var top = new TopScores(10);
+                invertedIndex.selectTopScores(dfByWord, scorer, docId -> true, top);
+                Assertions.assertThat(select(top)).containsExactlyElementsOf(expectedTops.get(query));
+            }
+        } finally {
+            invertedIndex.setParallelScoring(ParallelScoring.SEQUENTIAL);
+        }
+    }
+
+    @Example
+    public void checkNorms() throws IOException {
+        invertedIndex.addDocument(TestDocument.titleOnlyDocument.docId(), TestDocument.titleOnlyDocument.titleIds(),
+                TestDocument.titleOnlyDocument.bodyIds());
+        invertedIndex.addDocument(TestDocument.bodyOnlyDocument.docId(), TestDocument.bodyOnlyDocument.titleIds(),
+                TestDocument.bodyOnlyDocument.bodyIds());
+        invertedIndex.addDocument(TestDocument.mixedDocument.docId(), TestDocument.mixedDocument.titleIds(),
+                TestDocument.mixedDocument.bodyIds());
+
+        // Every document so far changed N by more than the drift threshold, so the
+        // stored norms are exact and nothing is left to recompute
+        Assertions.assertThat(invertedIndex.recomputeNormsIfDrifted(0.0)).isFalse();
+
+        // doc1: sqrt((log 3)^2 + 2 (0.5 log 3)^2)
+        // doc3: sqrt(6 (log 3)^2)
+        Assertions.assertThat(invertedIndex.getDocumentLength(1))
+                .isCloseTo(Math.sqrt(1.5) * Math.log10(3), Assertions.within(1e-10));
+        Assertions.assertThat(invertedIndex.getDocumentLength(3))
+                .isCloseTo(Math.sqrt(6) * Math.log10(3), Assertions.within(1e-10));
+    }
+
+    @Example
+    public void checkNormDriftOnChurn() throws IOException {
+        // 10 documents of 5 words each, the norms are last recomputed when the
+        // tenth document changes N by more than the drift threshold
+        for (int docId = 1; docId <= 10; ++docId)
+            invertedIndex.addDocument(docId, List.of(docId), List.of(100, 101, 102, 103));
+        Assertions.assertThat(invertedIndex.recomputeNormsIfDrifted(0.0)).isFalse();
+
+        // Replacing two words keeps the number of postings, but four dfs changed
+        invertedIndex.addDocument(1, List.of(1), List.of(100, 101, 200, 201));
+        Assertions.assertThat(invertedIndex.getCollectionStats().totalPostings()).isEqualTo(50);
+        Assertions.assertThat(invertedIndex.recomputeNormsIfDrifted(0.1)).isFalse();
+        Assertions.assertThat(invertedIndex.recomputeNormsIfDrifted(0.05)).isTrue();
+        Assertions.assertThat(invertedIndex.recomputeNormsIfDrifted(0.0)).isFalse();
+    }
+
     @Example
     public void checkFrequency() throws IOException {
         invertedIndex.addDocument(TestDocument.titleOnlyDocument.docId(), TestDocument.titleOnlyDocument.titleIds(),
@@ -83,6 +327,9 @@ public class InvertedIndexTest {
         Assertions.assertThat(invertedIndex.getKeywordsWithFrequency(3))
                 .containsExactlyInAnyOrderEntriesOf(Map.of(7, 1, 8, 1, 9, 1, 10, 1, 11, 1, 12, 1));
         Assertions.assertThat(invertedIndex.getKeywordsWithFrequency(4)).isEmpty();
+
+        // Keywords are sorted by frequency, then by word ID
+        Assertions.assertThat(invertedIndex.getKeywordsWithFrequency(2).keySet()).containsExactly(4, 5, 6);
     }
 
     @Example
@@ -114,4 +361,28 @@ public class InvertedIndexTest {
         Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(3)))
                 .containsExactlyInAnyOrderElementsOf(Set.of(1));
     }
+
+    @Example
+    public void checkSloppyPhrase() throws IOException {
+        invertedIndex.addDocument(TestDocument.titleOnlyDocument.docId(), TestDocument.titleOnlyDocument.titleIds(),
+                TestDocument.titleOnlyDocument.bodyIds());
+        invertedIndex.addDocument(TestDocument.bodyOnlyDocument.docId(), TestDocument.bodyOnlyDocument.titleIds(),
+                TestDocument.bodyOnlyDocument.bodyIds());
+        invertedIndex.addDocument(TestDocument.mixedDocument.docId(), TestDocument.mixedDocument.titleIds(),
+                TestDocument.mixedDocument.bodyIds());
+
+        // The words can be in any order within the phrase length plus the slop
+        Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(3, 1), 0)).isEmpty();
+        Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(3, 1), 1))
+                .containsExactlyInAnyOrderElementsOf(Set.of(1));
+        Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(6, 4), 1))
+                .containsExactlyInAnyOrderElementsOf(Set.of(2));
+        Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(7, 9), 0)).isEmpty();
+        Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(9, 7), 1))
+                .containsExactlyInAnyOrderElementsOf(Set.of(3));
+        Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(9, 7), 0)).isEmpty();
+
+        // The title and the body are separate windows
+        Assertions.assertThat(invertedIndex.getDocumentsWithPhrase(List.of(9, 10), 10)).isEmpty();
+    }
 }
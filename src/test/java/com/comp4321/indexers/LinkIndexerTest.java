@@ -6,6 +6,9 @@ import java.nio.file.Path;
 import java.util.Set;
 
 import org.assertj.core.api.Assertions;
+import org.mockito.Mockito;
+
+import com.comp4321.jdbm.SafeHTree;
 
 import jdbm.RecordManager;
 import jdbm.RecordManagerFactory;
@@ -107,4 +110,31 @@ public class LinkIndexerTest {
         Assertions.assertThat(linkIndexer.getParentLinks(3)).containsExactlyInAnyOrderElementsOf(Set.of(1, 2));
         Assertions.assertThat(linkIndexer.getParentLinks(4)).isEmpty();
     }
+
+    @Example
+    // clearInvocations takes the generic spies as varargs
+    @SuppressWarnings("unchecked")
+    public void testDeltaUpdate() throws IOException {
+        final var parentToChild = Mockito.spy(new SafeHTree<Integer, Set<Integer>>(recman, "deltaParentToChild"));
+        final var childToParent = Mockito.spy(new SafeHTree<Integer, Set<Integer>>(recman, "deltaChildToParent"));
+        final var indexer = new LinkIndexer(parentToChild, childToParent);
+        indexer.addLinks(1, Set.of(2, 3, 4));
+        Mockito.clearInvocations(parentToChild, childToParent);
+
+        // Unchanged links are not written again
+        indexer.addLinks(1, Set.of(2, 3, 4));
+        Mockito.verify(parentToChild, Mockito.never()).put(Mockito.any(), Mockito.any());
+        Mockito.verify(childToParent, Mockito.never()).put(Mockito.any(), Mockito.any());
+
+        // Only the parent links of the removed and the added child are updated
+        indexer.addLinks(1, Set.of(2, 3, 5));
+        Mockito.verify(parentToChild, Mockito.times(1)).put(Mockito.eq(1), Mockito.any());
+        Mockito.verify(childToParent, Mockito.times(1)).remove(4);
+        Mockito.verify(childToParent, Mockito.times(1)).put(Mockito.eq(5), Mockito.any());
+        Mockito.verify(childToParent, Mockito.never()).put(Mockito.eq(2), Mockito.any());
+
+        Assertions.assertThat(indexer.getChildLinks(1)).containsExactlyInAnyOrder(2, 3, 5);
+        Assertions.assertThat(indexer.getParentLinks(4)).isEmpty();
+        Assertions.assertThat(indexer.getParentLinks(5)).containsExactly(1);
+    }
 }
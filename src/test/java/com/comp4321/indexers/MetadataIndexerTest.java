@@ -3,6 +3,7 @@ package com.comp4321.indexers;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.ZonedDateTime;
 
 import org.assertj.core.api.Assertions;
 
@@ -11,9 +12,11 @@ import jdbm.RecordManagerFactory;
 import net.jqwik.api.Arbitraries;
 import net.jqwik.api.Arbitrary;
 import net.jqwik.api.Combinators;
+import net.jqwik.api.Example;
 import net.jqwik.api.ForAll;
 import net.jqwik.api.Property;
 import net.jqwik.api.Provide;
+import net.jqwik.api.constraints.IntRange;
 import net.jqwik.time.api.DateTimes;
 
 public class MetadataIndexerTest implements AutoCloseable {
@@ -35,7 +38,8 @@ public class MetadataIndexerTest implements AutoCloseable {
     }
 
     @Property
-    public void addAndGetMetadata(@ForAll int docId, @ForAll("metadata") Metadata metadata) throws IOException {
+    public void addAndGetMetadata(@ForAll @IntRange(min = 0, max = 100_000) int docId,
+            @ForAll("metadata") Metadata metadata) throws IOException {
         metadataIndexer.addMetadata(docId, metadata);
         final var retrievedMetadata = metadataIndexer.getMetadata(docId).get();
         Assertions.assertThat(retrievedMetadata.title()).isEqualTo(metadata.title());
@@ -43,6 +47,12 @@ public class MetadataIndexerTest implements AutoCloseable {
         Assertions.assertThat(retrievedMetadata.pageSize()).isEqualTo(metadata.pageSize());
     }
 
+    @Example
+    public void rejectNegativeDocId() {
+        Assertions.assertThatThrownBy(() -> metadataIndexer.addMetadata(-1,
+                new Metadata("Title", ZonedDateTime.now(), 1L))).isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Override
     public void close() {
         try {
@@ -0,0 +1,89 @@
+package com.comp4321.indexers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+
+public class PageRankTest {
+    // 10 -> 20, 30; 20 -> 30; 30 -> 10; 40 -> 30, 40; 50 has no links
+    private static final Map<Integer, Set<Integer>> LINKS = Map.of(10, Set.of(20, 30), 20, Set.of(30), 30,
+            Set.of(10), 40, Set.of(30, 40), 50, Set.of());
+
+    @Example
+    public void loadsGraph() {
+        final var graph = PageRank.fromLinks(LINKS.entrySet());
+        Assertions.assertThat(graph.nodeCount()).isEqualTo(5);
+        // The self-link of 40 is ignored
+        Assertions.assertThat(graph.edgeCount()).isEqualTo(5);
+    }
+
+    @Example
+    public void matchesDenseIteration() {
+        final var ranks = PageRank.fromLinks(LINKS.entrySet()).compute(0.85, 1e-12, 1000,
+                ParallelScoring.SEQUENTIAL);
+        Assertions.assertThat(ranks.docIds()).containsExactly(10, 20, 30, 40, 50);
+        Assertions.assertThat(ranks.delta()).isLessThan(1e-12);
+        Assertions.assertThat(Arrays.stream(ranks.ranks()).sum()).isCloseTo(1.0, Assertions.within(1e-9));
+
+        // The textbook definition, with the rank of 50 spread over all pages
+        final int[][] children = { { 1, 2 }, { 2 }, { 0 }, { 2 }, {} };
+        var expected = new double[] { 0.2, 0.2, 0.2, 0.2, 0.2 };
+        for (int iteration = 0; iteration < 1000; ++iteration) {
+            final var next = new double[5];
+            for (int u = 0; u < 5; ++u) {
+                if (children[u].length == 0) {
+                    for (int v = 0; v < 5; ++v)
+                        next[v] += expected[u] / 5;
+                }
+                for (final var v : children[u])
+                    next[v] += expected[u] / children[u].length;
+            }
+            expected = Arrays.stream(next).map(rank -> 0.15 / 5 + 0.85 * rank).toArray();
+        }
+        for (int i = 0; i < 5; ++i)
+            Assertions.assertThat(ranks.ranks()[i]).isCloseTo(expected[i], Assertions.within(1e-9));
+
+        final var scores = ranks.staticScores();
+        Assertions.assertThat(scores[2]).isEqualTo(1.0);
+        for (final var score : scores)
+            Assertions.assertThat(score).isBetween(0.0, 1.0);
+    }
+
+    @Example
+    public void stopsAtMaxIterations() {
+        final var ranks = PageRank.fromLinks(LINKS.entrySet()).compute(0.85, 0, 3, ParallelScoring.SEQUENTIAL);
+        Assertions.assertThat(ranks.iterations()).isEqualTo(3);
+        Assertions.assertThat(PageRank.fromLinks(List.<Map.Entry<Integer, Set<Integer>>>of())
+                .compute(ParallelScoring.SEQUENTIAL).ranks()).isEmpty();
+    }
+
+    @Example
+    public void parallelMatchesSequential() {
+        final var random = new Random(4321);
+        final var links = new HashMap<Integer, Set<Integer>>();
+        for (int docId = 0; docId < 5000; ++docId) {
+            final var children = new HashSet<Integer>();
+            for (int i = random.nextInt(10); i > 0; --i)
+                children.add(random.nextInt(6000));
+            links.put(docId, children);
+        }
+        final var graph = PageRank.fromLinks(links.entrySet());
+
+        final var sequential = graph.compute(ParallelScoring.SEQUENTIAL);
+        try (final var parallelScoring = new ParallelScoring(4, 1000)) {
+            final var parallel = graph.compute(parallelScoring);
+            Assertions.assertThat(parallel.iterations()).isEqualTo(sequential.iterations());
+            for (int i = 0; i < graph.nodeCount(); ++i)
+                Assertions.assertThat(parallel.ranks()[i]).isCloseTo(sequential.ranks()[i],
+                        Assertions.within(1e-12));
+        }
+    }
+}
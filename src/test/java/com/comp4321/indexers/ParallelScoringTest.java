@@ -0,0 +1,38 @@
+package com.comp4321.indexers;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+
+public class ParallelScoringTest {
+    @Example
+    public void splitsAboveThreshold() {
+        try (final var parallelScoring = new ParallelScoring(4, 1000)) {
+            Assertions.assertThat(parallelScoring.taskCount(999)).isEqualTo(1);
+            Assertions.assertThat(parallelScoring.taskCount(2500)).isEqualTo(2);
+            Assertions.assertThat(parallelScoring.taskCount(1_000_000)).isEqualTo(4);
+        }
+        Assertions.assertThat(ParallelScoring.SEQUENTIAL.taskCount(Long.MAX_VALUE)).isEqualTo(1);
+        try (final var parallelScoring = new ParallelScoring(1, 1000)) {
+            Assertions.assertThat(parallelScoring.taskCount(1_000_000)).isEqualTo(1);
+        }
+    }
+
+    @Example
+    public void resultsInTaskOrder() {
+        try (final var parallelScoring = new ParallelScoring(3)) {
+            final var tasks = IntStream.range(0, 8).<Supplier<Integer>>mapToObj(i -> () -> i * i).toList();
+            Assertions.assertThat(parallelScoring.invokeAll(tasks)).containsExactly(0, 1, 4, 9, 16, 25, 36, 49);
+            Assertions.assertThat(parallelScoring.invokeAll(List.of(() -> 42))).containsExactly(42);
+        }
+        // A single thread per query needs no pool, the units run on the caller
+        try (final var parallelScoring = new ParallelScoring(1)) {
+            final var tasks = IntStream.range(0, 3).<Supplier<Integer>>mapToObj(i -> () -> i).toList();
+            Assertions.assertThat(parallelScoring.invokeAll(tasks)).containsExactly(0, 1, 2);
+        }
+    }
+}
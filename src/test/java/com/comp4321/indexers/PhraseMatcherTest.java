@@ -0,0 +1,105 @@
+package com.comp4321.indexers;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+
+public class PhraseMatcherTest {
+    private static int[] sorted(Set<Integer> locations) {
+        return new TreeSet<>(locations).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Property
+    public void gallopFindsLowerBound(@ForAll @Size(max = 200) Set<@IntRange(max = 1000) Integer> values,
+            @ForAll @IntRange(max = 200) int from, @ForAll @IntRange(max = 1001) int target) {
+        final var array = sorted(values);
+        final var start = Math.min(from, array.length);
+        var expected = start;
+        while (expected < array.length && array[expected] < target)
+            ++expected;
+
+        Assertions.assertThat(PhraseMatcher.gallop(array, start, target)).isEqualTo(expected);
+    }
+
+    @Property
+    public void containsPhraseLikeBruteForce(
+            @ForAll @Size(min = 1, max = 5) List<@Size(max = 30) Set<@IntRange(max = 60) Integer>> words) {
+        final var locations = words.stream().map(PhraseMatcherTest::sorted).toArray(int[][]::new);
+        final var offsets = IntStream.range(0, locations.length).toArray();
+
+        final var expected = IntStream.rangeClosed(0, 60).anyMatch(start -> IntStream.range(0, words.size())
+                .allMatch(i -> words.get(i).contains(start + i)));
+        Assertions.assertThat(PhraseMatcher.containsPhrase(locations, offsets)).isEqualTo(expected);
+    }
+
+    @Example
+    public void repeatedWords() {
+        // "a b a b a" with the phrase "a b a"
+        final var a = new int[] { 0, 2, 4 };
+        final var b = new int[] { 1, 3 };
+        Assertions.assertThat(PhraseMatcher.containsPhrase(new int[][] { a, b, a }, new int[] { 0, 1, 2 }))
+                .isTrue();
+        Assertions.assertThat(PhraseMatcher.containsPhrase(new int[][] { a, a }, new int[] { 0, 1 })).isFalse();
+        Assertions.assertThat(PhraseMatcher.containsPhrase(new int[][] { b, a, b, a }, new int[] { 0, 1, 2, 3 }))
+                .isTrue();
+    }
+
+    @Example
+    public void documentsWithPhrase() {
+        // Document 1 has the phrase in its title, document 2 in its body, document 3
+        // has the words apart and document 4 lacks the rare word
+        final var common = List.of(
+                new Posting(1, new int[] { 0, 5 }, new int[0]),
+                new Posting(2, new int[0], new int[] { 3, 7, 11 }),
+                new Posting(3, new int[] { 1 }, new int[] { 4 }),
+                new Posting(4, new int[0], new int[] { 0 }));
+        final var rare = List.of(
+                new Posting(1, new int[] { 6 }, new int[0]),
+                new Posting(2, new int[0], new int[] { 12 }),
+                new Posting(3, new int[] { 4 }, new int[] { 1 }));
+
+        Assertions.assertThat(PhraseMatcher.getDocumentsWithPhrase(List.of(common, rare)))
+                .containsExactlyInAnyOrder(1, 2);
+        Assertions.assertThat(PhraseMatcher.getDocumentsWithPhrase(List.of(rare, common))).isEmpty();
+        Assertions.assertThat(PhraseMatcher.getDocumentsWithPhrase(List.of(common, List.of()))).isEmpty();
+    }
+
+    @Property
+    public void minimalWindowLikeBruteForce(
+            @ForAll @Size(min = 1, max = 4) List<@Size(min = 1, max = 20) Set<@IntRange(max = 60) Integer>> words) {
+        final var locations = words.stream().map(PhraseMatcherTest::sorted).toArray(int[][]::new);
+
+        var expected = Integer.MAX_VALUE;
+        for (int start = 0; start <= 60; ++start) {
+            for (int end = start; end <= 60; ++end) {
+                final int from = start;
+                final int to = end;
+                if (words.stream().allMatch(word -> word.stream().anyMatch(l -> l >= from && l <= to)))
+                    expected = Math.min(expected, end - start + 1);
+            }
+        }
+        Assertions.assertThat(PhraseMatcher.minimalWindow(locations, 0)).isEqualTo(expected);
+        Assertions.assertThat(PhraseMatcher.containsWithin(locations, expected)).isTrue();
+        Assertions.assertThat(PhraseMatcher.containsWithin(locations, expected - 1)).isFalse();
+    }
+
+    @Example
+    public void documentsWithin() {
+        // "b x a" in document 1 and "a x x x b" in document 2
+        final var a = List.of(new Posting(1, new int[0], new int[] { 2 }), new Posting(2, new int[0], new int[] { 0 }));
+        final var b = List.of(new Posting(1, new int[0], new int[] { 0 }), new Posting(2, new int[0], new int[] { 4 }));
+
+        Assertions.assertThat(PhraseMatcher.getDocumentsWithin(List.of(a, b), 2)).isEmpty();
+        Assertions.assertThat(PhraseMatcher.getDocumentsWithin(List.of(a, b), 3)).containsExactly(1);
+        Assertions.assertThat(PhraseMatcher.getDocumentsWithin(List.of(b, a), 5)).containsExactlyInAnyOrder(1, 2);
+    }
+}
@@ -3,11 +3,17 @@ package com.comp4321.indexers;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.assertj.core.api.Assertions;
+import org.mockito.Mockito;
 
+import com.comp4321.jdbm.IntSetSerializer;
+import com.comp4321.jdbm.ObjectCache;
 import com.comp4321.jdbm.SafeHTree;
 
 import jdbm.RecordManager;
@@ -15,6 +21,7 @@ import jdbm.RecordManagerFactory;
 import net.jqwik.api.Arbitraries;
 import net.jqwik.api.Arbitrary;
 import net.jqwik.api.Combinators;
+import net.jqwik.api.Example;
 import net.jqwik.api.ForAll;
 import net.jqwik.api.Property;
 import net.jqwik.api.Provide;
@@ -29,7 +36,7 @@ public class PostingIndexTest implements AutoCloseable {
     public PostingIndexTest() throws IOException {
         recman = RecordManagerFactory.createRecordManager("test");
         index = new PostingIndex("test", new SafeHTree<>(recman, "forwardIndex"),
-                new SafeHTree<>(recman, "invertedIndex"));
+                new SafeHTree<>(recman, "invertedIndex"), new SafeHTree<>(recman, "tombstones"));
     }
 
     public PostingIndex index() {
@@ -46,6 +53,157 @@ public class PostingIndexTest implements AutoCloseable {
         actions.run();
     }
 
+    @Example
+    public void checkTombstones() throws IOException {
+        index.addDocument(1, List.of(1, 2), List.of(3));
+        index.addDocument(2, List.of(1), List.of(2, 4));
+
+        // Re-indexing document 1 overwrites the postings of words 1 and 3 and
+        // tombstones the posting of word 2
+        index.addDocument(1, List.of(1), List.of(3, 5));
+        Assertions.assertThat(index.getPostings(2)).extracting(Posting::docId).containsExactly(2);
+        Assertions.assertThat(index.getDF(1)).isEqualTo(2);
+        Assertions.assertThat(index.getPosting(1, 3).bodyLocations()).containsExactly(0);
+
+        // Removing document 2 tombstones all of its postings
+        index.removeDocument(2);
+        Assertions.assertThat(index.getPostings(1)).extracting(Posting::docId).containsExactly(1);
+        Assertions.assertThat(index.getDF(2)).isZero();
+        Assertions.assertThat(index.getDF(4)).isZero();
+
+        // 1 posting of document 1 and 3 postings of document 2 are purged
+        Assertions.assertThat(index.purgeDeleted()).isEqualTo(4);
+        Assertions.assertThat(index.purgeDeleted()).isZero();
+        Assertions.assertThat(index.getPostings(1)).extracting(Posting::docId).containsExactly(1);
+        Assertions.assertThat(index.getDF(5)).isEqualTo(1);
+
+        // A removed document can be added again
+        index.addDocument(2, List.of(4), List.of());
+        Assertions.assertThat(index.getPostings(4)).extracting(Posting::docId).containsExactly(2);
+    }
+
+    @Example
+    public void checkBulkLoad() throws IOException {
+        final var incremental = new PostingIndex("incremental", new SafeHTree<>(recman, "incrementalForward"),
+                new SafeHTree<>(recman, "incrementalInverted"), new SafeHTree<>(recman, "incrementalTombstones"));
+        index.addDocument(1, List.of(1, 2), List.of(2, 3, 2));
+        incremental.addDocument(1, List.of(1, 2), List.of(2, 3, 2));
+
+        // A tiny memory budget spills every posting to its own run, which needs
+        // more than one merge pass
+        final var spillDirectory = Files.createTempDirectory("bulk");
+        index.beginBulkLoad(spillDirectory, 1);
+        for (int docId = 100; docId > 2; --docId) {
+            final var titleIds = List.of(docId % 3 + 1, docId % 5 + 1);
+            final var bodyIds = List.of(docId % 7 + 1, 1, docId % 3 + 1);
+            index.addDocument(docId, titleIds, bodyIds);
+            incremental.addDocument(docId, titleIds, bodyIds);
+        }
+
+        Assertions.assertThat(index.getTermVector(50)).isEqualTo(incremental.getTermVector(50));
+        Assertions.assertThatThrownBy(() -> index.addDocument(50, List.of(1), List.of()))
+                .isInstanceOf(IndexerException.class);
+
+        index.finishBulkLoad();
+        Assertions.assertThat(index.isBulkLoading()).isFalse();
+        try (final var runs = Files.list(spillDirectory)) {
+            Assertions.assertThat(runs).isEmpty();
+        }
+        Files.delete(spillDirectory);
+
+        for (int wordId = 1; wordId <= 8; ++wordId)
+            Assertions.assertThat(index.getPostings(wordId))
+                    .describedAs("Postings of word %d", wordId)
+                    .isEqualTo(incremental.getPostings(wordId));
+    }
+
+    @Example
+    // clearInvocations takes the generic spies as varargs
+    @SuppressWarnings("unchecked")
+    public void checkDeltaReindex() throws IOException {
+        final SafeHTree<Integer, List<Posting>> invertedIndex = Mockito.spy(new SafeHTree<>(recman, "deltaInverted"));
+        final var delta = new PostingIndex("delta", new SafeHTree<>(recman, "deltaForward"), invertedIndex,
+                new SafeHTree<>(recman, "deltaTombstones"));
+        Assertions.assertThat(delta.addDocument(1, List.of(1), List.of(2, 3, 4, 2))).isTrue();
+        Mockito.clearInvocations(invertedIndex);
+
+        // Re-indexing the same content writes nothing
+        Assertions.assertThat(delta.addDocument(1, List.of(1), List.of(2, 3, 4, 2))).isFalse();
+        Mockito.verify(invertedIndex, Mockito.never()).put(Mockito.any(), Mockito.any());
+
+        // Swapping words 3 and 4 only rewrites their posting lists, although the
+        // frequencies stay the same
+        Assertions.assertThat(delta.addDocument(1, List.of(1), List.of(2, 4, 3, 2))).isTrue();
+        Mockito.verify(invertedIndex, Mockito.times(1)).put(Mockito.eq(3), Mockito.any());
+        Mockito.verify(invertedIndex, Mockito.times(1)).put(Mockito.eq(4), Mockito.any());
+        Mockito.verify(invertedIndex, Mockito.times(2)).put(Mockito.any(), Mockito.any());
+        Assertions.assertThat(delta.getPosting(1, 4).bodyLocations()).containsExactly(1);
+        Mockito.clearInvocations(invertedIndex);
+
+        // Replacing word 3 with word 5 writes word 5 and tombstones word 3
+        Assertions.assertThat(delta.addDocument(1, List.of(1), List.of(2, 4, 5, 2))).isTrue();
+        Mockito.verify(invertedIndex, Mockito.times(1)).put(Mockito.eq(5), Mockito.any());
+        Mockito.verify(invertedIndex, Mockito.times(1)).put(Mockito.any(), Mockito.any());
+        Assertions.assertThat(delta.getDF(3)).isZero();
+        Assertions.assertThat(delta.getDF(5)).isEqualTo(1);
+
+        // Adding word 3 back revives its tombstoned posting
+        delta.addDocument(1, List.of(1), List.of(2, 4, 3, 2));
+        Assertions.assertThat(delta.getDF(3)).isEqualTo(1);
+        Assertions.assertThat(delta.getDF(5)).isZero();
+        Assertions.assertThat(delta.purgeDeleted()).isEqualTo(1);
+    }
+
+    @Example
+    // clearInvocations takes the generic spies as varargs
+    @SuppressWarnings("unchecked")
+    public void checkShiftedReindex() throws IOException {
+        final SafeHTree<Integer, List<Posting>> invertedIndex = Mockito.spy(new SafeHTree<>(recman, "shiftInverted"));
+        final var shifted = new PostingIndex("shift", new SafeHTree<>(recman, "shiftForward"), invertedIndex,
+                new SafeHTree<>(recman, "shiftTombstones"));
+        final var body = IntStream.rangeClosed(1, 100).boxed().toList();
+        shifted.addDocument(1, List.of(1000), body);
+        Mockito.clearInvocations(invertedIndex);
+
+        // Appending a word only writes its posting list
+        final var appended = new ArrayList<>(body);
+        appended.add(101);
+        shifted.addDocument(1, List.of(1000), appended);
+        Mockito.verify(invertedIndex, Mockito.times(1)).put(Mockito.any(), Mockito.any());
+        Mockito.clearInvocations(invertedIndex);
+
+        // Inserting a word at the start of the body shifts the locations of every
+        // other body word, so all of their posting lists are rewritten
+        final var inserted = new ArrayList<>(appended);
+        inserted.add(0, 102);
+        shifted.addDocument(1, List.of(1000), inserted);
+        Mockito.verify(invertedIndex, Mockito.times(102)).put(Mockito.any(), Mockito.any());
+        Mockito.verify(invertedIndex, Mockito.never()).put(Mockito.eq(1000), Mockito.any());
+        Assertions.assertThat(shifted.getPosting(1, 1).bodyLocations()).containsExactly(1);
+    }
+
+    @Example
+    public void checkCachedPostingsAreNotShared() throws IOException {
+        final var cached = new PostingIndex("cached",
+                new SafeHTree<>(recman, "cachedForward", TermVectorSerializer.INSTANCE, ObjectCache.withMaxEntries(16)),
+                new SafeHTree<>(recman, "cachedInverted", PostingListSerializer.INSTANCE,
+                        ObjectCache.withMaxEntries(16)),
+                new SafeHTree<>(recman, "cachedTombstones", IntSetSerializer.INSTANCE));
+        cached.addDocument(1, List.of(1), List.of(2));
+        cached.addDocument(2, List.of(1), List.of());
+
+        // A list held by a reader keeps its postings while the index changes
+        final var postings = cached.getPostings(1);
+        cached.addDocument(3, List.of(1), List.of());
+        cached.addDocument(1, List.of(2), List.of(1));
+        cached.removeDocument(2);
+        cached.purgeDeleted();
+        Assertions.assertThat(postings).extracting(Posting::docId).containsExactly(1, 2);
+        Assertions.assertThat(postings.get(0).titleLocations()).containsExactly(0);
+        Assertions.assertThatThrownBy(() -> postings.remove(0)).isInstanceOf(UnsupportedOperationException.class);
+        Assertions.assertThat(cached.getPostings(1)).extracting(Posting::docId).containsExactly(1, 3);
+    }
+
     @Override
     public void close() throws Exception {
         try {
@@ -1,5 +1,8 @@
 package com.comp4321.indexers;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.assertj.core.api.Assertions;
 
 import net.jqwik.api.Arbitraries;
@@ -23,6 +26,11 @@ public class PostingTest {
     public void checkIndex(@ForAll("actions") ActionChain<Posting> actions) {
         actions.run();
     }
+
+    // contains() with an empty array fails, so subsets are compared as lists
+    static List<Integer> boxed(int[] locations) {
+        return Arrays.stream(locations).boxed().toList();
+    }
 }
 
 class AddTitleLocationAction implements Action.Independent<Posting> {
@@ -32,15 +40,20 @@ class AddTitleLocationAction implements Action.Independent<Posting> {
         return titleLocation.map(loc -> Transformer.transform(
                 String.format("Add title location %d", loc),
                 posting -> {
-                    final var beforeSize = posting.titleLocations().size();
+                    final var beforeSize = posting.titleTF();
 
                     final var newPosting = posting.withTitleLocation(loc);
                     Assertions.assertThat(newPosting.titleLocations())
                             .describedAs("Title locations should contain %d", loc)
                             .contains(loc);
-                    Assertions.assertThat(newPosting.titleLocations())
+                    Assertions.assertThat(PostingTest.boxed(newPosting.titleLocations()))
                             .describedAs("Title locations should contain all previous locations")
-                            .containsAll(posting.titleLocations());
+                            .containsAll(PostingTest.boxed(posting.titleLocations()));
+                    Assertions.assertThat(newPosting.titleLocations())
+                            .describedAs("Title locations should be sorted and distinct")
+                            .isSorted()
+                            .doesNotHaveDuplicates();
+                    Assertions.assertThat(newPosting.hasTitleLocation(loc)).isTrue();
                     Assertions.assertThat(posting.titleLocations())
                             .describedAs("Original title locations should not be modified")
                             .hasSize(beforeSize);
@@ -57,15 +70,20 @@ class AddBodyLocationAction implements Action.Independent<Posting> {
         return bodyLocation.map(loc -> Transformer.transform(
                 String.format("Add body location %d", loc),
                 posting -> {
-                    final var beforeSize = posting.bodyLocations().size();
+                    final var beforeSize = posting.bodyTF();
 
                     final var newPosting = posting.withBodyLocation(loc);
                     Assertions.assertThat(newPosting.bodyLocations())
                             .describedAs("Body locations should contain %d", loc)
                             .contains(loc);
-                    Assertions.assertThat(newPosting.bodyLocations())
+                    Assertions.assertThat(PostingTest.boxed(newPosting.bodyLocations()))
                             .describedAs("Body locations should contain all previous locations")
-                            .containsAll(posting.bodyLocations());
+                            .containsAll(PostingTest.boxed(posting.bodyLocations()));
+                    Assertions.assertThat(newPosting.bodyLocations())
+                            .describedAs("Body locations should be sorted and distinct")
+                            .isSorted()
+                            .doesNotHaveDuplicates();
+                    Assertions.assertThat(newPosting.hasBodyLocation(loc)).isTrue();
                     Assertions.assertThat(posting.bodyLocations())
                             .describedAs("Original body locations should not be modified")
                             .hasSize(beforeSize);
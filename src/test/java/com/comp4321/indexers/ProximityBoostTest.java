@@ -0,0 +1,51 @@
+package com.comp4321.indexers;
+
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+
+public class ProximityBoostTest {
+    @Example
+    public void proximity() {
+        // Adjacent, one position apart, and only one of three words
+        Assertions.assertThat(ProximityBoost.proximity(new int[][] { { 3 }, { 4 } }, 2)).isEqualTo(1.0);
+        Assertions.assertThat(ProximityBoost.proximity(new int[][] { { 5 }, { 3 } }, 2)).isEqualTo(2.0 / 3);
+        Assertions.assertThat(ProximityBoost.proximity(new int[][] { { 3 }, {}, {} }, 3)).isZero();
+        Assertions.assertThat(ProximityBoost.proximity(new int[][] { { 3 }, { 4 }, {} }, 3)).isEqualTo(0.5);
+    }
+
+    @Example
+    public void rerankByProximity() {
+        final var candidates = new TopScores(3);
+        candidates.offer(1, 1.0);
+        candidates.offer(2, 0.9);
+        candidates.offer(3, 0.95);
+        candidates.sort();
+
+        // Document 1 has the words far apart, document 2 next to each other and
+        // document 3 only has one of them
+        final var first = List.of(
+                new Posting(1, new int[0], new int[] { 0 }),
+                new Posting(2, new int[] { 7 }, new int[] { 1 }),
+                new Posting(3, new int[0], new int[] { 2 }));
+        final var second = List.of(
+                new Posting(1, new int[0], new int[] { 50 }),
+                new Posting(2, new int[] { 8 }, new int[0]));
+
+        final var top = new ProximityBoost(0.5, 3).rerank(candidates, List.of(first, second), 2);
+        Assertions.assertThat(top.size()).isEqualTo(2);
+        Assertions.assertThat(top.docId(0)).isEqualTo(2);
+        Assertions.assertThat(top.score(0)).isCloseTo(1.35, Assertions.within(1e-9));
+        Assertions.assertThat(top.docId(1)).isEqualTo(1);
+    }
+
+    @Example
+    public void onlyMultiWordQueries() {
+        Assertions.assertThat(ProximityBoost.DEFAULT.appliesTo(1)).isFalse();
+        Assertions.assertThat(ProximityBoost.DEFAULT.appliesTo(2)).isTrue();
+        Assertions.assertThat(ProximityBoost.NONE.appliesTo(2)).isFalse();
+        Assertions.assertThat(ProximityBoost.DEFAULT.candidates(10)).isEqualTo(ProximityBoost.DEFAULT_DEPTH);
+    }
+}
@@ -0,0 +1,141 @@
+package com.comp4321.indexers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.assertj.core.api.Assertions;
+
+import com.comp4321.jdbm.IntSetSerializer;
+import com.comp4321.jdbm.IntegerSerializer;
+import com.comp4321.jdbm.JDBMException;
+import com.comp4321.jdbm.SafeBTree;
+import com.comp4321.jdbm.SafeHTree;
+import com.comp4321.jdbm.StringSerializer;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+import net.jqwik.api.constraints.UniqueElements;
+
+public class RecordSerializerTest implements AutoCloseable {
+    private RecordManager recman;
+
+    public RecordSerializerTest() throws IOException {
+        recman = RecordManagerFactory.createRecordManager("test");
+    }
+
+    private static int[] sorted(Set<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    @Property
+    public void roundTripPostings(
+            @ForAll @UniqueElements @Size(max = 20) List<@IntRange(min = 0, max = 1_000_000) Integer> docIds,
+            @ForAll @Size(max = 20) Set<@IntRange(min = 0, max = 100_000) Integer> locations) throws IOException {
+        final var postings = new ArrayList<Posting>();
+        docIds.stream().sorted().forEach(docId -> postings.add(new Posting(docId, sorted(locations), new int[0])));
+
+        final var serializer = PostingListSerializer.INSTANCE;
+        Assertions.assertThat(serializer.deserialize(serializer.serialize(postings))).isEqualTo(postings);
+    }
+
+    @Property
+    public void roundTripIntSets(@ForAll Set<@IntRange(min = 0) Integer> values) throws IOException {
+        final var serializer = IntSetSerializer.INSTANCE;
+        Assertions.assertThat(serializer.deserialize(serializer.serialize(values))).isEqualTo(values);
+    }
+
+    @Example
+    public void roundTripRecords() throws IOException {
+        final var postings = List.of(new Posting(3, new int[] { 0, 4 }, new int[] { 1, 2, 300 }),
+                new Posting(70_000, new int[0], new int[] { 5 }));
+        Assertions.assertThat(PostingListSerializer.INSTANCE.deserialize(
+                PostingListSerializer.INSTANCE.serialize(postings))).isEqualTo(postings);
+
+        final var vector = TermVector.of(Map.of(1, 3, 200, 7, 5, 3));
+        Assertions.assertThat(TermVectorSerializer.INSTANCE.deserialize(
+                TermVectorSerializer.INSTANCE.serialize(vector))).isEqualTo(vector);
+
+        final var metadata = new Metadata("Title \u00e9", ZonedDateTime.of(2024, 4, 1, 12, 30, 0, 5,
+                ZoneId.of("Asia/Hong_Kong")), 1234L);
+        Assertions.assertThat(MetadataSerializer.INSTANCE.deserialize(
+                MetadataSerializer.INSTANCE.serialize(metadata))).isEqualTo(metadata);
+
+        final var lengths = new FieldLengths(4, 1_000);
+        Assertions.assertThat(FieldLengthsSerializer.INSTANCE.deserialize(
+                FieldLengthsSerializer.INSTANCE.serialize(lengths))).isEqualTo(lengths);
+
+        // Far smaller than the Java serialization of the same list
+        Assertions.assertThat(PostingListSerializer.INSTANCE.serialize(postings)).hasSizeLessThan(20);
+    }
+
+    @Example
+    public void rejectNewerVersion() throws IOException {
+        final var bytes = IntSetSerializer.INSTANCE.serialize(Set.of(1));
+        bytes[0] = 2;
+        Assertions.assertThatThrownBy(() -> IntSetSerializer.INSTANCE.deserialize(bytes))
+                .isInstanceOf(JDBMException.class);
+    }
+
+    @Example
+    public void migrateLegacyTrees() throws IOException {
+        final var legacyLinks = new SafeHTree<Integer, Set<Integer>>(recman, "links");
+        legacyLinks.put(1, new HashSet<>(Set.of(2, 3)));
+        final var legacyWords = new SafeBTree<String, Integer>(recman, "words", Comparator.naturalOrder());
+        for (int i = 0; i < 100; ++i)
+            legacyWords.insert("word" + i, i);
+
+        // Legacy records stay readable before the migration
+        final var links = new SafeHTree<Integer, Set<Integer>>(recman, "links", IntSetSerializer.INSTANCE);
+        Assertions.assertThat(links.get(1)).containsExactlyInAnyOrder(2, 3);
+        Assertions.assertThat(links.migrate()).isEqualTo(1);
+        Assertions.assertThat(links.get(1)).containsExactlyInAnyOrder(2, 3);
+        Assertions.assertThat(new SafeHTree<Integer, Object>(recman, "links").get(1)).isInstanceOf(byte[].class);
+
+        final var words = new SafeBTree<String, Integer>(recman, "words", Comparator.naturalOrder(),
+                StringSerializer.INSTANCE, IntegerSerializer.INSTANCE);
+        Assertions.assertThat(words.migrate()).isEqualTo(100);
+        recman.commit();
+
+        final var reloaded = new SafeBTree<String, Integer>(recman, "words", Comparator.naturalOrder());
+        Assertions.assertThat(reloaded.size()).isEqualTo(100);
+        Assertions.assertThat(reloaded.find("word42")).isEqualTo(42);
+    }
+
+    @Example
+    public void rejectFirstVersionIndexes() throws IOException {
+        // The first version stored the set of word IDs of each document
+        final var forwardIndex = new SafeHTree<Integer, Set<Integer>>(recman, InvertedIndex.DOCID_TO_WORDID);
+        forwardIndex.put(1, new HashSet<>(Set.of(2, 3)));
+        recman.commit();
+
+        Assertions.assertThatThrownBy(() -> new Indexer(recman))
+                .isInstanceOf(IndexerException.class)
+                .hasMessageContaining("crawl --rebuild");
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            recman.close();
+            recman = null;
+            Files.deleteIfExists(Path.of("test.db"));
+            Files.deleteIfExists(Path.of("test.lg"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.comp4321.indexers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+
+public class ScoreAccumulatorTest {
+    @Property
+    public void sumsLikeMap(@ForAll @Size(max = 500) List<@IntRange(max = 100_000) Integer> docIds,
+            @ForAll @IntRange(max = 64) int expectedSize) {
+        final var scores = new ScoreAccumulator(expectedSize);
+        final var expected = new HashMap<Integer, Double>();
+        for (final var docId : docIds) {
+            scores.add(docId, 1.0 / (docId + 1));
+            expected.merge(docId, 1.0 / (docId + 1), Double::sum);
+        }
+
+        Assertions.assertThat(scores.size()).isEqualTo(expected.size());
+        Assertions.assertThat(scores.toMap()).containsExactlyInAnyOrderEntriesOf(expected);
+        expected.forEach((docId, score) -> Assertions.assertThat(scores.get(docId)).isEqualTo(score));
+    }
+
+    @Example
+    public void replaceAndRetain() {
+        final var scores = new ScoreAccumulator();
+        for (int docId = 0; docId < 100; ++docId)
+            scores.add(docId, docId);
+        scores.add(10, 5.0);
+
+        scores.replaceAll((docId, score) -> score * 2);
+        scores.retainAll(docId -> docId % 10 == 0);
+
+        Assertions.assertThat(scores.size()).isEqualTo(10);
+        Assertions.assertThat(scores.get(10)).isEqualTo(30.0);
+        Assertions.assertThat(scores.get(90)).isEqualTo(180.0);
+        Assertions.assertThat(scores.contains(11)).isFalse();
+        Assertions.assertThat(scores.get(11)).isZero();
+
+        // Adding after retaining still finds the retained documents
+        scores.add(90, 1.0);
+        scores.add(91, 1.0);
+        Assertions.assertThat(scores.get(90)).isEqualTo(181.0);
+        Assertions.assertThat(scores.size()).isEqualTo(11);
+    }
+
+    @Example
+    public void clearForReuse() {
+        final var scores = new ScoreAccumulator();
+        scores.add(1, 1.0);
+        scores.add(2, 2.0);
+        scores.clear();
+
+        Assertions.assertThat(scores.size()).isZero();
+        Assertions.assertThat(scores.toMap()).isEmpty();
+
+        scores.add(2, 3.0);
+        Assertions.assertThat(scores.toMap()).containsExactlyInAnyOrderEntriesOf(Map.of(2, 3.0));
+    }
+}
@@ -0,0 +1,105 @@
+package com.comp4321.indexers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.assertj.core.api.Assertions;
+import org.htmlparser.util.ParserException;
+import org.mockito.Mockito;
+
+import com.comp4321.SearchResult;
+import com.comp4321.IRUtilities.Crawler;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import net.jqwik.api.Example;
+import net.jqwik.api.lifecycle.AfterProperty;
+import net.jqwik.api.lifecycle.BeforeProperty;
+
+public class ShardedIndexerTest {
+    private static final List<String> NAMES = List.of("test", "test-0", "test-1");
+
+    private final List<RecordManager> recmans = new ArrayList<>();
+    private Indexer indexer;
+    private ShardedIndexer sharded;
+
+    @BeforeProperty
+    public void setup() throws IOException {
+        for (final var name : NAMES)
+            recmans.add(RecordManagerFactory.createRecordManager(name));
+        indexer = new Indexer(recmans.get(0));
+        sharded = new ShardedIndexer(List.of(new Indexer(recmans.get(1)), new Indexer(recmans.get(2))));
+    }
+
+    @AfterProperty
+    public void teardown() {
+        try {
+            // Closing the sharded indexer closes the record managers of its shards
+            sharded.close();
+            recmans.get(0).close();
+            for (final var name : NAMES) {
+                Files.deleteIfExists(Path.of(name + ".db"));
+                Files.deleteIfExists(Path.of(name + ".lg"));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Crawler mockCrawler(String url, List<String> words, List<String> links) throws ParserException {
+        final var spy = Mockito.spy(new Crawler(url));
+        Mockito.doReturn(words).when(spy).extractWords();
+        Mockito.doReturn(List.of("page")).when(spy).extractTitle(Mockito.anyBoolean());
+        Mockito.doReturn(links).when(spy).extractLinks();
+        Mockito.doReturn(ZonedDateTime.now()).when(spy).getLastModified();
+        Mockito.doReturn(42L).when(spy).getPageSize();
+        return spy;
+    }
+
+    private void addDocument(String url, List<String> words, List<String> links) throws IOException, ParserException {
+        indexer.indexDocument(mockCrawler(url, words, links));
+        sharded.indexDocument(mockCrawler(url, words, links));
+    }
+
+    @Example
+    public void matchesUnshardedIndex() throws IOException, ParserException {
+        final var urls = List.of("invalid://a.com", "invalid://b.com", "invalid://c.com", "invalid://d.com");
+        Assertions.assertThat(urls).extracting(sharded::shardOf).contains(0, 1);
+
+        addDocument(urls.get(0), List.of("hello", "world"), List.of(urls.get(1), urls.get(2)));
+        addDocument(urls.get(1), List.of("hello", "computer"), List.of(urls.get(2)));
+        addDocument(urls.get(2), List.of("world", "computer", "science"), List.of(urls.get(3)));
+        addDocument(urls.get(3), List.of("science", "fiction"), List.of(urls.get(0)));
+
+        Assertions.assertThat(sharded.getDocumentCount()).isEqualTo(indexer.getDocumentCount());
+
+        for (final var query : List.of(Set.of("hello"), Set.of("computer", "science"), Set.of("fiction", "world"),
+                Set.of("unknown"))) {
+            final var expected = indexer.search(query, List.of()).values();
+            final var actual = sharded.search(query, List.of());
+            Assertions.assertThat(actual.values())
+                    .describedAs("Results of %s", query)
+                    .extracting(SearchResult::url)
+                    .containsExactlyInAnyOrderElementsOf(expected.stream().map(SearchResult::url).toList());
+
+            // Parent links are stored in the shard of the parent, so they are
+            // merged across shards
+            for (final var result : expected)
+                Assertions.assertThat(actual.values())
+                        .filteredOn(actualResult -> actualResult.url().equals(result.url()))
+                        .singleElement()
+                        .extracting(SearchResult::parentLinks)
+                        .isEqualTo(result.parentLinks());
+        }
+
+        Assertions.assertThat(sharded.search(Set.of("computer", "science"), List.of("computer", "science")))
+                .extractingFromEntries(entry -> entry.getValue().url())
+                .containsExactly(urls.get(2));
+        Assertions.assertThat(sharded.search(Set.of("hello"), List.of("hello", "unknown"))).isEmpty();
+    }
+}
@@ -0,0 +1,82 @@
+package com.comp4321.indexers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.DoubleRange;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+import net.jqwik.api.constraints.UniqueElements;
+
+public class TopScoresTest {
+    private static List<Map.Entry<Integer, Double>> select(TopScores top) {
+        top.sort();
+        final var selected = new ArrayList<Map.Entry<Integer, Double>>();
+        for (int rank = 0; rank < top.size(); ++rank)
+            selected.add(Map.entry(top.docId(rank), top.score(rank)));
+        return selected;
+    }
+
+    @Property
+    public void selectsSameAsFullSort(
+            @ForAll @UniqueElements @Size(max = 100) List<@IntRange(max = 1000) Integer> docIds,
+            @ForAll @Size(100) List<@DoubleRange(max = 10) Double> scores,
+            @ForAll @IntRange(max = 20) int k) {
+        final var top = new TopScores(k);
+        final var all = new ArrayList<Map.Entry<Integer, Double>>();
+        for (int i = 0; i < docIds.size(); ++i) {
+            // Round the scores to produce ties
+            final var score = Math.floor(scores.get(i));
+            top.offer(docIds.get(i), score);
+            all.add(Map.entry(docIds.get(i), score));
+        }
+
+        final var expected = all.stream()
+                .sorted(Comparator.comparing(Map.Entry<Integer, Double>::getValue, Comparator.reverseOrder())
+                        .thenComparing(Map.Entry::getKey))
+                .limit(k)
+                .toList();
+        Assertions.assertThat(select(top)).containsExactlyElementsOf(expected);
+    }
+
+    @Example
+    public void tiesPreferLowerDocId() {
+        final var top = new TopScores(2);
+        top.offer(5, 1.0);
+        top.offer(3, 1.0);
+        top.offer(4, 1.0);
+        top.offer(1, 0.5);
+
+        Assertions.assertThat(select(top)).containsExactly(Map.entry(3, 1.0), Map.entry(4, 1.0));
+    }
+
+    @Example
+    public void thresholdOnceFull() {
+        final var top = new TopScores(2);
+        top.offer(1, 3.0);
+        Assertions.assertThat(top.threshold()).isEqualTo(Double.NEGATIVE_INFINITY);
+
+        top.offer(2, 1.0);
+        Assertions.assertThat(top.threshold()).isEqualTo(1.0);
+
+        top.offer(3, 2.0);
+        Assertions.assertThat(top.threshold()).isEqualTo(2.0);
+        Assertions.assertThat(select(top)).containsExactly(Map.entry(1, 3.0), Map.entry(3, 2.0));
+    }
+
+    @Example
+    public void emptySelection() {
+        final var top = new TopScores(0);
+        top.offer(1, 1.0);
+
+        Assertions.assertThat(top.size()).isZero();
+        Assertions.assertThat(select(top)).isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+package com.comp4321.jdbm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.assertj.core.api.Assertions;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import net.jqwik.api.Example;
+
+public class ObjectCacheTest implements AutoCloseable {
+    private RecordManager recman;
+
+    public ObjectCacheTest() throws IOException {
+        recman = RecordManagerFactory.createRecordManager("test");
+    }
+
+    @Example
+    public void evictLeastRecentlyUsed() {
+        final var cache = ObjectCache.<Integer, String>withMaxEntries(2);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        Assertions.assertThat(cache.get(1)).isEqualTo("one");
+
+        // 2 is the least recently used entry
+        cache.put(3, "three");
+        Assertions.assertThat(cache.get(2)).isNull();
+        Assertions.assertThat(cache.get(1)).isEqualTo("one");
+        Assertions.assertThat(cache.get(3)).isEqualTo("three");
+
+        Assertions.assertThat(cache.getHitCount()).isEqualTo(3);
+        Assertions.assertThat(cache.getMissCount()).isEqualTo(1);
+        Assertions.assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Example
+    public void boundByWeight() {
+        final var cache = ObjectCache.<Integer, String>withMaxBytes(10, value -> value.length());
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        cache.put(3, "cccc");
+        Assertions.assertThat(cache.size()).isEqualTo(2);
+        Assertions.assertThat(cache.weight()).isEqualTo(8);
+
+        // Replacing an entry replaces its weight, too heavy values are not cached
+        cache.put(3, "cc");
+        Assertions.assertThat(cache.weight()).isEqualTo(6);
+        cache.put(4, "dddddddddddd");
+        Assertions.assertThat(cache.get(4)).isNull();
+        Assertions.assertThat(cache.weight()).isEqualTo(6);
+    }
+
+    @Example
+    public void writeThroughTrees() throws IOException {
+        final var htree = new SafeHTree<Integer, Set<Integer>>(recman, "links", IntSetSerializer.INSTANCE,
+                ObjectCache.withMaxEntries(10));
+        htree.put(1, new HashSet<>(Set.of(2)));
+        Assertions.assertThat(htree.get(1)).containsExactly(2);
+        Assertions.assertThat(htree.getCache().getHitCount()).isEqualTo(1);
+
+        htree.put(1, new HashSet<>(Set.of(3)));
+        Assertions.assertThat(htree.get(1)).containsExactly(3);
+        htree.remove(1);
+        Assertions.assertThat(htree.get(1)).isNull();
+
+        final var btree = new SafeBTree<String, Integer>(recman, "words", Comparator.naturalOrder(),
+                StringSerializer.INSTANCE, IntegerSerializer.INSTANCE, ObjectCache.withMaxEntries(10));
+        btree.insert("a", 1);
+        btree.insert("a", 2);
+        Assertions.assertThat(btree.find("a")).isEqualTo(2);
+        btree.remove("a");
+        Assertions.assertThat(btree.find("a")).isNull();
+        Assertions.assertThat(btree.getCache().getMissCount()).isEqualTo(1);
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            recman.close();
+            recman = null;
+            Files.deleteIfExists(Path.of("test.db"));
+            Files.deleteIfExists(Path.of("test.lg"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
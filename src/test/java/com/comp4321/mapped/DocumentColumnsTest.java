@@ -0,0 +1,68 @@
+package com.comp4321.mapped;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.lifecycle.AfterProperty;
+
+public class DocumentColumnsTest {
+    private static final Path COLUMNS = Path.of("test.columns");
+
+    @AfterProperty
+    public void teardown() {
+        try (final var files = Files.walk(COLUMNS)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Example
+    public void persistAndReopen() throws IOException {
+        final var lastModified = ZonedDateTime.of(2024, 4, 1, 12, 30, 0, 123456789, ZoneId.of("GMT"));
+
+        try (final var columns = DocumentColumns.open(COLUMNS)) {
+            Assertions.assertThat(columns.isClean()).isFalse();
+
+            // Enough rows to grow every column past its initial capacity
+            for (int docId = 1; docId <= 100_000; ++docId) {
+                columns.setTFMax(docId, docId % 7 + 1);
+                columns.setNorm(docId, docId / 2.0);
+            }
+            columns.setMetadata(42, "first title", 1024L, lastModified);
+            columns.setMetadata(42, "second title", 2048L, lastModified);
+
+            // Re-indexing with the same title does not grow the blob
+            final var titleBytes = columns.titleBytes();
+            columns.setMetadata(42, "second title", 2048L, lastModified);
+            Assertions.assertThat(columns.titleBytes()).isEqualTo(titleBytes);
+        }
+
+        try (final var columns = DocumentColumns.open(COLUMNS)) {
+            Assertions.assertThat(columns.isClean()).isTrue();
+
+            Assertions.assertThat(columns.getTFMax(99_999)).isEqualTo(99_999 % 7 + 1);
+            Assertions.assertThat(columns.getNorm(99_999)).isEqualTo(99_999 / 2.0);
+            Assertions.assertThat(columns.getTitle(42)).hasValue("second title");
+            Assertions.assertThat(columns.getPageSize(42)).isEqualTo(2048L);
+            Assertions.assertThat(columns.getLastModified(42)).hasValue(lastModified);
+
+            // Missing rows read as zero
+            Assertions.assertThat(columns.getTFMax(0)).isZero();
+            Assertions.assertThat(columns.getTFMax(100_001)).isZero();
+            Assertions.assertThat(columns.getTitle(43)).isEmpty();
+            Assertions.assertThat(columns.getLastModified(43)).isEmpty();
+
+            columns.clear();
+            Assertions.assertThat(columns.getTFMax(99_999)).isZero();
+            Assertions.assertThat(columns.getTitle(42)).isEmpty();
+        }
+    }
+}
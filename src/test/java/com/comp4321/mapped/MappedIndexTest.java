@@ -0,0 +1,154 @@
+package com.comp4321.mapped;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+
+import org.assertj.core.api.Assertions;
+import org.htmlparser.util.ParserException;
+import org.mockito.Mockito;
+
+import com.comp4321.SearchResult;
+import com.comp4321.IRUtilities.Crawler;
+import com.comp4321.indexers.Indexer;
+import com.comp4321.indexers.PageRank;
+import com.comp4321.indexers.ParallelScoring;
+import com.comp4321.indexers.ScoringModel;
+import com.comp4321.query.Query;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import net.jqwik.api.Example;
+import net.jqwik.api.lifecycle.AfterProperty;
+import net.jqwik.api.lifecycle.BeforeProperty;
+
+public class MappedIndexTest {
+    private static final Path COMPILED_INDEX = Path.of("test.idx");
+
+    private RecordManager recman;
+    private Indexer indexer;
+
+    @BeforeProperty
+    public void setup() throws IOException {
+        recman = RecordManagerFactory.createRecordManager("test");
+        indexer = new Indexer(recman);
+    }
+
+    @AfterProperty
+    public void teardown() {
+        try {
+            recman.close();
+            Files.deleteIfExists(Path.of("test.db"));
+            Files.deleteIfExists(Path.of("test.lg"));
+            Files.deleteIfExists(COMPILED_INDEX);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void indexDocument(String url, List<String> title, List<String> words, List<String> links)
+            throws IOException, ParserException {
+        final var spy = Mockito.spy(new Crawler(url));
+
+        Mockito.doReturn(words).when(spy).extractWords();
+        Mockito.doReturn(title).when(spy).extractTitle(Mockito.anyBoolean());
+        Mockito.doReturn(links).when(spy).extractLinks();
+        Mockito.doReturn(ZonedDateTime.now()).when(spy).getLastModified();
+        Mockito.doReturn(42L).when(spy).getPageSize();
+
+        indexer.indexDocument(spy);
+    }
+
+    private void assertSameResults(MappedIndex index, Set<String> words, List<String> phrase) throws IOException {
+        final var expected = indexer.search(words, phrase);
+        final var actual = index.search(words, phrase);
+
+        Assertions.assertThat(actual).containsOnlyKeys(expected.keySet());
+        expected.forEach((docId, result) -> {
+            final var mappedResult = actual.get(docId);
+            Assertions.assertThat(mappedResult.score()).isCloseTo(result.score(), Assertions.within(1e-10));
+            Assertions.assertThat(mappedResult.lastModified().toInstant()).isEqualTo(result.lastModified().toInstant());
+            Assertions.assertThat(mappedResult)
+                    .extracting("title", "url", "pageSize", "keywords", "parentLinks", "childLinks")
+                    .containsExactly(result.title(), result.url(), result.pageSize(), result.keywords(),
+                            result.parentLinks(), result.childLinks());
+        });
+    }
+
+    @Example
+    public void compileAndSearch() throws IOException, ParserException {
+        indexDocument("invalid://a.com", List.of("hello", "world"), List.of("hello", "search", "engine"),
+                List.of("invalid://b.com", "invalid://c.com"));
+        indexDocument("invalid://b.com", List.of("search"), List.of("hello", "there", "search", "engine"),
+                List.of("invalid://a.com"));
+        indexDocument("invalid://c.com", List.of("unrelated"), List.of("nothing", "to", "see", "here"),
+                List.of());
+
+        indexer.compile(COMPILED_INDEX);
+        try (final var index = new MappedIndex(COMPILED_INDEX)) {
+            assertSameResults(index, Set.of("hello"), List.of());
+            assertSameResults(index, Set.of("search", "engine"), List.of());
+            assertSameResults(index, Set.of("nothing", "unrelated"), List.of());
+            assertSameResults(index, Set.of("search"), List.of("search", "engine"));
+            assertSameResults(index, Set.of("hello"), List.of("engine", "search"));
+            assertSameResults(index, Set.of("missing"), List.of());
+            assertSameResults(index, Set.of("hello"), List.of("missing"));
+        }
+    }
+
+    @Example
+    public void compileAndSearchWithBM25() throws IOException, ParserException {
+        indexDocument("invalid://a.com", List.of("search"), List.of("hello", "search", "engine"), List.of());
+        indexDocument("invalid://b.com", List.of("hello"), List.of("search", "search", "there", "engine", "again"),
+                List.of());
+
+        indexer.compile(COMPILED_INDEX);
+        try (final var index = new MappedIndex(COMPILED_INDEX)) {
+            for (final var word : List.of("search", "hello", "engine")) {
+                final var query = new Query.Term(indexer.stemWord(word).orElseThrow(), false);
+                final var expected = indexer.search(query, ScoringModel.BM25, 0, 10);
+                final var actual = index.search(query, ScoringModel.BM25, 0, 10);
+
+                Assertions.assertThat(actual).extracting(SearchResult::url)
+                        .containsExactlyElementsOf(expected.stream().map(SearchResult::url).toList());
+                for (int rank = 0; rank < expected.size(); ++rank)
+                    Assertions.assertThat(actual.get(rank).score())
+                            .isCloseTo(expected.get(rank).score(), Assertions.within(1e-10));
+            }
+        }
+    }
+
+    @Example
+    public void compileAndSearchWithPageRank() throws IOException, ParserException {
+        indexDocument("invalid://a.com", List.of("hello"), List.of("hello", "search", "engine"),
+                List.of("invalid://b.com"));
+        indexDocument("invalid://b.com", List.of("search"), List.of("hello", "there", "search"),
+                List.of("invalid://a.com", "invalid://c.com"));
+        indexDocument("invalid://c.com", List.of("engine"), List.of("hello", "engine"), List.of("invalid://b.com"));
+        indexer.computePageRank(ParallelScoring.SEQUENTIAL);
+
+        indexer.compile(COMPILED_INDEX);
+        try (final var index = new MappedIndex(COMPILED_INDEX)) {
+            final var unranked = index.search(Set.of("hello"), List.of());
+
+            indexer.setPageRankWeight(PageRank.DEFAULT_WEIGHT);
+            index.setPageRankWeight(PageRank.DEFAULT_WEIGHT);
+            assertSameResults(index, Set.of("hello"), List.of());
+            assertSameResults(index, Set.of("search", "engine"), List.of());
+            unranked.forEach((docId, result) -> Assertions.assertThat(index.search(Set.of("hello"), List.of())
+                    .get(docId).score()).isGreaterThan(result.score()));
+
+            final var query = new Query.Term(indexer.stemWord("hello").orElseThrow(), false);
+            final var expected = indexer.search(query, ScoringModel.BM25, 0, 10);
+            final var actual = index.search(query, ScoringModel.BM25, 0, 10);
+            Assertions.assertThat(actual).extracting(SearchResult::url)
+                    .containsExactlyElementsOf(expected.stream().map(SearchResult::url).toList());
+            for (int rank = 0; rank < expected.size(); ++rank)
+                Assertions.assertThat(actual.get(rank).score())
+                        .isCloseTo(expected.get(rank).score(), Assertions.within(1e-10));
+        }
+    }
+}
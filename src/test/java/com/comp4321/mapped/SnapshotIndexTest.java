@@ -0,0 +1,102 @@
+package com.comp4321.mapped;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.assertj.core.api.Assertions;
+import org.htmlparser.util.ParserException;
+import org.mockito.Mockito;
+
+import com.comp4321.SearchResult;
+import com.comp4321.IRUtilities.Crawler;
+import com.comp4321.indexers.Indexer;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import net.jqwik.api.Example;
+import net.jqwik.api.lifecycle.AfterProperty;
+import net.jqwik.api.lifecycle.BeforeProperty;
+
+public class SnapshotIndexTest {
+    private static final Path SNAPSHOTS = Path.of("test.snapshots");
+
+    private RecordManager recman;
+    private Indexer indexer;
+
+    @BeforeProperty
+    public void setup() throws IOException {
+        recman = RecordManagerFactory.createRecordManager("test");
+        indexer = new Indexer(recman);
+    }
+
+    @AfterProperty
+    public void teardown() {
+        try {
+            recman.close();
+            Files.deleteIfExists(Path.of("test.db"));
+            Files.deleteIfExists(Path.of("test.lg"));
+            if (Files.exists(SNAPSHOTS)) {
+                try (final var files = Files.walk(SNAPSHOTS)) {
+                    for (final var file : files.sorted(Comparator.reverseOrder()).toList())
+                        Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void indexDocument(String url, List<String> words) throws IOException, ParserException {
+        final var spy = Mockito.spy(new Crawler(url));
+
+        Mockito.doReturn(words).when(spy).extractWords();
+        Mockito.doReturn(List.of("page")).when(spy).extractTitle(Mockito.anyBoolean());
+        Mockito.doReturn(List.of()).when(spy).extractLinks();
+        Mockito.doReturn(ZonedDateTime.now()).when(spy).getLastModified();
+        Mockito.doReturn(42L).when(spy).getPageSize();
+
+        indexer.indexDocument(spy);
+    }
+
+    @Example
+    public void publishAndSwap() throws IOException, ParserException {
+        final var store = new SnapshotStore(SNAPSHOTS);
+        Assertions.assertThat(store.current()).isEmpty();
+        Assertions.assertThatThrownBy(() -> SnapshotIndex.open(store, Duration.ofHours(1)))
+                .isInstanceOf(MappedIndexException.class);
+
+        indexDocument("invalid://a.com", List.of("hello", "world"));
+        final var first = store.publish(indexer::compile);
+        Assertions.assertThat(store.current()).contains(first);
+
+        try (final var index = SnapshotIndex.open(store, Duration.ofHours(1))) {
+            Assertions.assertThat(index.search(Set.of("hello"), List.of()).values())
+                    .extracting(SearchResult::url)
+                    .containsExactly("invalid://a.com");
+
+            // The served snapshot does not change until the next one is published
+            indexDocument("invalid://b.com", List.of("hello", "there"));
+            Assertions.assertThat(index.refresh()).isFalse();
+            Assertions.assertThat(index.search(Set.of("hello"), List.of())).hasSize(1);
+
+            final var second = store.publish(indexer::compile);
+            Assertions.assertThat(index.refresh()).isTrue();
+            Assertions.assertThat(index.getPath()).isEqualTo(second);
+            Assertions.assertThat(index.search(Set.of("hello"), List.of()).values())
+                    .extracting(SearchResult::url)
+                    .containsExactlyInAnyOrder("invalid://a.com", "invalid://b.com");
+
+            // Only the current and the previous generation are kept
+            final var third = store.publish(indexer::compile);
+            Assertions.assertThat(first).doesNotExist();
+            Assertions.assertThat(second).exists();
+            Assertions.assertThat(third).exists();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.comp4321.query;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.assertj.core.api.Assertions;
+
+import net.jqwik.api.Example;
+
+public class QueryParserTest {
+    // Lower-cases the words and drops "the" as a stop word
+    private final QueryParser parser = new QueryParser(
+            word -> word.equalsIgnoreCase("the") ? Optional.empty() : Optional.of(word.toLowerCase()));
+
+    private static Query.Term term(String stem) {
+        return new Query.Term(stem, false);
+    }
+
+    @Example
+    public void plainWordsAreAlternatives() {
+        Assertions.assertThat(parser.parse("hello")).isEqualTo(term("hello"));
+        Assertions.assertThat(parser.parse("hello World the"))
+                .isEqualTo(new Query.Or(List.of(term("hello"), term("world"))));
+        Assertions.assertThat(parser.parse("the")).isEqualTo(new Query.Or(List.of()));
+        Assertions.assertThat(parser.parse("  ")).isEqualTo(new Query.Or(List.of()));
+    }
+
+    @Example
+    public void phraseIsRequiredAndRanked() {
+        final var phrase = new Query.Phrase(List.of("hong", "kong"), 0, false);
+        Assertions.assertThat(parser.parse("\"Hong Kong\" university")).isEqualTo(new Query.And(List.of(
+                phrase, new Query.Or(List.of(term("university"), phrase)))));
+        Assertions.assertThat(parser.parse("\"hong the kong\"~2"))
+                .isEqualTo(new Query.Phrase(List.of("hong", "kong"), 2, false));
+        Assertions.assertThat(parser.parse("\"hong kong")).isEqualTo(phrase);
+    }
+
+    @Example
+    public void andBindsTighterThanOr() {
+        Assertions.assertThat(parser.parse("a AND b OR c")).isEqualTo(new Query.Or(List.of(
+                new Query.And(List.of(term("a"), term("b"))), term("c"))));
+        Assertions.assertThat(parser.parse("a AND (b OR c)")).isEqualTo(new Query.And(List.of(
+                term("a"), new Query.Or(List.of(term("b"), term("c"))))));
+        Assertions.assertThat(parser.parse("a and b")).isEqualTo(new Query.Or(List.of(
+                term("a"), term("and"), term("b"))));
+    }
+
+    @Example
+    public void negationAndTitle() {
+        Assertions.assertThat(parser.parse("a NOT b")).isEqualTo(new Query.And(List.of(
+                new Query.Not(term("b")), term("a"))));
+        Assertions.assertThat(parser.parse("title:(a OR \"b c\")")).isEqualTo(new Query.Or(List.of(
+                new Query.Term("a", true), new Query.Phrase(List.of("b", "c"), 0, true))));
+        Assertions.assertThat(parser.parse("NOT the")).isEqualTo(new Query.Or(List.of()));
+    }
+
+    @Example
+    public void canonicalForm() {
+        Assertions.assertThat(parser.parse("title:a AND NOT (b OR \"c d\"~1)"))
+                .hasToString("(title:a AND NOT (b OR \"c d\"~1))");
+        Assertions.assertThat(parser.parse("a NOT b").scoredStems()).containsExactly("a");
+    }
+
+    @Example
+    public void malformedQueries() {
+        for (final var text : List.of("a AND", "(a OR b", "a)", "NOT", "OR a", "title:"))
+            Assertions.assertThatThrownBy(() -> parser.parse(text)).as(text).isInstanceOf(QueryException.class);
+    }
+}
@@ -0,0 +1,111 @@
+package com.comp4321.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+
+import com.comp4321.indexers.Posting;
+
+import net.jqwik.api.Example;
+
+public class QueryPlannerTest {
+    // Documents 1 to 4, where "a" is in the title of document 1 and "c" only
+    // follows "b" in document 2
+    private static final Map<String, List<Posting>> POSTINGS = Map.of(
+            "a", List.of(
+                    new Posting(1, new int[] { 0 }, new int[0]),
+                    new Posting(2, new int[0], new int[] { 5 }),
+                    new Posting(3, new int[0], new int[] { 1 })),
+            "b", List.of(
+                    new Posting(2, new int[0], new int[] { 0 }),
+                    new Posting(3, new int[0], new int[] { 4 }),
+                    new Posting(4, new int[0], new int[] { 0 })),
+            "c", List.of(
+                    new Posting(2, new int[0], new int[] { 1 }),
+                    new Posting(3, new int[0], new int[] { 6 })));
+
+    private static class FakeIndex implements QueryIndex {
+        private final List<String> fetched = new ArrayList<>();
+
+        @Override
+        public int getDF(String stem) {
+            return POSTINGS.getOrDefault(stem, List.of()).size();
+        }
+
+        @Override
+        public List<Posting> getPostings(String stem) {
+            fetched.add(stem);
+            return POSTINGS.getOrDefault(stem, List.of());
+        }
+    }
+
+    private static Query.Term term(String stem) {
+        return new Query.Term(stem, false);
+    }
+
+    private static List<Integer> match(Query query) throws IOException {
+        return new QueryPlanner(new FakeIndex()).match(query).stream().boxed().toList();
+    }
+
+    @Example
+    public void normalize() {
+        final var a = term("a");
+        final var b = term("b");
+        final var c = term("c");
+
+        // De Morgan
+        Assertions.assertThat(QueryPlanner.normalize(new Query.Not(new Query.Or(List.of(a, b)))))
+                .isEqualTo(new Query.And(List.of(new Query.Not(a), new Query.Not(b))));
+        Assertions.assertThat(QueryPlanner.normalize(new Query.Not(new Query.Not(a)))).isEqualTo(a);
+
+        // Flattening, deduplication and absorption
+        Assertions.assertThat(QueryPlanner.normalize(new Query.And(List.of(a, new Query.And(List.of(b, a))))))
+                .isEqualTo(new Query.And(List.of(a, b)));
+        Assertions.assertThat(QueryPlanner.normalize(new Query.And(List.of(a, new Query.Or(List.of(a, c))))))
+                .isEqualTo(a);
+    }
+
+    @Example
+    public void matchBooleanQueries() throws IOException {
+        final var a = term("a");
+        final var b = term("b");
+        final var c = term("c");
+
+        Assertions.assertThat(match(new Query.And(List.of(a, b)))).containsExactly(2, 3);
+        Assertions.assertThat(match(new Query.Or(List.of(a, b)))).containsExactly(1, 2, 3, 4);
+        Assertions.assertThat(match(new Query.And(List.of(b, new Query.Not(c))))).containsExactly(4);
+        Assertions.assertThat(match(new Query.And(List.of(new Query.Or(List.of(a, c)), new Query.Not(b)))))
+                .containsExactly(1);
+        Assertions.assertThat(match(new Query.Not(a))).isEmpty();
+        Assertions.assertThat(match(new Query.Or(List.of()))).isEmpty();
+    }
+
+    @Example
+    public void matchPhrasesAndTitles() throws IOException {
+        Assertions.assertThat(match(new Query.Phrase(List.of("b", "c"), 0, false))).containsExactly(2);
+        Assertions.assertThat(match(new Query.Phrase(List.of("b", "c"), 1, false))).containsExactly(2, 3);
+        Assertions.assertThat(match(new Query.Term("a", true))).containsExactly(1);
+        Assertions.assertThat(match(new Query.Phrase(List.of("b", "c"), 0, true))).isEmpty();
+    }
+
+    @Example
+    public void emptyClauseSkipsTheOthers() throws IOException {
+        final var index = new FakeIndex();
+        final var query = new Query.And(List.of(term("a"), term("b"), term("missing")));
+        Assertions.assertThat(new QueryPlanner(index).match(query).isEmpty()).isTrue();
+        Assertions.assertThat(index.fetched).isEmpty();
+    }
+
+    @Example
+    public void cost() throws IOException {
+        final var planner = new QueryPlanner(new FakeIndex());
+        Assertions.assertThat(planner.cost(term("a"))).isEqualTo(3);
+        Assertions.assertThat(planner.cost(new Query.Phrase(List.of("a", "c"), 0, false))).isEqualTo(2);
+        Assertions.assertThat(planner.cost(new Query.And(List.of(term("a"), term("c"))))).isEqualTo(2);
+        Assertions.assertThat(planner.cost(new Query.Or(List.of(term("a"), term("c"))))).isEqualTo(5);
+        Assertions.assertThat(planner.cost(new Query.Not(term("a")))).isEqualTo(Long.MAX_VALUE);
+    }
+}